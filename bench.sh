@@ -0,0 +1,20 @@
+#!/bin/bash
+# Builds the JMH benchmarks in bench/ against rars.jar and runs them.  Arguments are passed on to JMH,
+# e.g. "./bench.sh Memory -p width=word" or "./bench.sh -l" to list the benchmarks.
+#
+# JMH is not bundled.  To run offline, put jmh-core, jmh-generator-annprocess and their dependencies
+# (jopt-simple, commons-math3) in bench/lib, or set JMH_LIB to a directory holding them.
+JMH_LIB=${JMH_LIB:-bench/lib}
+if [ ! -f rars.jar ]; then
+    echo "rars.jar not found; run build-jar.sh first"
+    exit 1
+fi
+if ! ls "$JMH_LIB"/jmh-core*.jar > /dev/null 2>&1 || ! ls "$JMH_LIB"/jmh-generator-annprocess*.jar > /dev/null 2>&1; then
+    echo "JMH jars not found in $JMH_LIB; put jmh-core and jmh-generator-annprocess there or set JMH_LIB"
+    exit 1
+fi
+CLASSPATH="rars.jar:$JMH_LIB/*"
+rm -rf bench/build
+mkdir -p bench/build
+find bench/rars -name "*.java" | xargs javac -cp "$CLASSPATH" -processor org.openjdk.jmh.generators.BenchmarkProcessor -d bench/build || exit 1
+java -cp "bench/build:$CLASSPATH" org.openjdk.jmh.Main "$@"
@@ -0,0 +1,72 @@
+package rars.bench;
+
+import org.openjdk.jmh.annotations.*;
+import rars.AssemblyException;
+import rars.ErrorList;
+import rars.api.Options;
+import rars.api.Program;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembling generated programs of different sizes, from source text to machine code in memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssemblerBenchmark {
+    @Param({"1000", "10000"})
+    public int lines;
+
+    private String source;
+    private Program program;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.initialize();
+        source = generate(lines);
+        Options options = new Options();
+        options.startAtMain = true;
+        program = new Program(options);
+    }
+
+    @Benchmark
+    public ErrorList assemble() throws AssemblyException {
+        return program.assembleString(source);
+    }
+
+    /**
+     * Generates a program of about the given number of lines: a data section, then functions with a loop
+     * each, calling each other, using loads and stores, arithmetic, branches and pseudo-instructions.
+     *
+     * @param lines roughly how many lines to generate
+     * @return the source
+     */
+    static String generate(int lines) {
+        int functions = Math.max(1, lines / 20);
+        StringBuilder source = new StringBuilder(lines * 24);
+        source.append(".data\n");
+        for (int f = 0; f < functions; f++) {
+            source.append("data").append(f).append(": .word ").append(f).append(", ").append(f * 3).append('\n');
+        }
+        source.append("message: .asciz \"done\\n\"\n");
+        source.append(".text\n.globl main\nmain:\n");
+        source.append("  call func0\n  li a7, 10\n  ecall\n");
+        for (int f = 0; f < functions; f++) {
+            source.append("func").append(f).append(":     # function ").append(f).append('\n');
+            source.append("  addi sp, sp, -16\n  sw ra, 12(sp)\n");
+            source.append("  la t0, data").append(f).append('\n');
+            source.append("  lw t1, 0(t0)\n  lw t2, 4(t0)\n  li t3, ").append(f * 7 + 1000).append('\n');
+            source.append("loop").append(f).append(":\n");
+            source.append("  add t1, t1, t2\n  slli t4, t1, 2\n  xor t2, t2, t4\n");
+            source.append("  addi t3, t3, -1\n  bnez t3, loop").append(f).append('\n');
+            source.append("  sw t1, 0(t0)\n");
+            if (f + 1 < functions) source.append("  call func").append(f + 1).append('\n');
+            source.append("  lw ra, 12(sp)\n  addi sp, sp, 16\n  ret\n");
+        }
+        return source.toString();
+    }
+}
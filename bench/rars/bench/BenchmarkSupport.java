@@ -0,0 +1,41 @@
+package rars.bench;
+
+import rars.AssemblyException;
+import rars.Globals;
+import rars.Settings;
+import rars.api.Options;
+import rars.api.Program;
+import rars.riscv.InstructionSet;
+
+/**
+ * Setup shared by the benchmarks: RARS is initialized headless for RV32, as the tests do.
+ */
+final class BenchmarkSupport {
+    private BenchmarkSupport() {
+    }
+
+    static synchronized void initialize() {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+    }
+
+    /**
+     * @param source a complete program
+     * @return the program assembled, ready for {@link Program#setup}
+     */
+    static Program assemble(String source) {
+        initialize();
+        Options options = new Options();
+        options.startAtMain = true;
+        Program program = new Program(options);
+        try {
+            program.assembleString(source);
+        } catch (AssemblyException e) {
+            throw new IllegalStateException("Benchmark program failed to assemble:\n"
+                    + e.errors().generateErrorAndWarningReport(), e);
+        }
+        return program;
+    }
+}
@@ -0,0 +1,95 @@
+package rars.bench;
+
+import org.openjdk.jmh.annotations.*;
+import rars.Globals;
+import rars.ProgramStatement;
+import rars.api.Program;
+import rars.riscv.BasicInstruction;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.Memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding machine code, as the simulator does for code it has not assembled itself: looking up the
+ * instruction for an encoding, and building a whole statement with its operands. The encodings are a mix
+ * of every instruction format, taken from an assembled program.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    private static final String SOURCE = String.join("\n",
+            ".data",
+            "array: .word 1, 2, 3, 4",
+            ".text",
+            "main:",
+            "  la t0, array",
+            "  lw t1, 0(t0)",
+            "  lb t2, 1(t0)",
+            "  sw t1, 4(t0)",
+            "  sh t2, 8(t0)",
+            "  add t3, t1, t2",
+            "  sub t4, t3, t1",
+            "  slli t5, t4, 3",
+            "  xori t6, t5, 0x55",
+            "  mul a0, t1, t2",
+            "  divu a1, a0, t1",
+            "  lui a2, 0x12345",
+            "  auipc a3, 0",
+            "  beq t1, t2, main",
+            "  bltu t3, t4, main",
+            "  jal ra, main",
+            "  jalr zero, 0(ra)",
+            "  fadd.s ft0, ft1, ft2",
+            "  fmul.d ft3, ft4, ft5",
+            "  fmadd.s ft6, ft7, ft8, ft9",
+            "  flw fa0, 0(t0)",
+            "  fsw fa0, 4(t0)",
+            "  fcvt.w.s a4, fa0",
+            "  csrrw a5, fcsr, a4",
+            "  ecall");
+
+    private int[] encodings;
+    private int[] addresses;
+    private int next;
+
+    @Setup
+    public void setup() throws AddressErrorException {
+        Program program = BenchmarkSupport.assemble(SOURCE);
+        program.setup(null, "");
+        List<Integer> words = new ArrayList<>();
+        for (int address = Memory.textBaseAddress; ; address += 4) {
+            Integer word = program.getMemory().getRawWordOrNull(address);
+            if (word == null) break;
+            words.add(word);
+        }
+        encodings = new int[words.size()];
+        addresses = new int[words.size()];
+        for (int i = 0; i < encodings.length; i++) {
+            encodings[i] = words.get(i);
+            addresses[i] = Memory.textBaseAddress + 4 * i;
+        }
+    }
+
+    private int next() {
+        next = next + 1 == encodings.length ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public BasicInstruction findByBinaryCode() {
+        return Globals.instructionSet.findByBinaryCode(encodings[next()]);
+    }
+
+    @Benchmark
+    public ProgramStatement decodeStatement() {
+        int i = next();
+        return new ProgramStatement(encodings[i], addresses[i]);
+    }
+}
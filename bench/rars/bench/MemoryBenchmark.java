@@ -0,0 +1,103 @@
+package rars.bench;
+
+import org.openjdk.jmh.annotations.*;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.Memory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory loads and stores of each width, in each segment a program uses. Each call accesses the next
+ * aligned address in a 4 KB window, so the accesses look like a program walking an array.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark {
+    private static final int WINDOW = 4096;
+
+    @Param({"data", "heap", "stack", "mmio"})
+    public String segment;
+
+    @Param({"byte", "half", "word", "doubleword"})
+    public String width;
+
+    private Memory memory;
+    private int base, size, offset;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.initialize();
+        memory = new Memory();
+        switch (segment) {
+            case "data":
+                base = Memory.dataBaseAddress;
+                break;
+            case "heap":
+                base = Memory.heapBaseAddress;
+                break;
+            case "stack":
+                base = Memory.stackBaseAddress - WINDOW;
+                break;
+            case "mmio":
+                base = Memory.memoryMapBaseAddress;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown segment " + segment);
+        }
+        switch (width) {
+            case "byte":
+                size = 1;
+                break;
+            case "half":
+                size = 2;
+                break;
+            case "word":
+                size = 4;
+                break;
+            case "doubleword":
+                size = 8;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown width " + width);
+        }
+    }
+
+    private int next() {
+        offset = (offset + size) & (WINDOW - 1);
+        return base + offset;
+    }
+
+    @Benchmark
+    public long load() throws AddressErrorException {
+        int address = next();
+        switch (size) {
+            case 1:
+                return memory.getByte(address);
+            case 2:
+                return memory.getHalf(address);
+            case 4:
+                return memory.getWord(address);
+            default:
+                return memory.getDoubleWord(address);
+        }
+    }
+
+    @Benchmark
+    public long store() throws AddressErrorException {
+        int address = next();
+        switch (size) {
+            case 1:
+                return memory.setByte(address, address);
+            case 2:
+                return memory.setHalf(address, address);
+            case 4:
+                return memory.setWord(address, address);
+            default:
+                return memory.setDoubleWord(address, address);
+        }
+    }
+}
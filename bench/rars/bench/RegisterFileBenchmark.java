@@ -0,0 +1,55 @@
+package rars.bench;
+
+import org.openjdk.jmh.annotations.*;
+import rars.riscv.hardware.FloatingPointRegisterFile;
+import rars.riscv.hardware.RegisterFile;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes of the integer and floating point registers, through the same methods the
+ * instructions use.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegisterFileBenchmark {
+    private int register;
+    private long value;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.initialize();
+        RegisterFile.resetRegisters();
+        FloatingPointRegisterFile.resetRegisters();
+    }
+
+    // Registers 1 to 31 in turn, as x0 cannot be written
+    private int next() {
+        register = register == 31 ? 1 : register + 1;
+        return register;
+    }
+
+    @Benchmark
+    public void updateInteger() {
+        RegisterFile.updateRegister(next(), value++);
+    }
+
+    @Benchmark
+    public int readInteger() {
+        return RegisterFile.getValue(next());
+    }
+
+    @Benchmark
+    public void updateFloat() {
+        FloatingPointRegisterFile.updateRegisterLong(next(), value++);
+    }
+
+    @Benchmark
+    public long readFloat() {
+        return FloatingPointRegisterFile.getValueLong(next());
+    }
+}
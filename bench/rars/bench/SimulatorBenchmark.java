@@ -0,0 +1,96 @@
+package rars.bench;
+
+import org.openjdk.jmh.annotations.*;
+import rars.SimulationException;
+import rars.api.Program;
+import rars.simulator.Simulator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole runs of the simulator loop on small kernels, each about a million instructions: integer
+ * arithmetic, floating point arithmetic, and a loop making a system call every few instructions.
+ * Assembling is done once; each run copies the program into a fresh memory and simulates it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulatorBenchmark {
+    private static final String INTEGER = String.join("\n",
+            ".text",
+            "main:",
+            "  li t0, 200000",
+            "  li t1, 0",
+            "  li t2, 12345",
+            "loop:",
+            "  add t1, t1, t2",
+            "  slli t3, t1, 3",
+            "  xor t2, t2, t3",
+            "  addi t0, t0, -1",
+            "  bnez t0, loop",
+            "  li a7, 10",
+            "  ecall");
+
+    private static final String FLOAT = String.join("\n",
+            ".text",
+            "main:",
+            "  li t0, 200000",
+            "  li t1, 3",
+            "  fcvt.d.w ft0, t1",
+            "  li t1, 1",
+            "  fcvt.d.w ft1, t1",
+            "loop:",
+            "  fmul.d ft2, ft0, ft1",
+            "  fadd.d ft1, ft1, ft2",
+            "  fdiv.d ft1, ft1, ft0",
+            "  addi t0, t0, -1",
+            "  bnez t0, loop",
+            "  li a7, 10",
+            "  ecall");
+
+    private static final String SYSCALL = String.join("\n",
+            ".text",
+            "main:",
+            "  li t0, 200000",
+            "loop:",
+            "  mv a0, t0",
+            "  li a7, 1",
+            "  ecall",
+            "  addi t0, t0, -1",
+            "  bnez t0, loop",
+            "  li a7, 10",
+            "  ecall");
+
+    @Param({"integer", "float", "syscall"})
+    public String kernel;
+
+    private Program program;
+
+    @Setup
+    public void setup() {
+        switch (kernel) {
+            case "integer":
+                program = BenchmarkSupport.assemble(INTEGER);
+                break;
+            case "float":
+                program = BenchmarkSupport.assemble(FLOAT);
+                break;
+            case "syscall":
+                program = BenchmarkSupport.assemble(SYSCALL);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kernel " + kernel);
+        }
+    }
+
+    @Benchmark
+    public Simulator.Reason simulate() throws SimulationException {
+        program.setup(null, ""); // captures output, so the syscall kernel does not print
+        Simulator.Reason reason = program.simulate();
+        if (reason != Simulator.Reason.NORMAL_TERMINATION) throw new IllegalStateException("Kernel stopped: " + reason);
+        return reason;
+    }
+}
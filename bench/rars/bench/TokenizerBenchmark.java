@@ -0,0 +1,46 @@
+package rars.bench;
+
+import org.openjdk.jmh.annotations.*;
+import rars.assembler.TokenList;
+import rars.assembler.Tokenizer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing single source lines of the kinds found in student programs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+    private static final String[] LINES = {
+            "loop:   addi t0, t0, -1        # count down",
+            "        lw   a0, 12(sp)",
+            "        bne  t0, zero, loop",
+            "        la   a0, message",
+            "message: .asciz \"Hello, world!\\n\"",
+            "table:  .word 0x10, 0x20, 0x30, 0x40, 0x50",
+            "        fmadd.d fa0, fa1, fa2, fa3",
+            "        li   a7, 10",
+            "        ecall",
+            "        .eqv SIZE, 64",
+    };
+
+    private Tokenizer tokenizer;
+    private int next;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.initialize();
+        tokenizer = new Tokenizer();
+    }
+
+    @Benchmark
+    public TokenList tokenizeLine() {
+        next = next + 1 == LINES.length ? 0 : next + 1;
+        return tokenizer.tokenizeLine(next + 1, LINES[next]);
+    }
+}
@@ -0,0 +1,6 @@
+#!/bin/bash
+javac -cp rars.jar test/Benchmark.java
+java -cp test:rars.jar Benchmark "$@"
+status=$?
+rm test/Benchmark*.class
+exit $status
@@ -1,7 +1,29 @@
 #!/bin/bash
 if git submodule status | grep \( > /dev/null ; then 
     mkdir -p build
-    find src -name "*.java" | xargs javac -d build
+    # Compile against an empty list of instructions and syscalls, so that a Registry.java naming a class
+    # that has gone can not stop the generator being built, then bring the real list up to date
+    placeholder=$(mktemp -d)
+    mkdir -p $placeholder/rars/riscv
+    cat > $placeholder/rars/riscv/Registry.java <<'EOF'
+package rars.riscv;
+
+class Registry {
+    static BasicInstruction[] instructions() {
+        return new BasicInstruction[0];
+    }
+
+    static AbstractSyscall[] syscalls() {
+        return new AbstractSyscall[0];
+    }
+}
+EOF
+    (find src -name "*.java" -not -path src/rars/riscv/Registry.java; echo $placeholder/rars/riscv/Registry.java) | xargs javac -d build
+    rm -r $placeholder
+    java -cp build rars.extras.GenerateRegistry src
+    javac -cp build -d build src/rars/riscv/Registry.java
+    # The Flight Recorder events need a JDK that has it; without them RARS runs but records no events
+    javac -cp build -d build jfr/rars/management/*.java || echo "Building without Flight Recorder events"
     if [[ "$OSTYPE" == "darwin"* ]]; then
         find src -type f -not -name "*.java" -exec rsync -R {} build \;
     else
@@ -0,0 +1,85 @@
+package rars.management;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * The Flight Recorder event types, kept apart from {@link rars.management.FlightRecorder} in their own
+ * source directory, as they only compile against a JDK that has Flight Recorder; the rest of RARS still
+ * builds for Java 8. {@code FlightRecorder} loads this class by name when it is there.
+ */
+class FlightRecorderEvents implements rars.management.FlightRecorder.Events {
+    @Name("rars.Phase")
+    @Label("Phase")
+    @Category("RARS")
+    @Description("Tokenizing, assembling, generating code for or simulating a program")
+    static class Phase extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Detail")
+        String detail;
+    }
+
+    @Name("rars.Syscall")
+    @Label("System Call")
+    @Category("RARS")
+    @Description("A system call made by the simulated program that took a long time")
+    @Threshold("20 ms")
+    static class Syscall extends Event {
+        @Label("Number")
+        int number;
+
+        @Label("Name")
+        String name;
+    }
+
+    // Whether a recording has been started since the JVM was, whether at startup or later with jcmd
+    @Override
+    public boolean started() {
+        return FlightRecorder.isInitialized();
+    }
+
+    @Override
+    public Object beginPhase() {
+        Phase event = new Phase();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endPhase(Object handle, String phase, String detail) {
+        Phase event = (Phase) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.detail = detail;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginSyscall() {
+        Syscall event = new Syscall();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endSyscall(Object handle, int number, String name) {
+        Syscall event = (Syscall) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.number = number;
+            event.name = name;
+            event.commit();
+        }
+    }
+}
@@ -117,6 +117,10 @@ public class Globals {
      * Maximum number of back-step operations to buffer
      */
     public static final int maximumBacksteps = getBackstepLimit();
+    /**
+     * Number of back-step operations kept in memory, the rest go to a temporary file
+     */
+    public static final int maximumBackstepsInMemory = getBackstepMemoryLimit();
     /**
      * Copyright years
      */
@@ -192,6 +196,11 @@ public class Globals {
         return getIntegerProperty(configPropertiesFile, "BackstepLimit", 1000);
     }
 
+    // Read how many of those are kept in memory, defaulting to all of them.
+    private static int getBackstepMemoryLimit() {
+        return getIntegerProperty(configPropertiesFile, "BackstepMemoryLimit", maximumBacksteps);
+    }
+
     // Read ASCII default display character for non-printing characters, from properties file.
     public static String getAsciiNonPrint() {
         String anp = getPropertyEntry(configPropertiesFile, "AsciiNonPrint");
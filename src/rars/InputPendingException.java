@@ -0,0 +1,14 @@
+package rars;
+
+/**
+ * Thrown when the program asks for input that has not come yet, to stop the simulator at the system call
+ * so that it can be made again once the input is there. Unchecked, as it comes from deep inside
+ * {@link rars.util.SystemIO} through system calls that only expect to fail by exiting.
+ */
+public class InputPendingException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public InputPendingException() {
+        super(null, null, false, false); // thrown routinely, so skip the stack trace
+    }
+}
@@ -1,12 +1,18 @@
 package rars;
 
+import rars.api.Daemon;
 import rars.api.Program;
+import rars.management.SimulatorMetrics;
 import rars.riscv.InstructionSet;
 import rars.riscv.dump.DumpFormat;
 import rars.riscv.dump.DumpFormatLoader;
 import rars.riscv.hardware.*;
+import rars.simulator.Profiler;
 import rars.simulator.ProgramArgumentList;
 import rars.simulator.Simulator;
+import rars.simulator.StackSampler;
+import rars.simulator.TimingModel;
+import rars.trace.TraceWriter;
 import rars.util.Binary;
 import rars.util.FilenameFinder;
 import rars.util.MemoryDump;
@@ -14,10 +20,16 @@ import rars.venus.VenusUI;
 import rars.api.Options;
 
 import javax.swing.*;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Observable;
@@ -70,6 +82,8 @@ public class Launch {
      * ascii  -- display memory or register contents interpreted as ASCII
      * b  -- brief - do not display register/memory address along with contents<br>
      * d  -- print debugging statements<br>
+     * daemon  -- run jobs given as lines of JSON on standard input, writing a line of JSON for each to<br>
+     * standard output, until the input ends.  See <tt>rars.api.Daemon</tt><br>
      * da  -- both a and d<br>
      * dec  -- display memory or register contents in decimal.<br>
      * dump  -- dump memory contents to file.  Option has 3 arguments, e.g. <br>
@@ -93,6 +107,15 @@ public class Launch {
      * se<n>  -- terminate RARS with integer exit code <n> if a simulation (run) error occurs.<br>
      * sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
      * smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+     * timing  -- count cycles with a 5-stage pipeline model instead of one per instruction.  May be<br>
+     * followed by comma separated settings, e.g. <tt>timing div=20,dcache=64:4:2:lru</tt><br>
+     * bp  -- report branch prediction statistics for each branch.  May be followed by comma separated<br>
+     * predictors, e.g. <tt>bp bimodal:4096,gshare:4096:12,btb:512</tt><br>
+     * prof<n>  -- report where instructions were executed, by category, label and source line, listing<br>
+     * the top <n> labels and lines (20 if <n> is left off)<br>
+     * stacks<n> &lt;file&gt;  -- sample the call stack every <n> instructions (1000 if <n> is left off) and<br>
+     * write the samples to a file in the folded stack format used by flame graph tools<br>
+     * trace &lt;file&gt;  -- record every executed instruction to a binary trace file ("tracez" compresses it)<br>
      * we  -- assembler Warnings will be considered Errors<br>
      * <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
      * If 0, negative or not specified, there is no maximum.<br>
@@ -117,6 +140,7 @@ public class Launch {
     private boolean verbose;  // display register name or address along with contents
     private boolean assembleProject; // assemble only the given file or all files in its directory
     private boolean countInstructions; // Whether to count and report number of instructions executed
+    private boolean daemon; // Whether to serve jobs on stdin and stdout rather than run one program
     private static final String rangeSeparator = "-";
     private static final int memoryWordsPerLine = 4; // display 4 memory words, tab separated, per line
     private static final int DECIMAL = 0; // memory and register display format
@@ -128,6 +152,14 @@ public class Launch {
     private int instructionCount;
     private PrintStream out; // stream for display of command line output
     private ArrayList<String[]> dumpTriples = null; // each element holds 3 arguments for dump option
+    private String traceFile; // where to write an execution trace, or null
+    private boolean compressTrace;
+    private TimingModel timing; // pipeline model for the cycle count, or null
+    private BranchStatistics branchStatistics; // branch predictors to report on, or null
+    private Profiler profiler; // execution counts to report on, or null
+    private int profileLimit; // how many labels and source lines the profile lists
+    private StackSampler sampler; // call stack samples to write, or null
+    private String stacksFile; // where to write them
     private ArrayList<String> programArgumentList; // optional program args for program (becomes argc, argv)
     private int assembleErrorExitCode;  // RARS command exit code to return if assemble error occurs
     private int simulateErrorExitCode;// RARS command exit code to return if simulation error occurs
@@ -137,6 +169,7 @@ public class Launch {
     }
     private Launch(String[] args) {
         Globals.initialize();
+        SimulatorMetrics.register(); // so operators can watch a run with jconsole and the like
 
         options = new Options();
         gui = args.length == 0;
@@ -158,7 +191,17 @@ public class Launch {
             System.exit(Globals.exitCode);
         }
         
-        if (gui) {
+        if (daemon) {
+            System.setProperty("java.awt.headless", "true");
+            try {
+                new Daemon().serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                        new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                System.err.println("Daemon stopped: " + e.getMessage());
+                System.exit(1);
+            }
+            System.exit(0);
+        } else if (gui) {
             launchIDE();
         } else { // running from command line.
             // assure command mode works in headless environment (generates exception if not)
@@ -302,6 +345,70 @@ public class Launch {
                 }
                 continue;
             }
+            if (args[i].toLowerCase().equals("trace") || args[i].toLowerCase().equals("tracez")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Trace command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    compressTrace = args[i].toLowerCase().equals("tracez");
+                    traceFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("timing")) {
+                timing = new TimingModel();
+                if (args.length > (i + 1) && args[i + 1].contains("=")) {
+                    try {
+                        timing.configure(args[++i]);
+                    } catch (IllegalArgumentException e) {
+                        out.println("Invalid timing setting: " + e.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("bp")) {
+                try {
+                    if (args.length > (i + 1) && args[i + 1].toLowerCase().matches("(bimodal|gshare|local|tournament|btb)\\b.*")) {
+                        branchStatistics = BranchStatistics.parse(args[++i]);
+                    } else {
+                        branchStatistics = BranchStatistics.standard();
+                    }
+                } catch (IllegalArgumentException e) {
+                    out.println("Invalid branch predictor: " + e.getMessage());
+                    argsOK = false;
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().indexOf("prof") == 0) {
+                String s = args[i].substring(4);
+                try {
+                    profileLimit = s.isEmpty() ? 20 : Integer.decode(s);
+                    profiler = new Profiler();
+                    continue;
+                } catch (NumberFormatException nfe) {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
+            if (args[i].toLowerCase().indexOf("stacks") == 0) {
+                String s = args[i].substring(6);
+                try {
+                    int interval = s.isEmpty() ? 1000 : Integer.decode(s);
+                    if (args.length <= (i + 1)) {
+                        out.println("Stacks command line argument requires a file name.");
+                        argsOK = false;
+                    } else if (interval < 1) {
+                        out.println("Invalid sampling interval: " + interval);
+                        argsOK = false;
+                    } else {
+                        sampler = new StackSampler(interval);
+                        stacksFile = args[++i];
+                    }
+                    continue;
+                } catch (NumberFormatException nfe) {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
             if (args[i].toLowerCase().equals("mc")) {
                 String configName = args[++i];
                 MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
@@ -395,6 +502,10 @@ public class Launch {
                 countInstructions = true;
                 continue;
             }
+            if (args[i].toLowerCase().equals("daemon")) {
+                daemon = true;
+                continue;
+            }
             
             if (new File(args[i]).exists()) {  // is it a file name?
                 filenameList.add(args[i]);
@@ -502,6 +613,26 @@ public class Launch {
             if (Globals.debug) {
                 out.println("--------  SIMULATION BEGINS  -----------");
             }
+            TraceWriter trace = null;
+            if (traceFile != null) {
+                try {
+                    trace = TraceWriter.start(Paths.get(traceFile), compressTrace);
+                } catch (IOException e) {
+                    out.println("Unable to create trace file " + traceFile + ": " + e.getMessage());
+                }
+            }
+            if (timing != null) {
+                TimingModel.start(timing);
+            }
+            if (branchStatistics != null) {
+                BranchStatistics.start(branchStatistics);
+            }
+            if (profiler != null) {
+                Profiler.start(profiler);
+            }
+            if (sampler != null) {
+                StackSampler.start(sampler);
+            }
             try {
                 while (true) {
                     Simulator.Reason done = program.simulate();
@@ -524,6 +655,24 @@ public class Launch {
                 out.println(e.error().generateReport());
                 out.println("Simulation terminated due to errors.");
             }
+            TimingModel.stop();
+            BranchStatistics.stop();
+            Profiler.stop();
+            StackSampler.stop();
+            if (sampler != null) {
+                try (PrintStream stacks = new PrintStream(stacksFile)) {
+                    sampler.write(stacks, program.getMemory());
+                } catch (FileNotFoundException e) {
+                    out.println("Unable to create stacks file " + stacksFile + ": " + e.getMessage());
+                }
+            }
+            if (trace != null) {
+                try {
+                    trace.close();
+                } catch (IOException e) {
+                    out.println("Error while writing trace file " + traceFile + ": " + e.getMessage());
+                }
+            }
             displayAllPostMortem(program);
         }
         if (Globals.debug) {
@@ -564,6 +713,19 @@ public class Launch {
     private void displayMiscellaneousPostMortem(Program program) {
         if (countInstructions) {
             out.println("\n" + program.getRegisterValue("cycle"));
+            if (timing != null) {
+                long instructions = program.getRegisterValue("instret");
+                out.printf("%d instructions, CPI %.2f%n", instructions,
+                        instructions == 0 ? 0.0 : program.getRegisterValue("cycle") / (double) instructions);
+            }
+        }
+        if (branchStatistics != null) {
+            out.println();
+            branchStatistics.report(out);
+        }
+        if (profiler != null) {
+            out.println();
+            profiler.report(out, profileLimit, program.getMemory());
         }
     }
 
@@ -684,7 +846,8 @@ public class Launch {
 
     private void displayCopyright(String[] args, String noCopyrightSwitch) {
         for (String arg : args) {
-            if (arg.toLowerCase().equals(noCopyrightSwitch)) {
+            // A daemon's standard output is for results only
+            if (arg.toLowerCase().equals(noCopyrightSwitch) || arg.toLowerCase().equals("daemon")) {
                 return;
             }
         }
@@ -719,6 +882,9 @@ public class Launch {
         out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
         out.println("      b  -- brief - do not display register/memory address along with contents");
         out.println("      d  -- display RARS debugging statements");
+        out.println(" daemon  -- run jobs given as lines of JSON on standard input, answering each with a");
+        out.println("            line of JSON on standard output, until the input ends.  Keeps RARS loaded");
+        out.println("            between jobs.  See rars.api.Daemon for the format.");
         out.println("    dec  -- display memory or register contents in decimal.");
         out.println("   dump <segment> <format> <file> -- memory dump of specified memory segment");
         out.println("            in specified format to specified file.  Option may be repeated.");
@@ -743,6 +909,20 @@ public class Launch {
         out.println("  se<n>  -- terminate RARS with integer exit code <n> if a simulation (run) error occurs.");
         out.println("     sm  -- start execution at statement with global label main, if defined");
         out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+        out.println("     bp  -- report branch prediction statistics for each branch.  May be followed by");
+        out.println("            comma separated predictors, e.g. bp bimodal:4096,gshare:4096:12,btb:512");
+        out.println("            Predictors are bimodal:entries, gshare:entries:bits, local:entries:bits and");
+        out.println("            tournament:entries:bits; btb:entries adds a branch target buffer.");
+        out.println("prof<n>  -- report instructions executed by category, label and source line, listing");
+        out.println("            the top <n> labels and lines (20 if <n> is omitted), e.g. prof50");
+        out.println("  stacks<n> <file>  -- sample the call stack every <n> instructions (1000 if omitted)");
+        out.println("            and write the samples to <file> in folded stack format, for flame graphs.");
+        out.println(" timing  -- count cycles with a 5-stage pipeline model instead of one per instruction.");
+        out.println("            May be followed by comma separated settings, e.g. timing div=20,dcache=64:4:2:lru");
+        out.println("            Penalties in cycles: loaduse, branch, mul, div, fp, fpdiv, imiss, dmiss.");
+        out.println("            Caches as blocks:words:ways[:policy]: icache, dcache.  Use with ic.");
+        out.println("  trace <file>  -- record every executed instruction to a binary trace file.");
+        out.println("            Use tracez instead to compress it.  Read it with rars.trace.TraceReader.");
         out.println("    rv64 -- Enables 64 bit assembly and executables (Not fully compatible with rv32)");
         out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
         out.println("            If 0, negative or not specified, there is no maximum.");
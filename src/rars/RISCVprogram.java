@@ -1,8 +1,10 @@
 package rars;
 
 import rars.assembler.*;
+import rars.management.FlightRecorder;
 import rars.riscv.hardware.RegisterFile;
 import rars.simulator.BackStepper;
+import rars.simulator.Profiler;
 import rars.simulator.Simulator;
 
 import java.io.BufferedReader;
@@ -258,8 +260,13 @@ public class RISCVprogram {
      **/
 
     public void tokenize() throws AssemblyException {
+        Object event = FlightRecorder.beginPhase();
         this.tokenizer = new Tokenizer();
-        this.tokenList = tokenizer.tokenize(this);
+        try {
+            this.tokenList = tokenizer.tokenize(this);
+        } finally {
+            FlightRecorder.endPhase(event, "tokenize", this.filename);
+        }
         this.localSymbolTable = new SymbolTable(this.filename); // prepare for assembly
     }
 
@@ -331,10 +338,14 @@ public class RISCVprogram {
 
     public ErrorList assemble(ArrayList<RISCVprogram> programsToAssemble, boolean extendedAssemblerEnabled,
                               boolean warningsAreErrors) throws AssemblyException {
+        if (this.backStepper != null) this.backStepper.clear();
         this.backStepper = null;
+        Profiler profiler = Profiler.active();
+        if (profiler != null) profiler.reset(); // the counts were for the old code
         Assembler asm = new Assembler();
         this.machineList = asm.assemble(programsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
         this.backStepper = new BackStepper();
+        BackStepper.refresh();
         return asm.getErrorList();
     }
 
@@ -0,0 +1,245 @@
+package rars.api;
+
+import rars.AssemblyException;
+import rars.simulator.Simulator;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs one program against many input cases, several at a time.
+ * <p>
+ * The simulator keeps its state (memory, registers and so on) in static fields, so two programs can not
+ * run at once in the same class loader. Each thread of a runner therefore gets a worker loaded by a class
+ * loader of its own, which assembles the program once and then runs case after case on it. If the
+ * classes can not be loaded again (when RARS is not on a plain class path or jar), the cases run one at
+ * a time in the caller's class loader instead.
+ * <p>
+ * A runner assembles the program in the caller's class loader too, to report errors, so like
+ * {@link Program} it replaces whatever program was set up there before.
+ * <pre>
+ * try (BatchRunner runner = new BatchRunner(new Options(), files, main, 8)) {
+ *     for (BatchRunner.Result result : runner.run(cases, "a0")) ...
+ * }
+ * </pre>
+ */
+public class BatchRunner implements AutoCloseable {
+    private final Map<String, Object> options;
+    private final List<String> files;
+    private final String main;
+    private final URL[] classPath; // null to run in the caller's class loader
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<Worker> idle = new ConcurrentLinkedQueue<>();
+    private final List<URLClassLoader> loaders = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * One input for the program.
+     */
+    public static class Case {
+        public String stdin;                                 // What the program reads as its stdin
+        public ArrayList<String> args;                       // Its arguments, or null for none
+        public Map<String, Integer> registers = new HashMap<>(); // Registers to set before it starts, by name
+
+        public Case(String stdin) {
+            this.stdin = stdin;
+        }
+
+        public Case(String stdin, ArrayList<String> args) {
+            this.stdin = stdin;
+            this.args = args;
+        }
+    }
+
+    /**
+     * What happened when the program ran on one case.
+     */
+    public static class Result {
+        public final int exitCode;
+        public final Simulator.Reason reason;
+        public final String error;          // The error report if reason is EXCEPTION, otherwise null
+        public final byte[] stdout, stderr;
+        public final long instructions;     // The number of instructions executed
+        public final Map<String, Integer> registers; // The requested registers when it stopped, by name
+
+        private Result(Object[] result) {
+            exitCode = (Integer) result[0];
+            reason = Simulator.Reason.valueOf((String) result[1]);
+            error = (String) result[2];
+            stdout = (byte[]) result[3];
+            stderr = (byte[]) result[4];
+            instructions = (Long) result[5];
+            @SuppressWarnings("unchecked")
+            Map<String, Integer> values = (Map<String, Integer>) result[6];
+            registers = values;
+        }
+
+        public String getSTDOUT() {
+            return new String(stdout, StandardCharsets.UTF_8);
+        }
+
+        public String getSTDERR() {
+            return new String(stderr, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the SHA-256 digest of stdout in hexadecimal, for comparing with expected output
+         */
+        public String stdoutDigest() {
+            return digest(stdout);
+        }
+
+        /**
+         * @return the SHA-256 digest of stderr in hexadecimal
+         */
+        public String stderrDigest() {
+            return digest(stderr);
+        }
+
+        private static String digest(byte[] bytes) {
+            try {
+                StringBuilder hex = new StringBuilder();
+                for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                    hex.append(String.format("%02x", b));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // every Java runtime has SHA-256
+            }
+        }
+    }
+
+    // A worker and its run method, which belongs to whichever class loader loaded it
+    private static class Worker {
+        private final Object instance;
+        private final Method run;
+
+        private Worker(Object instance) throws NoSuchMethodException {
+            this.instance = instance;
+            run = instance.getClass().getMethod("run", byte[].class, List.class, Map.class, String[].class);
+        }
+    }
+
+    /**
+     * Assembles a program to run cases on.
+     *
+     * @param set     the options for assembling and running it
+     * @param files   the files to assemble
+     * @param main    which of them is the main file
+     * @param threads how many cases to run at once
+     * @throws AssemblyException if the program has errors
+     */
+    public BatchRunner(Options set, ArrayList<String> files, String main, int threads) throws AssemblyException {
+        options = BatchWorker.options(set);
+        this.files = new ArrayList<>(files);
+        this.main = main;
+        Program program = new Program(set);
+        program.assemble(files, main);
+        classPath = classPath();
+        if (classPath == null) {
+            threads = 1;
+            try {
+                idle.add(new Worker(new BatchWorker(program)));
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "RARS batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Where RARS and the floating point library it uses were loaded from, if they can be loaded again
+    private static URL[] classPath() {
+        LinkedHashSet<URL> urls = new LinkedHashSet<>();
+        for (Class<?> c : new Class<?>[]{BatchRunner.class, jsoftfloat.Environment.class}) {
+            CodeSource source = c.getProtectionDomain().getCodeSource();
+            if (source == null || source.getLocation() == null) return null;
+            urls.add(source.getLocation());
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    /**
+     * Runs the program on each case, several at a time.
+     *
+     * @param cases  the inputs
+     * @param report names of registers to give the values of in each result
+     * @return a result for each case, in the same order
+     * @throws InterruptedException if interrupted while waiting for the cases to finish
+     */
+    public List<Result> run(List<Case> cases, String... report) throws InterruptedException {
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Case c : cases) {
+            futures.add(executor.submit(() -> run(c, report)));
+        }
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            for (Future<Result> future : futures) future.cancel(true);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        return results;
+    }
+
+    private Result run(Case c, String[] report) throws Exception {
+        Worker worker = idle.poll();
+        if (worker == null) worker = newWorker(); // at most one per thread, as workers go back when done
+        try {
+            byte[] stdin = (c.stdin == null ? "" : c.stdin).getBytes(StandardCharsets.UTF_8);
+            return new Result((Object[]) worker.run.invoke(worker.instance, stdin, c.args, c.registers, report));
+        } catch (InvocationTargetException e) {
+            throw (Exception) (e.getCause() instanceof Exception ? e.getCause() : e);
+        } finally {
+            idle.add(worker);
+        }
+    }
+
+    private Worker newWorker() throws Exception {
+        // The parent only supplies the Java library, so the loader has its own copy of every RARS class
+        URLClassLoader loader = new URLClassLoader(classPath, ClassLoader.getSystemClassLoader().getParent());
+        loaders.add(loader);
+        Constructor<?> constructor = loader.loadClass(BatchWorker.class.getName())
+                .getConstructor(Map.class, List.class, String.class);
+        try {
+            return new Worker(constructor.newInstance(options, files, main));
+        } catch (InvocationTargetException e) {
+            throw (Exception) (e.getCause() instanceof Exception ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Stops the threads and lets go of the workers.
+     */
+    public void close() {
+        executor.shutdownNow();
+        idle.clear();
+        synchronized (loaders) {
+            for (URLClassLoader loader : loaders) {
+                try {
+                    loader.close();
+                } catch (IOException e) {
+                    // Nothing more to do with it anyway
+                }
+            }
+            loaders.clear();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package rars.api;
+
+import rars.AssemblyException;
+import rars.SimulationException;
+import rars.riscv.hardware.ControlAndStatusRegisterFile;
+import rars.simulator.Simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs cases for a {@link BatchRunner} on one assembled program.
+ * <p>
+ * Each worker normally lives in a class loader of its own, so that its simulator's global state is its
+ * own too, and the runner reaches it by reflection. That is why it takes and returns only Java library
+ * types. It is not meant to be used directly.
+ */
+public class BatchWorker {
+    private final Program program;
+
+    /**
+     * Assembles the program for this worker.
+     *
+     * @param options the fields of {@link Options} by name
+     * @param files   the files to assemble
+     * @param main    which of them is the main file
+     * @throws IllegalArgumentException with the error report if the program does not assemble
+     */
+    public BatchWorker(Map<String, Object> options, List<String> files, String main) {
+        Options set = new Options();
+        set.pseudo = (Boolean) options.get("pseudo");
+        set.warningsAreErrors = (Boolean) options.get("warningsAreErrors");
+        set.startAtMain = (Boolean) options.get("startAtMain");
+        set.selfModifyingCode = (Boolean) options.get("selfModifyingCode");
+        set.maxSteps = (Integer) options.get("maxSteps");
+        set.maxOutputBytes = (Long) options.get("maxOutputBytes");
+        program = new Program(set);
+        try {
+            program.assemble(new ArrayList<>(files), main);
+        } catch (AssemblyException e) {
+            throw new IllegalArgumentException(e.errors().generateErrorReport());
+        }
+    }
+
+    // For running in the caller's class loader, on a program it has assembled
+    BatchWorker(Program program) {
+        this.program = program;
+    }
+
+    static Map<String, Object> options(Options set) {
+        Map<String, Object> options = new HashMap<>();
+        options.put("pseudo", set.pseudo);
+        options.put("warningsAreErrors", set.warningsAreErrors);
+        options.put("startAtMain", set.startAtMain);
+        options.put("selfModifyingCode", set.selfModifyingCode);
+        options.put("maxSteps", set.maxSteps);
+        options.put("maxOutputBytes", set.maxOutputBytes);
+        return options;
+    }
+
+    /**
+     * Runs one case.
+     *
+     * @param stdin     the bytes the program reads as its stdin
+     * @param args      its arguments, or null for none
+     * @param registers registers to set before it starts, by name
+     * @param report    the names of registers to give the values of when it stops
+     * @return the exit code, the name of the {@link Simulator.Reason}, the error report or null, stdout,
+     * stderr, the number of instructions executed and the reported registers by name
+     */
+    public Object[] run(byte[] stdin, List<String> args, Map<String, Integer> registers, String[] report) {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream(), stderr = new ByteArrayOutputStream();
+        program.setup(args == null ? null : new ArrayList<>(args), new ByteArrayInputStream(stdin), stdout, stderr);
+        for (Map.Entry<String, Integer> register : registers.entrySet()) {
+            program.setRegisterValue(register.getKey(), register.getValue());
+        }
+        Simulator.Reason reason;
+        String error = null;
+        try {
+            reason = program.simulate();
+        } catch (SimulationException e) {
+            reason = Simulator.Reason.EXCEPTION;
+            error = e.error() == null ? e.getMessage() : e.error().generateReport();
+        }
+        Map<String, Integer> values = new HashMap<>();
+        for (String name : report) {
+            values.put(name, program.getRegisterValue(name));
+        }
+        long instructions = ControlAndStatusRegisterFile.getValueLong(ControlAndStatusRegisterFile.INSTRET);
+        return new Object[]{program.getExitCode(), reason.name(), error, stdout.toByteArray(), stderr.toByteArray(),
+                instructions, values};
+    }
+}
@@ -0,0 +1,331 @@
+package rars.api;
+
+import rars.AssemblyException;
+import rars.ErrorList;
+import rars.Globals;
+import rars.SimulationException;
+import rars.Settings;
+import rars.riscv.InstructionSet;
+import rars.riscv.hardware.ControlAndStatusRegisterFile;
+import rars.simulator.Simulator;
+import rars.util.Json;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs jobs given to it as lines of JSON, answering each with a line of JSON, so that one JVM can serve
+ * many runs with its instruction set loaded, its simulator compiled by the JIT and the programs it has
+ * assembled recently kept for reuse. {@code rars daemon} reads jobs from stdin and writes results to
+ * stdout; {@link DaemonClient} starts one and talks to it.
+ * <p>
+ * A job is an object with:
+ * <ul>
+ * <li> "sources": an object mapping file names to source code, or "files": an array of paths
+ * <li> "main": which of them is the main file; the first if left out
+ * <li> "options": any of "pseudo", "warningsAreErrors", "startAtMain", "selfModifyingCode" and "rv64",
+ * as in {@link Options}
+ * <li> "stdin": the program's input, and "args": an array of its arguments
+ * <li> "limits": any of "steps", "outputBytes" and "millis", to stop it after so many instructions
+ * (from 1 to 2147483647), bytes of output or milliseconds
+ * <li> "registers": an array of names of registers to report on
+ * <li> "id": anything, which is given back with the result
+ * </ul>
+ * The result has "id", "status", "millis", the time the job took, and "cached", whether the program
+ * had been assembled already. The status is one of:
+ * <ul>
+ * <li> "ok": the program ran, with "reason" (a {@link Simulator.Reason}), "exitCode", "stdout", "stderr",
+ * "instructions" and "registers"
+ * <li> "runtime error": as for "ok", with the report in "error"
+ * <li> "timeout": as for "ok", having run out of time
+ * <li> "assembly error": the report is in "error"
+ * <li> "bad job": the job could not be understood, as "error" says
+ * <li> "internal error": something went wrong in RARS, as "error" says
+ * </ul>
+ * Assembler warnings are in "warnings" when there are any.
+ * <p>
+ * Jobs are run one at a time. Sources are assembled from a temporary directory, and the assembled
+ * program is kept, for the next {@value #CACHE_SIZE} different programs, for jobs with the same sources
+ * and options.
+ */
+public class Daemon {
+    /**
+     * How many assembled programs are kept.
+     */
+    public static final int CACHE_SIZE = 32;
+
+    // An assembled program, with the options it keeps a reference to, to change for each run
+    private static class Assembled {
+        private final Program program;
+        private final Options options;
+        private final String warnings;
+        private final String directory; // the temporary directory the sources were in, or null
+
+        private Assembled(Program program, Options options, String warnings, String directory) {
+            this.program = program;
+            this.options = options;
+            this.warnings = warnings;
+            this.directory = directory;
+        }
+    }
+
+    // Least recently used first
+    private final LinkedHashMap<String, Assembled> cache = new LinkedHashMap<String, Assembled>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, Assembled> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public Daemon() {
+        Globals.initialize();
+        useInstructionSet(false);
+    }
+
+    private static void useInstructionSet(boolean rv64) {
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, rv64);
+        InstructionSet.rv64 = rv64;
+        Globals.instructionSet.populate();
+    }
+
+    /**
+     * Runs jobs until the end of the input.
+     *
+     * @param jobs    one job per line; blank lines are skipped
+     * @param results where a line is written for each job, and flushed
+     * @throws IOException if reading or writing fails
+     */
+    public void serve(BufferedReader jobs, Writer results) throws IOException {
+        for (String job = jobs.readLine(); job != null; job = jobs.readLine()) {
+            if (job.trim().isEmpty()) continue;
+            results.write(run(job));
+            results.write('\n');
+            results.flush();
+        }
+    }
+
+    /**
+     * Runs one job.
+     *
+     * @param job the job as JSON
+     * @return the result as JSON, on one line
+     */
+    public String run(String job) {
+        long start = System.nanoTime();
+        Map<String, Object> result = new LinkedHashMap<>();
+        try {
+            Map<String, Object> request = object(Json.parse(job), "job");
+            result.put("id", request.get("id"));
+            run(request, result);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            result.put("status", "bad job");
+            result.put("error", e.getMessage());
+        } catch (IOException e) {
+            result.put("status", "bad job");
+            result.put("error", "Unable to read or write source files: " + e.getMessage());
+        } catch (RuntimeException e) {
+            result.put("status", "internal error");
+            result.put("error", e.toString());
+        }
+        result.put("millis", (System.nanoTime() - start) / 1000000);
+        return Json.write(result);
+    }
+
+    private void run(Map<String, Object> request, Map<String, Object> result) throws IOException {
+        Map<String, Object> options = object(request.getOrDefault("options", new HashMap<>()), "options");
+        Map<String, Object> limits = object(request.getOrDefault("limits", new HashMap<>()), "limits");
+        boolean rv64 = flag(options, "rv64", false);
+        int steps = steps(limits);
+        if (rv64 != InstructionSet.rv64) useInstructionSet(rv64);
+
+        Assembled assembled = assemble(request, options, rv64, result);
+        if (assembled == null) return;
+        if (assembled.warnings != null) result.put("warnings", assembled.warnings);
+
+        Program program = assembled.program;
+        assembled.options.selfModifyingCode = flag(options, "selfModifyingCode", false);
+        assembled.options.maxSteps = steps;
+        assembled.options.maxOutputBytes = number(limits, "outputBytes", -1);
+        ArrayList<String> args = null;
+        if (request.get("args") != null) {
+            args = new ArrayList<>();
+            for (Object arg : list(request.get("args"), "args")) args.add(string(arg, "args"));
+        }
+        String stdin = request.get("stdin") == null ? "" : string(request.get("stdin"), "stdin");
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream(), stderr = new ByteArrayOutputStream();
+        program.setup(args, new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8)), stdout, stderr);
+
+        String status = "ok";
+        Simulator.Reason reason;
+        try {
+            reason = program.simulateAsync(-1, number(limits, "millis", -1), null).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                status = "timeout";
+                reason = Simulator.Reason.STOP;
+            } else if (e.getCause() instanceof SimulationException) {
+                SimulationException error = (SimulationException) e.getCause();
+                status = "runtime error";
+                reason = Simulator.Reason.EXCEPTION;
+                result.put("error", error.error() == null ? error.getMessage()
+                        : withoutDirectory(error.error().generateReport(), assembled.directory));
+            } else {
+                throw new IllegalStateException(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+
+        result.put("status", status);
+        result.put("reason", reason.name());
+        result.put("exitCode", program.getExitCode());
+        result.put("stdout", new String(stdout.toByteArray(), StandardCharsets.UTF_8));
+        result.put("stderr", new String(stderr.toByteArray(), StandardCharsets.UTF_8));
+        result.put("instructions", ControlAndStatusRegisterFile.getValueLong(ControlAndStatusRegisterFile.INSTRET));
+        Map<String, Object> registers = new LinkedHashMap<>();
+        if (request.get("registers") != null) {
+            for (Object name : list(request.get("registers"), "registers")) {
+                try {
+                    registers.put(string(name, "registers"), program.getRegisterValue((String) name));
+                } catch (NullPointerException e) {
+                    throw new IllegalArgumentException("No register named " + name);
+                }
+            }
+        }
+        result.put("registers", registers);
+    }
+
+    // Finds the program in the cache or assembles it, noting in the result which; or if it has errors,
+    // puts them in the result and returns null
+    private Assembled assemble(Map<String, Object> request, Map<String, Object> options, boolean rv64,
+                               Map<String, Object> result) throws IOException {
+        Options set = new Options();
+        set.pseudo = flag(options, "pseudo", true);
+        set.warningsAreErrors = flag(options, "warningsAreErrors", false);
+        set.startAtMain = flag(options, "startAtMain", false);
+
+        StringBuilder key = new StringBuilder();
+        key.append(set.pseudo).append(set.warningsAreErrors).append(set.startAtMain).append(rv64);
+        Map<String, Object> sources = request.get("sources") == null ? null : object(request.get("sources"), "sources");
+        List<Object> files = request.get("files") == null ? null : list(request.get("files"), "files");
+        if ((sources == null) == (files == null)) {
+            throw new IllegalArgumentException("A job needs either sources or files");
+        }
+        String main = request.get("main") == null ? null : string(request.get("main"), "main");
+        key.append('\0').append(main);
+        if (sources != null) {
+            for (Map.Entry<String, Object> source : sources.entrySet()) {
+                key.append('\0').append(source.getKey()).append('\0').append(string(source.getValue(), "sources"));
+            }
+        } else {
+            for (Object file : files) {
+                File path = new File(string(file, "files")).getAbsoluteFile();
+                key.append('\0').append(path).append('\0').append(path.lastModified()).append('\0').append(path.length());
+            }
+        }
+        Assembled assembled = cache.get(key.toString());
+        result.put("cached", assembled != null);
+        if (assembled != null) return assembled;
+
+        Program program = new Program(set);
+        ErrorList warnings;
+        String directoryName = null; // to take out of the reports
+        try {
+            if (sources != null) {
+                if (sources.isEmpty()) throw new IllegalArgumentException("No sources");
+                Path directory = Files.createTempDirectory("rars");
+                directoryName = directory + File.separator;
+                ArrayList<String> paths = new ArrayList<>();
+                try {
+                    for (Map.Entry<String, Object> source : sources.entrySet()) {
+                        Path path = directory.resolve(source.getKey()).normalize();
+                        if (!path.startsWith(directory) || path.equals(directory)) {
+                            throw new IllegalArgumentException("Bad source name " + source.getKey());
+                        }
+                        Files.createDirectories(path.getParent());
+                        Files.write(path, ((String) source.getValue()).getBytes(StandardCharsets.UTF_8));
+                        paths.add(path.toString());
+                    }
+                    String mainPath = main == null ? paths.get(0) : directory.resolve(main).normalize().toString();
+                    if (!paths.contains(mainPath)) throw new IllegalArgumentException("No source named " + main);
+                    warnings = program.assemble(paths, mainPath);
+                } finally {
+                    delete(directory.toFile());
+                }
+            } else {
+                if (files.isEmpty()) throw new IllegalArgumentException("No files");
+                ArrayList<String> paths = new ArrayList<>();
+                for (Object file : files) paths.add(new File((String) file).getAbsolutePath());
+                String mainPath = main == null ? paths.get(0) : new File(main).getAbsolutePath();
+                warnings = program.assemble(paths, mainPath);
+            }
+        } catch (AssemblyException e) {
+            result.put("status", "assembly error");
+            result.put("error", withoutDirectory(e.errors().generateErrorAndWarningReport(), directoryName));
+            return null;
+        }
+        assembled = new Assembled(program, set, warnings != null && warnings.warningsOccurred()
+                ? withoutDirectory(warnings.generateWarningReport(), directoryName) : null, directoryName);
+        cache.put(key.toString(), assembled);
+        return assembled;
+    }
+
+    // Takes the temporary directory the sources were in out of the file names in a report
+    private static String withoutDirectory(String report, String directory) {
+        return directory == null ? report : report.replace(directory, "");
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        file.delete();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> object(Object value, String name) {
+        if (!(value instanceof Map)) throw new IllegalArgumentException(name + " should be an object");
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Object value, String name) {
+        if (!(value instanceof List)) throw new IllegalArgumentException(name + " should be an array");
+        return (List<Object>) value;
+    }
+
+    private static String string(Object value, String name) {
+        if (!(value instanceof String)) throw new IllegalArgumentException(name + " should be strings");
+        return (String) value;
+    }
+
+    private static boolean flag(Map<String, Object> options, String name, boolean otherwise) {
+        Object value = options.get(name);
+        if (value == null) return otherwise;
+        if (!(value instanceof Boolean)) throw new IllegalArgumentException(name + " should be true or false");
+        return (Boolean) value;
+    }
+
+    private static long number(Map<String, Object> limits, String name, long otherwise) {
+        Object value = limits.get(name);
+        if (value == null) return otherwise;
+        if (!(value instanceof Long)) throw new IllegalArgumentException(name + " should be a whole number");
+        return (Long) value;
+    }
+
+    // The simulator counts steps in an int, where anything not positive means no limit
+    private static int steps(Map<String, Object> limits) {
+        if (limits.get("steps") == null) return -1;
+        long steps = number(limits, "steps", -1);
+        if (steps < 1 || steps > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("steps should be from 1 to " + Integer.MAX_VALUE);
+        }
+        return (int) steps;
+    }
+}
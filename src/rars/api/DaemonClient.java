@@ -0,0 +1,77 @@
+package rars.api;
+
+import rars.Launch;
+import rars.util.Json;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Starts a {@link Daemon} in a process of its own, with the same Java and class path as this one, and
+ * sends it jobs. Meant for tests and scripts that stand in for a grading system.
+ * <pre>
+ * try (DaemonClient daemon = new DaemonClient()) {
+ *     String result = daemon.send("{\"sources\":{\"a.s\":\"li a7,10\\necall\"},\"stdin\":\"\"}");
+ * }
+ * </pre>
+ */
+public class DaemonClient implements AutoCloseable {
+    private final Process process;
+    private final Writer jobs;
+    private final BufferedReader results;
+
+    /**
+     * @throws IOException if the daemon can not be started
+     */
+    public DaemonClient() throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        process = new ProcessBuilder(java, "-Djava.awt.headless=true", "-cp", System.getProperty("java.class.path"),
+                Launch.class.getName(), "nc", "daemon")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        jobs = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        results = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Runs a job and waits for its result.
+     *
+     * @param job the job as JSON, on one line
+     * @return the result as JSON
+     * @throws IOException if the daemon has gone away
+     */
+    public synchronized String send(String job) throws IOException {
+        jobs.write(job);
+        jobs.write('\n');
+        jobs.flush();
+        String result = results.readLine();
+        if (result == null) throw new EOFException("The daemon has exited");
+        return result;
+    }
+
+    /**
+     * Runs a job given as maps, lists and so on, as {@link Json#write} takes.
+     *
+     * @param job the job
+     * @return the result
+     * @throws IOException if the daemon has gone away
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> send(Map<String, Object> job) throws IOException {
+        return (Map<String, Object>) Json.parse(send(Json.write(job)));
+    }
+
+    /**
+     * Ends the daemon's input, so that it exits, and waits for it to.
+     */
+    public void close() throws IOException {
+        jobs.close();
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package rars.api;
+
+import rars.Globals;
+import rars.riscv.hardware.ControlAndStatusRegisterFile;
+import rars.riscv.hardware.FloatingPointRegisterFile;
+import rars.riscv.hardware.InterruptController;
+import rars.riscv.hardware.Memory;
+import rars.riscv.hardware.RegisterFile;
+
+// The global state of the simulator that a run changes, apart from its memory and files (which Program
+// swaps for it), saved so that other runs can use the simulator in between
+class MachineState {
+    private final long[] registers, floatingPoint, controlAndStatus;
+    private final int pc, exitCode, heapAddress;
+    private final InterruptController.State interrupts;
+
+    private MachineState() {
+        registers = RegisterFile.saveValues();
+        floatingPoint = FloatingPointRegisterFile.saveValues();
+        controlAndStatus = ControlAndStatusRegisterFile.saveValues();
+        pc = RegisterFile.getProgramCounter();
+        exitCode = Globals.exitCode;
+        heapAddress = Memory.heapAddress;
+        interrupts = InterruptController.save();
+    }
+
+    static MachineState save() {
+        return new MachineState();
+    }
+
+    void restore() {
+        RegisterFile.restoreValues(registers);
+        FloatingPointRegisterFile.restoreValues(floatingPoint);
+        ControlAndStatusRegisterFile.restoreValues(controlAndStatus);
+        RegisterFile.initializeProgramCounter(pc);
+        Globals.exitCode = exitCode;
+        Memory.heapAddress = heapAddress;
+        InterruptController.restore(interrupts);
+    }
+}
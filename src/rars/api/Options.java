@@ -6,11 +6,17 @@ public class Options {
     public boolean startAtMain;       // Whether to start execution at statement labeled 'main'
     public boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
     public int maxSteps;
+    public long maxOutputBytes;       // Most bytes stdout and stderr may take before the run is stopped; -1 for no limit
+    public int quantum;               // Instructions a Session runs before the next runnable one gets a turn
+    public int historyInterval;       // Instructions between copies of the machine for Program.seek; 0 to not record history
     public Options(){
         pseudo = true;
         warningsAreErrors = false;
         startAtMain = false;
         selfModifyingCode = false;
         maxSteps = -1;
+        maxOutputBytes = -1;
+        quantum = 10000;
+        historyInterval = 0;
     }
 }
@@ -2,13 +2,24 @@ package rars.api;
 
 import rars.*;
 import rars.riscv.hardware.*;
+import rars.simulator.ExecutionHistory;
 import rars.simulator.ProgramArgumentList;
+import rars.simulator.SimulationMonitor;
 import rars.simulator.Simulator;
+import rars.util.MemoryFileSystem;
 import rars.util.SystemIO;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
 
 /**
  * <p>
@@ -41,9 +52,21 @@ import java.util.ArrayList;
  */
 public class Program {
 
+    // Simulations started with simulateAsync, and the slices of sessions, run one after another on this
+    // thread, since the simulator's state is global
+    static final ExecutorService simulator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "RARS simulator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Most copies of the machine kept at once when recording history; older ones are thinned out
+    private static final int HISTORY_SNAPSHOTS = 64;
+
     private Options set;
     private RISCVprogram code;
     private SystemIO.Data fds;
+    private MemoryFileSystem seedFiles, files;
     private ByteArrayOutputStream stdout, stderr;
     private Memory assembled, simulation;
     private int startPC, exitCode;
@@ -60,6 +83,16 @@ public class Program {
         simulation = new Memory();
     }
 
+    // Another run of an assembled program, sharing its code; for sessions
+    Program(Program assembled) {
+        set = assembled.set;
+        code = assembled.code;
+        seedFiles = assembled.seedFiles;
+        this.assembled = assembled.assembled;
+        startPC = assembled.startPC;
+        simulation = new Memory();
+    }
+
     /**
      * Assembles from a list of files
      *
@@ -129,6 +162,49 @@ public class Program {
      * @param STDIN A string that can be read in the program like its stdin or null to allow IO passthrough
      */
     public void setup(ArrayList<String> args, String STDIN){
+        if (STDIN != null) {
+            stdout = new ByteArrayOutputStream();
+            stderr = new ByteArrayOutputStream();
+            setup(args, new SystemIO.Data(new ByteArrayInputStream(STDIN.getBytes()), stdout, stderr,
+                    set.maxOutputBytes));
+        } else {
+            stdout = stderr = null;
+            setup(args, new SystemIO.Data(true));
+        }
+    }
+
+    /**
+     * Prepares the simulator for execution like {@link #setup(ArrayList, String)}, but with streams for
+     * stdio, so that neither input nor output has to fit in memory. The program reads its input as it
+     * asks for it and its output is written as it goes, so a slow consumer holds the program up. Output
+     * beyond Options.maxOutputBytes is dropped and stops the run with a SimulationException. The streams
+     * are not closed, and getSTDOUT and getSTDERR are not available.
+     *
+     * @param args   Just like the args to a Java main, but an ArrayList.
+     * @param stdin  what the program reads as its stdin
+     * @param stdout where its stdout goes
+     * @param stderr where its stderr goes
+     */
+    public void setup(ArrayList<String> args, InputStream stdin, OutputStream stdout, OutputStream stderr){
+        this.stdout = this.stderr = null;
+        setup(args, new SystemIO.Data(stdin, stdout, stderr, set.maxOutputBytes));
+    }
+
+    /**
+     * Prepares the simulator like {@link #setup(ArrayList, InputStream, OutputStream, OutputStream)},
+     * writing output to channels.
+     *
+     * @param args   Just like the args to a Java main, but an ArrayList.
+     * @param stdin  what the program reads as its stdin
+     * @param stdout where its stdout goes
+     * @param stderr where its stderr goes
+     */
+    public void setup(ArrayList<String> args, InputStream stdin, WritableByteChannel stdout,
+                      WritableByteChannel stderr){
+        setup(args, stdin, Channels.newOutputStream(stdout), Channels.newOutputStream(stderr));
+    }
+
+    void setup(ArrayList<String> args, SystemIO.Data stdio){
         RegisterFile.resetRegisters();
         FloatingPointRegisterFile.resetRegisters();
         ControlAndStatusRegisterFile.resetRegisters();
@@ -137,21 +213,47 @@ public class Program {
         Globals.exitCode = 0;
 
         // Copy in assembled code and arguments
-        simulation.copyFrom(assembled);
+        simulation.copyFrom(assembled, !set.selfModifyingCode);
         Memory tmpMem = Memory.swapInstance(simulation);
         new ProgramArgumentList(args).storeProgramArguments();
+        if (set.historyInterval > 0) {
+            ExecutionHistory.start(set.historyInterval, HISTORY_SNAPSHOTS);
+        } else if (ExecutionHistory.isEnabled()) {
+            ExecutionHistory.stop();
+        }
         Memory.swapInstance(tmpMem);
 
         // To capture the IO we need to replace stdin and friends
-        if (STDIN != null){
-            stdout = new ByteArrayOutputStream();
-            stderr = new ByteArrayOutputStream();
-            fds = new SystemIO.Data(
-                new ByteArrayInputStream(STDIN.getBytes()),stdout,stderr
-            );
-        } else {
-            fds = new SystemIO.Data(true);
-        }
+        fds = stdio;
+        files = seedFiles == null ? null : seedFiles.copy();
+        fds.fileSystem = files;
+    }
+
+    /**
+     * Makes the file system calls of the runs set up from now on use files in memory instead of on disk.
+     * Each setup starts from a copy of the given file system, so runs do not see each other's output and
+     * the given one is not changed.
+     *
+     * @param files the files to start each run with, or null to go back to the real file system
+     */
+    public void setFileSystem(MemoryFileSystem files) {
+        seedFiles = files;
+    }
+
+    /**
+     * @return the in-memory files of the current run, including any it wrote, or null if it uses the
+     * real file system (only valid once setup has been called)
+     */
+    public MemoryFileSystem getFileSystem() {
+        return files;
+    }
+
+    /**
+     * @param path the name of a file in the current run's in-memory file system
+     * @return what the file holds, or null if there is no such file or no in-memory file system
+     */
+    public byte[] getFile(String path) {
+        return files == null ? null : files.getFile(path);
     }
 
     /**
@@ -167,30 +269,152 @@ public class Program {
      * @throws SimulationException thrown if there is an uncaught interrupt. The program cannot be simulated further.
      */
     public Simulator.Reason simulate() throws SimulationException {
-        Simulator.Reason ret = null;
+        return simulate(set.maxSteps);
+    }
+
+    // Simulates at most maxSteps instructions, or with no limit if 0 or less; sessions run in slices this way
+    Simulator.Reason simulate(int maxSteps) throws SimulationException {
+        return swappedIn(() -> code.simulate(maxSteps));
+    }
+
+    /**
+     * Moves the simulation to just before the given instruction, counting from 0 at setup. Going back
+     * restores a copy of the machine and runs forward from it, giving the program the same input, times,
+     * random numbers and interrupts as the first time without writing its output again. Going forward
+     * simply simulates. Only available when Options.historyInterval is set.
+     *
+     * @param instruction how many instructions should have been executed
+     * @return the reason the simulation stopped: MAX_STEPS if the instruction was reached, otherwise as
+     * for {@link #simulate()}
+     * @throws SimulationException thrown if there is an uncaught interrupt on the way
+     * @throws IllegalStateException if history is not being recorded
+     */
+    public Simulator.Reason seek(long instruction) throws SimulationException {
+        return swappedIn(() -> ExecutionHistory.seek(instruction));
+    }
+
+    /**
+     * Goes back to the last time, before the current instruction, that one of the breakpoints was about to
+     * execute, or to the start if there was none. Only available when Options.historyInterval is set.
+     *
+     * @param breakPoints the addresses of the breakpoints
+     * @return true if a breakpoint was found
+     * @throws SimulationException thrown if there is an uncaught interrupt while replaying
+     * @throws IllegalStateException if history is not being recorded
+     */
+    public boolean reverseContinue(int[] breakPoints) throws SimulationException {
+        return swappedIn(() -> ExecutionHistory.reverseContinue(breakPoints));
+    }
+
+    /**
+     * @return the number of instructions executed since setup, if history is being recorded
+     */
+    public long getInstructionCount() {
+        return ExecutionHistory.getStep();
+    }
+
+    private interface Run<T> {
+        T run() throws SimulationException;
+    }
+
+    // Swaps out global state for this program's state around run
+    private <T> T swappedIn(Run<T> run) throws SimulationException {
+        T ret = null;
         SimulationException e = null;
 
-        // Swap out global state for local state.
         boolean selfMod = Globals.getSettings().getBooleanSetting(Settings.Bool.SELF_MODIFYING_CODE_ENABLED);
         Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.SELF_MODIFYING_CODE_ENABLED, set.selfModifyingCode);
         SystemIO.Data tmpFiles = SystemIO.swapData(fds);
         Memory tmpMem = Memory.swapInstance(simulation);
 
         try {
-            ret = code.simulate(set.maxSteps);
+            ret = run.run();
         }catch(SimulationException se){
             e = se;
         }
         exitCode = Globals.exitCode;
 
         Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.SELF_MODIFYING_CODE_ENABLED, selfMod);
-        SystemIO.swapData(tmpFiles);
+        fds = SystemIO.swapData(tmpFiles); // the file table may have grown, so keep the one that was in use
         Memory.swapInstance(tmpMem);
 
         if(e != null)throw e;
         return ret;
     }
 
+    /**
+     * Simulates like {@link #simulate()}, but on a background thread, returning at once. Simulations
+     * started this way run one at a time, in the order they were started, so set up the next program only
+     * once this one's future has completed.
+     * <p>
+     * Every {@value SimulationMonitor#INTERVAL} instructions the simulation checks its limits and whether
+     * it has been cancelled, and tells the listener how far it has got. Cancelling the future stops the
+     * simulation at the next check; it can then be continued with simulate, like a paused one.
+     *
+     * @param instructionLimit how many instructions may be executed before it stops with MAX_STEPS, or -1
+     *                         for no limit beyond Options.maxSteps
+     * @param timeLimitMillis  how long it may run for, or -1 for no limit; the time spent waiting its turn
+     *                         does not count
+     * @param listener         told of progress on the simulator thread, or null
+     * @return completed with the reason the simulation stopped, or exceptionally with the SimulationException
+     * simulate would have thrown, or a TimeoutException if it ran out of time
+     */
+    public CompletableFuture<Simulator.Reason> simulateAsync(long instructionLimit, long timeLimitMillis,
+                                                             SimulationMonitor.Listener listener) {
+        CompletableFuture<Simulator.Reason> future = new CompletableFuture<>();
+        SimulationMonitor monitor = new SimulationMonitor(instructionLimit, timeLimitMillis, listener);
+        future.whenComplete((reason, error) -> {
+            if (future.isCancelled()) monitor.cancel();
+        });
+        simulator.execute(() -> {
+            if (future.isDone()) return; // cancelled while waiting its turn
+            SimulationMonitor.start(monitor);
+            try {
+                Simulator.Reason reason = simulate();
+                if (monitor.isTimedOut()) {
+                    future.completeExceptionally(new TimeoutException("Simulation ran for more than "
+                            + timeLimitMillis + " ms"));
+                } else {
+                    future.complete(reason);
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                SimulationMonitor.stop();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Simulates on a background thread with no limits; see {@link #simulateAsync(long, long, SimulationMonitor.Listener)}.
+     */
+    public CompletableFuture<Simulator.Reason> simulateAsync() {
+        return simulateAsync(-1, -1, null);
+    }
+
+    // Closes the files the current run has open, for when it is given up before it ends
+    void closeFiles() {
+        SystemIO.Data tmpFiles = SystemIO.swapData(fds);
+        SystemIO.resetFiles();
+        fds = SystemIO.swapData(tmpFiles);
+    }
+
+    /**
+     * Starts a run of the assembled program that takes its input as it comes, waiting for it without
+     * holding a thread, so that many can be kept going at once; see {@link Session}. The session runs on
+     * the same background thread as {@link #simulateAsync}, taking turns with the other sessions, and
+     * leaves this program's own setup alone.
+     *
+     * @param args   Just like the args to a Java main, but an ArrayList.
+     * @param stdout where its stdout goes, written on the background thread
+     * @param stderr where its stderr goes, written on the background thread
+     * @return the session, which starts running as soon as it gets its turn
+     */
+    public Session startSession(ArrayList<String> args, OutputStream stdout, OutputStream stderr) {
+        return new Session(this, set, args, stdout, stderr);
+    }
+
     /**
      * @return converts the bytes sent to stdout into a string (resets to "" when setup is called)
      */
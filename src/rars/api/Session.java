@@ -0,0 +1,239 @@
+package rars.api;
+
+import rars.SimulationException;
+import rars.riscv.hardware.ControlAndStatusRegisterFile;
+import rars.simulator.Simulator;
+import rars.util.InputQueue;
+import rars.util.MemoryFileSystem;
+import rars.util.SystemIO;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A run of a program whose input comes as it goes, as at an interactive terminal. While it waits for
+ * input it holds no thread, only its memory and registers, so that a great many can be kept going at once.
+ * <p>
+ * Sessions run on the background thread of {@link Program#simulateAsync}, since the simulator's state is
+ * global, each for Options.quantum instructions at a time before the next runnable one gets a turn. A
+ * session that asks for input which has not come yet (with any of the read system calls, or Read on
+ * stdin) is set aside at that system call, and makes it again once {@link #input} gives it more or
+ * {@link #closeInput} ends its input. Options.maxSteps and Options.maxOutputBytes limit the whole run.
+ * <p>
+ * Tools that watch the simulator as a whole (tracing, profiling, execution history) see the instructions
+ * of all the sessions interleaved, and random number streams are shared between them.
+ * <pre>
+ * Session session = program.startSession(null, out, err);
+ * session.input("42\n");
+ * session.getResult().thenAccept(reason -> ...);
+ * </pre>
+ */
+public class Session {
+    /**
+     * Where a session is up to.
+     */
+    public enum State {
+        RUNNABLE,          // running, or waiting for its turn to
+        WAITING_FOR_INPUT, // set aside until more input comes
+        FINISHED
+    }
+
+    private final Program template;
+    private final ArrayList<String> args;
+    private final int quantum, maxSteps;
+    private final InputQueue input = new InputQueue();
+    private final SystemIO.Data stdio;
+    private final CompletableFuture<Simulator.Reason> result = new CompletableFuture<>();
+
+    // Only used on the simulator thread
+    private Program program;    // this run, from the first slice to the last
+    private MachineState saved; // its registers and so on between slices
+    private long executed;      // instructions run so far
+
+    // Read once finished
+    private volatile int exitCode;
+    private volatile MemoryFileSystem files;
+
+    // Guarded by this
+    private State state = State.RUNNABLE;
+    private boolean scheduled; // whether a slice is waiting to run
+    private boolean cancelled;
+    private int inputs;        // counts arrivals of input, to tell whether any came during a slice
+
+    Session(Program template, Options set, ArrayList<String> args, OutputStream stdout, OutputStream stderr) {
+        this.template = template;
+        this.args = args == null ? null : new ArrayList<>(args);
+        quantum = set.quantum;
+        maxSteps = set.maxSteps;
+        stdio = new SystemIO.Data(input, stdout, stderr, set.maxOutputBytes);
+        synchronized (this) {
+            schedule();
+        }
+    }
+
+    /**
+     * Gives the program more input, encoded as UTF-8.
+     *
+     * @param text what to add to its stdin, with a newline at the end of each line it is to read
+     * @throws IllegalStateException if the input has been closed
+     */
+    public void input(String text) {
+        input(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gives the program more input.
+     *
+     * @param bytes what to add to its stdin
+     * @throws IllegalStateException if the input has been closed
+     */
+    public void input(byte[] bytes) {
+        input.append(bytes);
+        arrived();
+    }
+
+    /**
+     * Ends the program's input, so that once it has read what has come it gets the end of file rather
+     * than waiting.
+     */
+    public void closeInput() {
+        input.close();
+        arrived();
+    }
+
+    private synchronized void arrived() {
+        inputs++;
+        if (state == State.WAITING_FOR_INPUT) {
+            state = State.RUNNABLE;
+            schedule();
+        }
+    }
+
+    /**
+     * Stops the session at the end of its current slice, or on its next turn if it is waiting, finishing
+     * it with STOP. Does nothing if it has already finished.
+     */
+    public synchronized void cancel() {
+        if (state == State.FINISHED) return;
+        cancelled = true;
+        state = State.RUNNABLE;
+        schedule();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return completed with the reason the run ended (NORMAL_TERMINATION, CLIFF_TERMINATION,
+     * BREAKPOINT, MAX_STEPS or STOP), or exceptionally with the SimulationException it ended with
+     */
+    public CompletableFuture<Simulator.Reason> getResult() {
+        return result;
+    }
+
+    /**
+     * @return the exit code passed to the exit syscall, or 0 (only valid once finished)
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return the in-memory files the run ended with, or null if it used the real file system (only
+     * valid once finished)
+     */
+    public MemoryFileSystem getFileSystem() {
+        return files;
+    }
+
+    // Called holding the lock
+    private void schedule() {
+        if (scheduled) return;
+        scheduled = true;
+        Program.simulator.execute(this::slice);
+    }
+
+    // Runs the session for a quantum, leaving the simulator as it found it
+    private void slice() {
+        int before;
+        boolean stop;
+        synchronized (this) {
+            scheduled = false;
+            if (state == State.FINISHED) return;
+            before = inputs;
+            stop = cancelled;
+        }
+        MachineState outer = MachineState.save();
+        try {
+            if (program == null) {
+                program = new Program(template);
+                program.setup(args, stdio);
+            } else {
+                saved.restore();
+            }
+            if (stop) {
+                finish(Simulator.Reason.STOP, null);
+                return;
+            }
+            long start = ControlAndStatusRegisterFile.getValueLong(ControlAndStatusRegisterFile.INSTRET);
+            Simulator.Reason reason;
+            try {
+                reason = program.simulate(steps());
+            } catch (SimulationException e) {
+                finish(null, e);
+                return;
+            }
+            executed += ControlAndStatusRegisterFile.getValueLong(ControlAndStatusRegisterFile.INSTRET) - start;
+            saved = MachineState.save();
+            boolean more = reason == Simulator.Reason.MAX_STEPS && (maxSteps <= 0 || executed < maxSteps);
+            if (more || reason == Simulator.Reason.WAITING_FOR_INPUT) {
+                synchronized (this) {
+                    if (!cancelled) {
+                        if (more || inputs != before) {
+                            schedule();
+                        } else {
+                            state = State.WAITING_FOR_INPUT;
+                        }
+                        return;
+                    }
+                }
+                reason = Simulator.Reason.STOP;
+            }
+            finish(reason, null);
+        } catch (RuntimeException | Error e) {
+            finish(null, e);
+        } finally {
+            outer.restore();
+        }
+    }
+
+    // How many instructions the next slice may run, or -1 for no limit
+    private int steps() {
+        long steps = quantum > 0 ? quantum : -1;
+        if (maxSteps > 0) {
+            steps = steps < 0 ? maxSteps - executed : Math.min(steps, maxSteps - executed);
+        }
+        return (int) steps;
+    }
+
+    private void finish(Simulator.Reason reason, Throwable error) {
+        if (program != null) {
+            program.closeFiles();
+            exitCode = program.getExitCode();
+            files = program.getFileSystem();
+        }
+        program = null;
+        saved = null;
+        synchronized (this) {
+            state = State.FINISHED;
+        }
+        if (error == null) {
+            result.complete(reason);
+        } else {
+            result.completeExceptionally(error);
+        }
+    }
+}
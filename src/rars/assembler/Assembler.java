@@ -1,6 +1,7 @@
 package rars.assembler;
 
 import rars.*;
+import rars.management.FlightRecorder;
 import rars.riscv.hardware.AddressErrorException;
 import rars.riscv.hardware.Memory;
 import rars.riscv.BasicInstruction;
@@ -110,6 +111,7 @@ public class Assembler {
         this.errors = new ErrorList();
         if (Globals.debug)
             System.out.println("Assembler first pass begins:");
+        Object event = FlightRecorder.beginPhase();
         // PROCESS THE FIRST ASSEMBLY PASS FOR ALL SOURCE FILES BEFORE PROCEEDING
         // TO SECOND PASS. THIS ASSURES ALL SYMBOL TABLES ARE CORRECTLY BUILT.
         // THERE IS ONE GLOBAL SYMBOL TABLE (for identifiers declared .globl) PLUS
@@ -175,6 +177,7 @@ public class Assembler {
             accumulatedDataSegmentForwardReferences.add(currentFileDataSegmentForwardReferences);
             currentFileDataSegmentForwardReferences.clear();
         } // end of first-pass loop for each RISCVprogram
+        FlightRecorder.endPhase(event, "assemble pass 1", tokenizedProgramFiles.size() + " files");
 
 
         // Have processed all source files. Attempt to resolve any remaining forward label
@@ -189,6 +192,7 @@ public class Assembler {
         }
         if (Globals.debug)
             System.out.println("Assembler second pass begins");
+        event = FlightRecorder.beginPhase();
         // SECOND PASS OF ASSEMBLER GENERATES BASIC ASSEMBLER THEN MACHINE CODE.
         // Generates basic assembler statements...
         for (RISCVprogram program : tokenizedProgramFiles) {
@@ -273,6 +277,8 @@ public class Assembler {
         }
         if (Globals.debug)
             System.out.println("Code generation begins");
+        FlightRecorder.endPhase(event, "assemble pass 2", tokenizedProgramFiles.size() + " files");
+        event = FlightRecorder.beginPhase();
         ///////////// THIRD MAJOR STEP IS PRODUCE MACHINE CODE FROM ASSEMBLY //////////
         // Generates machine code statements from the list of basic assembler statements
         // and writes the statement to memory.
@@ -291,6 +297,7 @@ public class Assembler {
                         .getStartPos(), "Invalid address for text segment: " + e.getAddress()));
             }
         }
+        FlightRecorder.endPhase(event, "codegen", machineList.size() + " instructions");
         // Aug. 24, 2005 Ken Vollmar
         // Ensure that I/O "file descriptors" are initialized for a new program run
         SystemIO.resetFiles();
@@ -0,0 +1,94 @@
+package rars.extras;
+
+import rars.riscv.AbstractSyscall;
+import rars.riscv.BasicInstruction;
+import rars.util.FilenameFinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Writes rars.riscv.Registry, which creates every basic instruction in rars.riscv.instructions and every
+ * system call in rars.riscv.syscalls. Startup uses it rather than listing the classes in the jar and
+ * loading them by name, which took a good part of the time to run a program from the command line.
+ * <p>
+ * build-jar.sh compiles everything against an empty registry, runs this, then compiles the registry, so a
+ * new instruction or syscall only needs its class (and, for a syscall, its line in Syscall.properties),
+ * and one that has been removed can not break the build. Run it by hand, with the compiled classes on the
+ * class path, when building some other way:
+ * <pre>
+ * java -cp build rars.extras.GenerateRegistry src
+ * </pre>
+ * It prints "Updated" and the file name if the registry was out of date.
+ */
+public class GenerateRegistry {
+    private static final String REGISTRY = "rars/riscv/Registry.java";
+
+    public static void main(String[] args) throws IOException {
+        File file = new File(args.length > 0 ? args[0] : "src", REGISTRY);
+        String source = createRegistry();
+        if (file.exists() && new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).equals(source)) {
+            return;
+        }
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        System.out.println("Updated " + file);
+    }
+
+    public static String createRegistry() {
+        StringBuilder output = new StringBuilder();
+        output.append("package rars.riscv;\n\n");
+        output.append("/*\n");
+        output.append(" * Generated by rars.extras.GenerateRegistry from the classes in rars.riscv.instructions and\n");
+        output.append(" * rars.riscv.syscalls; build-jar.sh brings it up to date, so do not edit it by hand.\n");
+        output.append(" */\n");
+        output.append("class Registry {\n");
+        append(output, "BasicInstruction", "instructions", find("rars.riscv.instructions", BasicInstruction.class));
+        output.append('\n');
+        append(output, "AbstractSyscall", "syscalls", find("rars.riscv.syscalls", AbstractSyscall.class));
+        output.append("}\n");
+        return output.toString();
+    }
+
+    private static void append(StringBuilder output, String type, String method, TreeSet<String> classes) {
+        output.append("    static ").append(type).append("[] ").append(method).append("() {\n");
+        output.append("        return new ").append(type).append("[]{\n");
+        for (String name : classes) {
+            output.append("                new ").append(name).append("(),\n");
+        }
+        output.append("        };\n");
+        output.append("    }\n");
+    }
+
+    // The concrete subclasses of type in the package, which must each have a public constructor taking nothing
+    private static TreeSet<String> find(String packageName, Class<?> type) {
+        ClassLoader loader = GenerateRegistry.class.getClassLoader();
+        ArrayList<String> files = FilenameFinder.getFilenameList(loader, packageName.replace('.', '/'), "class");
+        TreeSet<String> classes = new TreeSet<>();
+        for (String file : files) {
+            String name = packageName + "." + file.substring(0, file.length() - ".class".length());
+            if (name.contains("$")) continue;
+            Class<?> clas;
+            try {
+                clas = Class.forName(name, false, loader);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Can not load " + name, e);
+            }
+            if (!type.isAssignableFrom(clas) || Modifier.isAbstract(clas.getModifiers())) {
+                continue;
+            }
+            boolean constructor = Modifier.isPublic(clas.getModifiers()) && Arrays.stream(clas.getConstructors())
+                    .anyMatch(c -> c.getParameterCount() == 0);
+            if (!constructor) {
+                throw new IllegalStateException(name + " needs a public constructor taking no arguments");
+            }
+            classes.add(name);
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,80 @@
+package rars.management;
+
+/**
+ * Emits Java Flight Recorder events for the phases of assembling and simulating a program, and for
+ * system calls that take a long time (20 ms by default). Record them with, for example,
+ * {@code java -XX:StartFlightRecording=filename=rars.jfr -jar rars.jar ...} and open the file in JDK Mission
+ * Control; the events are under "RARS".
+ * <p>
+ * Each event is started with a begin method, which returns a handle to pass to the matching end method.
+ * On a Java runtime without Flight Recorder, or a build without the event classes (which are compiled
+ * separately from the jfr directory, as they need a JDK that has it), the handles are null and nothing is
+ * recorded. The event classes are only loaded when Flight Recorder is there and has been started, as
+ * loading them costs more than a short run from the command line takes otherwise.
+ */
+public final class FlightRecorder {
+    private static final Events events = load();
+
+    /**
+     * What the event classes do, implemented by the class built from the jfr directory.
+     */
+    public interface Events {
+        boolean started();
+
+        Object beginPhase();
+
+        void endPhase(Object event, String phase, String detail);
+
+        Object beginSyscall();
+
+        void endSyscall(Object event, int number, String name);
+    }
+
+    private FlightRecorder() {
+    }
+
+    private static Events load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (Events) Class.forName("rars.management.FlightRecorderEvents").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts timing a phase: "tokenize", "assemble pass 1", "assemble pass 2", "codegen" or "simulate".
+     *
+     * @return the handle for {@link #endPhase}
+     */
+    public static Object beginPhase() {
+        return events != null && events.started() ? events.beginPhase() : null;
+    }
+
+    /**
+     * @param event  the handle from {@link #beginPhase}
+     * @param phase  which phase it was
+     * @param detail what it worked on, such as the file tokenized, or how the simulation ended
+     */
+    public static void endPhase(Object event, String phase, String detail) {
+        if (event != null) events.endPhase(event, phase, detail);
+    }
+
+    /**
+     * Starts timing a system call.
+     *
+     * @return the handle for {@link #endSyscall}
+     */
+    public static Object beginSyscall() {
+        return events != null && events.started() ? events.beginSyscall() : null;
+    }
+
+    /**
+     * @param event  the handle from {@link #beginSyscall}
+     * @param number the system call number
+     * @param name   the name of the system call
+     */
+    public static void endSyscall(Object event, int number, String name) {
+        if (event != null) events.endSyscall(event, number, name);
+    }
+}
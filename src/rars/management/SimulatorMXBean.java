@@ -0,0 +1,55 @@
+package rars.management;
+
+/**
+ * Live metrics of the simulator, readable with any JMX client (jconsole, VisualVM, jmxterm) under the
+ * name {@value SimulatorMetrics#OBJECT_NAME}. Counts cover everything simulated since the JVM started or
+ * the counters were last {@link #reset}, across programs.
+ */
+public interface SimulatorMXBean {
+    /**
+     * @return the number of instructions executed, including those of a program still running
+     */
+    long getInstructionsExecuted();
+
+    /**
+     * @return millions of instructions executed per second, over the time since this was last read (at
+     * least a second, so polling faster gives the same value)
+     */
+    double getCurrentMips();
+
+    /**
+     * @return the number of system calls made
+     */
+    long getSyscalls();
+
+    /**
+     * @return milliseconds spent in system calls, including waiting for input
+     */
+    long getSyscallTimeMillis();
+
+    /**
+     * @return milliseconds the simulator spent waiting for another thread (such as the GUI) to release
+     * the lock on memory and registers
+     */
+    long getLockBlockedTimeMillis();
+
+    /**
+     * @return the number of notices delivered to observers of memory and registers, such as tools
+     */
+    long getObserverNotifications();
+
+    /**
+     * @return the number of entries pushed on the back step stack
+     */
+    long getBackstepEntries();
+
+    /**
+     * @return the number of 4 KB pages of simulated memory allocated for data, heap and stack
+     */
+    long getPagesAllocated();
+
+    /**
+     * Zeroes all the counts.
+     */
+    void reset();
+}
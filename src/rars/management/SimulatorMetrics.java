@@ -0,0 +1,183 @@
+package rars.management;
+
+import rars.riscv.hardware.ControlAndStatusRegisterFile;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the counts published by {@link SimulatorMXBean}.
+ * <p>
+ * The simulator and memory call the static methods here as things happen, and a JMX client reads and
+ * resets the counts from another thread, so they are kept in adders. Instructions are not counted one at
+ * a time: the simulator says when a run starts and stops, and the instructions of the run in progress are
+ * read from its instret, so the simulator loop does nothing for them.
+ */
+public class SimulatorMetrics implements SimulatorMXBean {
+    public static final String OBJECT_NAME = "rars:type=Simulator";
+
+    private static final LongAdder instructions = new LongAdder();
+    private static final LongAdder syscalls = new LongAdder();
+    private static final LongAdder syscallNanos = new LongAdder();
+    private static final LongAdder lockBlockedNanos = new LongAdder();
+    private static final LongAdder notifications = new LongAdder();
+    private static final LongAdder backstepEntries = new LongAdder();
+    private static final LongAdder pages = new LongAdder();
+    // The instret of the run in progress when it started, or when the counts were reset during it; -1 when
+    // no run is in progress
+    private static long runStart = -1;
+
+    // The instruction count and time when the rate was last worked out
+    private long sampleInstructions;
+    private long sampleTime = System.nanoTime();
+    private double mips;
+
+    // How long to wait before registering, so that short runs, which are over before anyone could look, do
+    // not pay for starting the JMX machinery
+    private static final long REGISTRATION_DELAY_MILLIS = 1000;
+
+    /**
+     * Registers the metrics with the platform MBean server. This starts the JMX machinery, which takes a
+     * little while, so it is done on a background thread, and only after a second. Registering more than
+     * once does nothing.
+     */
+    public static void register() {
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(REGISTRATION_DELAY_MILLIS);
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(new SimulatorMetrics(), name);
+                }
+            } catch (JMException | SecurityException | InterruptedException e) {
+                // Not being able to monitor is no reason to stop
+            }
+        }, "RARS JMX registration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Called by the simulator when it starts running.
+     *
+     * @param instret the value of instret then
+     */
+    public static synchronized void started(long instret) {
+        runStart = instret;
+    }
+
+    /**
+     * Called by the simulator when it stops running, to add the instructions of the run to the count.
+     *
+     * @param instret the value of instret then
+     */
+    public static synchronized void stopped(long instret) {
+        if (runStart >= 0) instructions.add(Math.max(0, instret - runStart));
+        runStart = -1;
+    }
+
+    // The instructions of finished runs and the one in progress; reading instret from this thread may see a
+    // value a moment out of date, which is good enough for monitoring
+    private static synchronized long executed() {
+        long count = instructions.sum();
+        if (runStart >= 0) {
+            count += Math.max(0, ControlAndStatusRegisterFile.getValueNoNotify(ControlAndStatusRegisterFile.INSTRET) - runStart);
+        }
+        return count;
+    }
+
+    private static synchronized void resetInstructions() {
+        instructions.reset();
+        if (runStart >= 0) runStart = ControlAndStatusRegisterFile.getValueNoNotify(ControlAndStatusRegisterFile.INSTRET);
+    }
+
+    /**
+     * @param nanos how long a system call took
+     */
+    public static void syscall(long nanos) {
+        syscalls.increment();
+        syscallNanos.add(nanos);
+    }
+
+    /**
+     * @param nanos how long the simulator waited for the memory and registers lock
+     */
+    public static void lockBlocked(long nanos) {
+        lockBlockedNanos.add(nanos);
+    }
+
+    /**
+     * @param count how many observers were just sent a notice
+     */
+    public static void notified(int count) {
+        notifications.add(count);
+    }
+
+    public static void backstepEntry() {
+        backstepEntries.increment();
+    }
+
+    public static void pageAllocated() {
+        pages.increment();
+    }
+
+    @Override
+    public long getInstructionsExecuted() {
+        return executed();
+    }
+
+    @Override
+    public synchronized double getCurrentMips() {
+        long now = System.nanoTime(), count = executed();
+        if (now - sampleTime >= 1000000000L) {
+            mips = (count - sampleInstructions) * 1000.0 / (now - sampleTime);
+            sampleInstructions = count;
+            sampleTime = now;
+        }
+        return mips;
+    }
+
+    @Override
+    public long getSyscalls() {
+        return syscalls.sum();
+    }
+
+    @Override
+    public long getSyscallTimeMillis() {
+        return syscallNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getLockBlockedTimeMillis() {
+        return lockBlockedNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getObserverNotifications() {
+        return notifications.sum();
+    }
+
+    @Override
+    public long getBackstepEntries() {
+        return backstepEntries.sum();
+    }
+
+    @Override
+    public long getPagesAllocated() {
+        return pages.sum();
+    }
+
+    @Override
+    public synchronized void reset() {
+        resetInstructions();
+        for (LongAdder count : new LongAdder[]{syscalls, syscallNanos, lockBlockedNanos, notifications,
+                backstepEntries, pages}) {
+            count.reset();
+        }
+        sampleInstructions = 0;
+        sampleTime = System.nanoTime();
+        mips = 0;
+    }
+}
@@ -130,6 +130,17 @@ public abstract class AbstractSyscall implements Comparable<AbstractSyscall> {
         return serviceNumber;
     }
 
+    /**
+     * Tells whether this service only writes output.  Output is buffered, so before any other service
+     * runs (which might read input, wait or exit) the pending output is flushed; services that just add
+     * to it skip that.  Those services override this to return true.
+     *
+     * @return true if this service writes output and does nothing else the user could notice
+     */
+    public boolean writesOutput() {
+        return false;
+    }
+
     /**
      * Performs syscall function.  It will be invoked when the service is invoked
      * at simulation time.  Service is identified by value stored in a7.
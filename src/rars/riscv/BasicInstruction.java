@@ -47,6 +47,7 @@ public abstract class BasicInstruction extends Instruction {
 
     private int opcodeMask;  // integer with 1's where constants required (0/1 become 1, f/s/t become 0)
     private int opcodeMatch; // integer matching constants required (0/1 become 0/1, f/s/t become 0)
+    private boolean inRV32 = true, inRV64 = true;
 
     /**
      * BasicInstruction constructor.
@@ -84,12 +85,12 @@ public abstract class BasicInstruction extends Instruction {
         this.opcodeMatch = (int) Long.parseLong(this.operationMask.replaceAll("[^1]", "0"), 2);
     }
 
+    // For an instruction in only one of the instruction sets: RV64 if onlyinrv64, otherwise RV32
     public BasicInstruction(String example, String description, BasicInstructionFormat instrFormat,
                             String operMask, boolean onlyinrv64) {
         this(example, description, instrFormat, operMask);
-        if (InstructionSet.rv64 != onlyinrv64) {
-            throw new NullPointerException("rv64");
-        }
+        inRV32 = !onlyinrv64;
+        inRV64 = onlyinrv64;
     }
 
     // Temporary constructor so that instructions without description yet will compile.
@@ -135,6 +136,14 @@ public abstract class BasicInstruction extends Instruction {
         return this.opcodeMatch;
     }
 
+    /**
+     * @param rv64 whether it is the 64 bit instruction set being asked about
+     * @return whether the instruction belongs to that instruction set
+     */
+    public boolean isAvailable(boolean rv64) {
+        return rv64 ? inRV64 : inRV32;
+    }
+
     /**
      * Method to simulate the execution of a specific MIPS basic instruction.
      *
@@ -67,8 +67,9 @@ public abstract class Instruction {
     protected String description;
     /**
      * List of tokens generated by tokenizing example usage (see <tt>exampleFormat</tt>).
+     * Made the first time it is asked for, as most instructions never are.
      **/
-    protected TokenList tokenList;
+    protected volatile TokenList tokenList;
 
 
     /**
@@ -113,6 +114,9 @@ public abstract class Instruction {
      */
 
     public TokenList getTokenList() {
+        if (tokenList == null) {
+            createExampleTokenList();
+        }
         return tokenList;
     }
 
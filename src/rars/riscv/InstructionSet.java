@@ -1,19 +1,20 @@
 package rars.riscv;
 
+import rars.ExitingException;
 import rars.Globals;
 import rars.ProgramStatement;
 import rars.Settings;
 import rars.SimulationException;
+import rars.management.FlightRecorder;
+import rars.management.SimulatorMetrics;
+import rars.riscv.hardware.BranchStatistics;
 import rars.riscv.hardware.RegisterFile;
-import rars.riscv.syscalls.*;
-import rars.util.FilenameFinder;
 import rars.util.SystemIO;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.lang.reflect.Modifier;
 import java.util.*;
 
 	/*
@@ -54,13 +55,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
 public class InstructionSet {
-    private static final String CLASS_PREFIX = "rars.riscv.instructions.";
-    private static final String INSTRUCTIONS_DIRECTORY_PATH = "rars/riscv/instructions";
-    private static final String CLASS_EXTENSION = "class";
     public static boolean rv64 = Globals.getSettings().getBooleanSetting(Settings.Bool.RV64_ENABLED);
 
     private ArrayList<Instruction> instructionList;
     private ArrayList<MatchMap> opcodeMatchMaps;
+    private HashMap<String, ArrayList<Instruction>> instructionsByName; // keyed by lower case mnemonic
+
+    // Every basic instruction, made once, and what populate makes of them for RV32 and RV64. Each is
+    // made the first time it is wanted, so switching between the two costs next to nothing.
+    private BasicInstruction[] basicInstructions;
+    private final Table[] tables = new Table[2];
 
     /**
      * Creates a new InstructionSet object.
@@ -89,6 +93,13 @@ public class InstructionSet {
     public void populate() {
         /* Here is where the parade begins.  Every instruction is added to the set here.*/
         instructionList.clear();
+        Table table = tables[rv64 ? 1 : 0];
+        if (table != null) {
+            instructionList.addAll(table.instructions);
+            opcodeMatchMaps = table.opcodeMatchMaps;
+            instructionsByName = table.instructionsByName;
+            return;
+        }
         // ////////////////////////////////////   BASIC INSTRUCTIONS START HERE ////////////////////////////////
 
         addBasicInstructions();
@@ -99,15 +110,14 @@ public class InstructionSet {
         }
 
         addPseudoInstructions("/PseudoOps.txt");
-        // Initialization step.  Create token list for each instruction example.  This is
-        // used by parser to determine user program correct syntax.
-        for (Instruction inst : instructionList) {
-            inst.createExampleTokenList();
-        }
+        // The token list of each instruction example, used by the parser to check the syntax of user
+        // programs, is made the first time the instruction is matched (see Instruction.getTokenList).
 
         HashMap<Integer, HashMap<Integer, BasicInstruction>> maskMap = new HashMap<>();
         ArrayList<MatchMap> matchMaps = new ArrayList<>();
+        HashMap<String, ArrayList<Instruction>> byName = new HashMap<>();
         for (Instruction inst : instructionList) {
+            byName.computeIfAbsent(inst.getName().toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(inst);
             if (inst instanceof BasicInstruction) {
                 BasicInstruction basic = (BasicInstruction) inst;
                 Integer mask = basic.getOpcodeMask();
@@ -123,6 +133,8 @@ public class InstructionSet {
         }
         Collections.sort(matchMaps);
         this.opcodeMatchMaps = matchMaps;
+        this.instructionsByName = byName;
+        tables[rv64 ? 1 : 0] = new Table(new ArrayList<>(instructionList), matchMaps, byName);
     }
 
     public BasicInstruction findByBinaryCode(int binaryInstr) {
@@ -133,39 +145,19 @@ public class InstructionSet {
         return null;
     }
 
+    // The instructions come from the generated Registry rather than from loading each class in
+    // rars.riscv.instructions by name, which is much of what made startup slow.
     private void addBasicInstructions() {
-        // grab all class files in the same directory as Syscall
-        ArrayList<String> candidates = FilenameFinder.getFilenameList(this.getClass().getClassLoader(),
-                INSTRUCTIONS_DIRECTORY_PATH, CLASS_EXTENSION);
-        HashSet<String> insts = new HashSet<>();
-        for (String file : candidates) {
-            // Do not add class if already encountered (happens if run in MARS development directory)
-            if (insts.contains(file)) {
-                continue;
-            } else {
-                insts.add(file);
-            }
-            try {
-                // grab the class, make sure it implements Syscall, instantiate, add to list
-                String syscallClassName = CLASS_PREFIX + file.substring(0, file.indexOf(CLASS_EXTENSION) - 1);
-                Class clas = Class.forName(syscallClassName);
-                if (!BasicInstruction.class.isAssignableFrom(clas) ||
-                        Modifier.isAbstract(clas.getModifiers()) ||
-                        Modifier.isInterface(clas.getModifiers())) {
-                    continue;
-                }
-                try {
-                    instructionList.add((BasicInstruction) clas.newInstance());
-                }catch (NullPointerException ne){
-                    if (ne.toString().contains("rv"))continue;
-                    throw ne;
-                }
-            } catch (Exception e) {
-                System.out.println("Error instantiating Instruction from file " + file + ": " + e);
-                System.exit(0);
+        if (basicInstructions == null) {
+            basicInstructions = Registry.instructions();
+        }
+        for (BasicInstruction inst : basicInstructions) {
+            if (inst.isAvailable(rv64)) {
+                instructionList.add(inst);
             }
         }
     }
+
     /*  METHOD TO ADD PSEUDO-INSTRUCTIONS
     */
     private void addPseudoInstructions(String file) {
@@ -223,22 +215,14 @@ public class InstructionSet {
 
     /**
      * Given an operator mnemonic, will return the corresponding Instruction object(s)
-     * from the instruction set.  Uses straight linear search technique.
+     * from the instruction set.
      *
      * @param name operator mnemonic (e.g. addi, sw,...)
      * @return list of corresponding Instruction object(s), or null if not found.
      */
     public ArrayList<Instruction> matchOperator(String name) {
-        ArrayList<Instruction> matchingInstructions = null;
-        // Linear search for now....
-        for (Instruction inst : instructionList) {
-            if (inst.getName().equalsIgnoreCase(name)) {
-                if (matchingInstructions == null)
-                    matchingInstructions = new ArrayList<>();
-                matchingInstructions.add(inst);
-            }
-        }
-        return matchingInstructions;
+        ArrayList<Instruction> matchingInstructions = instructionsByName.get(name.toLowerCase(Locale.ROOT));
+        return matchingInstructions == null ? null : new ArrayList<>(matchingInstructions);
     }
 
 
@@ -276,21 +260,21 @@ public class InstructionSet {
             throws SimulationException {
         AbstractSyscall service = SyscallLoader.findSyscall(number);
         if (service != null) {
-            // TODO: find a cleaner way of doing this
-            // This was introduced to solve issue #108
-            boolean is_writing = service instanceof SyscallPrintChar ||
-                    service instanceof SyscallPrintDouble ||
-                    service instanceof SyscallPrintFloat ||
-                    service instanceof SyscallPrintInt ||
-                    service instanceof SyscallPrintIntBinary ||
-                    service instanceof SyscallPrintIntHex ||
-                    service instanceof SyscallPrintIntUnsigned ||
-                    service instanceof SyscallPrintString ||
-                    service instanceof SyscallWrite;
-            if (!is_writing) {
+            // Output is buffered (issue #108); flush it before anything that could wait, read or exit
+            if (!service.writesOutput()) {
                 SystemIO.flush(true);
             }
-            service.simulate(statement);
+            Object event = FlightRecorder.beginSyscall();
+            long start = System.nanoTime();
+            try {
+                service.simulate(statement);
+                if (service.writesOutput() && SystemIO.outputLimitReached()) {
+                    throw new ExitingException(statement, "output limit exceeded");
+                }
+            } finally {
+                SimulatorMetrics.syscall(System.nanoTime() - start);
+                FlightRecorder.endSyscall(event, number, service.getName());
+            }
             return;
         }
         throw new SimulationException(statement,
@@ -308,7 +292,25 @@ public class InstructionSet {
 
     public static void processBranch(int displacement) {
         // Decrement needed because PC has already been incremented
-        RegisterFile.setProgramCounter(RegisterFile.getProgramCounter() + displacement - Instruction.INSTRUCTION_LENGTH);
+        int pc = RegisterFile.getProgramCounter() - Instruction.INSTRUCTION_LENGTH;
+        BranchStatistics statistics = BranchStatistics.active();
+        if (statistics != null) statistics.branch(pc, pc + displacement, true);
+        RegisterFile.setProgramCounter(pc + displacement);
+    }
+
+   	/*
+        * Method to process a failed branch condition, which only needs reporting
+   	 * to branch prediction statistics.
+   	 *
+   	 * The parameter is displacement operand from instruction.
+   	 */
+
+    public static void processBranchNotTaken(int displacement) {
+        BranchStatistics statistics = BranchStatistics.active();
+        if (statistics != null) {
+            int pc = RegisterFile.getProgramCounter() - Instruction.INSTRUCTION_LENGTH;
+            statistics.branch(pc, pc + displacement, false);
+        }
     }
 
    	/*
@@ -320,6 +322,10 @@ public class InstructionSet {
    	 */
 
     public static void processJump(int targetAddress) {
+        BranchStatistics statistics = BranchStatistics.active();
+        if (statistics != null) {
+            statistics.jump(RegisterFile.getProgramCounter() - Instruction.INSTRUCTION_LENGTH, targetAddress);
+        }
         RegisterFile.setProgramCounter(targetAddress);
     }
 
@@ -334,6 +340,20 @@ public class InstructionSet {
         RegisterFile.updateRegister(register, RegisterFile.getProgramCounter());
     }
 
+    // What populate makes for one of RV32 and RV64
+    private static class Table {
+        private final ArrayList<Instruction> instructions;
+        private final ArrayList<MatchMap> opcodeMatchMaps;
+        private final HashMap<String, ArrayList<Instruction>> instructionsByName;
+
+        private Table(ArrayList<Instruction> instructions, ArrayList<MatchMap> opcodeMatchMaps,
+                      HashMap<String, ArrayList<Instruction>> instructionsByName) {
+            this.instructions = instructions;
+            this.opcodeMatchMaps = opcodeMatchMaps;
+            this.instructionsByName = instructionsByName;
+        }
+    }
+
     private static class MatchMap implements Comparable<MatchMap> {
         private int mask;
         private int maskLength; // number of 1 bits in mask
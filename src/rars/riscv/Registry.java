@@ -0,0 +1,197 @@
+package rars.riscv;
+
+/*
+ * Generated by rars.extras.GenerateRegistry from the classes in rars.riscv.instructions and
+ * rars.riscv.syscalls; build-jar.sh brings it up to date, so do not edit it by hand.
+ */
+class Registry {
+    static BasicInstruction[] instructions() {
+        return new BasicInstruction[]{
+                new rars.riscv.instructions.ADD(),
+                new rars.riscv.instructions.ADDI(),
+                new rars.riscv.instructions.ADDIW(),
+                new rars.riscv.instructions.ADDW(),
+                new rars.riscv.instructions.AND(),
+                new rars.riscv.instructions.ANDI(),
+                new rars.riscv.instructions.AUIPC(),
+                new rars.riscv.instructions.BEQ(),
+                new rars.riscv.instructions.BGE(),
+                new rars.riscv.instructions.BGEU(),
+                new rars.riscv.instructions.BLT(),
+                new rars.riscv.instructions.BLTU(),
+                new rars.riscv.instructions.BNE(),
+                new rars.riscv.instructions.CSRRC(),
+                new rars.riscv.instructions.CSRRCI(),
+                new rars.riscv.instructions.CSRRS(),
+                new rars.riscv.instructions.CSRRSI(),
+                new rars.riscv.instructions.CSRRW(),
+                new rars.riscv.instructions.CSRRWI(),
+                new rars.riscv.instructions.DIV(),
+                new rars.riscv.instructions.DIVU(),
+                new rars.riscv.instructions.DIVUW(),
+                new rars.riscv.instructions.DIVW(),
+                new rars.riscv.instructions.EBREAK(),
+                new rars.riscv.instructions.ECALL(),
+                new rars.riscv.instructions.FADDD(),
+                new rars.riscv.instructions.FADDS(),
+                new rars.riscv.instructions.FCLASSD(),
+                new rars.riscv.instructions.FCLASSS(),
+                new rars.riscv.instructions.FCVTDL(),
+                new rars.riscv.instructions.FCVTDLU(),
+                new rars.riscv.instructions.FCVTDS(),
+                new rars.riscv.instructions.FCVTDW(),
+                new rars.riscv.instructions.FCVTDWU(),
+                new rars.riscv.instructions.FCVTLD(),
+                new rars.riscv.instructions.FCVTLS(),
+                new rars.riscv.instructions.FCVTLUD(),
+                new rars.riscv.instructions.FCVTLUS(),
+                new rars.riscv.instructions.FCVTSD(),
+                new rars.riscv.instructions.FCVTSL(),
+                new rars.riscv.instructions.FCVTSLU(),
+                new rars.riscv.instructions.FCVTSW(),
+                new rars.riscv.instructions.FCVTSWU(),
+                new rars.riscv.instructions.FCVTWD(),
+                new rars.riscv.instructions.FCVTWS(),
+                new rars.riscv.instructions.FCVTWUD(),
+                new rars.riscv.instructions.FCVTWUS(),
+                new rars.riscv.instructions.FDIVD(),
+                new rars.riscv.instructions.FDIVS(),
+                new rars.riscv.instructions.FENCE(),
+                new rars.riscv.instructions.FENCEI(),
+                new rars.riscv.instructions.FEQD(),
+                new rars.riscv.instructions.FEQS(),
+                new rars.riscv.instructions.FLD(),
+                new rars.riscv.instructions.FLED(),
+                new rars.riscv.instructions.FLES(),
+                new rars.riscv.instructions.FLTD(),
+                new rars.riscv.instructions.FLTS(),
+                new rars.riscv.instructions.FLW(),
+                new rars.riscv.instructions.FMADDD(),
+                new rars.riscv.instructions.FMADDS(),
+                new rars.riscv.instructions.FMAXD(),
+                new rars.riscv.instructions.FMAXS(),
+                new rars.riscv.instructions.FMIND(),
+                new rars.riscv.instructions.FMINS(),
+                new rars.riscv.instructions.FMSUBD(),
+                new rars.riscv.instructions.FMSUBS(),
+                new rars.riscv.instructions.FMULD(),
+                new rars.riscv.instructions.FMULS(),
+                new rars.riscv.instructions.FMVDX(),
+                new rars.riscv.instructions.FMVSX(),
+                new rars.riscv.instructions.FMVXD(),
+                new rars.riscv.instructions.FMVXS(),
+                new rars.riscv.instructions.FNMADDD(),
+                new rars.riscv.instructions.FNMADDS(),
+                new rars.riscv.instructions.FNMSUBD(),
+                new rars.riscv.instructions.FNMSUBS(),
+                new rars.riscv.instructions.FSD(),
+                new rars.riscv.instructions.FSGNJD(),
+                new rars.riscv.instructions.FSGNJND(),
+                new rars.riscv.instructions.FSGNJNS(),
+                new rars.riscv.instructions.FSGNJS(),
+                new rars.riscv.instructions.FSGNJXD(),
+                new rars.riscv.instructions.FSGNJXS(),
+                new rars.riscv.instructions.FSQRTD(),
+                new rars.riscv.instructions.FSQRTS(),
+                new rars.riscv.instructions.FSUBD(),
+                new rars.riscv.instructions.FSUBS(),
+                new rars.riscv.instructions.FSW(),
+                new rars.riscv.instructions.JAL(),
+                new rars.riscv.instructions.JALR(),
+                new rars.riscv.instructions.LB(),
+                new rars.riscv.instructions.LBU(),
+                new rars.riscv.instructions.LD(),
+                new rars.riscv.instructions.LH(),
+                new rars.riscv.instructions.LHU(),
+                new rars.riscv.instructions.LUI(),
+                new rars.riscv.instructions.LW(),
+                new rars.riscv.instructions.LWU(),
+                new rars.riscv.instructions.MUL(),
+                new rars.riscv.instructions.MULH(),
+                new rars.riscv.instructions.MULHSU(),
+                new rars.riscv.instructions.MULHU(),
+                new rars.riscv.instructions.MULW(),
+                new rars.riscv.instructions.OR(),
+                new rars.riscv.instructions.ORI(),
+                new rars.riscv.instructions.REM(),
+                new rars.riscv.instructions.REMU(),
+                new rars.riscv.instructions.REMUW(),
+                new rars.riscv.instructions.REMW(),
+                new rars.riscv.instructions.SB(),
+                new rars.riscv.instructions.SD(),
+                new rars.riscv.instructions.SH(),
+                new rars.riscv.instructions.SLL(),
+                new rars.riscv.instructions.SLLI(),
+                new rars.riscv.instructions.SLLI64(),
+                new rars.riscv.instructions.SLLIW(),
+                new rars.riscv.instructions.SLLW(),
+                new rars.riscv.instructions.SLT(),
+                new rars.riscv.instructions.SLTI(),
+                new rars.riscv.instructions.SLTIU(),
+                new rars.riscv.instructions.SLTU(),
+                new rars.riscv.instructions.SRA(),
+                new rars.riscv.instructions.SRAI(),
+                new rars.riscv.instructions.SRAI64(),
+                new rars.riscv.instructions.SRAIW(),
+                new rars.riscv.instructions.SRAW(),
+                new rars.riscv.instructions.SRL(),
+                new rars.riscv.instructions.SRLI(),
+                new rars.riscv.instructions.SRLI64(),
+                new rars.riscv.instructions.SRLIW(),
+                new rars.riscv.instructions.SRLW(),
+                new rars.riscv.instructions.SUB(),
+                new rars.riscv.instructions.SUBW(),
+                new rars.riscv.instructions.SW(),
+                new rars.riscv.instructions.URET(),
+                new rars.riscv.instructions.WFI(),
+                new rars.riscv.instructions.XOR(),
+                new rars.riscv.instructions.XORI(),
+        };
+    }
+
+    static AbstractSyscall[] syscalls() {
+        return new AbstractSyscall[]{
+                new rars.riscv.syscalls.SyscallClose(),
+                new rars.riscv.syscalls.SyscallConfirmDialog(),
+                new rars.riscv.syscalls.SyscallExit(),
+                new rars.riscv.syscalls.SyscallExit2(),
+                new rars.riscv.syscalls.SyscallGetCWD(),
+                new rars.riscv.syscalls.SyscallInputDialogDouble(),
+                new rars.riscv.syscalls.SyscallInputDialogFloat(),
+                new rars.riscv.syscalls.SyscallInputDialogInt(),
+                new rars.riscv.syscalls.SyscallInputDialogString(),
+                new rars.riscv.syscalls.SyscallLSeek(),
+                new rars.riscv.syscalls.SyscallMessageDialog(),
+                new rars.riscv.syscalls.SyscallMessageDialogDouble(),
+                new rars.riscv.syscalls.SyscallMessageDialogFloat(),
+                new rars.riscv.syscalls.SyscallMessageDialogInt(),
+                new rars.riscv.syscalls.SyscallMessageDialogString(),
+                new rars.riscv.syscalls.SyscallMidiOut(),
+                new rars.riscv.syscalls.SyscallMidiOutSync(),
+                new rars.riscv.syscalls.SyscallOpen(),
+                new rars.riscv.syscalls.SyscallPrintChar(),
+                new rars.riscv.syscalls.SyscallPrintDouble(),
+                new rars.riscv.syscalls.SyscallPrintFloat(),
+                new rars.riscv.syscalls.SyscallPrintInt(),
+                new rars.riscv.syscalls.SyscallPrintIntBinary(),
+                new rars.riscv.syscalls.SyscallPrintIntHex(),
+                new rars.riscv.syscalls.SyscallPrintIntUnsigned(),
+                new rars.riscv.syscalls.SyscallPrintString(),
+                new rars.riscv.syscalls.SyscallRandDouble(),
+                new rars.riscv.syscalls.SyscallRandFloat(),
+                new rars.riscv.syscalls.SyscallRandInt(),
+                new rars.riscv.syscalls.SyscallRandIntRange(),
+                new rars.riscv.syscalls.SyscallRandSeed(),
+                new rars.riscv.syscalls.SyscallRead(),
+                new rars.riscv.syscalls.SyscallReadChar(),
+                new rars.riscv.syscalls.SyscallReadDouble(),
+                new rars.riscv.syscalls.SyscallReadFloat(),
+                new rars.riscv.syscalls.SyscallReadInt(),
+                new rars.riscv.syscalls.SyscallReadString(),
+                new rars.riscv.syscalls.SyscallSbrk(),
+                new rars.riscv.syscalls.SyscallSleep(),
+                new rars.riscv.syscalls.SyscallTime(),
+                new rars.riscv.syscalls.SyscallWrite(),
+        };
+    }
+}
@@ -1,10 +1,8 @@
 package rars.riscv;
 
 import rars.Globals;
-import rars.util.FilenameFinder;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -46,50 +44,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class SyscallLoader {
 
-    private static final String CLASS_PREFIX = "rars.riscv.syscalls.";
-    private static final String SYSCALLS_DIRECTORY_PATH = "rars/riscv/syscalls";
-    private static final String CLASS_EXTENSION = "class";
-
     private static ArrayList<AbstractSyscall> syscallList;
+    // The syscalls indexed by service number, so that finding one for an ECALL is a single lookup
+    private static AbstractSyscall[] syscallTable = new AbstractSyscall[0];
+    // Largest service number accepted from the config file, which bounds the size of that table
+    private static final int MAX_SERVICE_NUMBER = 0xFFFF;
 
-    /*
-       *  Dynamically loads Syscalls into an ArrayList.  This method is adapted from
-       *  the loadGameControllers() method in Bret Barker's GameServer class.
-       *  Barker (bret@hypefiend.com) is co-author of the book "Developing Games
-       *  in Java".  Also see the "loadMarsTools()" method from ToolLoader class.
-       */
+    // Creates the syscalls listed in the generated Registry, then gives them their numbers
     static {
         syscallList = new ArrayList<>();
-        // grab all class files in the same directory as Syscall
-        ArrayList<String> candidates = FilenameFinder.getFilenameList(SyscallLoader.class.getClassLoader(),
-                SYSCALLS_DIRECTORY_PATH, CLASS_EXTENSION);
-        HashSet<String> syscalls = new HashSet<>();
-        for (String file : candidates) {
-            // Do not add class if already encountered (happens if run in MARS development directory)
-            if (syscalls.contains(file)) {
-                continue;
-            } else {
-                syscalls.add(file);
-            }
-            try {
-                // grab the class, make sure it implements Syscall, instantiate, add to list
-                String syscallClassName = CLASS_PREFIX + file.substring(0, file.indexOf(CLASS_EXTENSION) - 1);
-                Class clas = Class.forName(syscallClassName);
-                if (!AbstractSyscall.class.isAssignableFrom(clas)) {
-                    continue;
-                }
-                AbstractSyscall syscall = (AbstractSyscall) clas.newInstance();
-                if (syscall.getNumber() == -1) {
-                    syscallList.add(syscall);
-                } else {
-                    throw new Exception("Syscalls must assign -1 for number");
-                }
-            } catch (Exception e) {
-                System.out.println("Error instantiating Syscall from file " + file + ": " + e);
+        for (AbstractSyscall syscall : Registry.syscalls()) {
+            if (syscall.getNumber() != -1) {
+                System.out.println("Error instantiating Syscall " + syscall.getName() + ": Syscalls must assign -1 for number");
                 System.exit(0);
             }
+            syscallList.add(syscall);
         }
         syscallList = processSyscallNumberOverrides(syscallList);
+        syscallTable = buildSyscallTable(syscallList);
     }
 
     // Loads system call numbers from Syscall.properties
@@ -105,7 +77,7 @@ public class SyscallLoader {
             for (AbstractSyscall syscall : syscallList) {
                 if (syscall.getNumber() == override.getNumber()) {
                     System.out.println("Duplicate service number: " + syscall.getNumber() + " already registered to " +
-                            findSyscall(syscall.getNumber()).getName());
+                            syscall.getName());
                     System.exit(0);
                 }
                 if (override.getName().equals(syscall.getName())) {
@@ -117,6 +89,11 @@ public class SyscallLoader {
                         System.out.println("Error: " + override.getName() + " was assigned a negative number");
                         System.exit(0);
                     }
+                    if (override.getNumber() > MAX_SERVICE_NUMBER) {
+                        System.out.println("Error: " + override.getName() + " was assigned a number above " +
+                                MAX_SERVICE_NUMBER);
+                        System.exit(0);
+                    }
                     // we have a match to service name, assign new number
                     syscall.setNumber(override.getNumber());
                     match = true;
@@ -131,18 +108,28 @@ public class SyscallLoader {
         return syscallList;
     }
 
+    // Lays the syscalls out by their final service numbers. The numbers run up to about a thousand, so
+    // the table is small even though most of it is empty; they were checked to be between 0 and
+    // MAX_SERVICE_NUMBER, so it is never large.
+    private static AbstractSyscall[] buildSyscallTable(ArrayList<AbstractSyscall> syscallList) {
+        int max = -1;
+        for (AbstractSyscall syscall : syscallList) {
+            max = Math.max(max, syscall.getNumber());
+        }
+        AbstractSyscall[] table = new AbstractSyscall[max + 1];
+        for (AbstractSyscall syscall : syscallList) {
+            table[syscall.getNumber()] = syscall;
+        }
+        return table;
+    }
+
     /*
      * Method to find Syscall object associated with given service number.
      * Returns null if no associated object found.
      */
     public static AbstractSyscall findSyscall(int number) {
-        // linear search is OK since number of syscalls is small.
-        for (AbstractSyscall service : syscallList) {
-            if (service.getNumber() == number) {
-                return service;
-            }
-        }
-        return null;
+        AbstractSyscall[] table = syscallTable;
+        return number >= 0 && number < table.length ? table[number] : null;
     }
 
     public static ArrayList<AbstractSyscall> getSyscallList() {
@@ -0,0 +1,249 @@
+package rars.riscv.hardware;
+
+import java.util.Arrays;
+
+/**
+ * A headless model of a conditional branch direction predictor. For each branch the simulator asks for
+ * a {@link #predict prediction} and then tells the predictor the real outcome with {@link #update}.
+ * <p>
+ * All the predictors are built from tables of two bit saturating counters (0 and 1 predict not taken,
+ * 2 and 3 taken), starting weakly not taken. Table sizes must be powers of two. The families are:
+ * <ul>
+ * <li>{@link Bimodal}: one counter per branch, indexed by pc</li>
+ * <li>{@link GShare}: counters indexed by pc XOR the outcomes of the most recent branches</li>
+ * <li>{@link LocalHistory}: each branch keeps its own recent outcomes, which index the counters</li>
+ * <li>{@link Tournament}: gshare and bimodal, with a table of counters choosing which to believe</li>
+ * </ul>
+ * {@link #parse} builds one from a short description such as {@code gshare:4096:12}.
+ */
+public abstract class BranchPredictor {
+    private final String name;
+
+    protected BranchPredictor(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param pc address of the branch
+     * @return true if the branch is predicted taken
+     */
+    public abstract boolean predict(int pc);
+
+    /**
+     * Trains the predictor with the outcome of the branch last passed to {@link #predict}.
+     *
+     * @param pc    address of the branch
+     * @param taken whether it was taken
+     */
+    public abstract void update(int pc, boolean taken);
+
+    /**
+     * Forgets everything learned.
+     */
+    public abstract void reset();
+
+    /**
+     * @return the description this predictor can be parsed from
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Builds a predictor from a description: {@code bimodal:entries}, {@code gshare:entries:historyBits},
+     * {@code local:histories:historyBits} or {@code tournament:entries:historyBits}. Sizes left off
+     * default to 1024 entries or histories and 10 bits of history.
+     *
+     * @param spec the description
+     * @return the predictor
+     * @throws IllegalArgumentException if the description is not understood
+     */
+    public static BranchPredictor parse(String spec) {
+        String[] parts = spec.toLowerCase().split(":");
+        int size = 1024, bits = 10;
+        try {
+            if (parts.length > 1) size = Integer.parseInt(parts[1]);
+            if (parts.length > 2) bits = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid branch predictor size in " + spec);
+        }
+        int expected;
+        BranchPredictor predictor;
+        switch (parts[0]) {
+            case "bimodal":
+                expected = 2;
+                predictor = new Bimodal(size);
+                break;
+            case "gshare":
+                expected = 3;
+                predictor = new GShare(size, bits);
+                break;
+            case "local":
+                expected = 3;
+                predictor = new LocalHistory(size, bits);
+                break;
+            case "tournament":
+                expected = 3;
+                predictor = new Tournament(size, bits);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown branch predictor " + parts[0]);
+        }
+        if (parts.length > expected) throw new IllegalArgumentException("Too many sizes in " + spec);
+        return predictor;
+    }
+
+    private static int checkSize(int size) {
+        if (Integer.bitCount(size) != 1) throw new IllegalArgumentException("Table sizes must be powers of two");
+        return size;
+    }
+
+    private static int checkBits(int bits) {
+        if (bits < 1 || bits > 24) throw new IllegalArgumentException("History must be 1 to 24 bits");
+        return bits;
+    }
+
+    private static int index(int pc, int mask) {
+        return (pc >>> 2) & mask;
+    }
+
+    private static boolean taken(byte[] counters, int i) {
+        return counters[i] >= 2;
+    }
+
+    private static void train(byte[] counters, int i, boolean taken) {
+        int c = counters[i];
+        counters[i] = (byte) (taken ? (c < 3 ? c + 1 : 3) : (c > 0 ? c - 1 : 0));
+    }
+
+    /**
+     * One two bit counter per branch, indexed by the low bits of its address.
+     */
+    public static final class Bimodal extends BranchPredictor {
+        private final byte[] counters;
+
+        public Bimodal(int entries) {
+            super("bimodal:" + entries);
+            counters = new byte[checkSize(entries)];
+            reset();
+        }
+
+        public boolean predict(int pc) {
+            return taken(counters, index(pc, counters.length - 1));
+        }
+
+        public void update(int pc, boolean taken) {
+            train(counters, index(pc, counters.length - 1), taken);
+        }
+
+        public void reset() {
+            Arrays.fill(counters, (byte) 1);
+        }
+    }
+
+    /**
+     * Counters indexed by the branch address XOR a global history of the latest branch outcomes.
+     */
+    public static final class GShare extends BranchPredictor {
+        private final byte[] counters;
+        private final int historyMask;
+        private int history;
+
+        public GShare(int entries, int historyBits) {
+            super("gshare:" + entries + ":" + historyBits);
+            counters = new byte[checkSize(entries)];
+            historyMask = (1 << checkBits(historyBits)) - 1;
+            reset();
+        }
+
+        private int slot(int pc) {
+            return ((pc >>> 2) ^ history) & (counters.length - 1);
+        }
+
+        public boolean predict(int pc) {
+            return taken(counters, slot(pc));
+        }
+
+        public void update(int pc, boolean taken) {
+            train(counters, slot(pc), taken);
+            history = ((history << 1) | (taken ? 1 : 0)) & historyMask;
+        }
+
+        public void reset() {
+            Arrays.fill(counters, (byte) 1);
+            history = 0;
+        }
+    }
+
+    /**
+     * A table of per branch histories, indexed by address; a branch's history indexes the counters.
+     */
+    public static final class LocalHistory extends BranchPredictor {
+        private final int[] histories;
+        private final byte[] counters;
+
+        public LocalHistory(int entries, int historyBits) {
+            super("local:" + entries + ":" + historyBits);
+            histories = new int[checkSize(entries)];
+            counters = new byte[1 << checkBits(historyBits)];
+            reset();
+        }
+
+        public boolean predict(int pc) {
+            return taken(counters, histories[index(pc, histories.length - 1)]);
+        }
+
+        public void update(int pc, boolean taken) {
+            int i = index(pc, histories.length - 1);
+            train(counters, histories[i], taken);
+            histories[i] = ((histories[i] << 1) | (taken ? 1 : 0)) & (counters.length - 1);
+        }
+
+        public void reset() {
+            Arrays.fill(histories, 0);
+            Arrays.fill(counters, (byte) 1);
+        }
+    }
+
+    /**
+     * A gshare and a bimodal predictor of the same size, and a table of counters indexed by address
+     * that learns which of the two is more often right for each branch.
+     */
+    public static final class Tournament extends BranchPredictor {
+        private final GShare global;
+        private final Bimodal bimodal;
+        private final byte[] chooser; // 2 and 3 choose the global predictor
+        private boolean globalGuess, bimodalGuess;
+
+        public Tournament(int entries, int historyBits) {
+            super("tournament:" + entries + ":" + historyBits);
+            global = new GShare(entries, historyBits);
+            bimodal = new Bimodal(entries);
+            chooser = new byte[entries];
+            reset();
+        }
+
+        public boolean predict(int pc) {
+            globalGuess = global.predict(pc);
+            bimodalGuess = bimodal.predict(pc);
+            return taken(chooser, index(pc, chooser.length - 1)) ? globalGuess : bimodalGuess;
+        }
+
+        public void update(int pc, boolean taken) {
+            if (globalGuess != bimodalGuess) train(chooser, index(pc, chooser.length - 1), globalGuess == taken);
+            global.update(pc, taken);
+            bimodal.update(pc, taken);
+        }
+
+        public void reset() {
+            global.reset();
+            bimodal.reset();
+            Arrays.fill(chooser, (byte) 1);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package rars.riscv.hardware;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the branches and jumps of a program through a set of {@link BranchPredictor}s and a
+ * {@link BranchTargetBuffer}, keeping totals and per branch statistics for a report.
+ * <p>
+ * While statistics are {@link #start started}, the branch and jump instructions report their outcome
+ * through {@link rars.riscv.InstructionSet}. Every predictor sees every conditional branch; the target
+ * buffer sees every taken branch and every jump.
+ */
+public class BranchStatistics {
+    private static volatile BranchStatistics active;
+
+    private final BranchPredictor[] predictors;
+    private final BranchTargetBuffer buffer;
+
+    private long branches, taken, jumps, targetMisses;
+    private final long[] mispredictions;
+
+    // Per pc rows, found through an open addressed table of pc -> row + 1
+    private int[] table = new int[256];
+    private int rows;
+    private int[] pcs = new int[128];
+    private boolean[] isJump = new boolean[128];
+    private long[] executed = new long[128], takenCount = new long[128], missedTargets = new long[128];
+    private long[][] mispredicted;
+
+    /**
+     * @param predictors the direction predictors to compare
+     * @param buffer     the target buffer, or null for none
+     */
+    public BranchStatistics(List<BranchPredictor> predictors, BranchTargetBuffer buffer) {
+        this.predictors = predictors.toArray(new BranchPredictor[0]);
+        this.buffer = buffer;
+        mispredictions = new long[this.predictors.length];
+        mispredicted = new long[this.predictors.length][128];
+    }
+
+    /**
+     * Builds statistics from a comma separated list of predictors as accepted by
+     * {@link BranchPredictor#parse}, plus optionally {@code btb:entries} for the target buffer.
+     *
+     * @param specs for example "bimodal:4096,gshare:4096:12,btb:512"
+     * @return the statistics, not yet started
+     * @throws IllegalArgumentException if a description is not understood
+     */
+    public static BranchStatistics parse(String specs) {
+        List<BranchPredictor> predictors = new ArrayList<>();
+        BranchTargetBuffer buffer = null;
+        for (String spec : specs.split(",")) {
+            if (spec.isEmpty()) continue;
+            if (spec.toLowerCase().startsWith("btb")) {
+                try {
+                    buffer = new BranchTargetBuffer(spec.length() > 4 ? Integer.parseInt(spec.substring(4)) : 512);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid branch target buffer size in " + spec);
+                }
+            } else {
+                predictors.add(BranchPredictor.parse(spec));
+            }
+        }
+        return new BranchStatistics(predictors, buffer);
+    }
+
+    /**
+     * @return statistics comparing one of each kind of predictor with 1024 entry tables and 10 bits of
+     * history, and a 512 entry target buffer
+     */
+    public static BranchStatistics standard() {
+        return parse("bimodal,gshare,local,tournament,btb");
+    }
+
+    /**
+     * Starts collecting statistics for the following branches, replacing any collection already running.
+     *
+     * @param statistics where to collect them
+     */
+    public static void start(BranchStatistics statistics) {
+        active = statistics;
+    }
+
+    public static void stop() {
+        active = null;
+    }
+
+    /**
+     * @return the statistics being collected, or null if there are none
+     */
+    public static BranchStatistics active() {
+        return active;
+    }
+
+    /**
+     * Records a conditional branch.
+     *
+     * @param pc     address of the branch
+     * @param target where it goes if taken
+     * @param taken  whether it was taken
+     */
+    public void branch(int pc, int target, boolean taken) {
+        int row = row(pc, false);
+        branches++;
+        executed[row]++;
+        for (int p = 0; p < predictors.length; p++) {
+            if (predictors[p].predict(pc) != taken) {
+                mispredictions[p]++;
+                mispredicted[p][row]++;
+            }
+            predictors[p].update(pc, taken);
+        }
+        if (taken) {
+            this.taken++;
+            takenCount[row]++;
+            target(row, pc, target);
+        }
+    }
+
+    /**
+     * Records a jump.
+     *
+     * @param pc     address of the jump
+     * @param target where it went
+     */
+    public void jump(int pc, int target) {
+        int row = row(pc, true);
+        jumps++;
+        executed[row]++;
+        takenCount[row]++;
+        target(row, pc, target);
+    }
+
+    private void target(int row, int pc, int target) {
+        if (buffer != null && !buffer.access(pc, target)) {
+            targetMisses++;
+            missedTargets[row]++;
+        }
+    }
+
+    private int row(int pc, boolean jump) {
+        int mask = table.length - 1;
+        int i = ((pc >>> 2) * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+        for (; table[i] != 0; i = (i + 1) & mask) {
+            if (pcs[table[i] - 1] == pc) return table[i] - 1;
+        }
+        if (rows == pcs.length) grow();
+        if (rows * 2 >= table.length) {
+            rehash();
+            return row(pc, jump);
+        }
+        pcs[rows] = pc;
+        isJump[rows] = jump;
+        table[i] = ++rows;
+        return rows - 1;
+    }
+
+    private void grow() {
+        int length = pcs.length * 2;
+        pcs = Arrays.copyOf(pcs, length);
+        isJump = Arrays.copyOf(isJump, length);
+        executed = Arrays.copyOf(executed, length);
+        takenCount = Arrays.copyOf(takenCount, length);
+        missedTargets = Arrays.copyOf(missedTargets, length);
+        for (int p = 0; p < mispredicted.length; p++) mispredicted[p] = Arrays.copyOf(mispredicted[p], length);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int r = 0; r < rows; r++) {
+            int i = ((pcs[r] >>> 2) * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = r + 1;
+        }
+    }
+
+    public long getBranchCount() {
+        return branches;
+    }
+
+    public long getTakenCount() {
+        return taken;
+    }
+
+    public long getJumpCount() {
+        return jumps;
+    }
+
+    /**
+     * @param predictor index of the predictor, in the order given
+     * @return how many branches it mispredicted
+     */
+    public long getMispredictions(int predictor) {
+        return mispredictions[predictor];
+    }
+
+    /**
+     * @return how many taken branches and jumps were not found in the target buffer
+     */
+    public long getTargetMisses() {
+        return targetMisses;
+    }
+
+    /**
+     * Prints the totals for each predictor, then a line for each branch and jump in address order with
+     * how often it ran, was taken, and was mispredicted by each predictor. Columns are tab separated.
+     *
+     * @param out where to print
+     */
+    public void report(PrintStream out) {
+        out.println("Branches: " + branches + ", taken: " + taken + ", jumps: " + jumps);
+        for (int p = 0; p < predictors.length; p++) {
+            out.printf("%s\t%d mispredicted\t%.2f%%%n", predictors[p], mispredictions[p], percent(mispredictions[p], branches));
+        }
+        if (buffer != null) {
+            out.printf("btb:%d\t%d target misses\t%.2f%%%n", buffer.getEntries(), targetMisses, percent(targetMisses, taken + jumps));
+        }
+        StringBuilder header = new StringBuilder("pc\tkind\texecuted\ttaken");
+        for (BranchPredictor predictor : predictors) header.append('\t').append(predictor);
+        if (buffer != null) header.append("\tbtb");
+        out.println(header);
+        Integer[] order = new Integer[rows];
+        for (int r = 0; r < rows; r++) order[r] = r;
+        Arrays.sort(order, (a, b) -> Integer.compareUnsigned(pcs[a], pcs[b]));
+        for (int r : order) {
+            StringBuilder line = new StringBuilder(String.format("0x%08x", pcs[r]));
+            line.append(isJump[r] ? "\tjump\t" : "\tbranch\t").append(executed[r]).append('\t').append(takenCount[r]);
+            for (int p = 0; p < predictors.length; p++) line.append('\t').append(isJump[r] ? "-" : Long.toString(mispredicted[p][r]));
+            if (buffer != null) line.append('\t').append(missedTargets[r]);
+            out.println(line);
+        }
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+}
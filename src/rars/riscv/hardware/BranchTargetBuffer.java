@@ -0,0 +1,45 @@
+package rars.riscv.hardware;
+
+import java.util.Arrays;
+
+/**
+ * A headless model of a direct mapped branch target buffer, which remembers where each taken branch or
+ * jump went last time so the next instruction can be fetched before the jump is decoded.
+ */
+public class BranchTargetBuffer {
+    private final int[] tags;
+    private final int[] targets;
+
+    /**
+     * @param entries number of entries, a power of two
+     */
+    public BranchTargetBuffer(int entries) {
+        if (Integer.bitCount(entries) != 1) throw new IllegalArgumentException("Table sizes must be powers of two");
+        tags = new int[entries];
+        targets = new int[entries];
+        reset();
+    }
+
+    /**
+     * Looks up a taken branch or jump and records where it went.
+     *
+     * @param pc     address of the branch or jump
+     * @param target where it went
+     * @return true if the buffer predicted that target
+     */
+    public boolean access(int pc, int target) {
+        int i = (pc >>> 2) & (tags.length - 1);
+        boolean hit = tags[i] == pc && targets[i] == target;
+        tags[i] = pc;
+        targets[i] = target;
+        return hit;
+    }
+
+    public void reset() {
+        Arrays.fill(tags, 1); // no instruction is at an odd address
+    }
+
+    public int getEntries() {
+        return tags.length;
+    }
+}
@@ -0,0 +1,318 @@
+package rars.riscv.hardware;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A headless model of a cache's hit and miss behaviour. Nothing is stored but which blocks of memory
+ * are present, so an access costs a few array operations and allocates nothing.
+ * <p>
+ * The cache has {@code numberOfBlocks} blocks of {@code blockSizeInWords} words, grouped into sets of
+ * {@code setSizeInBlocks} blocks: a set size of 1 is direct mapped and a set size equal to the number
+ * of blocks is fully associative. All three must be powers of two. Blocks in a set are filled in order
+ * and once the set is full the replacement policy picks the one to evict:
+ * <ul>
+ * <li>{@link #LRU} the block used least recently, kept in a linked list per set</li>
+ * <li>{@link #FIFO} the block filled longest ago, kept as a counter per set</li>
+ * <li>{@link #RANDOM} any block, from a fixed seed so runs are repeatable</li>
+ * </ul>
+ * All three take constant time. Finding whether the block is present is a search of the set, or for
+ * large sets a lookup in a hash table of the blocks present.
+ */
+public class CacheModel {
+    public static final int LRU = 0, RANDOM = 1, FIFO = 2;
+    private static final String[] policyNames = {"LRU", "Random", "FIFO"};
+
+    // Sets larger than this are searched through the hash table
+    private static final int SEARCH_LIMIT = 16;
+
+    private final int numberOfBlocks, blockSizeInWords, setSizeInBlocks, numberOfSets;
+    private final int policy;
+    private final int offsetBits, setMask, wayBits;
+
+    // The memory block (address >>> offsetBits) held in each cache block
+    private final int[] lines;
+    // Per set: how many blocks are filled and the LRU list head or FIFO counter
+    private final int[] filled;
+    private final int[] order;
+    // Doubly linked circular LRU list through the blocks of each set, from the most recent along older
+    private final int[] newer, older;
+    // Open addressed table of line -> block + 1, for large sets
+    private final int[] table;
+    private final Random random = new Random(0);
+
+    private long accesses, hits;
+    private int lastBlock;
+
+    /**
+     * @param numberOfBlocks   total blocks in the cache
+     * @param blockSizeInWords words in each block
+     * @param setSizeInBlocks  blocks in each set
+     * @param policy           LRU, FIFO or RANDOM
+     * @throws IllegalArgumentException if a size is not a power of two or the set size does not divide
+     *                                  the number of blocks
+     */
+    public CacheModel(int numberOfBlocks, int blockSizeInWords, int setSizeInBlocks, int policy) {
+        if (Integer.bitCount(numberOfBlocks) != 1 || Integer.bitCount(blockSizeInWords) != 1
+                || Integer.bitCount(setSizeInBlocks) != 1 || setSizeInBlocks > numberOfBlocks) {
+            throw new IllegalArgumentException("Cache sizes must be powers of two with the set size at most the number of blocks");
+        }
+        if (policy < LRU || policy > FIFO) throw new IllegalArgumentException("Unknown replacement policy " + policy);
+        this.numberOfBlocks = numberOfBlocks;
+        this.blockSizeInWords = blockSizeInWords;
+        this.setSizeInBlocks = setSizeInBlocks;
+        this.numberOfSets = numberOfBlocks / setSizeInBlocks;
+        this.policy = policy;
+        offsetBits = Integer.numberOfTrailingZeros(blockSizeInWords * Memory.WORD_LENGTH_BYTES);
+        setMask = numberOfSets - 1;
+        wayBits = Integer.numberOfTrailingZeros(setSizeInBlocks);
+        lines = new int[numberOfBlocks];
+        filled = new int[numberOfSets];
+        order = new int[numberOfSets];
+        boolean list = policy == LRU && setSizeInBlocks > 1;
+        newer = list ? new int[numberOfBlocks] : null;
+        older = list ? new int[numberOfBlocks] : null;
+        table = setSizeInBlocks > SEARCH_LIMIT ? new int[numberOfBlocks * 2] : null;
+        reset();
+    }
+
+    /**
+     * Empties the cache and zeroes the counts.
+     */
+    public void reset() {
+        Arrays.fill(filled, 0);
+        Arrays.fill(order, 0);
+        if (table != null) Arrays.fill(table, 0);
+        random.setSeed(0);
+        accesses = 0;
+        hits = 0;
+        lastBlock = 0;
+    }
+
+    /**
+     * Accesses the memory block containing an address, bringing it into the cache on a miss.
+     *
+     * @param address the byte address accessed
+     * @return true if it was a hit
+     */
+    public boolean access(int address) {
+        accesses++;
+        int line = address >>> offsetBits;
+        int set = line & setMask;
+        int first = set << wayBits;
+        int count = filled[set];
+        int block = table != null ? find(line) : search(line, first, count);
+        if (block >= 0) {
+            hits++;
+            lastBlock = block;
+            if (newer != null) touch(set, block);
+            return true;
+        }
+        if (count < setSizeInBlocks) {
+            block = first + count;
+            filled[set] = count + 1;
+            if (newer != null) {
+                if (count == 0) {
+                    newer[block] = block;
+                    older[block] = block;
+                    order[set] = block;
+                } else {
+                    link(set, block);
+                }
+            }
+        } else {
+            block = victim(set, first);
+            if (table != null) remove(lines[block]);
+        }
+        lines[block] = line;
+        if (table != null) insert(line, block);
+        lastBlock = block;
+        return false;
+    }
+
+    /**
+     * Accesses each address in turn.
+     *
+     * @param addresses byte addresses
+     * @param length    how many of them to use
+     */
+    public void access(int[] addresses, int length) {
+        for (int i = 0; i < length; i++) access(addresses[i]);
+    }
+
+    private int search(int line, int first, int count) {
+        for (int block = first, end = first + count; block < end; block++) {
+            if (lines[block] == line) return block;
+        }
+        return -1;
+    }
+
+    private int victim(int set, int first) {
+        if (setSizeInBlocks == 1) return first;
+        switch (policy) {
+            case RANDOM:
+                return first + random.nextInt(setSizeInBlocks);
+            case FIFO:
+                int next = order[set];
+                order[set] = (next + 1) & (setSizeInBlocks - 1);
+                return first + next;
+            case LRU:
+            default:
+                // The least recent block becomes the most recent, which is just a rotation of the list
+                int last = newer[order[set]];
+                order[set] = last;
+                return last;
+        }
+    }
+
+    // Moves a block to the front of its set's LRU list
+    private void touch(int set, int block) {
+        int head = order[set];
+        if (block == head) return;
+        if (block == newer[head]) { // the least recent block: just rotate
+            order[set] = block;
+            return;
+        }
+        newer[older[block]] = newer[block];
+        older[newer[block]] = older[block];
+        link(set, block);
+    }
+
+    // Puts a block that is not in the list at the front of it
+    private void link(int set, int block) {
+        int head = order[set];
+        int last = newer[head];
+        newer[block] = last;
+        older[block] = head;
+        older[last] = block;
+        newer[head] = block;
+        order[set] = block;
+    }
+
+    private int slot(int line) {
+        return (line * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(table.length - 1);
+    }
+
+    private int find(int line) {
+        int mask = table.length - 1;
+        for (int i = slot(line); table[i] != 0; i = (i + 1) & mask) {
+            if (lines[table[i] - 1] == line) return table[i] - 1;
+        }
+        return -1;
+    }
+
+    private void insert(int line, int block) {
+        int mask = table.length - 1;
+        int i = slot(line);
+        while (table[i] != 0) i = (i + 1) & mask;
+        table[i] = block + 1;
+    }
+
+    // Removes a line from the table, shifting back the entries probed past it
+    private void remove(int line) {
+        int mask = table.length - 1;
+        int i = slot(line);
+        while (lines[table[i] - 1] != line) i = (i + 1) & mask;
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = slot(lines[table[j] - 1]);
+            // Move the entry at j into the hole at i unless its home lies cyclically in (i, j]
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+    }
+
+    /**
+     * @return the cache block used by the last access, counting from 0 across all sets
+     */
+    public int getLastBlock() {
+        return lastBlock;
+    }
+
+    public long getAccessCount() {
+        return accesses;
+    }
+
+    public long getHitCount() {
+        return hits;
+    }
+
+    public long getMissCount() {
+        return accesses - hits;
+    }
+
+    /**
+     * @return hits as a fraction of accesses, or 0 before the first access
+     */
+    public double getHitRate() {
+        return accesses == 0 ? 0 : hits / (double) accesses;
+    }
+
+    /**
+     * @param address a byte address
+     * @return the tag the cache would store for it
+     */
+    public int getTag(int address) {
+        return address >>> offsetBits >>> Integer.numberOfTrailingZeros(numberOfSets);
+    }
+
+    /**
+     * @param address a byte address
+     * @return the set it maps to
+     */
+    public int getSetNumber(int address) {
+        return (address >>> offsetBits) & setMask;
+    }
+
+    public int getNumberOfBlocks() {
+        return numberOfBlocks;
+    }
+
+    public int getNumberOfSets() {
+        return numberOfSets;
+    }
+
+    public int getSetSizeInBlocks() {
+        return setSizeInBlocks;
+    }
+
+    public int getBlockSizeInWords() {
+        return blockSizeInWords;
+    }
+
+    public int getCacheSizeInBytes() {
+        return numberOfBlocks * blockSizeInWords * Memory.WORD_LENGTH_BYTES;
+    }
+
+    public int getReplacementPolicy() {
+        return policy;
+    }
+
+    /**
+     * @param policy LRU, FIFO or RANDOM
+     * @return its name, as used by {@link #parsePolicy}
+     */
+    public static String policyName(int policy) {
+        return policyNames[policy];
+    }
+
+    /**
+     * @param name a policy name, in any case
+     * @return LRU, FIFO or RANDOM
+     * @throws IllegalArgumentException if it is none of them
+     */
+    public static int parsePolicy(String name) {
+        for (int i = 0; i < policyNames.length; i++) {
+            if (policyNames[i].equalsIgnoreCase(name)) return i;
+        }
+        throw new IllegalArgumentException("Unknown replacement policy " + name);
+    }
+
+    @Override
+    public String toString() {
+        return numberOfBlocks + " blocks of " + blockSizeInWords + " words, " + setSizeInBlocks + "-way "
+                + policyName(policy);
+    }
+}
@@ -1,7 +1,9 @@
 package rars.riscv.hardware;
 
 import rars.Globals;
+import rars.simulator.BackStepper;
 
+import java.util.Arrays;
 import java.util.Observer;
 
 /*
@@ -46,37 +48,68 @@ public class ControlAndStatusRegisterFile {
 
 
     public static final int INTERRUPT_ENABLE = 0x1;
-    
+
+    // Numbers of the implemented CSRs.  Number based accesses are resolved through a table
+    // in the register block, so hot code should use these rather than the register names.
+    public static final int USTATUS = 0x000;
+    public static final int FFLAGS = 0x001;
+    public static final int FRM = 0x002;
+    public static final int FCSR = 0x003;
+    public static final int UIE = 0x004;
+    public static final int UTVEC = 0x005;
+    public static final int USCRATCH = 0x040;
+    public static final int UEPC = 0x041;
+    public static final int UCAUSE = 0x042;
+    public static final int UTVAL = 0x043;
+    public static final int UIP = 0x044;
+    public static final int CYCLE = 0xC00;
+    public static final int TIME = 0xC01;
+    public static final int INSTRET = 0xC02;
+    public static final int CYCLEH = 0xC80;
+    public static final int TIMEH = 0xC81;
+    public static final int INSTRETH = 0xC82;
+
     private static final RegisterBlock instance;
 
     static {
         // TODO: consider making time, cycle and instret 64 bit registers which then are linked to by *h
         // Remember to update the window tooltips when adding a CSR
         Register[] tmp = {
-                new MaskedRegister("ustatus", 0x000, 0,~0x11),
+                new MaskedRegister("ustatus", USTATUS, 0,~0x11),
                 null, // fflags
                 null, // frm
-                new MaskedRegister("fcsr", 0x003, 0, ~0xFF),
-                new Register("uie", 0x004, 0),
-                new Register("utvec", 0x005, 0),
-                new Register("uscratch", 0x040, 0),
-                new Register("uepc", 0x041, 0),
-                new Register("ucause", 0x042, 0),
-                new Register("utval", 0x043, 0),
-                new Register("uip", 0x044, 0),
-                new ReadOnlyRegister("cycle", 0xC00, 0),
-                new ReadOnlyRegister("time", 0xC01, 0),
-                new ReadOnlyRegister("instret",0xC02, 0),
+                new MaskedRegister("fcsr", FCSR, 0, ~0xFF),
+                new Register("uie", UIE, 0),
+                new Register("utvec", UTVEC, 0),
+                new Register("uscratch", USCRATCH, 0),
+                new Register("uepc", UEPC, 0),
+                new Register("ucause", UCAUSE, 0),
+                new Register("utval", UTVAL, 0),
+                new Register("uip", UIP, 0),
+                new ReadOnlyRegister("cycle", CYCLE, 0),
+                new ReadOnlyRegister("time", TIME, 0),
+                new ReadOnlyRegister("instret",INSTRET, 0),
                 null, // cycleh
                 null, // timeh
                 null, // instreth
         };
-        tmp[1] = new LinkedRegister("fflags", 0x001, tmp[3], 0x1F);
-        tmp[2] = new LinkedRegister("frm", 0x002, tmp[3], 0xE0);
-
-        tmp[14] = new LinkedRegister("cycleh", 0xC80,tmp[11], 0xFFFFFFFF_00000000L);
-        tmp[15] = new LinkedRegister("timeh", 0xC81, tmp[12],0xFFFFFFFF_00000000L);
-        tmp[16] = new LinkedRegister("instreth",0xC82, tmp[13],0xFFFFFFFF_00000000L);
+        tmp[1] = new LinkedRegister("fflags", FFLAGS, tmp[3], 0x1F);
+        tmp[2] = new LinkedRegister("frm", FRM, tmp[3], 0xE0);
+
+        tmp[14] = new LinkedRegister("cycleh", CYCLEH,tmp[11], 0xFFFFFFFF_00000000L);
+        tmp[15] = new LinkedRegister("timeh", TIMEH, tmp[12],0xFFFFFFFF_00000000L);
+        tmp[16] = new LinkedRegister("instreth",INSTRETH, tmp[13],0xFFFFFFFF_00000000L);
+
+        // mhpmevent3-10, hpmcounter3-10, then hpmcounter3h-10h
+        int fixed = tmp.length, n = PerformanceCounters.COUNT;
+        tmp = Arrays.copyOf(tmp, fixed + 3 * n);
+        for (int i = 0; i < n; i++) {
+            int counter = PerformanceCounters.FIRST + i;
+            tmp[fixed + i] = new PerformanceCounters.EventRegister(counter);
+            tmp[fixed + n + i] = new PerformanceCounters.CounterRegister(counter);
+            tmp[fixed + 2 * n + i] = new LinkedRegister("hpmcounter" + counter + "h",
+                    PerformanceCounters.HPMCOUNTER3H + i, tmp[fixed + n + i], 0xFFFFFFFF_00000000L);
+        }
         instance = new RegisterBlock('_', tmp); // prefix not used
     }
 
@@ -92,11 +125,12 @@ public class ControlAndStatusRegisterFile {
             return true;
         }
         // TODO: do something to better handle the h csrs
-        if (num >= 0xC80 && num <= 0xC82) {
+        if (num >= CYCLEH && num < PerformanceCounters.HPMCOUNTER3H + PerformanceCounters.COUNT) {
             return true;
         }
-        if ((Globals.getSettings().getBackSteppingEnabled())) {
-            Globals.program.getBackStepper().addControlAndStatusRestore(num, instance.updateRegister(num, val));
+        BackStepper backStepper = BackStepper.recording();
+        if (backStepper != null) {
+            backStepper.addControlAndStatusRestore(num, instance.updateRegister(num, val));
         } else {
             instance.updateRegister(num, val);
         }
@@ -122,8 +156,9 @@ public class ControlAndStatusRegisterFile {
      * @return old value in register prior to update
      **/
     public static void updateRegisterBackdoor(int num, long val) {
-        if ((Globals.getSettings().getBackSteppingEnabled())) {
-            Globals.program.getBackStepper().addControlAndStatusBackdoor(num, instance.getRegister(num).setValueBackdoor(val));
+        BackStepper backStepper = BackStepper.recording();
+        if (backStepper != null) {
+            backStepper.addControlAndStatusBackdoor(num, instance.getRegister(num).setValueBackdoor(val));
         } else {
             instance.getRegister(num).setValueBackdoor(val);
         }
@@ -212,6 +247,17 @@ public class ControlAndStatusRegisterFile {
         return (int)instance.getValue(name);
     }
 
+    /**
+     * Returns the value of the register without notifying observers
+     *
+     * @param num The register number.
+     * @return The value of the given register.  0 for non-implemented registers
+     **/
+
+    public static long getValueNoNotify(int num) {
+        return instance.getRegister(num).getValueNoNotify();
+    }
+
     /**
      * Returns the value of the register without notifying observers
      *
@@ -264,6 +310,19 @@ public class ControlAndStatusRegisterFile {
         instance.resetRegisters();
     }
 
+    /**
+     * Copies out the values of the registers, for running something else in between.
+     *
+     * @return the values, to give to {@link #restoreValues}
+     */
+    public static long[] saveValues() {
+        return instance.saveValues();
+    }
+
+    public static void restoreValues(long[] saved) {
+        instance.restoreValues(saved);
+    }
+
     /**
      * Each individual register is a separate object and Observable.  This handy method
      * will add the given Observer to each one.
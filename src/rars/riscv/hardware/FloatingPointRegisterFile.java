@@ -1,6 +1,9 @@
 package rars.riscv.hardware;
 
 import rars.Globals;
+import rars.simulator.BackStepper;
+import rars.trace.TraceRecord;
+import rars.trace.TraceWriter;
 
 import java.util.Observer;
 
@@ -46,6 +49,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 // Float.intBitsToFloat() to bring it back.
 
 public class FloatingPointRegisterFile {
+    // The first two argument registers, by number, for system calls to read without looking up names
+    public static final int FA0 = 10;
+    public static final int FA1 = 11;
     private static final RegisterBlock instance = new RegisterBlock('f', new Register[]{
             new Register("ft0", 0, 0), new Register("ft1", 1, 0),
             new Register("ft2", 2, 0), new Register("ft3", 3, 0),
@@ -87,6 +93,17 @@ public class FloatingPointRegisterFile {
         return Float.intBitsToFloat(getValue(name));
     }
 
+    /**
+     * Gets the float value stored in the given FPU register.
+     *
+     * @param num Register to get the value of.
+     * @return The  float value stored by that register.
+     **/
+
+    public static float getFloatFromRegister(int num) {
+        return Float.intBitsToFloat(getValue(num));
+    }
+
     /**
      * This method updates the FPU register value who's number is num.  Note the
      * registers themselves hold an int value.  There are helper methods available
@@ -98,19 +115,28 @@ public class FloatingPointRegisterFile {
 
     public static void updateRegister(int num, int val) {
         long lval = val | 0xFFFFFFFF_00000000L; // NAN box if used as float
-        if ((Globals.getSettings().getBackSteppingEnabled())) {
-            Globals.program.getBackStepper().addFloatingPointRestore(num, instance.updateRegister(num, lval));
+        BackStepper backStepper = BackStepper.recording();
+        if (backStepper != null) {
+            backStepper.addFloatingPointRestore(num, instance.updateRegister(num, lval));
         } else {
             instance.updateRegister(num, lval);
         }
+        trace(num, lval);
     }
 
     public static void updateRegisterLong(int num, long val) {
-        if ((Globals.getSettings().getBackSteppingEnabled())) {
-            Globals.program.getBackStepper().addFloatingPointRestore(num, instance.updateRegister(num, val));
+        BackStepper backStepper = BackStepper.recording();
+        if (backStepper != null) {
+            backStepper.addFloatingPointRestore(num, instance.updateRegister(num, val));
         } else {
             instance.updateRegister(num, val);
         }
+        trace(num, val);
+    }
+
+    private static void trace(int num, long val) {
+        TraceWriter trace = TraceWriter.active();
+        if (trace != null) trace.register(TraceRecord.FLOATING_POINT_REGISTER, num, val);
     }
     /**
      * Gets the raw int value actually stored in a Register.  If you need a
@@ -180,6 +206,19 @@ public class FloatingPointRegisterFile {
         instance.resetRegisters();
     }
 
+    /**
+     * Copies out the values of the registers, for running something else in between.
+     *
+     * @return the values, to give to {@link #restoreValues}
+     */
+    public static long[] saveValues() {
+        return instance.saveValues();
+    }
+
+    public static void restoreValues(long[] saved) {
+        instance.restoreValues(saved);
+    }
+
 
     /**
      * Each individual register is a separate object and Observable.  This handy method
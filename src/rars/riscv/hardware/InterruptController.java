@@ -33,6 +33,43 @@ public class InterruptController {
         }
     }
 
+    /**
+     * What is pending, saved so that another run can use the controller in between
+     */
+    public static final class State {
+        private final boolean externalPending, timerPending, trapPending;
+        private final int externalValue, timerValue, trapPC;
+        private final SimulationException trapSE;
+
+        private State() {
+            externalPending = InterruptController.externalPending;
+            externalValue = InterruptController.externalValue;
+            timerPending = InterruptController.timerPending;
+            timerValue = InterruptController.timerValue;
+            trapPending = InterruptController.trapPending;
+            trapSE = InterruptController.trapSE;
+            trapPC = InterruptController.trapPC;
+        }
+    }
+
+    public static State save() {
+        synchronized (lock) {
+            return new State();
+        }
+    }
+
+    public static void restore(State state) {
+        synchronized (lock) {
+            externalPending = state.externalPending;
+            externalValue = state.externalValue;
+            timerPending = state.timerPending;
+            timerValue = state.timerValue;
+            trapPending = state.trapPending;
+            trapSE = state.trapSE;
+            trapPC = state.trapPC;
+        }
+    }
+
     public static boolean registerExternalInterrupt(int value) {
         synchronized (lock) {
             if (externalPending) return false;
@@ -4,9 +4,14 @@ import rars.Globals;
 import rars.ProgramStatement;
 import rars.Settings;
 import rars.SimulationException;
+import rars.management.SimulatorMetrics;
 import rars.riscv.Instruction;
+import rars.simulator.BackStepper;
+import rars.trace.TraceRecord;
+import rars.trace.TraceWriter;
 import rars.util.Binary;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Observable;
 import java.util.Observer;
@@ -227,6 +232,18 @@ public class Memory extends Observable {
     }
 
     public boolean copyFrom(Memory other){
+        return copyFrom(other, false);
+    }
+
+    /**
+     * Copies the contents of another memory into this one.
+     *
+     * @param other     the memory to copy
+     * @param shareText true to share the text segment with other rather than copy it, which is only safe
+     *                  if neither is written to with self-modifying code
+     * @return false if the memories are not configured the same, so nothing was copied
+     */
+    public boolean copyFrom(Memory other, boolean shareText){
         if(textBlockTable.length != other.textBlockTable.length ||
                 dataBlockTable.length != other.dataBlockTable.length ||
                 stackBlockTable.length != other.stackBlockTable.length ||
@@ -237,7 +254,7 @@ public class Memory extends Observable {
 
         for(int i = 0; i < textBlockTable.length; i++){
             if(other.textBlockTable[i] != null){
-                textBlockTable[i] = other.textBlockTable[i].clone(); // TODO: potentially make ProgramStatement clonable
+                textBlockTable[i] = shareText ? other.textBlockTable[i] : other.textBlockTable[i].clone(); // TODO: potentially make ProgramStatement clonable
             }else{
                 textBlockTable[i] = null;
             }
@@ -288,6 +305,7 @@ public class Memory extends Observable {
     public void clear() {
         setConfiguration();
         initialize();
+        System.gc(); // call garbage collector on any Table memory just deallocated.
     }
 
     /**
@@ -329,7 +347,6 @@ public class Memory extends Observable {
         dataBlockTable = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
         stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
         memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
-        System.gc(); // call garbage collector on any Table memory just deallocated.
     }
 
     // TODO: add some heap managment so programs can malloc and free
@@ -477,8 +494,9 @@ public class Memory extends Observable {
                     SimulationException.STORE_ACCESS_FAULT, address);
         }
         notifyAnyObservers(AccessNotice.WRITE, address, WORD_LENGTH_BYTES, value);
-        if (Globals.getSettings().getBackSteppingEnabled()) {
-            Globals.program.getBackStepper().addMemoryRestoreRawWord(address, oldValue);
+        BackStepper backStepper = BackStepper.recording();
+        if (backStepper != null) {
+            backStepper.addMemoryRestoreRawWord(address, oldValue);
         }
         return oldValue;
     }
@@ -496,9 +514,12 @@ public class Memory extends Observable {
      **/
     public int setWord(int address, int value) throws AddressErrorException {
         checkStoreWordAligned(address);
-        return (Globals.getSettings().getBackSteppingEnabled())
-                ? Globals.program.getBackStepper().addMemoryRestoreWord(address, set(address, value, WORD_LENGTH_BYTES))
+        BackStepper backStepper = BackStepper.recording();
+        int old = backStepper != null
+                ? backStepper.addMemoryRestoreWord(address, set(address, value, WORD_LENGTH_BYTES))
                 : set(address, value, WORD_LENGTH_BYTES);
+        trace(TraceRecord.STORE, address, WORD_LENGTH_BYTES, value);
+        return old;
     }
 
 
@@ -518,9 +539,12 @@ public class Memory extends Observable {
             throw new AddressErrorException("store address not aligned on halfword boundary ",
                     SimulationException.STORE_ADDRESS_MISALIGNED, address);
         }
-        return (Globals.getSettings().getBackSteppingEnabled())
-                ? Globals.program.getBackStepper().addMemoryRestoreHalf(address, set(address, value, 2))
+        BackStepper backStepper = BackStepper.recording();
+        int old = backStepper != null
+                ? backStepper.addMemoryRestoreHalf(address, set(address, value, 2))
                 : set(address, value, 2);
+        trace(TraceRecord.STORE, address, 2, value);
+        return old;
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////
@@ -534,9 +558,12 @@ public class Memory extends Observable {
      **/
 
     public int setByte(int address, int value) throws AddressErrorException {
-        return (Globals.getSettings().getBackSteppingEnabled())
-                ? Globals.program.getBackStepper().addMemoryRestoreByte(address, set(address, value, 1))
+        BackStepper backStepper = BackStepper.recording();
+        int old = backStepper != null
+                ? backStepper.addMemoryRestoreByte(address, set(address, value, 1))
                 : set(address, value, 1);
+        trace(TraceRecord.STORE, address, 1, value);
+        return old;
     }
 
 
@@ -554,8 +581,10 @@ public class Memory extends Observable {
         oldHighOrder = set(address + 4, (int) (value >> 32), 4);
         oldLowOrder = set(address, (int) value, 4);
         long old = ((long)oldHighOrder << 32) | (oldLowOrder & 0xFFFFFFFFL);
-        return (Globals.getSettings().getBackSteppingEnabled())
-                ? Globals.program.getBackStepper().addMemoryRestoreDoubleWord(address, old)
+        trace(TraceRecord.STORE, address, 8, value);
+        BackStepper backStepper = BackStepper.recording();
+        return backStepper != null
+                ? backStepper.addMemoryRestoreDoubleWord(address, old)
                 : old;
     }
 
@@ -800,7 +829,9 @@ public class Memory extends Observable {
         int oldHighOrder, oldLowOrder;
         oldHighOrder = get(address + 4,4);
         oldLowOrder = get(address,  4);
-        return ((long)oldHighOrder << 32) | (oldLowOrder & 0xFFFFFFFFL);
+        long value = ((long)oldHighOrder << 32) | (oldLowOrder & 0xFFFFFFFFL);
+        trace(TraceRecord.LOAD, address, 8, value);
+        return value;
     }
     ///////////////////////////////////////////////////////////////////////////////////////
 
@@ -815,7 +846,9 @@ public class Memory extends Observable {
      **/
     public int getWord(int address) throws AddressErrorException {
         checkLoadWordAligned(address);
-        return get(address, WORD_LENGTH_BYTES, true);
+        int value = get(address, WORD_LENGTH_BYTES, true);
+        trace(TraceRecord.LOAD, address, WORD_LENGTH_BYTES, value);
+        return value;
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////
@@ -849,7 +882,9 @@ public class Memory extends Observable {
             throw new AddressErrorException("Load address not aligned on halfword boundary ",
                     SimulationException.LOAD_ADDRESS_MISALIGNED, address);
         }
-        return get(address, 2);
+        int value = get(address, 2);
+        trace(TraceRecord.LOAD, address, 2, value);
+        return value;
     }
 
 
@@ -862,7 +897,15 @@ public class Memory extends Observable {
      * @return Value stored at that address.  Only low order 8 bits used.
      **/
     public int getByte(int address) throws AddressErrorException {
-        return get(address, 1);
+        int value = get(address, 1);
+        trace(TraceRecord.LOAD, address, 1, value);
+        return value;
+    }
+
+    // Reports an access made by the program to the execution trace, if one is being recorded
+    private static void trace(int type, int address, int size, long value) {
+        TraceWriter trace = TraceWriter.active();
+        if (trace != null) trace.memory(type, address, size, value);
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -911,6 +954,212 @@ public class Memory extends Observable {
     }
 
 
+    /********************************  THE BULK METHODS  ********************************/
+
+    // These move whole ranges of bytes, for system calls and the like.  Within the data
+    // segment (which holds the heap) or the stack, each block is looked up once, and there is
+    // one notice to observers and one back step for the whole range.  Anywhere else (the text
+    // segment, memory mapped I/O or a range crossing segments) they go a byte at a time through
+    // getByte and setByte, so devices and self-modifying code see the same accesses as always.
+
+    /**
+     * Reads a range of bytes.
+     *
+     * @param address address of the first byte
+     * @param buffer  where to put the bytes
+     * @param offset  index in buffer of the first byte
+     * @param length  number of bytes to read
+     * @throws AddressErrorException if part of the range cannot be read
+     **/
+    public void readBytes(int address, byte[] buffer, int offset, int length) throws AddressErrorException {
+        if (length <= 0) return;
+        int[][] blockTable = bulkTable(address, length);
+        if (blockTable == null) {
+            for (int i = 0; i < length; i++) {
+                buffer[offset + i] = (byte) getByte(address + i);
+            }
+            return;
+        }
+        transferBytesInTable(blockTable, address, buffer, offset, length, FETCH);
+        notifyAnyObserversOfRange(AccessNotice.READ, address, length);
+        trace(TraceRecord.LOAD, address, buffer, offset, length);
+    }
+
+    /**
+     * Reads a range of bytes.
+     *
+     * @param address address of the first byte
+     * @param length  number of bytes to read
+     * @return the bytes
+     * @throws AddressErrorException if part of the range cannot be read
+     **/
+    public byte[] readBytes(int address, int length) throws AddressErrorException {
+        byte[] bytes = new byte[Math.max(length, 0)];
+        readBytes(address, bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * Writes a range of bytes.
+     *
+     * @param address address of the first byte
+     * @param buffer  the bytes to write
+     * @param offset  index in buffer of the first byte
+     * @param length  number of bytes to write
+     * @throws AddressErrorException if part of the range cannot be written; with the byte at a
+     *                               time fallback, the bytes before it will have been written
+     **/
+    public void writeBytes(int address, byte[] buffer, int offset, int length) throws AddressErrorException {
+        if (length <= 0) return;
+        int[][] blockTable = bulkTable(address, length);
+        if (blockTable == null) {
+            for (int i = 0; i < length; i++) {
+                setByte(address + i, buffer[offset + i]);
+            }
+            return;
+        }
+        BackStepper backStepper = BackStepper.recording();
+        if (backStepper != null) {
+            byte[] old = new byte[length];
+            transferBytesInTable(blockTable, address, old, 0, length, FETCH);
+            backStepper.addMemoryRestoreRange(address, old);
+        }
+        transferBytesInTable(blockTable, address, buffer, offset, length, STORE);
+        notifyAnyObserversOfRange(AccessNotice.WRITE, address, length);
+        trace(TraceRecord.STORE, address, buffer, offset, length);
+    }
+
+    /**
+     * Sets a range of bytes to the same value.
+     *
+     * @param address address of the first byte
+     * @param value   value to store; only the low order 8 bits are used
+     * @param length  number of bytes to set
+     * @throws AddressErrorException if part of the range cannot be written
+     **/
+    public void fill(int address, int value, int length) throws AddressErrorException {
+        if (length <= 0) return;
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        writeBytes(address, bytes, 0, length);
+    }
+
+    /**
+     * Copies a range of bytes.  The ranges may overlap.
+     *
+     * @param from   address of the first byte to copy
+     * @param to     address to copy it to
+     * @param length number of bytes to copy
+     * @throws AddressErrorException if part of either range cannot be read or written
+     **/
+    public void copy(int from, int to, int length) throws AddressErrorException {
+        if (length <= 0) return;
+        writeBytes(to, readBytes(from, length), 0, length);
+    }
+
+    /**
+     * Looks for a byte, such as the null at the end of a string.  This is a search rather than
+     * an access by the program, so observers are not notified.
+     *
+     * @param address address to start looking from
+     * @param value   value to look for; only the low order 8 bits are used
+     * @param limit   number of bytes to look through
+     * @return the address of the first byte with that value, or -1 if there is none within the limit
+     * @throws AddressErrorException if it reaches a byte that cannot be read before finding the value
+     **/
+    public int findByte(int address, int value, int limit) throws AddressErrorException {
+        byte target = (byte) value;
+        int searched = 0;
+        int[][] blockTable = bulkTable(address, 1);
+        if (blockTable != null) {
+            // As far as the end of the segment; a byte at a time from there
+            int inSegment = (blockTable == stackBlockTable) ? stackBaseAddress - address + 1
+                    : dataSegmentLimitAddress - address;
+            byte[] chunk = new byte[BLOCK_LENGTH_WORDS * WORD_LENGTH_BYTES];
+            while (searched < limit && searched < inSegment) {
+                int length = Math.min(chunk.length, Math.min(limit, inSegment) - searched);
+                transferBytesInTable(blockTable, address + searched, chunk, 0, length, FETCH);
+                for (int i = 0; i < length; i++) {
+                    if (chunk[i] == target) return address + searched + i;
+                }
+                searched += length;
+            }
+        }
+        for (; searched < limit; searched++) {
+            if ((byte) get(address + searched, 1, false) == target) return address + searched;
+        }
+        return -1;
+    }
+
+    // The table holding the whole of a range in the data segment or stack, or null if it is not
+    // all in one of them.
+    private int[][] bulkTable(int address, int length) {
+        int last = address + length - 1;
+        if (last < address) return null; // wraps around
+        if (inDataSegment(address) && inDataSegment(last)) return dataBlockTable;
+        if (address > stackLimitAddress && last <= stackBaseAddress
+                && (last < dataSegmentBaseAddress || address >= dataSegmentLimitAddress)) {
+            return stackBlockTable;
+        }
+        return null;
+    }
+
+    // Copies bytes between a table and an array, a block at a time.  Fetching from a block
+    // never written gives zeros without allocating it.  Byte n of a word is bits 8n to 8n+7,
+    // as in storeOrFetchBytesInTable; in the stack, higher addresses are earlier words.
+    private synchronized void transferBytesInTable(int[][] blockTable, int address, byte[] buffer,
+                                                   int offset, int length, boolean op) {
+        boolean stack = blockTable == stackBlockTable;
+        int end = offset + length;
+        while (offset < end) {
+            int word, position;
+            if (stack) {
+                position = (address - stackBaseAddress) & 3;
+                word = (stackBaseAddress - address + position) >> 2;
+            } else {
+                position = (address - dataSegmentBaseAddress) & 3;
+                word = (address - dataSegmentBaseAddress) >> 2;
+            }
+            int block = word / BLOCK_LENGTH_WORDS, index = word % BLOCK_LENGTH_WORDS;
+            // Number of bytes from address to the end of the block, in address order
+            int inBlock = (stack ? (index + 1) : (BLOCK_LENGTH_WORDS - index)) * WORD_LENGTH_BYTES - position;
+            int count = Math.min(inBlock, end - offset);
+            int[] words = blockTable[block];
+            if (words == null) {
+                if (op == FETCH) {
+                    Arrays.fill(buffer, offset, offset + count, (byte) 0);
+                    offset += count;
+                    address += count;
+                    continue;
+                }
+                words = blockTable[block] = new int[BLOCK_LENGTH_WORDS];
+                SimulatorMetrics.pageAllocated();
+            }
+            for (int i = 0; i < count; i++) {
+                int w = stack ? index - ((position + i) >> 2) : index + ((position + i) >> 2);
+                int shift = ((position + i) & 3) << 3;
+                if (op == STORE) {
+                    words[w] = (words[w] & ~(0xFF << shift)) | ((buffer[offset + i] & 0xFF) << shift);
+                } else {
+                    buffer[offset + i] = (byte) (words[w] >>> shift);
+                }
+            }
+            offset += count;
+            address += count;
+        }
+    }
+
+    // Reports a bulk access to the execution trace, a byte at a time as the trace would only
+    // keep so many anyway.
+    private static void trace(int type, int address, byte[] buffer, int offset, int length) {
+        TraceWriter trace = TraceWriter.active();
+        if (trace == null) return;
+        for (int i = 0; i < length && i < TraceRecord.MAX_EFFECTS; i++) {
+            trace.memory(type, address + i, 1, buffer[offset + i] & 0xFF);
+        }
+    }
+
+
     /*********************************  THE UTILITIES  *************************************/
 
     /**
@@ -1121,6 +1370,10 @@ public class Memory extends Observable {
             return (address >= lowAddress && address <= highAddress - 1 + WORD_LENGTH_BYTES);
         }
 
+        public boolean overlaps(int address, int length) {
+            return address <= highAddress - 1 + WORD_LENGTH_BYTES && address + length - 1 >= lowAddress;
+        }
+
         public void notifyObserver(MemoryAccessNotice notice) {
             this.setChanged();
             this.notifyObservers(notice);
@@ -1154,6 +1407,20 @@ public class Memory extends Observable {
             for (MemoryObservable mo : observables) {
                 if (mo.match(address)) {
                     mo.notifyObserver(new MemoryAccessNotice(type, address, length, value));
+                    SimulatorMetrics.notified(1);
+                }
+            }
+        }
+    }
+
+    // Same as above, for a bulk access to a range of bytes.  Every observer watching any of the
+    // range gets one notice for all of it, with a value of 0.
+    private void notifyAnyObserversOfRange(int type, int address, int length) {
+        if ((Globals.program != null || Globals.getGui() == null) && this.observables.size() > 0) {
+            for (MemoryObservable mo : observables) {
+                if (mo.overlaps(address, length)) {
+                    mo.notifyObserver(new MemoryAccessNotice(type, address, length, 0));
+                    SimulatorMetrics.notified(1);
                 }
             }
         }
@@ -1219,9 +1486,10 @@ public class Memory extends Observable {
             block = relativeWordAddress / BLOCK_LENGTH_WORDS;  // Block number
             offset = relativeWordAddress % BLOCK_LENGTH_WORDS; // Word within that block
             if (blockTable[block] == null) {
-                if (op == STORE)
+                if (op == STORE) {
                     blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-                else
+                    SimulatorMetrics.pageAllocated();
+                } else
                     return 0;
             }
             if (byteOrder == LITTLE_ENDIAN) bytePositionInMemory = 3 - bytePositionInMemory;
@@ -1254,6 +1522,7 @@ public class Memory extends Observable {
         if (blockTable[block] == null) {
             // First time writing to this block, so allocate the space.
             blockTable[block] = new int[BLOCK_LENGTH_WORDS];
+            SimulatorMetrics.pageAllocated();
         }
         oldValue = blockTable[block][offset];
         blockTable[block][offset] = value;
@@ -71,14 +71,16 @@ public class MemoryAccessNotice extends AccessNotice {
     }
 
     /**
-     * Fetch the length in bytes of the access operation (4,2,1).
+     * Fetch the length in bytes of the access operation (4,2,1), or of the whole range
+     * for a bulk access such as {@link Memory#readBytes}.
      */
     public int getLength() {
         return length;
     }
 
     /**
-     * Fetch the value of the access operation (the value read or written).
+     * Fetch the value of the access operation (the value read or written).  This is 0
+     * for a bulk access.
      */
     public int getValue() {
         return value;
@@ -0,0 +1,259 @@
+package rars.riscv.hardware;
+
+import rars.simulator.InstructionListener;
+
+import java.util.Arrays;
+
+/**
+ * The hardware performance monitoring counters, hpmcounter3 to hpmcounter10.
+ * <p>
+ * Each counter counts the event selected by writing its number to the matching mhpmevent CSR
+ * (mhpmevent3 for hpmcounter3 and so on); event 0, the default, counts nothing. Programs can then read
+ * the counter with csrr before and after the code they want to measure. As in hardware, changing the
+ * event does not reset the counter; it carries on from its current value. The counters cannot be
+ * written.
+ * <p>
+ * Nothing is counted unless some counter selects an event, and then only the selected events are.
+ * The counter CSRs are not updated as events happen: they work out their value from the event totals
+ * when read.
+ * <p>
+ * Branch mispredictions come from a {@link BranchPredictor}, 1024 entry bimodal by default, and cache
+ * misses from a pair of {@link CacheModel}s, 1 KB 4-way LRU by default.
+ */
+public class PerformanceCounters {
+    public static final int NONE = 0;
+    public static final int LOADS = 1;
+    public static final int STORES = 2;
+    public static final int TAKEN_BRANCHES = 3;
+    public static final int BRANCH_MISPREDICTIONS = 4;
+    public static final int DATA_CACHE_MISSES = 5;
+    public static final int INSTRUCTION_CACHE_MISSES = 6;
+    public static final int FLOATING_POINT_OPERATIONS = 7;
+    private static final int EVENTS = 8;
+
+    public static final int FIRST = 3, COUNT = 8;
+    public static final int HPMCOUNTER3 = 0xC03;
+    public static final int HPMCOUNTER3H = 0xC83;
+    public static final int MHPMEVENT3 = 0x323;
+
+    // Bit n set if some counter selects event n
+    private static int selected;
+    private static final long[] totals = new long[EVENTS];
+    private static final int[] events = new int[COUNT];
+    private static final long[] offsets = new long[COUNT];
+
+    private static BranchPredictor predictor = new BranchPredictor.Bimodal(1024);
+    private static CacheModel instructionCache = new CacheModel(64, 4, 4, CacheModel.LRU);
+    private static CacheModel dataCache = new CacheModel(64, 4, 4, CacheModel.LRU);
+
+    // The instruction between issue() and retire()
+    private static int pc;
+    private static boolean branch;
+
+    // Registered with the simulator while any event is being counted
+    private static final InstructionListener listener = new InstructionListener() {
+        @Override
+        public void issue(int pc, int word) {
+            PerformanceCounters.issue(pc, word);
+        }
+
+        @Override
+        public long retire(int pc, int nextPC) {
+            PerformanceCounters.retire(nextPC);
+            return 0;
+        }
+    };
+
+    private PerformanceCounters() {
+    }
+
+    /**
+     * @return true if any event is being counted; issue and retire are only called then
+     */
+    public static boolean counting() {
+        return selected != 0;
+    }
+
+    /**
+     * Replaces the predictor used to count mispredictions.
+     *
+     * @param branchPredictor the predictor
+     */
+    public static synchronized void setPredictor(BranchPredictor branchPredictor) {
+        predictor = branchPredictor;
+    }
+
+    /**
+     * Replaces the caches used to count misses.
+     *
+     * @param instruction the instruction cache
+     * @param data        the data cache
+     */
+    public static synchronized void setCaches(CacheModel instruction, CacheModel data) {
+        instructionCache = instruction;
+        dataCache = data;
+    }
+
+    /**
+     * Called by the simulator just before it executes an instruction.
+     *
+     * @param address address of the instruction
+     * @param word    the instruction's encoding
+     */
+    private static void issue(int address, int word) {
+        pc = address;
+        branch = false;
+        if ((selected & 1 << INSTRUCTION_CACHE_MISSES) != 0 && !instructionCache.access(address)) {
+            totals[INSTRUCTION_CACHE_MISSES]++;
+        }
+        int base = (word >>> 15) & 31;
+        switch (word & 0x7F) {
+            case 0x03: // loads
+            case 0x07:
+                totals[LOADS]++;
+                data(RegisterFile.getValueNoNotify(base) + (word >> 20));
+                break;
+            case 0x23: // stores
+            case 0x27:
+                totals[STORES]++;
+                data(RegisterFile.getValueNoNotify(base) + ((word >> 25) << 5 | (word >>> 7) & 31));
+                break;
+            case 0x2F: // atomics
+                int funct5 = word >>> 27;
+                if (funct5 != 3) totals[LOADS]++; // all but sc
+                if (funct5 != 2) totals[STORES]++; // all but lr
+                data(RegisterFile.getValueNoNotify(base));
+                break;
+            case 0x63: // branches
+                branch = true;
+                break;
+            case 0x43: // floating point arithmetic
+            case 0x47:
+            case 0x4B:
+            case 0x4F:
+            case 0x53:
+                totals[FLOATING_POINT_OPERATIONS]++;
+                break;
+        }
+    }
+
+    private static void data(long address) {
+        if ((selected & 1 << DATA_CACHE_MISSES) != 0 && !dataCache.access((int) address)) {
+            totals[DATA_CACHE_MISSES]++;
+        }
+    }
+
+    /**
+     * Called by the simulator when the instruction passed to {@link #issue} has finished.
+     *
+     * @param nextPC the address of the next instruction
+     */
+    private static void retire(int nextPC) {
+        if (!branch) return;
+        branch = false;
+        boolean taken = nextPC != pc + 4;
+        if (taken) totals[TAKEN_BRANCHES]++;
+        if ((selected & 1 << BRANCH_MISPREDICTIONS) != 0) {
+            if (predictor.predict(pc) != taken) totals[BRANCH_MISPREDICTIONS]++;
+            predictor.update(pc, taken);
+        }
+    }
+
+    /**
+     * @param counter counter number, from 3
+     * @return the current value of hpmcounter{counter}
+     */
+    public static long read(int counter) {
+        int i = counter - FIRST;
+        return totals[events[i]] + offsets[i];
+    }
+
+    /**
+     * Changes the event a counter counts, keeping its value.
+     *
+     * @param counter counter number, from 3
+     * @param event   the event to count; anything out of range counts nothing
+     */
+    static synchronized void select(int counter, long event) {
+        int i = counter - FIRST;
+        long value = read(counter);
+        events[i] = event > 0 && event < EVENTS ? (int) event : NONE;
+        offsets[i] = value - totals[events[i]];
+        int mask = 0;
+        for (int e : events) {
+            if (e != NONE) mask |= 1 << e;
+        }
+        if (selected == 0 && mask != 0) {
+            InstructionListener.replace(null, listener);
+        } else if (selected != 0 && mask == 0) {
+            InstructionListener.replace(listener, null);
+        }
+        selected = mask;
+    }
+
+    /**
+     * Stops counting, zeroes all counters and forgets the branch and cache history.
+     */
+    static synchronized void reset() {
+        if (selected != 0) InstructionListener.replace(listener, null);
+        selected = 0;
+        Arrays.fill(totals, 0);
+        Arrays.fill(events, NONE);
+        Arrays.fill(offsets, 0);
+        predictor.reset();
+        instructionCache.reset();
+        dataCache.reset();
+    }
+
+    /**
+     * The value of an hpmcounter, worked out when it is read.
+     */
+    static class CounterRegister extends ReadOnlyRegister {
+        private final int counter;
+
+        CounterRegister(int counter) {
+            super("hpmcounter" + counter, HPMCOUNTER3 + counter - FIRST, 0);
+            this.counter = counter;
+        }
+
+        public long getValue() {
+            super.getValue(); // to notify observers
+            return read(counter);
+        }
+
+        public long getValueNoNotify() {
+            return read(counter);
+        }
+
+        public void resetValue() {
+            reset(); // all counters are reset together, like the rest of the registers
+        }
+    }
+
+    /**
+     * An mhpmevent CSR, which selects the event its counter counts.
+     */
+    static class EventRegister extends Register {
+        private final int counter;
+
+        EventRegister(int counter) {
+            super("mhpmevent" + counter, MHPMEVENT3 + counter - FIRST, 0);
+            this.counter = counter;
+        }
+
+        public long setValue(long val) {
+            select(counter, val);
+            return super.setValue(val);
+        }
+
+        public long setValueBackdoor(long val) {
+            select(counter, val);
+            return super.setValueBackdoor(val);
+        }
+
+        public void resetValue() {
+            super.resetValue();
+            reset();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package rars.riscv.hardware;
 
+import rars.management.SimulatorMetrics;
+
 import java.util.Observable;
+import java.util.Observer;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -41,11 +44,15 @@ public class Register extends Observable {
     private String name;
     private int number;
     private long resetValue;
-    // volatile should be enough to allow safe multi-threaded access
-    // w/o the use of synchronized methods.  getValue and setValue
-    // are the only methods here used by the register collection
-    // (RegisterFile, ControlAndStatusRegisterFile, FloatingPointRegisterFile) methods.
-    private volatile long value;
+    // The value lives in a slot of a plain array.  Stand-alone registers (e.g. pc) get
+    // their own one element array; registers of a RegisterBlock are bound to the block's
+    // array so the register files can read and write it directly.  The array is owned
+    // by the simulator thread, so no synchronization is done on the hot path.
+    private long[] values;
+    private int slot;
+    private RegisterBlock block;
+    // Cached "countObservers() > 0" so unobserved accesses never touch the Observable lock.
+    private volatile boolean observed;
 
     /**
      * Creates a new register with specified name, number, and value.
@@ -58,10 +65,26 @@ public class Register extends Observable {
     public Register(String n, int num, long val) {
         name = n;
         number = num;
-        value = val;
+        values = new long[]{val};
+        slot = 0;
         resetValue = val;
     }
 
+    /**
+     * Moves the storage of this register into slot of the given array.  The current
+     * value is carried over.
+     *
+     * @param owner  the block that owns the array
+     * @param values the backing array
+     * @param slot   the index of this register in values
+     */
+    void bind(RegisterBlock owner, long[] values, int slot) {
+        values[slot] = this.values[this.slot];
+        this.values = values;
+        this.slot = slot;
+        this.block = owner;
+    }
+
     /**
      * Returns the name of the Register.
      *
@@ -79,9 +102,9 @@ public class Register extends Observable {
      * @return value The value of the Register.
      */
 
-    public synchronized long getValue() {
-        notifyAnyObservers(AccessNotice.READ);
-        return value;
+    public long getValue() {
+        if (observed) notifyAnyObservers(AccessNotice.READ);
+        return values[slot];
     }
 
 
@@ -92,8 +115,8 @@ public class Register extends Observable {
      * @return value The value of the Register.
      */
 
-    public synchronized long getValueNoNotify() {
-        return value;
+    public long getValueNoNotify() {
+        return values[slot];
     }
 
 
@@ -125,10 +148,10 @@ public class Register extends Observable {
      * @return previous value of register
      */
 
-    public synchronized long setValue(long val) {
-        long old = value;
-        value = val;
-        notifyAnyObservers(AccessNotice.WRITE);
+    public long setValue(long val) {
+        long old = values[slot];
+        values[slot] = val;
+        if (observed) notifyAnyObservers(AccessNotice.WRITE);
         return old;
     }
 
@@ -140,9 +163,9 @@ public class Register extends Observable {
      * @return previous value of register
      */
 
-    public synchronized long setValueBackdoor(long val) {
-        long old = value;
-        value = val;
+    public long setValueBackdoor(long val) {
+        long old = values[slot];
+        values[slot] = val;
         return old;
     }
 
@@ -152,8 +175,8 @@ public class Register extends Observable {
      * Observers are not notified.
      */
 
-    public synchronized void resetValue() {
-        value = resetValue;
+    public void resetValue() {
+        values[slot] = resetValue;
     }
 
     /**
@@ -165,6 +188,33 @@ public class Register extends Observable {
         resetValue = reset;
     }
 
+    /**
+     * @return true if at least one Observer is currently attached to this register
+     */
+    public boolean isObserved() {
+        return observed;
+    }
+
+    public synchronized void addObserver(Observer o) {
+        super.addObserver(o);
+        observersChanged();
+    }
+
+    public synchronized void deleteObserver(Observer o) {
+        super.deleteObserver(o);
+        observersChanged();
+    }
+
+    public synchronized void deleteObservers() {
+        super.deleteObservers();
+        observersChanged();
+    }
+
+    private void observersChanged() {
+        observed = countObservers() > 0;
+        if (block != null) block.observersChanged();
+    }
+
     //
     // Method to notify any observers of register operation that has just occurred.
     //
@@ -172,6 +222,7 @@ public class Register extends Observable {
         if (this.countObservers() > 0) {// && Globals.program != null) && Globals.program.inSteppedExecution()) {
             this.setChanged();
             this.notifyObservers(new RegisterAccessNotice(type, this.name));
+            SimulatorMetrics.notified(this.countObservers());
         }
     }
 
@@ -2,6 +2,7 @@ package rars.riscv.hardware;
 
 import rars.util.Binary;
 
+import java.util.Arrays;
 import java.util.Observer;
 
 /*
@@ -44,10 +45,37 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class RegisterBlock {
     private final Register[] regFile;
     private final char prefix;
+    // Register values, indexed by position in regFile.  Owned by the simulator thread.
+    private final long[] values;
+    // true if every register's number matches its position, so numbers can index values directly
+    private final boolean dense;
+    // For sparse blocks (CSRs), maps a 12 bit register number to its position in regFile or -1
+    private final int[] slots;
+    // true if any register in the block has an Observer attached
+    private volatile boolean observed;
 
     protected RegisterBlock(char prefix, Register[] registers) {
         this.prefix = prefix;
         this.regFile = registers;
+        this.values = new long[registers.length];
+        boolean dense = true;
+        for (int i = 0; i < registers.length; i++) {
+            registers[i].bind(this, values, i);
+            dense &= registers[i].getNumber() == i;
+        }
+        this.dense = dense;
+        this.slots = dense ? null : buildSlotTable(registers);
+    }
+
+    private static int[] buildSlotTable(Register[] registers) {
+        int[] table = new int[4096];
+        Arrays.fill(table, -1);
+        for (int i = 0; i < registers.length; i++) {
+            int num = registers[i].getNumber();
+            if (num < 0 || num >= table.length) return null; // fall back to searching
+            table[num] = i;
+        }
+        return table;
     }
 
     /**
@@ -74,6 +102,11 @@ public class RegisterBlock {
     }
 
     public long updateRegister(int num, long val) {
+        if (dense && !observed) {
+            long old = values[num];
+            values[num] = val;
+            return old;
+        }
         return updateRegister(getRegister(num), val);
     }
 
@@ -88,9 +121,25 @@ public class RegisterBlock {
      * @return The value of the given register.
      **/
     public long getValue(int num) {
+        if (dense && !observed) {
+            return values[num];
+        }
         return getRegister(num).getValue();
     }
 
+    /**
+     * Returns the value of the register without notifying observers.
+     *
+     * @param num The register's number.
+     * @return The value of the given register.
+     **/
+    public long getValueNoNotify(int num) {
+        if (dense) {
+            return values[num];
+        }
+        return getRegister(num).getValueNoNotify();
+    }
+
     /**
      * Returns the value of the register.
      *
@@ -108,6 +157,13 @@ public class RegisterBlock {
      * @return the register for num or null if none exists
      */
     public Register getRegister(int num) {
+        if (dense) {
+            return (num >= 0 && num < regFile.length) ? regFile[num] : null;
+        }
+        if (slots != null) {
+            int slot = (num >= 0 && num < slots.length) ? slots[num] : -1;
+            return slot < 0 ? null : regFile[slot];
+        }
         for (Register r : regFile) {
             if (r.getNumber() == num) {
                 return r;
@@ -116,6 +172,18 @@ public class RegisterBlock {
         return null;
     }
 
+    /**
+     * Called by a Register of this block when an Observer is added or removed.
+     * While nothing observes the block, number based accesses bypass the Register objects.
+     */
+    void observersChanged() {
+        boolean any = false;
+        for (Register r : regFile) {
+            any |= r.isObserved();
+        }
+        observed = any;
+    }
+
     /**
      * Get register object corresponding to given name.  If no match, return null.
      *
@@ -164,6 +232,24 @@ public class RegisterBlock {
         }
     }
 
+    /**
+     * Copies out the values of all the registers, without notifying observers.
+     *
+     * @return the values, to give to {@link #restoreValues} later
+     */
+    public long[] saveValues() {
+        return values.clone();
+    }
+
+    /**
+     * Puts back values copied out by {@link #saveValues}, without notifying observers.
+     *
+     * @param saved the values from this block
+     */
+    public void restoreValues(long[] saved) {
+        System.arraycopy(saved, 0, values, 0, values.length);
+    }
+
     /**
      * Each individual register is a separate object and Observable.  This handy method
      * will add the given Observer to each one.  Currently does not apply to Program
@@ -4,6 +4,9 @@ import rars.Globals;
 import rars.Settings;
 import rars.assembler.SymbolTable;
 import rars.riscv.Instruction;
+import rars.simulator.BackStepper;
+import rars.trace.TraceRecord;
+import rars.trace.TraceWriter;
 
 import java.util.Observer;
 
@@ -46,6 +49,15 @@ public class RegisterFile {
 
     public static final int GLOBAL_POINTER_REGISTER = 3;
     public static final int STACK_POINTER_REGISTER = 2;
+    // The argument registers, by number, for system calls to read without looking up names
+    public static final int A0 = 10;
+    public static final int A1 = 11;
+    public static final int A2 = 12;
+    public static final int A3 = 13;
+    public static final int A4 = 14;
+    public static final int A5 = 15;
+    public static final int A6 = 16;
+    public static final int A7 = 17;
     private static final RegisterBlock instance = new RegisterBlock('x', new Register[]{
             new Register("zero", 0, 0), new Register("ra", 1, 0),
             new Register("sp", STACK_POINTER_REGISTER, Memory.stackPointer),
@@ -79,11 +91,14 @@ public class RegisterFile {
         if (num == 0) {
             ;
         } else {
-            if ((Globals.getSettings().getBackSteppingEnabled())) {
-                Globals.program.getBackStepper().addRegisterFileRestore(num, instance.updateRegister(num, val));
+            BackStepper backStepper = BackStepper.recording();
+            if (backStepper != null) {
+                backStepper.addRegisterFileRestore(num, instance.updateRegister(num, val));
             } else {
                 instance.updateRegister(num, val);
             }
+            TraceWriter trace = TraceWriter.active();
+            if (trace != null) trace.register(TraceRecord.INTEGER_REGISTER, num, val);
         }
     }
 
@@ -122,6 +137,17 @@ public class RegisterFile {
 
     }
 
+    /**
+     * Returns the value of the register without notifying observers.
+     *
+     * @param num The register number.
+     * @return The value of the given register.
+     **/
+
+    public static long getValueNoNotify(int num) {
+        return instance.getValueNoNotify(num);
+    }
+
     /**
      * Returns the value of the register.
      *
@@ -199,8 +225,9 @@ public class RegisterFile {
     public static int setProgramCounter(int value) {
         int old = (int)programCounter.getValue();
         programCounter.setValue(value);
-        if (Globals.getSettings().getBackSteppingEnabled()) {
-            Globals.program.getBackStepper().addPCRestore(old);
+        BackStepper backStepper = BackStepper.recording();
+        if (backStepper != null) {
+            backStepper.addPCRestore(old);
         }
         return old;
     }
@@ -248,6 +275,19 @@ public class RegisterFile {
         initializeProgramCounter(Globals.getSettings().getBooleanSetting(Settings.Bool.START_AT_MAIN));// replaces "programCounter.resetValue()", DPS 3/3/09
     }
 
+    /**
+     * Copies out the values of the registers, for running something else in between. The program counter is not included.
+     *
+     * @return the values, to give to {@link #restoreValues}
+     */
+    public static long[] saveValues() {
+        return instance.saveValues();
+    }
+
+    public static void restoreValues(long[] saved) {
+        instance.restoreValues(saved);
+    }
+
     /**
      * Method to increment the Program counter in the general case (not a jump or branch).
      **/
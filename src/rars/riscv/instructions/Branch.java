@@ -49,6 +49,8 @@ public abstract class Branch extends BasicInstruction {
     public void simulate(ProgramStatement statement) {
         if (willBranch(statement)) {
             InstructionSet.processBranch(statement.getOperands()[2]);
+        } else {
+            InstructionSet.processBranchNotTaken(statement.getOperands()[2]);
         }
     }
 
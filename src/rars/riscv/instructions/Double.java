@@ -18,13 +18,42 @@ public abstract class Double extends BasicInstruction {
     }
     public void simulate(ProgramStatement statement) throws SimulationException{
         int[] operands = statement.getOperands();
+        int rm = Floating.getRoundingModeNumber(operands[3],statement);
+        long bits1 = FloatingPointRegisterFile.getValueLong(operands[1]), bits2 = FloatingPointRegisterFile.getValueLong(operands[2]);
+        if (rm == 0) { // RNE is what Java doubles do, so try to avoid jsoftfloat
+            double f1 = java.lang.Double.longBitsToDouble(bits1), f2 = java.lang.Double.longBitsToDouble(bits2);
+            if (java.lang.Double.isFinite(f1) && java.lang.Double.isFinite(f2)) {
+                double result = computeHardware(f1, f2);
+                int fflags = hardwareFlags(f1, f2, result);
+                if (fflags != HardwareFloatingPoint.FALLBACK) {
+                    Floating.setfflags(fflags);
+                    FloatingPointRegisterFile.updateRegisterLong(operands[0], java.lang.Double.doubleToRawLongBits(result));
+                    return;
+                }
+            }
+        }
         Environment e = new Environment();
-        e.mode = Floating.getRoundingMode(operands[3],statement);
-        Float64 result = compute(new Float64(FloatingPointRegisterFile.getValueLong(operands[1])),new Float64(FloatingPointRegisterFile.getValueLong(operands[2])),e);
+        e.mode = Floating.toRoundingMode(rm);
+        Float64 result = compute(new Float64(bits1),new Float64(bits2),e);
         Floating.setfflags(e);
         FloatingPointRegisterFile.updateRegisterLong(operands[0], result.bits);
     }
 
+    /**
+     * Computes the result with Java doubles for round to nearest even. Only called with finite operands.
+     * Instructions that do not override this (and {@link #hardwareFlags}) always use jsoftfloat.
+     */
+    protected double computeHardware(double f1, double f2) {
+        return java.lang.Double.NaN;
+    }
+
+    /**
+     * @return the fflags for computeHardware(f1, f2) == result, or HardwareFloatingPoint.FALLBACK to use compute instead
+     */
+    protected int hardwareFlags(double f1, double f2, double result) {
+        return HardwareFloatingPoint.FALLBACK;
+    }
+
     public abstract Float64 compute(Float64 f1, Float64 f2, Environment e);
 
     public static Float64 getDouble(int num){
@@ -41,6 +41,6 @@ public class ECALL extends BasicInstruction {
     }
 
     public void simulate(ProgramStatement statement) throws SimulationException {
-        InstructionSet.findAndSimulateSyscall(RegisterFile.getValue("a7"), statement);
+        InstructionSet.findAndSimulateSyscall(RegisterFile.getValue(RegisterFile.A7), statement);
     }
 }
\ No newline at end of file
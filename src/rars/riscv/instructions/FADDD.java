@@ -12,4 +12,14 @@ public class FADDD extends Double{
     public Float64 compute(Float64 f1, Float64 f2, Environment e) {
         return jsoftfloat.operations.Arithmetic.add(f1,f2,e);
     }
-}
\ No newline at end of file
+
+    @Override
+    protected double computeHardware(double f1, double f2) {
+        return f1 + f2;
+    }
+
+    @Override
+    protected int hardwareFlags(double f1, double f2, double result) {
+        return HardwareFloatingPoint.addFlags(f1, f2, result);
+    }
+}
@@ -40,4 +40,14 @@ public class FDIVS extends Floating {
     public Float32 compute(Float32 f1, Float32 f2, Environment e) {
         return jsoftfloat.operations.Arithmetic.division(f1,f2,e);
     }
+
+    @Override
+    protected float computeHardware(float f1, float f2) {
+        return f1 / f2;
+    }
+
+    @Override
+    protected int hardwareFlags(float f1, float f2, float result) {
+        return HardwareFloatingPoint.divideFlags(f1, f2, result);
+    }
 }
@@ -38,4 +38,15 @@ public class FMAXS extends Floating {
     public Float32 compute(Float32 f1, Float32 f2, Environment env) {
         return jsoftfloat.operations.Comparisons.maximumNumber(f1,f2,env);
     }
+
+    @Override
+    protected float computeHardware(float f1, float f2) {
+        return Math.max(f1, f2);
+    }
+
+    @Override
+    protected int hardwareFlags(float f1, float f2, float result) {
+        // Both operands are numbers, so this is a quiet comparison with no flags
+        return 0;
+    }
 }
@@ -11,4 +11,15 @@ public class FMIND extends Double {
     public Float64 compute(Float64 f1, Float64 f2, Environment env) {
         return jsoftfloat.operations.Comparisons.minimumNumber(f1,f2,env);
     }
+
+    @Override
+    protected double computeHardware(double f1, double f2) {
+        return Math.min(f1, f2);
+    }
+
+    @Override
+    protected int hardwareFlags(double f1, double f2, double result) {
+        // Both operands are numbers, so this is a quiet comparison with no flags
+        return 0;
+    }
 }
@@ -38,4 +38,14 @@ public class FMSUBS extends FusedFloat {
     public Float32 compute(Float32 f1, Float32 f2, Float32 f3, Environment e){
         return jsoftfloat.operations.Arithmetic.fusedMultiplyAdd(f1,f2,f3.negate(),e);
     }
+
+    @Override
+    protected float computeHardware(float f1, float f2, float f3) {
+        return HardwareFloatingPoint.fusedMultiplyAdd(f1, f2, -f3);
+    }
+
+    @Override
+    protected int hardwareFlags(float f1, float f2, float f3, float result) {
+        return HardwareFloatingPoint.fusedMultiplyAddFlags(f1, f2, -f3, result);
+    }
 }
@@ -40,4 +40,14 @@ public class FNMADDS extends FusedFloat {
         flipRounding(e);
         return jsoftfloat.operations.Arithmetic.fusedMultiplyAdd(f1,f2,f3,e).negate();
     }
+
+    @Override
+    protected float computeHardware(float f1, float f2, float f3) {
+        return -HardwareFloatingPoint.fusedMultiplyAdd(f1, f2, f3);
+    }
+
+    @Override
+    protected int hardwareFlags(float f1, float f2, float f3, float result) {
+        return HardwareFloatingPoint.fusedMultiplyAddFlags(f1, f2, f3, -result);
+    }
 }
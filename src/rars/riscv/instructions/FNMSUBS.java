@@ -39,4 +39,14 @@ public class FNMSUBS extends FusedFloat {
         flipRounding(e);
         return jsoftfloat.operations.Arithmetic.fusedMultiplyAdd(f1,f2,f3.negate(),e).negate();
     }
+
+    @Override
+    protected float computeHardware(float f1, float f2, float f3) {
+        return -HardwareFloatingPoint.fusedMultiplyAdd(f1, f2, -f3);
+    }
+
+    @Override
+    protected int hardwareFlags(float f1, float f2, float f3, float result) {
+        return HardwareFloatingPoint.fusedMultiplyAddFlags(f1, f2, -f3, -result);
+    }
 }
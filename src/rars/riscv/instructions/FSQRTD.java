@@ -16,10 +16,22 @@ public class FSQRTD extends BasicInstruction {
 
     public void simulate(ProgramStatement statement) throws SimulationException {
         int[] operands = statement.getOperands();
+        int rm = Floating.getRoundingModeNumber(operands[2],statement);
+        long bits = FloatingPointRegisterFile.getValueLong(operands[1]);
+        double in = java.lang.Double.longBitsToDouble(bits);
+        if (rm == 0 && java.lang.Double.isFinite(in)) {
+            double root = Math.sqrt(in);
+            int fflags = HardwareFloatingPoint.squareRootFlags(in, root);
+            if (fflags != HardwareFloatingPoint.FALLBACK) {
+                Floating.setfflags(fflags);
+                FloatingPointRegisterFile.updateRegisterLong(operands[0], java.lang.Double.doubleToRawLongBits(root));
+                return;
+            }
+        }
         Environment e = new Environment();
-        e.mode = Floating.getRoundingMode(operands[2],statement);
-        Float64 result = jsoftfloat.operations.Arithmetic.squareRoot(new Float64(FloatingPointRegisterFile.getValueLong(operands[1])),e);
+        e.mode = Floating.toRoundingMode(rm);
+        Float64 result = jsoftfloat.operations.Arithmetic.squareRoot(new Float64(bits),e);
         Floating.setfflags(e);
         FloatingPointRegisterFile.updateRegisterLong(operands[0],result.bits);
     }
-}
\ No newline at end of file
+}
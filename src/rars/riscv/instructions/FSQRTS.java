@@ -44,10 +44,23 @@ public class FSQRTS extends BasicInstruction {
 
     public void simulate(ProgramStatement statement) throws SimulationException {
         int[] operands = statement.getOperands();
+        int rm = Floating.getRoundingModeNumber(operands[2],statement);
+        int bits = FloatingPointRegisterFile.getValue(operands[1]);
+        float in = Float.intBitsToFloat(bits);
+        if (rm == 0 && Float.isFinite(in)) {
+            // Rounding the double root to float is correctly rounded (53 >= 2*24+2)
+            float root = (float) Math.sqrt(in);
+            int fflags = HardwareFloatingPoint.squareRootFlags(in, root);
+            if (fflags != HardwareFloatingPoint.FALLBACK) {
+                Floating.setfflags(fflags);
+                FloatingPointRegisterFile.updateRegister(operands[0], Float.floatToRawIntBits(root));
+                return;
+            }
+        }
         Environment e = new Environment();
-        e.mode = Floating.getRoundingMode(operands[2],statement);
-        Float32 result = jsoftfloat.operations.Arithmetic.squareRoot(new Float32(FloatingPointRegisterFile.getValue(operands[1])),e);
+        e.mode = Floating.toRoundingMode(rm);
+        Float32 result = jsoftfloat.operations.Arithmetic.squareRoot(new Float32(bits),e);
         Floating.setfflags(e);
         FloatingPointRegisterFile.updateRegister(operands[0],result.bits);
     }
-}
\ No newline at end of file
+}
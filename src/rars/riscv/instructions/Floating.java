@@ -54,9 +54,23 @@ public abstract class Floating extends BasicInstruction {
     }
     public void simulate(ProgramStatement statement) throws SimulationException{
         int[] operands = statement.getOperands();
+        int rm = getRoundingModeNumber(operands[3],statement);
+        int bits1 = FloatingPointRegisterFile.getValue(operands[1]), bits2 = FloatingPointRegisterFile.getValue(operands[2]);
+        if (rm == 0) { // RNE is what Java floats do, so try to avoid jsoftfloat
+            float f1 = Float.intBitsToFloat(bits1), f2 = Float.intBitsToFloat(bits2);
+            if (Float.isFinite(f1) && Float.isFinite(f2)) {
+                float result = computeHardware(f1, f2);
+                int fflags = hardwareFlags(f1, f2, result);
+                if (fflags != HardwareFloatingPoint.FALLBACK) {
+                    setfflags(fflags);
+                    FloatingPointRegisterFile.updateRegister(operands[0], Float.floatToRawIntBits(result));
+                    return;
+                }
+            }
+        }
         Environment e = new Environment();
-        e.mode = getRoundingMode(operands[3],statement);
-        Float32 result = compute(new Float32(FloatingPointRegisterFile.getValue(operands[1])),new Float32(FloatingPointRegisterFile.getValue(operands[2])),e);
+        e.mode = toRoundingMode(rm);
+        Float32 result = compute(new Float32(bits1),new Float32(bits2),e);
         setfflags(e);
         FloatingPointRegisterFile.updateRegister(operands[0], result.bits);
     }
@@ -67,16 +81,35 @@ public abstract class Floating extends BasicInstruction {
                 (e.flags.contains(Flags.overflow)?4:0)+
                 (e.flags.contains(Flags.divByZero)?8:0)+
                 (e.flags.contains(Flags.invalid)?16:0);
-        if(fflags != 0) ControlAndStatusRegisterFile.orRegister("fflags",fflags);
+        setfflags(fflags);
+    }
+
+    public static void setfflags(int fflags){
+        if(fflags != 0) ControlAndStatusRegisterFile.orRegister(ControlAndStatusRegisterFile.FFLAGS,fflags);
     }
 
     public static RoundingMode getRoundingMode(int RM, ProgramStatement statement) throws SimulationException {
+        return toRoundingMode(getRoundingModeNumber(RM, statement));
+    }
+
+    /**
+     * Resolves the rm field of an instruction, substituting frm for dyn (7)
+     *
+     * @return the rounding mode number, 0 (RNE) through 4 (RMM)
+     * @throws SimulationException if the resulting rounding mode is invalid
+     */
+    public static int getRoundingModeNumber(int RM, ProgramStatement statement) throws SimulationException {
         int rm = RM;
-        int frm = ControlAndStatusRegisterFile.getValue("frm");
-        if (rm == 7) rm = frm;
+        if (rm == 7) rm = ControlAndStatusRegisterFile.getValue(ControlAndStatusRegisterFile.FRM);
+        if (rm < 0 || rm > 4) {
+            int frm = ControlAndStatusRegisterFile.getValue(ControlAndStatusRegisterFile.FRM);
+            throw new SimulationException(statement,"Invalid rounding mode. RM = " + RM +" and frm = " + frm);
+        }
+        return rm;
+    }
+
+    public static RoundingMode toRoundingMode(int rm) {
         switch (rm){
-            case 0: // RNE
-                return RoundingMode.even;
             case 1: // RTZ
                 return RoundingMode.zero;
             case 2: // RDN
@@ -85,11 +118,26 @@ public abstract class Floating extends BasicInstruction {
                 return RoundingMode.max;
             case 4: // RMM
                 return RoundingMode.away;
-            default:
-                throw new SimulationException(statement,"Invalid rounding mode. RM = " + RM +" and frm = " + frm);
+            default: // RNE
+                return RoundingMode.even;
         }
     }
 
+    /**
+     * Computes the result with Java floats for round to nearest even. Only called with finite operands.
+     * Instructions that do not override this (and {@link #hardwareFlags}) always use jsoftfloat.
+     */
+    protected float computeHardware(float f1, float f2) {
+        return Float.NaN;
+    }
+
+    /**
+     * @return the fflags for computeHardware(f1, f2) == result, or HardwareFloatingPoint.FALLBACK to use compute instead
+     */
+    protected int hardwareFlags(float f1, float f2, float result) {
+        return HardwareFloatingPoint.FALLBACK;
+    }
+
     public abstract Float32 compute(Float32 f1, Float32 f2, Environment e);
 
     public static Float32 getFloat(int num){
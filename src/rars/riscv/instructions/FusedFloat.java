@@ -48,11 +48,24 @@ public abstract class FusedFloat extends BasicInstruction {
 
     public void simulate(ProgramStatement statement) throws SimulationException {
         int[] operands = statement.getOperands();
+        int rm = Floating.getRoundingModeNumber(operands[4],statement);
+        int bits1 = FloatingPointRegisterFile.getValue(operands[1]), bits2 = FloatingPointRegisterFile.getValue(operands[2]),
+                bits3 = FloatingPointRegisterFile.getValue(operands[3]);
+        if (rm == 0) { // RNE is what Java floats do, so try to avoid jsoftfloat
+            float f1 = Float.intBitsToFloat(bits1), f2 = Float.intBitsToFloat(bits2), f3 = Float.intBitsToFloat(bits3);
+            if (Float.isFinite(f1) && Float.isFinite(f2) && Float.isFinite(f3)) {
+                float result = computeHardware(f1, f2, f3);
+                int fflags = hardwareFlags(f1, f2, f3, result);
+                if (fflags != HardwareFloatingPoint.FALLBACK) {
+                    Floating.setfflags(fflags);
+                    FloatingPointRegisterFile.updateRegister(operands[0], Float.floatToRawIntBits(result));
+                    return;
+                }
+            }
+        }
         Environment e = new Environment();
-        e.mode = Floating.getRoundingMode(operands[4],statement);
-        Float32 result = compute(new Float32(FloatingPointRegisterFile.getValue(operands[1])),
-                new Float32(FloatingPointRegisterFile.getValue(operands[2])),
-                new Float32(FloatingPointRegisterFile.getValue(operands[3])),e);
+        e.mode = Floating.toRoundingMode(rm);
+        Float32 result = compute(new Float32(bits1), new Float32(bits2), new Float32(bits3),e);
         Floating.setfflags(e);
         FloatingPointRegisterFile.updateRegister(operands[0],result.bits);
     }
@@ -71,4 +84,19 @@ public abstract class FusedFloat extends BasicInstruction {
      * @return The value to store to the destination
      */
     protected abstract Float32 compute(Float32 r1, Float32 r2, Float32 r3,Environment e);
+
+    /**
+     * Computes the result with Java floats for round to nearest even. Only called with finite operands.
+     * Instructions that do not override this (and {@link #hardwareFlags}) always use jsoftfloat.
+     */
+    protected float computeHardware(float r1, float r2, float r3) {
+        return Float.NaN;
+    }
+
+    /**
+     * @return the fflags for computeHardware(r1, r2, r3) == result, or HardwareFloatingPoint.FALLBACK to use compute instead
+     */
+    protected int hardwareFlags(float r1, float r2, float r3, float result) {
+        return HardwareFloatingPoint.FALLBACK;
+    }
 }
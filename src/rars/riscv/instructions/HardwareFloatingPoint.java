@@ -0,0 +1,119 @@
+package rars.riscv.instructions;
+
+/**
+ * Flag computation for doing round to nearest even arithmetic with Java's float and double.
+ * <p>
+ * Java arithmetic is IEEE 754 round to nearest even, so the results are already correct; what
+ * is missing is the fflags. Each method here is given finite operands and the hardware result and
+ * returns the fflags jsoftfloat would have raised, or {@link #FALLBACK} if the case is one that is
+ * not cheap to decide (overflow, tiny results, NaNs, division by zero, ...) and jsoftfloat needs
+ * to be used instead.
+ */
+public final class HardwareFloatingPoint {
+    public static final int FALLBACK = -1;
+    public static final int INEXACT = 1;
+
+    private HardwareFloatingPoint() {
+    }
+
+    /**
+     * @param exact  whether the result was computed without rounding
+     * @param result the rounded result
+     * @return the flags for a result, deferring to jsoftfloat for anything that might overflow or underflow
+     */
+    public static int flags(boolean exact, float result) {
+        if (!Float.isFinite(result)) return FALLBACK;
+        if (exact) return 0;
+        if (Math.abs(result) <= Float.MIN_NORMAL) return FALLBACK; // could be tiny before rounding
+        return INEXACT;
+    }
+
+    public static int flags(boolean exact, double result) {
+        if (!java.lang.Double.isFinite(result)) return FALLBACK;
+        if (exact) return 0;
+        if (Math.abs(result) <= java.lang.Double.MIN_NORMAL) return FALLBACK;
+        return INEXACT;
+    }
+
+    public static int addFlags(float a, float b, float sum) {
+        // TwoSum: the rounding error of a + b is exactly representable
+        float bVirtual = sum - a;
+        float error = (a - (sum - bVirtual)) + (b - bVirtual);
+        if (error != error) return FALLBACK; // intermediate overflow
+        return flags(error == 0, sum);
+    }
+
+    public static int addFlags(double a, double b, double sum) {
+        double bVirtual = sum - a;
+        double error = (a - (sum - bVirtual)) + (b - bVirtual);
+        if (error != error) return FALLBACK;
+        return flags(error == 0, sum);
+    }
+
+    // The product of two floats is exact as a double, so no error free transformations are needed.
+    public static int multiplyFlags(float a, float b, float product) {
+        return flags((double) a * b == product, product);
+    }
+
+    public static int divideFlags(float a, float b, float quotient) {
+        return flags((double) quotient * b == a, quotient);
+    }
+
+    public static int squareRootFlags(float a, float root) {
+        return flags((double) root * root == a, root);
+    }
+
+    public static int multiplyFlags(double a, double b, double product) {
+        if (!inProductRange(a) || !inProductRange(b)) return FALLBACK;
+        return flags(productIsExact(a, b, product), product);
+    }
+
+    public static int divideFlags(double a, double b, double quotient) {
+        if (!inProductRange(quotient) || !inProductRange(b)) return FALLBACK;
+        return flags(quotient * b == a && productIsExact(quotient, b, a), quotient);
+    }
+
+    public static int squareRootFlags(double a, double root) {
+        if (!inProductRange(root)) return FALLBACK;
+        return flags(root * root == a && productIsExact(root, root, a), root);
+    }
+
+    /**
+     * Computes a*b+c the way fma would as long as {@link #fusedMultiplyAddFlags} does not fall back.
+     */
+    public static float fusedMultiplyAdd(float a, float b, float c) {
+        return (float) ((double) a * b + c);
+    }
+
+    public static int fusedMultiplyAddFlags(float a, float b, float c, float result) {
+        double product = (double) a * b; // exact
+        double sum = product + c;
+        double bVirtual = sum - product;
+        double error = (product - (sum - bVirtual)) + (c - bVirtual);
+        if (error != error) return FALLBACK;
+        // Rounding to double then to float only differs from rounding once if the double lands
+        // exactly halfway between two floats.
+        if (error != 0 && (java.lang.Double.doubleToRawLongBits(sum) & 0x1FFFFFFFL) == 0x10000000L) {
+            return FALLBACK;
+        }
+        return flags(error == 0 && (double) result == sum, result);
+    }
+
+    // Keeps Dekker's product away from overflow in the split and underflow in the error term
+    private static boolean inProductRange(double x) {
+        double abs = Math.abs(x);
+        return abs == 0 || (abs >= 0x1p-450 && abs <= 0x1p450);
+    }
+
+    private static final double SPLITTER = 0x1p27 + 1;
+
+    // Dekker's TwoProduct: checks that a*b is exactly p
+    private static boolean productIsExact(double a, double b, double p) {
+        double t = SPLITTER * a;
+        double aHigh = t - (t - a), aLow = a - aHigh;
+        t = SPLITTER * b;
+        double bHigh = t - (t - b), bLow = b - bHigh;
+        double error = ((aHigh * bHigh - p) + aHigh * bLow + aLow * bHigh) + aLow * bLow;
+        return error == 0;
+    }
+}
@@ -7,7 +7,6 @@ import rars.riscv.hardware.AddressErrorException;
 import rars.riscv.hardware.RegisterFile;
 
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 
 /*
 Copyright (c) 2003-2017,  Pete Sanderson,Benjamin Landers and Kenneth Vollmar
@@ -43,14 +42,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 public class NullString {
     /**
-     * Just a wrapper around #String get(ProgramStatement, String) which passes in the default "a0"
+     * Just a wrapper around #String get(ProgramStatement, int) which passes in the default a0
      */
     public static String get(ProgramStatement statement) throws ExitingException {
-        return get(statement, "a0");
+        return get(statement, RegisterFile.A0);
     }
 
     /**
-     * Reads a NULL terminated string from memory starting at the address in reg
+     * Reads a NULL terminated string from memory starting at the address in the named register
      *
      * @param statement the program statement this was called from (used for error handling)
      * @param reg       The name of the register for the address of the string
@@ -58,25 +57,27 @@ public class NullString {
      * @throws ExitingException if it hits a #AddressErrorException
      */
     public static String get(ProgramStatement statement, String reg) throws ExitingException {
+        return get(statement, RegisterFile.getRegister(reg).getNumber());
+    }
+
+    /**
+     * Reads a NULL terminated string from memory starting at the address in reg
+     *
+     * @param statement the program statement this was called from (used for error handling)
+     * @param reg       The number of the register for the address of the string
+     * @return the string read from memory
+     * @throws ExitingException if it hits a #AddressErrorException
+     */
+    public static String get(ProgramStatement statement, int reg) throws ExitingException {
         int byteAddress = RegisterFile.getValue(reg);
-        ArrayList<Byte> utf8BytesList = new ArrayList<>(); // Need an array to hold bytes
+        byte[] utf8Bytes;
         try {
-            utf8BytesList.add((byte) Globals.memory.getByte(byteAddress));
-            while (utf8BytesList.get(utf8BytesList.size() - 1) != 0) // until null terminator
-            {
-                byteAddress++;
-                utf8BytesList.add((byte) Globals.memory.getByte(byteAddress));
-            }
+            // Without a limit, the search ends with an address error if there is no null terminator
+            int nullAddress = Globals.memory.findByte(byteAddress, 0, Integer.MAX_VALUE);
+            utf8Bytes = Globals.memory.readBytes(byteAddress, nullAddress - byteAddress);
         } catch (AddressErrorException e) {
             throw new ExitingException(statement, e);
         }
-
-        int size = utf8BytesList.size() - 1;    //size - 1 so we dont include the null terminator in the utf8Bytes array
-        byte[] utf8Bytes = new byte[size];  
-        for (int i = 0; i < size; i++){ 
-            utf8Bytes[i] = utf8BytesList.get(i);
-        }
-
         return new String(utf8Bytes, StandardCharsets.UTF_8);
     }
 }
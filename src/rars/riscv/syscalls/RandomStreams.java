@@ -50,10 +50,10 @@ public class RandomStreams {
     /**
      * Just a little helper method to initialize streams on stream being empty
      *
-     * @param reg The name of the register that holds the stream index
+     * @param reg The number of the register that holds the stream index
      * @return the stream a that index
      */
-    static Random get(String reg) {
+    static Random get(int reg) {
         int index = RegisterFile.getValue(reg);
         Random stream = randomStreams.get(index);
         if (stream == null) {
@@ -39,6 +39,6 @@ public class SyscallClose extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) {
-        SystemIO.closeFile(RegisterFile.getValue("a0"));
+        SystemIO.closeFile(RegisterFile.getValue(RegisterFile.A0));
     }
 }
\ No newline at end of file
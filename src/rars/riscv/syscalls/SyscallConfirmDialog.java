@@ -4,6 +4,7 @@ import rars.ExitingException;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.RegisterFile;
+import rars.simulator.ExecutionHistory;
 
 import javax.swing.*;
 
@@ -44,10 +45,11 @@ public class SyscallConfirmDialog extends AbstractSyscall {
 
     public void simulate(ProgramStatement statement) throws ExitingException {
         String message = NullString.get(statement);
-        int result = JOptionPane.showConfirmDialog(null, message);
+        int result = ExecutionHistory.replaying() ? (int) ExecutionHistory.replayValue()
+                : (int) ExecutionHistory.record(JOptionPane.showConfirmDialog(null, message));
         if (result == JOptionPane.CLOSED_OPTION) {
             result = JOptionPane.CANCEL_OPTION;
         }
-        RegisterFile.updateRegister("a0", result);
+        RegisterFile.updateRegister(RegisterFile.A0, result);
     }
 }
@@ -40,7 +40,7 @@ public class SyscallExit2 extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) throws ExitingException {
-        Globals.exitCode = RegisterFile.getValue("a0");
+        Globals.exitCode = RegisterFile.getValue(RegisterFile.A0);
         throw new ExitingException(); // empty error list
     }
 }
\ No newline at end of file
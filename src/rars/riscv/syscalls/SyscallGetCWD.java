@@ -6,8 +6,10 @@ import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.AddressErrorException;
 import rars.riscv.hardware.RegisterFile;
+import rars.util.SystemIO;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /*
 Copyright (c) 20017,  Benjamin Landers
@@ -44,23 +46,21 @@ public class SyscallGetCWD extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) throws ExitingException {
-        String path = System.getProperty("user.dir");
-        int buf = RegisterFile.getValue("a0");
-        int length = RegisterFile.getValue("a1");
+        String path = SystemIO.getWorkingDirectory();
+        int buf = RegisterFile.getValue(RegisterFile.A0);
+        int length = RegisterFile.getValue(RegisterFile.A1);
 
         byte[] utf8BytesList = path.getBytes(StandardCharsets.UTF_8);
         if(length < utf8BytesList.length+1){
             // This should be -34 (ERANGE) for compatibility with spike, but until other syscalls are ready with compatable
             // error codes, lets keep internal consitency.
-            RegisterFile.updateRegister("a0",-1);
+            RegisterFile.updateRegister(RegisterFile.A0,-1);
             return;
         }
         try {
-            for (int index = 0; index < utf8BytesList.length; index++) {
-                Globals.memory.setByte(buf + index,
-                        utf8BytesList[index]);
-            }
-            Globals.memory.setByte(buf + utf8BytesList.length, 0);
+            // copyOf adds the null terminator
+            Globals.memory.writeBytes(buf, Arrays.copyOf(utf8BytesList, utf8BytesList.length + 1), 0,
+                    utf8BytesList.length + 1);
         } catch (AddressErrorException e) {
             throw new ExitingException(statement, e);
         }
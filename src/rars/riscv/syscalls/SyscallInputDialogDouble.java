@@ -7,6 +7,7 @@ import rars.riscv.hardware.AddressErrorException;
 import rars.riscv.hardware.FloatingPointRegisterFile;
 import rars.riscv.hardware.RegisterFile;
 import rars.riscv.AbstractSyscall;
+import rars.simulator.ExecutionHistory;
 
 import javax.swing.*;
 
@@ -84,27 +85,28 @@ public class SyscallInputDialogDouble extends AbstractSyscall {
         // An empty string returned (that is, inputValue.length() of zero)
         // means that OK was chosen but no string was input.
         String inputValue = null;
-        inputValue = JOptionPane.showInputDialog(message);
+        inputValue = ExecutionHistory.replaying() ? (String) ExecutionHistory.replayObject()
+                : ExecutionHistory.record(JOptionPane.showInputDialog(message));
 
         try {
             FloatingPointRegisterFile.updateRegisterLong(0, 0); // set $f0 to zero
             if (inputValue == null)  // Cancel was chosen
             {
-                RegisterFile.updateRegister("a1", -2);  // set $a1 to -2 flag
+                RegisterFile.updateRegister(RegisterFile.A1, -2);  // set $a1 to -2 flag
             } else if (inputValue.length() == 0)  // OK was chosen but there was no input
             {
-                RegisterFile.updateRegister("a1", -3);  // set $a1 to -3 flag
+                RegisterFile.updateRegister(RegisterFile.A1, -3);  // set $a1 to -3 flag
             } else {
                 double doubleValue = Double.parseDouble(inputValue);
 
                 // Successful parse of valid input data
-                FloatingPointRegisterFile.updateRegisterLong(10, Double.doubleToRawLongBits(doubleValue));
-                RegisterFile.updateRegister("a1", 0);  // set $a1 to valid flag
+                FloatingPointRegisterFile.updateRegisterLong(FloatingPointRegisterFile.FA0, Double.doubleToRawLongBits(doubleValue));
+                RegisterFile.updateRegister(RegisterFile.A1, 0);  // set $a1 to valid flag
 
             }
         }catch (NumberFormatException e)    // Unsuccessful parse of input data
         {
-            RegisterFile.updateRegister("a1", -1);  // set $a1 to -1 flag
+            RegisterFile.updateRegister(RegisterFile.A1, -1);  // set $a1 to -1 flag
         }
     }
 }
@@ -5,6 +5,7 @@ import rars.ProgramStatement;
 import rars.riscv.hardware.FloatingPointRegisterFile;
 import rars.riscv.hardware.RegisterFile;
 import rars.riscv.AbstractSyscall;
+import rars.simulator.ExecutionHistory;
 
 import javax.swing.*;
 
@@ -62,16 +63,17 @@ public class SyscallInputDialogFloat extends AbstractSyscall {
         // An empty string returned (that is, inputValue.length() of zero)
         // means that OK was chosen but no string was input.
         String inputValue = null;
-        inputValue = JOptionPane.showInputDialog(message);
+        inputValue = ExecutionHistory.replaying() ? (String) ExecutionHistory.replayObject()
+                : ExecutionHistory.record(JOptionPane.showInputDialog(message));
 
         try {
             FloatingPointRegisterFile.setRegisterToFloat(0, (float) 0.0);  // set f0 to zero
             if (inputValue == null)  // Cancel was chosen
             {
-                RegisterFile.updateRegister("a1", -2);
+                RegisterFile.updateRegister(RegisterFile.A1, -2);
             } else if (inputValue.length() == 0)  // OK was chosen but there was no input
             {
-                RegisterFile.updateRegister("a1", -3);
+                RegisterFile.updateRegister(RegisterFile.A1, -3);
             } else {
 
                 float floatValue = Float.parseFloat(inputValue);
@@ -80,13 +82,13 @@ public class SyscallInputDialogFloat extends AbstractSyscall {
 
                 // Successful parse of valid input data
                 FloatingPointRegisterFile.setRegisterToFloat(0, floatValue);  // set f0 to input data
-                RegisterFile.updateRegister("a1", 0);  // set to valid flag
+                RegisterFile.updateRegister(RegisterFile.A1, 0);  // set to valid flag
 
             }
 
         } catch (NumberFormatException e)    // Unsuccessful parse of input data
         {
-            RegisterFile.updateRegister("a1", -1);
+            RegisterFile.updateRegister(RegisterFile.A1, -1);
         }
     }
 }
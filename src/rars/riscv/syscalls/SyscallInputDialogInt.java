@@ -4,6 +4,7 @@ import rars.ExitingException;
 import rars.ProgramStatement;
 import rars.riscv.hardware.RegisterFile;
 import rars.riscv.AbstractSyscall;
+import rars.simulator.ExecutionHistory;
 
 import javax.swing.*;
 
@@ -61,26 +62,27 @@ public class SyscallInputDialogInt extends AbstractSyscall {
         // An empty string returned (that is, inputValue.length() of zero)
         // means that OK was chosen but no string was input.
         String inputValue = null;
-        inputValue = JOptionPane.showInputDialog(message);
+        inputValue = ExecutionHistory.replaying() ? (String) ExecutionHistory.replayObject()
+                : ExecutionHistory.record(JOptionPane.showInputDialog(message));
         if (inputValue == null)  // Cancel was chosen
         {
-            RegisterFile.updateRegister("a0", 0);
-            RegisterFile.updateRegister("a1", -2);
+            RegisterFile.updateRegister(RegisterFile.A0, 0);
+            RegisterFile.updateRegister(RegisterFile.A1, -2);
         } else if (inputValue.length() == 0)  // OK was chosen but there was no input
         {
-            RegisterFile.updateRegister("a0", 0);
-            RegisterFile.updateRegister("a1", -3);
+            RegisterFile.updateRegister(RegisterFile.A0, 0);
+            RegisterFile.updateRegister(RegisterFile.A1, -3);
         } else {
             try {
                 int i = Integer.parseInt(inputValue);
 
                 // Successful parse of valid input data
-                RegisterFile.updateRegister("a0", i);  // set to the data read
-                RegisterFile.updateRegister("a1", 0);  // set to valid flag
+                RegisterFile.updateRegister(RegisterFile.A0, i);  // set to the data read
+                RegisterFile.updateRegister(RegisterFile.A1, 0);  // set to valid flag
             } catch (NumberFormatException e) {
                 // Unsuccessful parse of input data
-                RegisterFile.updateRegister("a0", 0);
-                RegisterFile.updateRegister("a1", -1);
+                RegisterFile.updateRegister(RegisterFile.A0, 0);
+                RegisterFile.updateRegister(RegisterFile.A1, -1);
 
             }
 
@@ -6,6 +6,7 @@ import rars.ProgramStatement;
 import rars.riscv.hardware.AddressErrorException;
 import rars.riscv.hardware.RegisterFile;
 import rars.riscv.AbstractSyscall;
+import rars.simulator.ExecutionHistory;
 
 import javax.swing.*;
 import java.nio.charset.StandardCharsets;
@@ -70,17 +71,18 @@ public class SyscallInputDialogString extends AbstractSyscall {
         // An empty string returned (that is, inputString.length() of zero)
         // means that OK was chosen but no string was input.
         String inputString = null;
-        inputString = JOptionPane.showInputDialog(message);
-        int byteAddress = RegisterFile.getValue("a1"); // byteAddress of string is in a1
-        int maxLength = RegisterFile.getValue("a2"); // input buffer size for input string is in a2
+        inputString = ExecutionHistory.replaying() ? (String) ExecutionHistory.replayObject()
+                : ExecutionHistory.record(JOptionPane.showInputDialog(message));
+        int byteAddress = RegisterFile.getValue(RegisterFile.A1); // byteAddress of string is in a1
+        int maxLength = RegisterFile.getValue(RegisterFile.A2); // input buffer size for input string is in a2
 
         try {
             if (inputString == null)  // Cancel was chosen
             {
-                RegisterFile.updateRegister("a1", -2);
+                RegisterFile.updateRegister(RegisterFile.A1, -2);
             } else if (inputString.length() == 0)  // OK was chosen but there was no input
             {
-                RegisterFile.updateRegister("a1", -3);
+                RegisterFile.updateRegister(RegisterFile.A1, -3);
             } else {
                 byte[] utf8BytesList = inputString.getBytes(StandardCharsets.UTF_8);
                 // The buffer will contain characters, a '\n' character, and the null character
@@ -98,9 +100,9 @@ public class SyscallInputDialogString extends AbstractSyscall {
 
                 if (utf8BytesList.length > maxLength - 1) {
                     //  length of the input string exceeded the specified maximum
-                    RegisterFile.updateRegister("a1", -4);
+                    RegisterFile.updateRegister(RegisterFile.A1, -4);
                 } else {
-                    RegisterFile.updateRegister("a1", 0);
+                    RegisterFile.updateRegister(RegisterFile.A1, 0);
                 }
             } // end else
 
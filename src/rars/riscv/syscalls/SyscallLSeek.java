@@ -42,9 +42,9 @@ public class SyscallLSeek extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) throws ExitingException {
-        int result = SystemIO.seek(RegisterFile.getValue("a0"),
-                RegisterFile.getValue("a1"),
-                RegisterFile.getValue("a2"));
-        RegisterFile.updateRegister("a0", result);
+        int result = SystemIO.seek(RegisterFile.getValue(RegisterFile.A0),
+                RegisterFile.getValue(RegisterFile.A1),
+                RegisterFile.getValue(RegisterFile.A2));
+        RegisterFile.updateRegister(RegisterFile.A0, result);
     }
 }
\ No newline at end of file
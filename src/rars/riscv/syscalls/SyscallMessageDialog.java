@@ -4,6 +4,7 @@ import rars.ExitingException;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.RegisterFile;
+import rars.simulator.ExecutionHistory;
 
 import javax.swing.*;
 
@@ -44,8 +45,9 @@ public class SyscallMessageDialog extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) throws ExitingException {
+        if (ExecutionHistory.replaying()) return; // already shown
         // Display the dialog.
-        int msgType = RegisterFile.getValue("a1");
+        int msgType = RegisterFile.getValue(RegisterFile.A1);
         if (msgType < 0 || msgType > 3)
             msgType = -1; // See values in http://java.sun.com/j2se/1.5.0/docs/api/constant-values.html
         JOptionPane.showMessageDialog(null, NullString.get(statement), null, msgType);
@@ -7,6 +7,7 @@ import rars.riscv.hardware.AddressErrorException;
 import rars.riscv.hardware.FloatingPointRegisterFile;
 import rars.riscv.hardware.RegisterFile;
 import rars.riscv.AbstractSyscall;
+import rars.simulator.ExecutionHistory;
 
 import javax.swing.*;
 
@@ -55,9 +56,10 @@ public class SyscallMessageDialogDouble extends AbstractSyscall {
      * System call to display a message to user.
      */
     public void simulate(ProgramStatement statement) throws ExitingException {
+        if (ExecutionHistory.replaying()) return; // already shown
         // TODO: maybe refactor this, other null strings are handled in a central place now
         String message = new String(); // = "";
-        int byteAddress = RegisterFile.getValue("a0");
+        int byteAddress = RegisterFile.getValue(RegisterFile.A0);
         char ch[] = {' '}; // Need an array to convert to String
         try {
             ch[0] = (char) Globals.memory.getByte(byteAddress);
@@ -72,7 +74,7 @@ public class SyscallMessageDialogDouble extends AbstractSyscall {
         }
 
         JOptionPane.showMessageDialog(null,
-                message + Double.longBitsToDouble(FloatingPointRegisterFile.getValueLong(10)),
+                message + Double.longBitsToDouble(FloatingPointRegisterFile.getValueLong(FloatingPointRegisterFile.FA0)),
                 null,
                 JOptionPane.INFORMATION_MESSAGE);
     }
@@ -4,6 +4,7 @@ import rars.ExitingException;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.FloatingPointRegisterFile;
+import rars.simulator.ExecutionHistory;
 
 import javax.swing.*;
 
@@ -43,11 +44,12 @@ public class SyscallMessageDialogFloat extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) throws ExitingException {
+        if (ExecutionHistory.replaying()) return; // already shown
         String message = NullString.get(statement);
 
         // Display the dialog.
         JOptionPane.showMessageDialog(null,
-                message + Float.toString(FloatingPointRegisterFile.getFloatFromRegister("fa1")),
+                message + Float.toString(FloatingPointRegisterFile.getFloatFromRegister(FloatingPointRegisterFile.FA1)),
                 null,
                 JOptionPane.INFORMATION_MESSAGE);
     }
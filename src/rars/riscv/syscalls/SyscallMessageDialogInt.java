@@ -4,6 +4,7 @@ import rars.ExitingException;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.RegisterFile;
+import rars.simulator.ExecutionHistory;
 
 import javax.swing.*;
 
@@ -43,11 +44,12 @@ public class SyscallMessageDialogInt extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) throws ExitingException {
+        if (ExecutionHistory.replaying()) return; // already shown
         String message = NullString.get(statement);
 
         // Display the dialog.
         JOptionPane.showMessageDialog(null,
-                message + Integer.toString(RegisterFile.getValue("a1")),
+                message + Integer.toString(RegisterFile.getValue(RegisterFile.A1)),
                 null,
                 JOptionPane.INFORMATION_MESSAGE);
     }
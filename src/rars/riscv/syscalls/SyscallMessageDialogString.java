@@ -3,6 +3,8 @@ package rars.riscv.syscalls;
 import rars.ExitingException;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
+import rars.riscv.hardware.RegisterFile;
+import rars.simulator.ExecutionHistory;
 
 import javax.swing.*;
 
@@ -42,9 +44,10 @@ public class SyscallMessageDialogString extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) throws ExitingException {
+        if (ExecutionHistory.replaying()) return; // already shown
         // Display the dialog.
         JOptionPane.showMessageDialog(null,
-                NullString.get(statement) + NullString.get(statement, "a1"),
+                NullString.get(statement) + NullString.get(statement, RegisterFile.A1),
                 null,
                 JOptionPane.INFORMATION_MESSAGE);
     }
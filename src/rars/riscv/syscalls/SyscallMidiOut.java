@@ -3,6 +3,7 @@ package rars.riscv.syscalls;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.RegisterFile;
+import rars.simulator.ExecutionHistory;
 
 
 /*
@@ -58,10 +59,11 @@ public class SyscallMidiOut extends AbstractSyscall {
      * use the range 1-128.
      */
     public void simulate(ProgramStatement statement) {
-        int pitch = RegisterFile.getValue("a0");
-        int duration = RegisterFile.getValue("a1");
-        int instrument = RegisterFile.getValue("a2");
-        int volume = RegisterFile.getValue("a3");
+        if (ExecutionHistory.replaying()) return; // already played
+        int pitch = RegisterFile.getValue(RegisterFile.A0);
+        int duration = RegisterFile.getValue(RegisterFile.A1);
+        int instrument = RegisterFile.getValue(RegisterFile.A2);
+        int volume = RegisterFile.getValue(RegisterFile.A3);
         if (pitch < rangeLowEnd || pitch > rangeHighEnd) pitch = ToneGenerator.DEFAULT_PITCH;
         if (duration < 0) duration = ToneGenerator.DEFAULT_DURATION;
         if (instrument < rangeLowEnd || instrument > rangeHighEnd) instrument = ToneGenerator.DEFAULT_INSTRUMENT;
@@ -44,7 +44,7 @@ public class SyscallOpen extends AbstractSyscall {
 
     public void simulate(ProgramStatement statement) throws ExitingException {
         int retValue = SystemIO.openFile(NullString.get(statement),
-                RegisterFile.getValue("a1"));
-        RegisterFile.updateRegister("a0", retValue); // set returned fd value in register
+                RegisterFile.getValue(RegisterFile.A1));
+        RegisterFile.updateRegister(RegisterFile.A0, retValue); // set returned fd value in register
     }
 }
\ No newline at end of file
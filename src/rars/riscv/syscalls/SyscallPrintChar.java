@@ -39,8 +39,12 @@ public class SyscallPrintChar extends AbstractSyscall {
                 "a0 = character to print (only lowest byte is considered)", "N/A");
     }
 
+    public boolean writesOutput() {
+        return true;
+    }
+
     public void simulate(ProgramStatement statement) {
-        char t = (char) (RegisterFile.getValue("a0") & 0x000000ff);
+        char t = (char) (RegisterFile.getValue(RegisterFile.A0) & 0x000000ff);
         SystemIO.printString(Character.toString(t));
     }
 
@@ -44,11 +44,15 @@ public class SyscallPrintDouble extends AbstractSyscall {
         super("PrintDouble","Prints a double precision floating point number","fa0 = double to print","N/A");
     }
 
+    public boolean writesOutput() {
+        return true;
+    }
+
     /**
      * Performs syscall function to print double whose bits are stored in fa0
      */
     public void simulate(ProgramStatement statement) throws ExitingException {
         // Note: Higher numbered reg contains high order word so concat 13-12.
-        SystemIO.printString(Double.toString(Double.longBitsToDouble(FloatingPointRegisterFile.getValueLong(10))));
+        SystemIO.printString(Double.toString(Double.longBitsToDouble(FloatingPointRegisterFile.getValueLong(FloatingPointRegisterFile.FA0))));
     }
 }
\ No newline at end of file
@@ -38,8 +38,12 @@ public class SyscallPrintFloat extends AbstractSyscall {
         super("PrintFloat", "Prints a floating point number", "fa0 = float to print", "N/A");
     }
 
+    public boolean writesOutput() {
+        return true;
+    }
+
     public void simulate(ProgramStatement statement) {
         SystemIO.printString(Float.toString(Float.intBitsToFloat(
-                FloatingPointRegisterFile.getValue("fa0"))));
+                FloatingPointRegisterFile.getValue(FloatingPointRegisterFile.FA0))));
     }
 }
\ No newline at end of file
@@ -38,7 +38,11 @@ public class SyscallPrintInt extends AbstractSyscall {
         super("PrintInt", "Prints an integer", "a0 = integer to print", "N/A");
     }
 
+    public boolean writesOutput() {
+        return true;
+    }
+
     public void simulate(ProgramStatement statement) {
-        SystemIO.printString(Integer.toString(RegisterFile.getValue("a0")));
+        SystemIO.printString(Integer.toString(RegisterFile.getValue(RegisterFile.A0)));
     }
 }
\ No newline at end of file
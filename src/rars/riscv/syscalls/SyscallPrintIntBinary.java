@@ -39,7 +39,11 @@ public class SyscallPrintIntBinary extends AbstractSyscall {
         super("PrintIntBinary", "Prints an integer (in binary format left-padded with zeroes) ", "a0 = integer to print", "N/A");
     }
 
+    public boolean writesOutput() {
+        return true;
+    }
+
     public void simulate(ProgramStatement statement) {
-        SystemIO.printString(Binary.intToBinaryString(RegisterFile.getValue("a0")));
+        SystemIO.printString(Binary.intToBinaryString(RegisterFile.getValue(RegisterFile.A0)));
     }
 }
\ No newline at end of file
@@ -39,7 +39,11 @@ public class SyscallPrintIntHex extends AbstractSyscall {
         super("PrintIntHex", "Prints an integer (in hexdecimal format left-padded with zeroes)", "a0 = integer to print", "N/A");
     }
 
+    public boolean writesOutput() {
+        return true;
+    }
+
     public void simulate(ProgramStatement statement) {
-        SystemIO.printString(Binary.intToHexString(RegisterFile.getValue("a0")));
+        SystemIO.printString(Binary.intToHexString(RegisterFile.getValue(RegisterFile.A0)));
     }
 }
\ No newline at end of file
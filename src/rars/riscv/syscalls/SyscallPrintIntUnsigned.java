@@ -39,8 +39,12 @@ public class SyscallPrintIntUnsigned extends AbstractSyscall {
         super("PrintIntUnsigned", "Prints an integer (unsigned)", "a0 = integer to print", "N/A");
     }
 
+    public boolean writesOutput() {
+        return true;
+    }
+
     public void simulate(ProgramStatement statement) {
         SystemIO.printString(
-                Binary.unsignedIntToIntString(RegisterFile.getValue("a0")));
+                Binary.unsignedIntToIntString(RegisterFile.getValue(RegisterFile.A0)));
     }
 }
\ No newline at end of file
@@ -39,6 +39,10 @@ public class SyscallPrintString extends AbstractSyscall {
                 "a0 = the address of the string", "N/A");
     }
 
+    public boolean writesOutput() {
+        return true;
+    }
+
     public void simulate(ProgramStatement statement) throws ExitingException {
         SystemIO.printString(NullString.get(statement));
     }
@@ -5,6 +5,7 @@ import rars.ProgramStatement;
 import rars.riscv.hardware.FloatingPointRegisterFile;
 import rars.riscv.hardware.RegisterFile;
 import rars.riscv.AbstractSyscall;
+import rars.simulator.ExecutionHistory;
 
 import java.util.Random;
 
@@ -50,12 +51,14 @@ public class SyscallRandDouble extends AbstractSyscall {
                 "a0 = index of pseudorandom number generator","fa0 = the next pseudorandom");
     }
     public void simulate(ProgramStatement statement) throws ExitingException {
-        Integer index = RegisterFile.getValue("a0");
+        Integer index = RegisterFile.getValue(RegisterFile.A0);
         Random stream = RandomStreams.randomStreams.get(index);
         if (stream == null) {
             stream = new Random(); // create a non-seeded stream
             RandomStreams.randomStreams.put(index, stream);
         }
-        FloatingPointRegisterFile.updateRegisterLong(10, Double.doubleToRawLongBits(stream.nextDouble()));
+        long bits = ExecutionHistory.replaying() ? ExecutionHistory.replayValue()
+                : ExecutionHistory.record(Double.doubleToRawLongBits(stream.nextDouble()));
+        FloatingPointRegisterFile.updateRegisterLong(FloatingPointRegisterFile.FA0, bits);
     }
 }
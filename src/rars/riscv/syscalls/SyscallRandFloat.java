@@ -3,6 +3,8 @@ package rars.riscv.syscalls;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.FloatingPointRegisterFile;
+import rars.riscv.hardware.RegisterFile;
+import rars.simulator.ExecutionHistory;
 
 import java.util.Random;
 
@@ -41,7 +43,9 @@ public class SyscallRandFloat extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) {
-        Random stream = RandomStreams.get("a0");
-        FloatingPointRegisterFile.setRegisterToFloat(10, stream.nextFloat());// TODO: make this a string method fa0
+        Random stream = RandomStreams.get(RegisterFile.A0);
+        int bits = ExecutionHistory.replaying() ? (int) ExecutionHistory.replayValue()
+                : (int) ExecutionHistory.record(Float.floatToRawIntBits(stream.nextFloat()));
+        FloatingPointRegisterFile.setRegisterToFloat(FloatingPointRegisterFile.FA0, Float.intBitsToFloat(bits));
     }
 }
\ No newline at end of file
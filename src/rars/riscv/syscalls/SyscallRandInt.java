@@ -3,6 +3,7 @@ package rars.riscv.syscalls;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.RegisterFile;
+import rars.simulator.ExecutionHistory;
 
 import java.util.Random;
 
@@ -40,8 +41,10 @@ public class SyscallRandInt extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) {
-        Random stream = RandomStreams.get("a0");
-        RegisterFile.updateRegister("a0", stream.nextInt());
+        Random stream = RandomStreams.get(RegisterFile.A0);
+        int value = ExecutionHistory.replaying() ? (int) ExecutionHistory.replayValue()
+                : (int) ExecutionHistory.record(stream.nextInt());
+        RegisterFile.updateRegister(RegisterFile.A0, value);
     }
 }
 
@@ -4,6 +4,7 @@ import rars.ExitingException;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.RegisterFile;
+import rars.simulator.ExecutionHistory;
 
 import java.util.Random;
 
@@ -42,9 +43,11 @@ public class SyscallRandIntRange extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) throws ExitingException {
-        Random stream = RandomStreams.get("a0");
+        Random stream = RandomStreams.get(RegisterFile.A0);
         try {
-            RegisterFile.updateRegister("a0", stream.nextInt(RegisterFile.getValue("a1")));
+            int value = ExecutionHistory.replaying() ? (int) ExecutionHistory.replayValue()
+                    : (int) ExecutionHistory.record(stream.nextInt(RegisterFile.getValue(RegisterFile.A1)));
+            RegisterFile.updateRegister(RegisterFile.A0, value);
         } catch (IllegalArgumentException iae) {
             throw new ExitingException(statement,
                     "Upper bound of range cannot be negative (syscall " + this.getNumber() + ")");
@@ -3,6 +3,7 @@ package rars.riscv.syscalls;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.RegisterFile;
+import rars.simulator.ExecutionHistory;
 
 import java.util.Random;
 
@@ -41,12 +42,13 @@ public class SyscallRandSeed extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) {
-        Integer index = RegisterFile.getValue("a0");
+        if (ExecutionHistory.replaying()) return; // the stream was already seeded
+        Integer index = RegisterFile.getValue(RegisterFile.A0);
         Random stream = RandomStreams.randomStreams.get(index);
         if (stream == null) {
-            RandomStreams.randomStreams.put(index, new Random(RegisterFile.getValue("a1")));
+            RandomStreams.randomStreams.put(index, new Random(RegisterFile.getValue(RegisterFile.A1)));
         } else {
-            stream.setSeed(RegisterFile.getValue("a1"));
+            stream.setSeed(RegisterFile.getValue(RegisterFile.A1));
         }
     }
 }
@@ -44,23 +44,23 @@ public class SyscallRead extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) throws ExitingException {
-        int byteAddress = RegisterFile.getValue("a1"); // destination of characters read from file
-        int index = 0;
-        int length = RegisterFile.getValue("a2");
+        int byteAddress = RegisterFile.getValue(RegisterFile.A1); // destination of characters read from file
+        int length = RegisterFile.getValue(RegisterFile.A2);
+        if (length < 0) {
+            RegisterFile.updateRegister(RegisterFile.A0, -1);
+            return;
+        }
         byte myBuffer[] = new byte[length]; // specified length
         // Call to SystemIO.xxxx.read(xxx,xxx,xxx)  returns actual length
         int retLength = SystemIO.readFromFile(
-                RegisterFile.getValue("a0"), // fd
+                RegisterFile.getValue(RegisterFile.A0), // fd
                 myBuffer, // buffer
                 length); // length
-        RegisterFile.updateRegister("a0", retLength); // set returned value in register
+        RegisterFile.updateRegister(RegisterFile.A0, retLength); // set returned value in register
 
         // copy bytes from returned buffer into memory
         try {
-            while (index < retLength) {
-                Globals.memory.setByte(byteAddress++,
-                        myBuffer[index++]);
-            }
+            Globals.memory.writeBytes(byteAddress, myBuffer, 0, retLength);
         } catch (AddressErrorException e) {
             throw new ExitingException(statement, e);
         }
@@ -41,7 +41,7 @@ public class SyscallReadChar extends AbstractSyscall {
 
     public void simulate(ProgramStatement statement) throws ExitingException {
         try {
-            RegisterFile.updateRegister("a0", SystemIO.readChar(this.getNumber()));
+            RegisterFile.updateRegister(RegisterFile.A0, SystemIO.readChar(this.getNumber()));
         } catch (IndexOutOfBoundsException e) // means null input
         {
             throw new ExitingException(statement,
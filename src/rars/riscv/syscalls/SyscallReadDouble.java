@@ -61,6 +61,6 @@ public class SyscallReadDouble extends AbstractSyscall {
                     "invalid double input (syscall " + this.getNumber() + ")");
         }
 
-        FloatingPointRegisterFile.updateRegisterLong(10, Double.doubleToRawLongBits(doubleValue));
+        FloatingPointRegisterFile.updateRegisterLong(FloatingPointRegisterFile.FA0, Double.doubleToRawLongBits(doubleValue));
     }
 }
\ No newline at end of file
@@ -47,6 +47,6 @@ public class SyscallReadFloat extends AbstractSyscall {
             throw new ExitingException(statement,
                     "invalid float input (syscall " + this.getNumber() + ")");
         }
-        FloatingPointRegisterFile.updateRegister(10, Float.floatToRawIntBits(floatValue)); // TODO: update to string fa0
+        FloatingPointRegisterFile.updateRegister(FloatingPointRegisterFile.FA0, Float.floatToRawIntBits(floatValue));
     }
 }
\ No newline at end of file
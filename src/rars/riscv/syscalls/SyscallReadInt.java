@@ -42,7 +42,7 @@ public class SyscallReadInt extends AbstractSyscall {
 
     public void simulate(ProgramStatement statement) throws ExitingException {
         try {
-            RegisterFile.updateRegister("a0", SystemIO.readInteger(this.getNumber()));
+            RegisterFile.updateRegister(RegisterFile.A0, SystemIO.readInteger(this.getNumber()));
         } catch (NumberFormatException e) {
             throw new ExitingException(statement,
                     "invalid integer input (syscall " + this.getNumber() + ")");
@@ -9,6 +9,7 @@ import rars.riscv.hardware.RegisterFile;
 import rars.util.SystemIO;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -55,8 +56,8 @@ public class SyscallReadString extends AbstractSyscall {
 
     public void simulate(ProgramStatement statement) throws ExitingException {
         String inputString = "";
-        int buf = RegisterFile.getValue("a0"); // buf addr
-        int maxLength = RegisterFile.getValue("a1") - 1;
+        int buf = RegisterFile.getValue(RegisterFile.A0); // buf addr
+        int maxLength = RegisterFile.getValue(RegisterFile.A1) - 1;
         boolean addNullByte = true;
         // Guard against negative maxLength.  DPS 13-July-2011
         if (maxLength < 0) {
@@ -68,16 +69,14 @@ public class SyscallReadString extends AbstractSyscall {
         byte[] utf8BytesList = inputString.getBytes(StandardCharsets.UTF_8);
         // TODO: allow for utf-8 encoded strings
         int stringLength = Math.min(maxLength, utf8BytesList.length);
+        byte[] bytes = Arrays.copyOf(utf8BytesList, stringLength + 2); // room for newline and null byte
+        if (stringLength < maxLength) {
+            bytes[stringLength] = '\n';
+            stringLength++;
+        }
+        bytes[stringLength] = 0;
         try {
-            for (int index = 0; index < stringLength; index++) {
-                Globals.memory.setByte(buf + index,
-                        utf8BytesList[index]);
-            }
-            if (stringLength < maxLength) {
-                Globals.memory.setByte(buf + stringLength, '\n');
-                stringLength++;
-            }
-            if (addNullByte) Globals.memory.setByte(buf + stringLength, 0);
+            Globals.memory.writeBytes(buf, bytes, 0, addNullByte ? stringLength + 1 : stringLength);
         } catch (AddressErrorException e) {
             throw new ExitingException(statement, e);
         }
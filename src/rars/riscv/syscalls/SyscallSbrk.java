@@ -42,7 +42,7 @@ public class SyscallSbrk extends AbstractSyscall {
 
     public void simulate(ProgramStatement statement) throws ExitingException {
         try {
-            RegisterFile.updateRegister("a0", Globals.memory.allocateBytesFromHeap(RegisterFile.getValue("a0")));
+            RegisterFile.updateRegister(RegisterFile.A0, Globals.memory.allocateBytesFromHeap(RegisterFile.getValue(RegisterFile.A0)));
         } catch (IllegalArgumentException iae) {
             throw new ExitingException(statement,
                     iae.getMessage() + " (syscall " + this.getNumber() + ")");
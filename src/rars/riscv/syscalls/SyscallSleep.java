@@ -3,6 +3,7 @@ package rars.riscv.syscalls;
 import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.RegisterFile;
+import rars.simulator.ExecutionHistory;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -38,8 +39,9 @@ public class SyscallSleep extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) {
+        if (ExecutionHistory.replaying()) return;
         try {
-            Thread.sleep(RegisterFile.getValue("a0")); // units of milliseconds  1000 millisec = 1 sec.
+            Thread.sleep(RegisterFile.getValue(RegisterFile.A0)); // units of milliseconds  1000 millisec = 1 sec.
         } catch (InterruptedException e) {
         }
     }
@@ -4,6 +4,7 @@ import rars.ProgramStatement;
 import rars.riscv.AbstractSyscall;
 import rars.riscv.hardware.RegisterFile;
 import rars.util.Binary;
+import rars.simulator.ExecutionHistory;
 
 /*
 Copyright (c) 2003-2007,  Pete Sanderson and Kenneth Vollmar
@@ -39,9 +40,10 @@ public class SyscallTime extends AbstractSyscall {
     }
 
     public void simulate(ProgramStatement statement) {
-        long value = new java.util.Date().getTime();
-        RegisterFile.updateRegister("a0", Binary.lowOrderLongToInt(value));
-        RegisterFile.updateRegister("a1", Binary.highOrderLongToInt(value));
+        long value = ExecutionHistory.replaying() ? ExecutionHistory.replayValue()
+                : ExecutionHistory.record(new java.util.Date().getTime());
+        RegisterFile.updateRegister(RegisterFile.A0, Binary.lowOrderLongToInt(value));
+        RegisterFile.updateRegister(RegisterFile.A1, Binary.highOrderLongToInt(value));
     }
 
 }
\ No newline at end of file
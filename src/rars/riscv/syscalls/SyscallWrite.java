@@ -49,30 +49,28 @@ public class SyscallWrite extends AbstractSyscall {
                 "a0 = the number of charcters written");
     }
 
+    public boolean writesOutput() {
+        return true;
+    }
+
     public void simulate(ProgramStatement statement) throws ExitingException {
-        int byteAddress = RegisterFile.getValue("a1"); // source of characters to write to file
-        int reqLength = RegisterFile.getValue("a2"); // user-requested length
+        int byteAddress = RegisterFile.getValue(RegisterFile.A1); // source of characters to write to file
+        int reqLength = RegisterFile.getValue(RegisterFile.A2); // user-requested length
         if (reqLength < 0) {
-            RegisterFile.updateRegister("a0", -1);
+            RegisterFile.updateRegister(RegisterFile.A0, -1);
             return;
         }
-        int index = 0;
         byte myBuffer[] = new byte[reqLength];
         try {
-            byte b = (byte) Globals.memory.getByte(byteAddress);
-            while (index < reqLength) // Stop at requested length. Null bytes are included.
-            {
-                myBuffer[index++] = b;
-                byteAddress++;
-                b = (byte) Globals.memory.getByte(byteAddress);
-            }
+            // Exactly the requested length. Null bytes are included.
+            Globals.memory.readBytes(byteAddress, myBuffer, 0, reqLength);
         } catch (AddressErrorException e) {
             throw new ExitingException(statement, e);
         }
         int retValue = SystemIO.writeToFile(
-                RegisterFile.getValue("a0"), // fd
+                RegisterFile.getValue(RegisterFile.A0), // fd
                 myBuffer, // buffer
-                RegisterFile.getValue("a2")); // length
-        RegisterFile.updateRegister("a0", retValue); // set returned value in register
+                RegisterFile.getValue(RegisterFile.A2)); // length
+        RegisterFile.updateRegister(RegisterFile.A0, retValue); // set returned value in register
     }
 }
\ No newline at end of file
@@ -1,12 +1,25 @@
 package rars.simulator;
 
 import rars.Globals;
-import rars.ProgramStatement;
+import rars.Settings;
+import rars.management.SimulatorMetrics;
+import rars.riscv.hardware.AddressErrorException;
 import rars.riscv.hardware.ControlAndStatusRegisterFile;
 import rars.riscv.hardware.FloatingPointRegisterFile;
+import rars.riscv.hardware.Memory;
 import rars.riscv.hardware.RegisterFile;
 import rars.riscv.Instruction;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
 
@@ -43,43 +56,61 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
 public class BackStepper {
-    private enum Action {
-        MEMORY_RESTORE_RAW_WORD,
-        MEMORY_RESTORE_DOUBLE_WORD,
-        MEMORY_RESTORE_WORD,
-        MEMORY_RESTORE_HALF,
-        MEMORY_RESTORE_BYTE,
-        REGISTER_RESTORE,
-        PC_RESTORE,
-        CONTROL_AND_STATUS_REGISTER_RESTORE,
-        CONTROL_AND_STATUS_REGISTER_BACKDOOR,
-        FLOATING_POINT_REGISTER_RESTORE,
-        DO_NOTHING
-    }
-
-    // Flag to mark BackStep object as prepresenting specific situation: user manipulates
+    // Action codes, stored as bytes in the stack.
+    private static final byte MEMORY_RESTORE_RAW_WORD = 0;
+    private static final byte MEMORY_RESTORE_DOUBLE_WORD = 1;
+    private static final byte MEMORY_RESTORE_WORD = 2;
+    private static final byte MEMORY_RESTORE_HALF = 3;
+    private static final byte MEMORY_RESTORE_BYTE = 4;
+    private static final byte REGISTER_RESTORE = 5;
+    private static final byte PC_RESTORE = 6;
+    private static final byte CONTROL_AND_STATUS_REGISTER_RESTORE = 7;
+    private static final byte CONTROL_AND_STATUS_REGISTER_BACKDOOR = 8;
+    private static final byte FLOATING_POINT_REGISTER_RESTORE = 9;
+    private static final byte DO_NOTHING = 10;
+    private static final byte MEMORY_RESTORE_RANGE = 11;
+
+    // Flag to mark a back step as representing specific situation: user manipulates
     // memory/register value via GUI after assembling program but before running it.
     private static final int NOT_PC_VALUE = -1;
 
 
+    // The BackStepper that register and memory writes record into, or null when nothing records.
+    // Writes happen on every instruction, so this caches Settings.getBackSteppingEnabled() instead of
+    // asking it each time. It is refreshed when a simulation starts, when a program is assembled,
+    // and when recording is switched on or off.
+    private static BackStepper recording;
+
     private boolean engaged;
     private final BackstepStack backSteps;
 
-    // One can argue using java.util.Stack, given its clumsy implementation.
-    // A homegrown linked implementation will be more streamlined, but
-    // I anticipate that backstepping will only be used during timed
-    // (currently max 30 instructions/second) or stepped execution, where
-    // performance is not an issue.  Its Vector implementation may result
-    // in quicker garbage collection than a pure linked list implementation.
-
     /**
      * Create a fresh BackStepper.  It is enabled, which means all
      * subsequent instruction executions will have their "undo" action
      * recorded here.
      */
     public BackStepper() {
+        this(Globals.maximumBacksteps, Globals.maximumBackstepsInMemory);
+    }
+
+    /**
+     * Create a fresh BackStepper with the given limits.
+     *
+     * @param depth    the maximum number of steps that can be undone
+     * @param inMemory the number of steps kept in memory; if less than depth, older steps are
+     *                 compressed into a temporary file until depth is reached
+     */
+    public BackStepper(int depth, int inMemory) {
         engaged = true;
-        backSteps = new BackstepStack(Globals.maximumBacksteps);
+        backSteps = new BackstepStack(Math.max(depth, 1), Math.max(Math.min(inMemory, depth), 2));
+    }
+
+    /**
+     * Throw away all recorded steps and delete the temporary file, if one was used.
+     * The BackStepper can still be used afterwards.
+     */
+    public void clear() {
+        backSteps.clear();
     }
 
     /**
@@ -98,6 +129,22 @@ public class BackStepper {
      */
     public void setEnabled(boolean state) {
         engaged = state;
+        refresh();
+    }
+
+    /**
+     * @return the BackStepper that undo steps should be added to, or null if they are not being recorded
+     */
+    public static BackStepper recording() {
+        return recording;
+    }
+
+    /**
+     * Re-reads whether undo steps are being recorded, and for which program.  Call after changing
+     * Globals.program or its BackStepper.
+     */
+    public static void refresh() {
+        recording = Globals.getSettings().getBackSteppingEnabled() ? Globals.program.getBackStepper() : null;
     }
 
     /**
@@ -112,6 +159,7 @@ public class BackStepper {
     /**
      * Carry out a "back step", which will undo the latest execution step.
      * Does nothing if backstepping not enabled or if there are no steps to undo.
+     * If the steps cannot be undone, all of them are thrown away and backstepping is turned off.
      */
 
     // Note that there may be more than one "step" in an instruction execution; for
@@ -119,63 +167,68 @@ public class BackStepper {
     // all store their result in register pairs which results in two store operations.
     // Both must be undone transparently, so we need to detect that multiple steps happen
     // together and carry out all of them here.
-    // Use a do-while loop based on the backstep's program statement reference.
+    // Use a do-while loop based on the backstep's program counter.
     public void backStep() {
         if (engaged && !backSteps.empty()) {
-            ProgramStatement statement = backSteps.peek().ps;
             engaged = false; // GOTTA DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
-            do {
-                BackStep step = backSteps.pop();
-            /*
-                System.out.println("backstep POP: action "+step.action+" pc "+rars.util.Binary.intToHexString(step.pc)+
-            	                   " source "+((step.ps==null)? "none":step.ps.getSource())+
-            							 " parm1 "+step.param1+" parm2 "+step.param2);
-            */
-                if (step.pc != NOT_PC_VALUE) {
-                    RegisterFile.setProgramCounter(step.pc);
-                }
-                try {
-                    switch (step.action) {
+            refresh();
+            try {
+                int statement = backSteps.peekPC();
+                do {
+                    backSteps.pop();
+                    int pc = backSteps.pc, param1 = backSteps.param1;
+                    long param2 = backSteps.param2;
+                    if (pc != NOT_PC_VALUE) {
+                        RegisterFile.setProgramCounter(pc);
+                    }
+                    switch (backSteps.action) {
                         case MEMORY_RESTORE_RAW_WORD:
-                            Globals.memory.setRawWord(step.param1, (int)step.param2);
+                            Globals.memory.setRawWord(param1, (int) param2);
                             break;
                         case MEMORY_RESTORE_DOUBLE_WORD:
-                            Globals.memory.setDoubleWord(step.param1, step.param2);
+                            Globals.memory.setDoubleWord(param1, param2);
                             break;
                         case MEMORY_RESTORE_WORD:
-                            Globals.memory.setWord(step.param1, (int)step.param2);
+                            Globals.memory.setWord(param1, (int) param2);
                             break;
                         case MEMORY_RESTORE_HALF:
-                            Globals.memory.setHalf(step.param1, (int)step.param2);
+                            Globals.memory.setHalf(param1, (int) param2);
                             break;
                         case MEMORY_RESTORE_BYTE:
-                            Globals.memory.setByte(step.param1, (int)step.param2);
+                            Globals.memory.setByte(param1, (int) param2);
+                            break;
+                        case MEMORY_RESTORE_RANGE:
+                            Globals.memory.writeBytes(param1, backSteps.range, 0, backSteps.range.length);
                             break;
                         case REGISTER_RESTORE:
-                            RegisterFile.updateRegister(step.param1, step.param2);
+                            RegisterFile.updateRegister(param1, param2);
                             break;
                         case FLOATING_POINT_REGISTER_RESTORE:
-                            FloatingPointRegisterFile.updateRegisterLong(step.param1,step.param2);
+                            FloatingPointRegisterFile.updateRegisterLong(param1, param2);
                             break;
                         case CONTROL_AND_STATUS_REGISTER_RESTORE:
-                            ControlAndStatusRegisterFile.updateRegister(step.param1,step.param2);
+                            ControlAndStatusRegisterFile.updateRegister(param1, param2);
                             break;
                         case CONTROL_AND_STATUS_REGISTER_BACKDOOR:
-                            ControlAndStatusRegisterFile.updateRegisterBackdoor(step.param1,step.param2);
+                            ControlAndStatusRegisterFile.updateRegisterBackdoor(param1, param2);
                             break;
                         case PC_RESTORE:
-                            RegisterFile.setProgramCounter(step.param1);
+                            RegisterFile.setProgramCounter(param1);
                             break;
                         case DO_NOTHING:
                             break;
                     }
-                } catch (Exception e) {
-                    // if the original action did not cause an exception this will not either.
-                    System.out.println("Internal RARS error: address exception while back-stepping.");
-                    System.exit(0);
-                }
-            } while (!backSteps.empty() && statement == backSteps.peek().ps);
-            engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
+                } while (!backSteps.empty() && statement == backSteps.peekPC());
+                engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
+            } catch (AddressErrorException e) {
+                // if the original action did not cause an exception this will not either.
+                System.out.println("Internal RARS error: address exception while back-stepping. Backstepping is now off.");
+                backSteps.clear();
+            } catch (IOException e) {
+                System.out.println("Unable to read saved back steps: " + e.getMessage() + ". Backstepping is now off.");
+                backSteps.clear();
+            }
+            refresh();
         }
     }
   
@@ -189,6 +242,21 @@ public class BackStepper {
         return RegisterFile.getProgramCounter() - Instruction.INSTRUCTION_LENGTH;
     }
 
+    // Steps are grouped by the address of the statement that made them. An address that could not
+    // hold a statement only happens when the user modifies memory or register contents through
+    // direct manipulation on the GUI, after assembling the program but before starting to run it
+    // (or after backstepping all the way to the start). The action will not be associated with any
+    // instruction, but will be carried out when popped.
+    private static int statementPC(int pc) {
+        if (!Memory.wordAligned(pc)) return NOT_PC_VALUE;
+        if (Memory.inTextSegment(pc)) return pc;
+        if (Globals.getSettings().getBooleanSetting(Settings.Bool.SELF_MODIFYING_CODE_ENABLED)
+                && (Memory.inDataSegment(pc) || Memory.inMemoryMapSegment(pc))) {
+            return pc;
+        }
+        return NOT_PC_VALUE;
+    }
+
     /**
      * Add a new "back step" (the undo action) to the stack. The action here
      * is to restore a raw memory word value (setRawWord).
@@ -198,7 +266,7 @@ public class BackStepper {
      * @return the argument value
      */
     public int addMemoryRestoreRawWord(int address, int value) {
-        backSteps.push(Action.MEMORY_RESTORE_RAW_WORD, pc(), address, value);
+        backSteps.push(MEMORY_RESTORE_RAW_WORD, pc(), address, value);
         return value;
     }
 
@@ -211,12 +279,12 @@ public class BackStepper {
      * @return the argument value
      */
     public int addMemoryRestoreWord(int address, int value) {
-        backSteps.push(Action.MEMORY_RESTORE_WORD, pc(), address, value);
+        backSteps.push(MEMORY_RESTORE_WORD, pc(), address, value);
         return value;
     }
 
     public long addMemoryRestoreDoubleWord(int address, long value) {
-        backSteps.push(Action.MEMORY_RESTORE_DOUBLE_WORD, pc(), address, value);
+        backSteps.push(MEMORY_RESTORE_DOUBLE_WORD, pc(), address, value);
         return value;
     }
 
@@ -229,7 +297,7 @@ public class BackStepper {
      * @return the argument value
      */
     public int addMemoryRestoreHalf(int address, int value) {
-        backSteps.push(Action.MEMORY_RESTORE_HALF, pc(), address, value);
+        backSteps.push(MEMORY_RESTORE_HALF, pc(), address, value);
         return value;
     }
 
@@ -242,10 +310,23 @@ public class BackStepper {
      * @return the argument value
      */
     public int addMemoryRestoreByte(int address, int value) {
-        backSteps.push(Action.MEMORY_RESTORE_BYTE, pc(), address, value);
+        backSteps.push(MEMORY_RESTORE_BYTE, pc(), address, value);
         return value;
     }
 
+    /**
+     * Add a new "back step" (the undo action) to the stack.  The action here
+     * is to restore a range of memory written all at once, such as by a system call.
+     * The old contents are kept in memory, up to 16 MB in all; older steps are dropped
+     * to make room, and a range bigger than that drops all of them.
+     *
+     * @param address The address of the first byte of the range.
+     * @param bytes   The "restore" values to be stored there.
+     */
+    public void addMemoryRestoreRange(int address, byte[] bytes) {
+        backSteps.pushRange(pc(), address, bytes);
+    }
+
     /**
      * Add a new "back step" (the undo action) to the stack.  The action here
      * is to restore a register file register value.
@@ -255,7 +336,7 @@ public class BackStepper {
      * @return the argument value
      */
     public long addRegisterFileRestore(int register, long value) {
-        backSteps.push(Action.REGISTER_RESTORE, pc(), register, value);
+        backSteps.push(REGISTER_RESTORE, pc(), register, value);
         return value;
     }
 
@@ -271,7 +352,7 @@ public class BackStepper {
         value -= Instruction.INSTRUCTION_LENGTH;
         // Use "value" insead of "pc()" for second arg because RegisterFile.getProgramCounter()
         // returns branch target address at this point.
-        backSteps.push(Action.PC_RESTORE, value, value);
+        backSteps.push(PC_RESTORE, value, value);
         return value;
     }
 
@@ -284,7 +365,7 @@ public class BackStepper {
      * @return the argument value
      */
     public long addControlAndStatusRestore(int register, long value) {
-        backSteps.push(Action.CONTROL_AND_STATUS_REGISTER_RESTORE, pc(), register, value);
+        backSteps.push(CONTROL_AND_STATUS_REGISTER_RESTORE, pc(), register, value);
         return value;
     }
 
@@ -299,7 +380,7 @@ public class BackStepper {
      * @return the argument value
      */
     public long addControlAndStatusBackdoor(int register, long value) {
-        backSteps.push(Action.CONTROL_AND_STATUS_REGISTER_BACKDOOR, pc(), register, value);
+        backSteps.push(CONTROL_AND_STATUS_REGISTER_BACKDOOR, pc(), register, value);
         return value;
     }
 
@@ -312,7 +393,7 @@ public class BackStepper {
      * @return the argument value
      */
     public long addFloatingPointRestore(int register, long value) {
-        backSteps.push(Action.FLOATING_POINT_REGISTER_RESTORE, pc(), register, value);
+        backSteps.push(FLOATING_POINT_REGISTER_RESTORE, pc(), register, value);
         return value;
     }
 
@@ -323,130 +404,303 @@ public class BackStepper {
      * stack has the same PC counter, the do-nothing action will not be added.
      */
     public void addDoNothing(int pc) {
-        if (backSteps.empty() || backSteps.peek().pc != pc) {
-            backSteps.push(Action.DO_NOTHING, pc);
+        // Only looks at steps in memory; an extra do-nothing after spilled steps is harmless
+        if (backSteps.size == 0 || backSteps.peekLoadedPC() != pc) {
+            backSteps.push(DO_NOTHING, pc);
         }
     }
 
 
-    // Represents a "back step" (undo action) on the stack.
-    private class BackStep {
-        private Action action;  // what do do MEMORY_RESTORE_WORD, etc
-        private int pc;      // program counter value when original step occurred
-        private ProgramStatement ps;   // statement whose action is being "undone" here
-        private int param1;  // first parameter required by that action
-        private long param2;  // optional second parameter required by that action
-
-        // it is critical that BackStep object get its values by calling this method
-        // rather than assigning to individual members, because of the technique used
-        // to set its ps member (and possibly pc).
-        private void assign(Action act, int programCounter, int parm1, long parm2) {
-            action = act;
-            pc = programCounter;
-            try {
-                // Client does not have direct access to program statement, and rather than making all
-                // of them go through the methods below to obtain it, we will do it here.
-                // Want the program statement but do not want observers notified.
-                ps = Globals.memory.getStatementNoNotify(programCounter);
-            } catch (Exception e) {
-                // The only situation causing this so far: user modifies memory or register
-                // contents through direct manipulation on the GUI, after assembling the program but
-                // before starting to run it (or after backstepping all the way to the start).
-                // The action will not be associated with any instruction, but will be carried out
-                // when popped.
-                ps = null;
-                pc = NOT_PC_VALUE; // Backstep method above will see this as flag to not set PC
-            }
-            param1 = parm1;
-            param2 = parm2;
-         /*				
-            System.out.println("backstep PUSH: action "+action+" pc "+rars.util.Binary.intToHexString(pc)+
-         		                   " source "+((ps==null)? "none":ps.getSource())+
-         								 " parm1 "+param1+" parm2 "+param2);
-         */
-        }
-    }
+
 
     // *****************************************************************************
     // special purpose stack class for backstepping.  You've heard of circular queues
     // implemented with an array, right?  This is a circular stack!  When full, the
     // newly-pushed item overwrites the oldest item, with circular top!  All operations
-    // are constant time.  It's synchronized too, to be safe (is used by both the
-    // simulation thread and the GUI thread for the back-step button).
-    // Upon construction, it is filled with newly-created empty BackStep objects which
-    // will exist for the life of the stack.  Push does not create a BackStep object
-    // but instead overwrites the contents of the existing one.  Thus during RISCV
-    // program (simulated) execution, BackStep objects are never created or junked
-    // regardless of how many steps are executed.  This will speed things up a bit
-    // and make life easier for the garbage collector.
-
-    private class BackstepStack {
-        private final int capacity;
+    // are constant time.
+    // Steps are stored as parallel arrays of primitives rather than objects, so pushing a
+    // step never allocates and the whole stack costs 17 bytes per step. The arrays start
+    // small and grow up to the in-memory limit, so a large depth costs nothing until used.
+    // If the depth is larger than the in-memory limit, the oldest half of a full stack is
+    // compressed into a temporary file, and brought back when backstepping empties the stack.
+    // There is no locking: steps are pushed by the simulator thread and popped by the GUI
+    // thread only while the simulation is paused, and starting or stopping the simulator
+    // thread already orders the two.
+    // The old contents for MEMORY_RESTORE_RANGE steps vary in length, so they are kept apart
+    // in a queue, oldest first, and dropped from its front as their steps are dropped.
+
+    private static class BackstepStack {
+        private static final int INITIAL_CAPACITY = 1024;
+        private static final int BYTES_PER_STEP = 1 + 4 + 4 + 8;
+        private static final int MAX_RANGE_BYTES = 16 * 1024 * 1024;
+
+        private final int depth;
+        private final int memoryCapacity;
+        private byte[] actions;
+        private int[] pcs;
+        private int[] params;
+        private long[] values;
+        private int bottom; // index of the oldest step
         private int size;
-        private int top;
-        private final BackStep[] stack;
-
-        // Stack is created upon successful assembly or reset.  The one-time overhead of
-        // creating all the BackStep objects will not be noticed by the user, and enhances
-        // runtime performance by not having to create or recycle them during
-        // program execution.
-        private BackstepStack(int capacity) {
-            this.capacity = capacity;
-            this.size = 0;
-            this.top = -1;
-            this.stack = new BackStep[capacity];
-            for (int i = 0; i < capacity; i++) {
-                this.stack[i] = new BackStep();
+
+        // Compressed chunks of older steps, oldest first; each is {offset, length, count, ranges}
+        private final ArrayDeque<long[]> chunks = new ArrayDeque<>();
+        private int spilled;
+        private File spillFile;
+        private RandomAccessFile spill;
+        private long spillEnd;
+        private boolean spillFailed;
+
+        private final ArrayDeque<byte[]> ranges = new ArrayDeque<>();
+        private long rangeBytes;
+
+        // The last popped step
+        private byte action;
+        private int pc;
+        private int param1;
+        private long param2;
+        private byte[] range;
+
+        private BackstepStack(int depth, int memoryCapacity) {
+            this.depth = depth;
+            this.memoryCapacity = memoryCapacity;
+            allocate(Math.min(memoryCapacity, INITIAL_CAPACITY));
+        }
+
+        private void allocate(int capacity) {
+            actions = new byte[capacity];
+            pcs = new int[capacity];
+            params = new int[capacity];
+            values = new long[capacity];
+        }
+
+        private boolean empty() {
+            return size == 0 && spilled == 0;
+        }
+
+        private void push(byte act, int programCounter, int parm1, long parm2) {
+            int capacity = actions.length;
+            if (size == capacity) {
+                if (capacity < memoryCapacity) {
+                    // Not wrapped yet, so bottom is still 0
+                    capacity = (int) Math.min((long) capacity * 2, memoryCapacity);
+                    actions = Arrays.copyOf(actions, capacity);
+                    pcs = Arrays.copyOf(pcs, capacity);
+                    params = Arrays.copyOf(params, capacity);
+                    values = Arrays.copyOf(values, capacity);
+                } else if (depth > memoryCapacity && !spillFailed) {
+                    spillOldest(capacity / 2);
+                } else { // The oldest entry is replaced (goodbye!)
+                    if (actions[bottom] == MEMORY_RESTORE_RANGE) dropRanges(1);
+                    bottom = next(bottom);
+                    size--;
+                }
+            }
+            int top = bottom + size;
+            if (top >= capacity) top -= capacity;
+            actions[top] = act;
+            pcs[top] = statementPC(programCounter);
+            params[top] = parm1;
+            values[top] = parm2;
+            size++;
+            SimulatorMetrics.backstepEntry();
+        }
+
+        private void pushRange(int programCounter, int address, byte[] bytes) {
+            if (bytes.length > MAX_RANGE_BYTES) {
+                clear();
+                return;
             }
+            while (rangeBytes + bytes.length > MAX_RANGE_BYTES) {
+                dropOldest();
+            }
+            push(MEMORY_RESTORE_RANGE, programCounter, address, 0);
+            ranges.addLast(bytes);
+            rangeBytes += bytes.length;
         }
 
-        private synchronized boolean empty() {
-            return size == 0;
+        // Drops the oldest spilled chunk, or if there is none the oldest step.
+        private void dropOldest() {
+            if (!chunks.isEmpty()) {
+                long[] chunk = chunks.removeFirst();
+                spilled -= (int) chunk[2];
+                dropRanges((int) chunk[3]);
+            } else {
+                if (actions[bottom] == MEMORY_RESTORE_RANGE) dropRanges(1);
+                bottom = next(bottom);
+                size--;
+            }
         }
 
-        private synchronized void push(Action act, int programCounter, int parm1, long parm2) {
-            if (size == 0) {
-                top = 0;
-                size++;
-            } else if (size < capacity) {
-                top = (top + 1) % capacity;
-                size++;
-            } else { // size == capacity.  The top moves up one, replacing oldest entry (goodbye!)
-                top = (top + 1) % capacity;
+        private void dropRanges(int count) {
+            for (int i = 0; i < count; i++) {
+                rangeBytes -= ranges.removeFirst().length;
             }
-            // We'll re-use existing objects rather than create/discard each time.
-            // Must use assign() method rather than series of assignment statements!
-            stack[top].assign(act, programCounter, parm1, parm2);
         }
 
-        private synchronized void push(Action act, int programCounter, int parm1) {
+        private void push(byte act, int programCounter, int parm1) {
             push(act, programCounter, parm1, 0);
         }
 
-        private synchronized void push(Action act, int programCounter) {
+        private void push(byte act, int programCounter) {
             push(act, programCounter, 0, 0);
         }
 
         // NO PROTECTION.  This class is used only within this file so there is no excuse
         // for trying to pop from empty stack.
-        private synchronized BackStep pop() {
-            BackStep bs;
-            bs = stack[top];
-            if (size == 1) {
-                top = -1;
-            } else {
-                top = (top + capacity - 1) % capacity;
-            }
+        private void pop() throws IOException {
+            if (size == 0) reloadNewest();
+            int top = bottom + size - 1;
+            if (top >= actions.length) top -= actions.length;
+            action = actions[top];
+            pc = pcs[top];
+            param1 = params[top];
+            param2 = values[top];
+            range = action == MEMORY_RESTORE_RANGE ? ranges.removeLast() : null;
+            if (range != null) rangeBytes -= range.length;
             size--;
-            return bs;
         }
 
         // NO PROTECTION.  This class is used only within this file so there is no excuse
         // for trying to peek from empty stack.
-        private synchronized BackStep peek() {
-            return stack[top];
+        private int peekPC() throws IOException {
+            if (size == 0) reloadNewest();
+            return peekLoadedPC();
         }
 
-    }
+        private int peekLoadedPC() {
+            int top = bottom + size - 1;
+            if (top >= pcs.length) top -= pcs.length;
+            return pcs[top];
+        }
+
+        private int next(int index) {
+            return index + 1 == actions.length ? 0 : index + 1;
+        }
+
+        private void clear() {
+            size = 0;
+            bottom = 0;
+            spilled = 0;
+            chunks.clear();
+            closeSpill();
+            spillFailed = false;
+            ranges.clear();
+            rangeBytes = 0;
+        }
 
-}
\ No newline at end of file
+        // Moves the oldest count steps to the spill file, dropping the oldest spilled steps if
+        // that goes past depth.
+        private void spillOldest(int count) {
+            ByteBuffer raw = ByteBuffer.allocate(count * BYTES_PER_STEP);
+            int rangeCount = 0;
+            // Column by column, as like values next to each other compress much better
+            for (int i = 0, j = bottom; i < count; i++, j = next(j)) {
+                raw.put(actions[j]);
+                if (actions[j] == MEMORY_RESTORE_RANGE) rangeCount++;
+            }
+            for (int i = 0, j = bottom; i < count; i++, j = next(j)) raw.putInt(pcs[j]);
+            for (int i = 0, j = bottom; i < count; i++, j = next(j)) raw.putInt(params[j]);
+            for (int i = 0, j = bottom; i < count; i++, j = next(j)) raw.putLong(values[j]);
+            bottom = (bottom + count) % actions.length;
+            size -= count;
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            deflater.setInput(raw.array());
+            deflater.finish();
+            byte[] compressed = new byte[raw.capacity() + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) compressed = Arrays.copyOf(compressed, length * 2);
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            deflater.end();
+
+            try {
+                if (spill == null) {
+                    spillFile = File.createTempFile("rars-backstep", ".bin");
+                    spillFile.deleteOnExit();
+                    spill = new RandomAccessFile(spillFile, "rw");
+                }
+                while (!chunks.isEmpty() && spilled + size + count > depth) {
+                    long[] chunk = chunks.removeFirst();
+                    spilled -= (int) chunk[2];
+                    dropRanges((int) chunk[3]);
+                }
+                if (chunks.isEmpty()) {
+                    spillEnd = 0;
+                } else if (chunks.getFirst()[0] > spillEnd - chunks.getFirst()[0]) {
+                    compactSpill();
+                }
+                spill.seek(spillEnd);
+                spill.write(compressed, 0, length);
+                chunks.addLast(new long[]{spillEnd, length, count, rangeCount});
+                spillEnd += length;
+                spilled += count;
+            } catch (IOException e) {
+                // Carry on without the file; the steps that could not be saved are lost.
+                System.out.println("Unable to save older back steps: " + e.getMessage());
+                spillFailed = true;
+                spilled = 0;
+                for (long[] chunk : chunks) rangeCount += (int) chunk[3];
+                dropRanges(rangeCount);
+                chunks.clear();
+                closeSpill();
+            }
+        }
+
+        // Most of the file is dropped chunks, so move the live ones to the front.
+        private void compactSpill() throws IOException {
+            long from = chunks.getFirst()[0];
+            byte[] live = new byte[(int) (spillEnd - from)];
+            spill.seek(from);
+            spill.readFully(live);
+            spill.seek(0);
+            spill.write(live);
+            for (long[] chunk : chunks) chunk[0] -= from;
+            spillEnd = live.length;
+            spill.setLength(spillEnd);
+        }
+
+        // Called with the stack empty, loads the most recently spilled steps back in.
+        private void reloadNewest() throws IOException {
+            long[] chunk = chunks.removeLast();
+            int count = (int) chunk[2];
+            spilled -= count;
+            ByteBuffer raw = ByteBuffer.allocate(count * BYTES_PER_STEP);
+            try {
+                byte[] compressed = new byte[(int) chunk[1]];
+                spill.seek(chunk[0]);
+                spill.readFully(compressed);
+                Inflater inflater = new Inflater();
+                inflater.setInput(compressed);
+                inflater.inflate(raw.array());
+                inflater.end();
+                spillEnd = chunk[0];
+                spill.setLength(spillEnd);
+            } catch (DataFormatException e) {
+                throw new IOException("saved back steps are corrupt", e);
+            }
+            bottom = 0;
+            size = count;
+            for (int i = 0; i < count; i++) actions[i] = raw.get();
+            for (int i = 0; i < count; i++) pcs[i] = raw.getInt();
+            for (int i = 0; i < count; i++) params[i] = raw.getInt();
+            for (int i = 0; i < count; i++) values[i] = raw.getLong();
+        }
+
+        private void closeSpill() {
+            if (spill != null) {
+                try {
+                    spill.close();
+                } catch (IOException e) {
+                    // nothing more to do with it
+                }
+                spillFile.delete();
+                spill = null;
+                spillFile = null;
+            }
+            spillEnd = 0;
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package rars.simulator;
+
+import rars.Globals;
+import rars.SimulationException;
+import rars.riscv.hardware.ControlAndStatusRegisterFile;
+import rars.riscv.hardware.FloatingPointRegisterFile;
+import rars.riscv.hardware.Memory;
+import rars.riscv.hardware.Register;
+import rars.riscv.hardware.RegisterFile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Records enough of a simulation to go back to any earlier instruction.
+ * <p>
+ * While enabled, a copy of the machine (memory, registers, CSRs and the heap pointer) is taken every
+ * so many instructions, and everything the program gets from outside the machine is logged along with
+ * the number of instructions executed when it arrived: input from {@link rars.util.SystemIO}, the
+ * {@code time} CSR, random numbers, dialog results and interrupts. Going back to instruction N restores
+ * the last copy taken before N and runs forward from it, taking the outside inputs from the log instead.
+ * <p>
+ * While replaying, the outside world is left alone: output is not written again, files are not touched
+ * and random streams do not advance. The outside world therefore stays where it was at the furthest
+ * point reached, and once replay gets back there recording carries on seamlessly.
+ * <p>
+ * Copies are thinned out as the run gets longer (every other one is dropped and the interval doubles),
+ * so memory use stays bounded however long the program runs. The log only grows with the inputs.
+ * <p>
+ * Like {@link rars.riscv.hardware.InterruptController}, this is global state. It must only be used
+ * from the simulator thread or while the simulation is paused.
+ */
+public class ExecutionHistory {
+    private static boolean enabled = false;
+    private static boolean replaying = false;
+    // Number of instructions executed since start()
+    private static long step;
+    // Furthest step reached; everything before it can be replayed
+    private static long horizon;
+
+    private static int interval;
+    private static int maxSnapshots;
+    private static final ArrayList<Snapshot> snapshots = new ArrayList<>();
+
+    private static final Log inputs = new Log(), times = new Log(), pending = new Log(), claims = new Log();
+
+    // The simulator only looks for a history when some listener is registered, so one is while recording
+    private static final InstructionListener recording = new InstructionListener() {
+    };
+
+    private ExecutionHistory() {
+    }
+
+    /**
+     * Starts recording from the current machine state, throwing away any previous history.
+     *
+     * @param snapshotInterval initial number of instructions between copies of the machine
+     * @param snapshotLimit    maximum number of copies kept at once
+     */
+    public static void start(int snapshotInterval, int snapshotLimit) {
+        interval = Math.max(snapshotInterval, 1);
+        maxSnapshots = Math.max(snapshotLimit, 2);
+        step = 0;
+        horizon = 0;
+        replaying = false;
+        snapshots.clear();
+        inputs.clear();
+        times.clear();
+        pending.clear();
+        claims.clear();
+        snapshots.add(new Snapshot());
+        if (!enabled) InstructionListener.replace(null, recording);
+        enabled = true;
+    }
+
+    /**
+     * Stops recording and frees the history.
+     */
+    public static void stop() {
+        if (enabled) InstructionListener.replace(recording, null);
+        enabled = false;
+        replaying = false;
+        snapshots.clear();
+        inputs.clear();
+        times.clear();
+        pending.clear();
+        claims.clear();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if the simulator is re-executing history and outside inputs come from the log
+     */
+    public static boolean replaying() {
+        return replaying;
+    }
+
+    /**
+     * @return the number of instructions executed since recording started
+     */
+    public static long getStep() {
+        return step;
+    }
+
+    /**
+     * @return the furthest step that has been reached
+     */
+    public static long getHorizon() {
+        return horizon;
+    }
+
+    /**
+     * Moves the simulation to just before the given instruction is executed, counting from 0 at the
+     * time recording started. Going backwards replays from the closest copy; going forwards simply
+     * runs the program. The simulation must be paused.
+     *
+     * @param target the number of instructions that should have executed
+     * @return the reason the simulation stopped, MAX_STEPS if target was reached
+     * @throws SimulationException if the program fails on the way
+     */
+    public static Simulator.Reason seek(long target) throws SimulationException {
+        if (!enabled) throw new IllegalStateException("Execution history is not being recorded");
+        if (target < step) {
+            restore(closestSnapshot(Math.max(target, 0)));
+        }
+        return runTo(target, null);
+    }
+
+    /**
+     * Goes back to the most recent point before the current one at which one of the breakpoints was
+     * about to execute. If there is none, the simulation goes back to the start of the history.
+     * The simulation must be paused.
+     *
+     * @param breakPoints addresses of the breakpoints
+     * @return true if a breakpoint was found
+     * @throws SimulationException if the program fails during replay
+     */
+    public static boolean reverseContinue(int[] breakPoints) throws SimulationException {
+        if (!enabled) throw new IllegalStateException("Execution history is not being recorded");
+        int[] sorted = breakPoints.clone();
+        Arrays.sort(sorted);
+        long now = step;
+        // Replay one interval at a time, newest first, and remember the last hit in each
+        for (int i = closestSnapshot(Math.max(now - 1, 0)); i >= 0; i--) {
+            long end = i + 1 < snapshots.size() ? Math.min(snapshots.get(i + 1).step, now) : now;
+            restore(i);
+            long last = -1;
+            if (step < end && Arrays.binarySearch(sorted, RegisterFile.getProgramCounter()) >= 0) {
+                last = step;
+            }
+            while (step < end) {
+                Simulator.Reason reason = runTo(end, sorted);
+                if (reason != Simulator.Reason.BREAKPOINT) break;
+                if (step < end) last = step;
+            }
+            if (last >= 0) {
+                seek(last);
+                return true;
+            }
+        }
+        seek(snapshots.get(0).step);
+        return false;
+    }
+
+    private static Simulator.Reason runTo(long target, int[] breakPoints) throws SimulationException {
+        Simulator.Reason reason = Simulator.Reason.MAX_STEPS;
+        while (step < target) {
+            int steps = (int) Math.min(target - step, Integer.MAX_VALUE);
+            reason = Simulator.getInstance().simulate(RegisterFile.getProgramCounter(), steps, breakPoints);
+            // ebreak stops the simulation too, but is not what was asked for when seeking
+            if (reason != Simulator.Reason.MAX_STEPS
+                    && (reason != Simulator.Reason.BREAKPOINT || breakPoints != null)) {
+                break;
+            }
+        }
+        return reason;
+    }
+
+    // Index of the last snapshot taken at or before target
+    private static int closestSnapshot(long target) {
+        int low = 0, high = snapshots.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (snapshots.get(mid).step <= target) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static void restore(int index) {
+        Snapshot snapshot = snapshots.get(index);
+        snapshot.restore();
+        step = snapshot.step;
+        replaying = step < horizon;
+        if (!replaying) truncate();
+        inputs.seek(step);
+        times.seek(step);
+        pending.seek(step);
+        claims.seek(step);
+        // The undo information no longer matches the machine
+        if (Globals.program != null && Globals.program.getBackStepper() != null) {
+            Globals.program.getBackStepper().clear();
+        }
+    }
+
+    // Drops anything logged at or after the current step; it is about to be recorded again
+    private static void truncate() {
+        inputs.truncate(step);
+        times.truncate(step);
+        pending.truncate(step);
+        claims.truncate(step);
+    }
+
+    /**
+     * Called by the simulator each time an instruction completes.
+     */
+    static void stepped() {
+        step++;
+        if (replaying) {
+            if (step >= horizon) {
+                replaying = false;
+                truncate();
+            }
+            return;
+        }
+        horizon = step;
+        if (step - snapshots.get(snapshots.size() - 1).step >= interval) {
+            if (snapshots.size() == maxSnapshots) {
+                // Keep the first and every other one after it
+                int kept = 1;
+                for (int i = 2; i < snapshots.size(); i += 2) {
+                    snapshots.set(kept++, snapshots.get(i));
+                }
+                snapshots.subList(kept, snapshots.size()).clear();
+                interval *= 2;
+            }
+            snapshots.add(new Snapshot());
+        }
+    }
+
+    /**
+     * Called by the simulator with the wall clock time that goes into the time CSR.
+     *
+     * @param now the current time in milliseconds
+     * @return the time to use
+     */
+    static long time(long now) {
+        if (replaying) {
+            return times.current(step, now);
+        }
+        if (enabled && (times.size == 0 || times.values[times.size - 1] != now)) {
+            times.add(step, now);
+        }
+        return now;
+    }
+
+    /**
+     * Called by the simulator before it checks for interrupts.
+     *
+     * @param external whether an external interrupt is pending
+     * @param timer    whether a timer interrupt is pending
+     * @return bit 0 set for a pending external interrupt and bit 1 for a pending timer interrupt
+     */
+    static int pendingInterrupts(boolean external, boolean timer) {
+        int bits = (external ? 1 : 0) | (timer ? 2 : 0);
+        if (replaying) {
+            return (int) pending.latest(step);
+        }
+        if (enabled && (pending.size == 0 || pending.values[pending.size - 1] != bits)) {
+            pending.add(step, bits);
+        }
+        return bits;
+    }
+
+    /**
+     * Called by the simulator when it claims an interrupt.
+     *
+     * @param value the value from the interrupt controller, not used while replaying
+     * @return the value to use
+     */
+    static int claimInterrupt(int value) {
+        if (replaying) {
+            return (int) claims.next(step, 0);
+        }
+        if (enabled) claims.add(step, value);
+        return value;
+    }
+
+    /**
+     * Logs an input from outside the machine.
+     *
+     * @param value the value the program is given
+     * @return value
+     */
+    public static long record(long value) {
+        if (enabled) inputs.add(step, value);
+        return value;
+    }
+
+    /**
+     * Logs an input from outside the machine.
+     *
+     * @param value the value the program is given, may be null
+     * @return value
+     */
+    public static <T> T record(T value) {
+        if (enabled) inputs.add(step, value);
+        return value;
+    }
+
+    /**
+     * While replaying, gets the next input logged with {@link #record(long)}.
+     *
+     * @return the input that was recorded, or 0 if there is none
+     */
+    public static long replayValue() {
+        return inputs.next(step, 0);
+    }
+
+    /**
+     * While replaying, gets the next input logged with {@link #record(Object)}.
+     *
+     * @return the input that was recorded, or null if there is none
+     */
+    public static Object replayObject() {
+        int index = inputs.advance(step);
+        return index < 0 || inputs.objects == null ? null : inputs.objects[index];
+    }
+
+    // A sequence of values, each tagged with the step it happened at, in the order they happened
+    private static class Log {
+        private long[] steps = new long[64];
+        private long[] values = new long[64];
+        private Object[] objects;
+        private int size;
+        private int cursor; // next entry to replay
+
+        private void add(long step, long value) {
+            grow();
+            steps[size] = step;
+            values[size] = value;
+            size++;
+            cursor = size;
+        }
+
+        private void add(long step, Object value) {
+            grow();
+            if (objects == null) objects = new Object[steps.length];
+            steps[size] = step;
+            values[size] = 0;
+            objects[size] = value;
+            size++;
+            cursor = size;
+        }
+
+        private void grow() {
+            if (size == steps.length) {
+                steps = Arrays.copyOf(steps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                if (objects != null) objects = Arrays.copyOf(objects, size * 2);
+            } else if (objects != null && objects.length < steps.length) {
+                objects = Arrays.copyOf(objects, steps.length);
+            }
+        }
+
+        // Entries from before this step were missed (a step can be interrupted and resumed), so
+        // skip them; then take the next entry if it belongs to this step.
+        private int advance(long step) {
+            while (cursor < size && steps[cursor] < step) cursor++;
+            if (cursor < size && steps[cursor] == step) return cursor++;
+            return -1;
+        }
+
+        // Like next, but an entry is only logged when the value changes, so without one the value stays
+        private long latest(long step) {
+            int index = advance(step);
+            if (index >= 0) return values[index];
+            return cursor == 0 ? 0 : values[cursor - 1];
+        }
+
+        private long next(long step, long otherwise) {
+            int index = advance(step);
+            return index < 0 ? otherwise : values[index];
+        }
+
+        // The value of the most recent entry at or before step
+        private long current(long step, long otherwise) {
+            while (cursor < size && steps[cursor] <= step) cursor++;
+            return cursor == 0 ? otherwise : values[cursor - 1];
+        }
+
+        private void seek(long step) {
+            int low = 0, high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (steps[mid] < step) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            cursor = low;
+        }
+
+        private void truncate(long step) {
+            seek(step);
+            if (objects != null) Arrays.fill(objects, cursor, size, null);
+            size = cursor;
+        }
+
+        private void clear() {
+            steps = new long[64];
+            values = new long[64];
+            objects = null;
+            size = 0;
+            cursor = 0;
+        }
+    }
+
+    // A copy of the machine after some number of steps
+    private static class Snapshot {
+        private final long step;
+        private final Memory memory;
+        private final int heapAddress;
+        private final int pc;
+        private final long[] registers, floatingPoint, controlAndStatus;
+
+        private Snapshot() {
+            step = ExecutionHistory.step;
+            memory = new Memory();
+            memory.copyFrom(Globals.memory);
+            heapAddress = Memory.heapAddress;
+            pc = RegisterFile.getProgramCounter();
+            registers = save(RegisterFile.getRegisters());
+            floatingPoint = save(FloatingPointRegisterFile.getRegisters());
+            controlAndStatus = save(ControlAndStatusRegisterFile.getRegisters());
+        }
+
+        private void restore() {
+            Globals.memory.copyFrom(memory);
+            Memory.heapAddress = heapAddress;
+            RegisterFile.getProgramCounterRegister().setValue(pc);
+            restore(RegisterFile.getRegisters(), registers);
+            restore(FloatingPointRegisterFile.getRegisters(), floatingPoint);
+            restore(ControlAndStatusRegisterFile.getRegisters(), controlAndStatus);
+        }
+
+        private static long[] save(Register[] registers) {
+            long[] values = new long[registers.length];
+            for (int i = 0; i < registers.length; i++) {
+                values[i] = registers[i].getValueNoNotify();
+            }
+            return values;
+        }
+
+        private static void restore(Register[] registers, long[] values) {
+            for (int i = 0; i < registers.length; i++) {
+                registers[i].setValue(values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package rars.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Something that watches every instruction the simulator executes: a trace, a timing model, a profiler
+ * and so on. Each kind of tool keeps one listener {@link #replace registered} while it is running.
+ * <p>
+ * The simulator takes the registered listeners when it starts running, and again only when they change,
+ * so a run with none registered only pays for a null check at each point it would call them. A listener
+ * registered while the simulation is running takes effect from the next instruction. All methods are
+ * called on the simulator thread, and do nothing unless overridden.
+ */
+public abstract class InstructionListener {
+    private static volatile InstructionListener[] registered = new InstructionListener[0];
+
+    /**
+     * Unregisters one listener and registers another in its place, for starting, stopping or replacing a
+     * tool.
+     *
+     * @param old         the listener to remove, or null
+     * @param replacement the listener to add, or null
+     */
+    public static synchronized void replace(InstructionListener old, InstructionListener replacement) {
+        InstructionListener[] listeners = registered;
+        if (old != null) {
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i] == old) {
+                    InstructionListener[] fewer = Arrays.copyOf(listeners, listeners.length - 1);
+                    System.arraycopy(listeners, i + 1, fewer, i, fewer.length - i);
+                    listeners = fewer;
+                    break;
+                }
+            }
+        }
+        if (replacement != null) {
+            listeners = Arrays.copyOf(listeners, listeners.length + 1);
+            listeners[listeners.length - 1] = replacement;
+        }
+        registered = listeners;
+        Simulator.getInstance().listenersChanged();
+    }
+
+    /**
+     * @return the listeners registered now, or null if there are none
+     */
+    static InstructionListener[] registered() {
+        InstructionListener[] listeners = registered;
+        return listeners.length == 0 ? null : listeners;
+    }
+
+    /**
+     * Called before the instruction at pc is fetched.
+     *
+     * @param pc address of the instruction
+     * @return null to go on, otherwise why the simulation should stop before executing it
+     */
+    public Simulator.Reason fetch(int pc) {
+        return null;
+    }
+
+    /**
+     * Called just before an instruction is executed.
+     *
+     * @param pc   address of the instruction
+     * @param word the instruction's encoding
+     */
+    public void issue(int pc, int word) {
+    }
+
+    /**
+     * Called once the instruction passed to {@link #issue} has finished, whether or not it completed
+     * normally.
+     */
+    public void end() {
+    }
+
+    /**
+     * Called when an instruction has completed and been counted in instret. An instruction that traps,
+     * exits the program or waits for input does not retire.
+     *
+     * @param pc     address of the instruction
+     * @param nextPC the address of the next instruction
+     * @return how many cycles beyond one the instruction took; 0 unless the listener models timing
+     */
+    public long retire(int pc, int nextPC) {
+        return 0;
+    }
+}
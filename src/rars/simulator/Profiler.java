@@ -0,0 +1,271 @@
+package rars.simulator;
+
+import rars.Globals;
+import rars.ProgramStatement;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.Memory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how many times each instruction is executed, and reports where the time went by source line,
+ * by label and by kind of instruction.
+ * <p>
+ * While a profiler is {@link #start started}, the simulator calls {@link #count} with the address of
+ * every instruction it retires, so the total matches instret, which just increments a counter in an array indexed by the offset of
+ * the instruction into the text segment. All the work of relating addresses to the program is done when
+ * a {@link #report} is made.
+ */
+public class Profiler extends InstructionListener {
+    private static volatile Profiler active;
+
+    private static final String[] categoryNames = {"ALU", "Multiply/divide", "Load", "Store", "Atomic",
+            "Branch", "Jump", "Floating point", "System", "Other"};
+    private static final int ALU = 0, MULTIPLY = 1, LOAD = 2, STORE = 3, ATOMIC = 4, BRANCH = 5, JUMP = 6,
+            FLOATING_POINT = 7, SYSTEM = 8, OTHER = 9;
+
+    private int base;
+    private long[] counts;
+    // Instructions executed outside the text segment (only possible with self modifying code)
+    private final HashMap<Integer, Long> outside = new HashMap<>();
+
+    public Profiler() {
+        reset();
+    }
+
+    /**
+     * Starts profiling the following instructions, replacing any profiler already running.
+     *
+     * @param profiler where to count them
+     */
+    public static synchronized void start(Profiler profiler) {
+        InstructionListener.replace(active, profiler);
+        active = profiler;
+    }
+
+    public static synchronized void stop() {
+        InstructionListener.replace(active, null);
+        active = null;
+    }
+
+    /**
+     * @return the profiler in use, or null if there is none
+     */
+    public static Profiler active() {
+        return active;
+    }
+
+    /**
+     * Zeroes all the counts.
+     */
+    public synchronized void reset() {
+        base = Memory.textBaseAddress;
+        counts = new long[1024];
+        outside.clear();
+    }
+
+    @Override
+    public long retire(int pc, int nextPC) {
+        count(pc);
+        return 0;
+    }
+
+    /**
+     * Counts one execution of an instruction.
+     *
+     * @param pc the address of the instruction
+     */
+    public void count(int pc) {
+        int i = (pc - base) >>> 2;
+        if (i < counts.length) {
+            counts[i]++;
+        } else {
+            countSlowly(pc, i);
+        }
+    }
+
+    private synchronized void countSlowly(int pc, int i) {
+        if (Memory.inTextSegment(pc) && (pc & 3) == 0) {
+            if (base != Memory.textBaseAddress) {
+                // The memory configuration changed since the reset
+                rebase();
+                i = (pc - base) >>> 2;
+            }
+            if (i >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, Integer.highestOneBit(i) * 2));
+            }
+            counts[i]++;
+        } else {
+            outside.merge(pc, 1L, Long::sum);
+        }
+    }
+
+    private void rebase() {
+        Map<Integer, Long> executed = snapshot();
+        base = Memory.textBaseAddress;
+        counts = new long[1024];
+        outside.clear();
+        for (Map.Entry<Integer, Long> entry : executed.entrySet()) {
+            int pc = entry.getKey();
+            long count = entry.getValue();
+            int i = (pc - base) >>> 2;
+            if (Memory.inTextSegment(pc) && (pc & 3) == 0) {
+                if (i >= counts.length) counts = Arrays.copyOf(counts, Integer.highestOneBit(i) * 2);
+                counts[i] = count;
+            } else {
+                outside.put(pc, count);
+            }
+        }
+    }
+
+    /**
+     * @param pc the address of an instruction
+     * @return how many times it has been executed
+     */
+    public synchronized long getCount(int pc) {
+        int i = (pc - base) >>> 2;
+        if (i < counts.length) return counts[i];
+        return outside.getOrDefault(pc, 0L);
+    }
+
+    /**
+     * @return how many instructions have been executed in total
+     */
+    public synchronized long getTotal() {
+        long total = 0;
+        for (long c : counts) total += c;
+        for (long c : outside.values()) total += c;
+        return total;
+    }
+
+    // Every address executed at least once, with its count
+    private synchronized Map<Integer, Long> snapshot() {
+        Map<Integer, Long> executed = new HashMap<>(outside);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) executed.put(base + (i << 2), counts[i]);
+        }
+        return executed;
+    }
+
+    /**
+     * Prints the total, then the instruction counts by kind of instruction, by the label each instruction
+     * comes after, and by source line, each sorted with the most executed first.
+     *
+     * @param out   where to print
+     * @param limit the most labels and source lines to print
+     */
+    public void report(PrintStream out, int limit) {
+        report(out, limit, Globals.memory);
+    }
+
+    /**
+     * Prints a report as above, for a program loaded into a memory other than the current one.
+     *
+     * @param out    where to print
+     * @param limit  the most labels and source lines to print
+     * @param memory the memory holding the program's statements
+     */
+    public void report(PrintStream out, int limit, Memory memory) {
+        Map<Integer, Long> executed = snapshot();
+        long total = 0;
+        for (long c : executed.values()) total += c;
+        long[] byCategory = new long[categoryNames.length];
+        Map<String, Long> byLabel = new HashMap<>();
+        Map<String, Long> byLine = new HashMap<>();
+        Map<String, String> lineSource = new HashMap<>();
+        Map<Integer, ProgramStatement> statements = new HashMap<>();
+        for (int pc : executed.keySet()) {
+            try {
+                ProgramStatement statement = memory.getStatementNoNotify(pc);
+                if (statement != null) statements.put(pc, statement);
+            } catch (AddressErrorException e) {
+                // counted as unknown below
+            }
+        }
+        TextLabels labels = new TextLabels(statements.values());
+        for (Map.Entry<Integer, Long> entry : executed.entrySet()) {
+            int pc = entry.getKey();
+            long count = entry.getValue();
+            ProgramStatement statement = statements.get(pc);
+            String label = labels.find(pc);
+            byLabel.merge(label == null ? "(no label)" : label, count, Long::sum);
+            if (statement == null) {
+                byCategory[OTHER] += count;
+                byLine.merge("(unknown)", count, Long::sum);
+                continue;
+            }
+            byCategory[category(statement.getBinaryStatement())] += count;
+            String line = statement.getSourceFile() + ":" + statement.getSourceLine();
+            byLine.merge(line, count, Long::sum);
+            lineSource.putIfAbsent(line, statement.getSource() == null ? "" : statement.getSource().trim());
+        }
+
+        out.println("Instructions executed: " + total);
+        out.println("By category:");
+        for (int c = 0; c < byCategory.length; c++) {
+            if (byCategory[c] != 0) print(out, byCategory[c], total, categoryNames[c], "");
+        }
+        out.println("By label:");
+        printSorted(out, byLabel, total, limit, null);
+        out.println("By source line:");
+        printSorted(out, byLine, total, limit, lineSource);
+    }
+
+    private static void printSorted(PrintStream out, Map<String, Long> counts, long total, int limit,
+                                    Map<String, String> detail) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            Map.Entry<String, Long> entry = entries.get(i);
+            print(out, entry.getValue(), total, entry.getKey(), detail == null ? "" : detail.getOrDefault(entry.getKey(), ""));
+        }
+        if (entries.size() > limit) out.println("  ... " + (entries.size() - limit) + " more");
+    }
+
+    private static void print(PrintStream out, long count, long total, String name, String detail) {
+        out.printf("%12d %6.2f%%  %s%s%n", count, total == 0 ? 0 : 100.0 * count / total, name,
+                detail.isEmpty() ? "" : "\t" + detail);
+    }
+
+    private static int category(int word) {
+        switch (word & 0x7F) {
+            case 0x13:
+            case 0x1B:
+            case 0x37:
+            case 0x17:
+                return ALU;
+            case 0x33:
+            case 0x3B:
+                return (word >>> 25) == 1 ? MULTIPLY : ALU;
+            case 0x03:
+            case 0x07:
+                return LOAD;
+            case 0x23:
+            case 0x27:
+                return STORE;
+            case 0x2F:
+                return ATOMIC;
+            case 0x63:
+                return BRANCH;
+            case 0x6F:
+            case 0x67:
+                return JUMP;
+            case 0x43:
+            case 0x47:
+            case 0x4B:
+            case 0x4F:
+            case 0x53:
+                return FLOATING_POINT;
+            case 0x73:
+            case 0x0F:
+                return SYSTEM;
+            default:
+                return OTHER;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package rars.simulator;
+
+/**
+ * Watches a running simulation on behalf of whoever started it: stops it when asked to, or when it has
+ * used up its instructions or its time, and reports its progress now and then.
+ * <p>
+ * The simulator calls {@link #fetch} before each instruction, but the work is only done every
+ * {@value #INTERVAL} instructions, so a request to stop takes effect within that many instructions. A
+ * program blocked waiting for input is not stopped until the input comes.
+ */
+public class SimulationMonitor extends InstructionListener {
+    /**
+     * How many instructions are executed between checks.
+     */
+    public static final int INTERVAL = 1 << 16;
+
+    private static volatile SimulationMonitor active;
+
+    /**
+     * Told about the progress of a simulation, on the thread running it.
+     */
+    public interface Listener {
+        /**
+         * @param instructions how many instructions have been executed since the monitor was started
+         * @param pc           the address of the next instruction
+         */
+        void progress(long instructions, int pc);
+    }
+
+    private final long instructionLimit;
+    private final long timeLimitNanos;
+    private final Listener listener;
+    private volatile boolean cancelled;
+    private boolean timedOut;
+    private long instructions;
+    private long nextCheck; // the instruction count to check at next
+    private long startTime;
+
+    /**
+     * @param instructionLimit how many instructions the simulation may execute, or -1 for no limit
+     * @param timeLimitMillis  how long it may run for, from when the monitor is started, or -1 for no limit
+     * @param listener         told of progress at each check, or null
+     */
+    public SimulationMonitor(long instructionLimit, long timeLimitMillis, Listener listener) {
+        this.instructionLimit = instructionLimit;
+        this.timeLimitNanos = timeLimitMillis < 0 ? -1 : timeLimitMillis * 1000000;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts watching the following instructions, replacing any monitor already running.
+     *
+     * @param monitor the monitor to use
+     */
+    public static synchronized void start(SimulationMonitor monitor) {
+        monitor.startTime = System.nanoTime();
+        InstructionListener.replace(active, monitor);
+        active = monitor;
+    }
+
+    public static synchronized void stop() {
+        InstructionListener.replace(active, null);
+        active = null;
+    }
+
+    /**
+     * @return the monitor in use, or null if there is none
+     */
+    public static SimulationMonitor active() {
+        return active;
+    }
+
+    /**
+     * Asks the simulation to stop at the next check. May be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true if the simulation was stopped for running out of time
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return how many instructions have been executed since the monitor was started
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return null to go on, otherwise why the simulation should stop: MAX_STEPS if it has used up its
+     * instructions, or STOP if it was cancelled or has used up its time
+     */
+    @Override
+    public Simulator.Reason fetch(int pc) {
+        if (instructions != nextCheck) {
+            instructions++;
+            return null;
+        }
+        if (instructionLimit >= 0 && instructions >= instructionLimit) return Simulator.Reason.MAX_STEPS;
+        if (listener != null) listener.progress(instructions, pc);
+        if (cancelled) return Simulator.Reason.STOP;
+        if (timeLimitNanos >= 0 && System.nanoTime() - startTime > timeLimitNanos) {
+            timedOut = true;
+            return Simulator.Reason.STOP;
+        }
+        nextCheck = instructions + INTERVAL;
+        if (instructionLimit >= 0) nextCheck = Math.min(nextCheck, instructionLimit);
+        instructions++;
+        return null;
+    }
+}
@@ -1,6 +1,8 @@
 package rars.simulator;
 
 import rars.*;
+import rars.management.FlightRecorder;
+import rars.management.SimulatorMetrics;
 import rars.riscv.hardware.*;
 import rars.riscv.BasicInstruction;
 import rars.riscv.Instruction;
@@ -63,7 +65,8 @@ public class Simulator extends Observable {
         NORMAL_TERMINATION,
         CLIFF_TERMINATION, // run off bottom of program
         PAUSE,
-        STOP
+        STOP,
+        WAITING_FOR_INPUT  // at a system call reading input that has not come yet; simulate again once it has
     }
 
     /**
@@ -128,7 +131,7 @@ public class Simulator extends Observable {
 
 
     /**
-     * Set the volatile stop boolean variable checked by the execution
+     * Set the volatile stop signal checked by the execution
      * thread at the end of each instruction execution.  If variable
      * is found to be true, the execution thread will depart
      * gracefully so the main thread handling the GUI can take over.
@@ -189,9 +192,18 @@ public class Simulator extends Observable {
         simulatorThread.interrupt();
     }
 
+    /**
+     * Has a running simulation take the registered {@link InstructionListener}s again before its next
+     * instruction, as one may have been registered or removed by the instruction it is executing.
+     */
+    void listenersChanged() {
+        SimThread thread = simulatorThread;
+        if (thread != null) thread.listenersChanged();
+    }
+
     /**
      * Perform the simulated execution. It is "interrupted" when main thread sets
-     * the "stop" variable to true. The variable is tested before the next instruction
+     * the STOP signal. The signals are tested before the next instruction
      * is simulated.  Thus interruption occurs in a tightly controlled fashion.
      */
 
@@ -200,8 +212,12 @@ public class Simulator extends Observable {
         private int[] breakPoints;
         private boolean done;
         private SimulationException pe;
-        private volatile boolean stop = false;
+        // What the loop has to deal with before the next instruction: STOP, or that the LISTENERS changed.
+        // Both are in one volatile variable so that the loop only reads one.
+        private volatile int signals;
+        private static final int STOP = 1, LISTENERS = 2;
         private Reason constructReturnReason;
+        private Object simulateEvent; // for Flight Recorder
 
         /**
          * SimThread constructor.  Receives all the information it needs to simulate execution.
@@ -219,19 +235,29 @@ public class Simulator extends Observable {
         }
 
         /**
-         * Sets to "true" the volatile boolean variable that is tested after each
+         * Sets the STOP signal that is tested after each
          * instruction is executed.  After calling this method, the next test
-         * will yield "true" and "construct" will return.
+         * will find it and "construct" will return.
          *
          * @param reason the Reason for stopping (PAUSE or STOP)
          */
         public synchronized void setStop(Reason reason) {
-            stop = true;
+            signals |= STOP;
             constructReturnReason = reason;
             notify();
         }
 
+        synchronized void listenersChanged() {
+            signals |= LISTENERS;
+        }
+
+        private synchronized void clearListenersChanged() {
+            signals &= ~LISTENERS;
+        }
+
         private void startExecution() {
+            simulateEvent = FlightRecorder.beginPhase();
+            SimulatorMetrics.started(ControlAndStatusRegisterFile.getValueNoNotify(ControlAndStatusRegisterFile.INSTRET));
             Simulator.getInstance().notifyObserversOfExecution(new SimulatorNotice(SimulatorNotice.SIMULATOR_START,
                     maxSteps,(Globals.getGui() != null || Globals.runSpeedPanelExists)?RunSpeedPanel.getInstance().getRunSpeed():RunSpeedPanel.UNLIMITED_SPEED,
                     pc, null, pe, done));
@@ -242,6 +268,9 @@ public class Simulator extends Observable {
             this.constructReturnReason = reason;
             SystemIO.flush(true);
             if (done) SystemIO.resetFiles(); // close any files opened in the process of simulating
+            FlightRecorder.endPhase(simulateEvent, "simulate", String.valueOf(reason));
+            simulateEvent = null;
+            SimulatorMetrics.stopped(ControlAndStatusRegisterFile.getValueNoNotify(ControlAndStatusRegisterFile.INSTRET));
             Simulator.getInstance().notifyObserversOfExecution(new SimulatorNotice(SimulatorNotice.SIMULATOR_STOP,
                     maxSteps, (Globals.getGui() != null || Globals.runSpeedPanelExists)?RunSpeedPanel.getInstance().getRunSpeed():RunSpeedPanel.UNLIMITED_SPEED,
                     pc, reason, pe, done));
@@ -256,18 +285,18 @@ public class Simulator extends Observable {
             assert se.cause() >= 0 : "Interrupts cannot be handled by the trap handler";
 
             // set the relevant CSRs
-            ControlAndStatusRegisterFile.updateRegister("ucause", se.cause());
-            ControlAndStatusRegisterFile.updateRegister("uepc", pc);
-            ControlAndStatusRegisterFile.updateRegister("utval", se.value());
+            ControlAndStatusRegisterFile.updateRegister(ControlAndStatusRegisterFile.UCAUSE, se.cause());
+            ControlAndStatusRegisterFile.updateRegister(ControlAndStatusRegisterFile.UEPC, pc);
+            ControlAndStatusRegisterFile.updateRegister(ControlAndStatusRegisterFile.UTVAL, se.value());
 
             // Get the interrupt handler if it exists
-            int utvec = ControlAndStatusRegisterFile.getValue("utvec");
+            int utvec = ControlAndStatusRegisterFile.getValue(ControlAndStatusRegisterFile.UTVEC);
 
             // Mode can be ignored because we are only handling traps
             int base = utvec & 0xFFFFFFFC;
 
             ProgramStatement exceptionHandler = null;
-            if ((ControlAndStatusRegisterFile.getValue("ustatus") & 0x1) != 0) { // test user-interrupt enable (UIE)
+            if ((ControlAndStatusRegisterFile.getValue(ControlAndStatusRegisterFile.USTATUS) & 0x1) != 0) { // test user-interrupt enable (UIE)
                 try {
                     exceptionHandler = Globals.memory.getStatement(base);
                 } catch (AddressErrorException aee) {
@@ -276,8 +305,8 @@ public class Simulator extends Observable {
             }
 
             if (exceptionHandler != null) {
-                ControlAndStatusRegisterFile.orRegister("ustatus", 0x10); // Set UPIE
-                ControlAndStatusRegisterFile.clearRegister("ustatus", 0x1); // Clear UIE
+                ControlAndStatusRegisterFile.orRegister(ControlAndStatusRegisterFile.USTATUS, 0x10); // Set UPIE
+                ControlAndStatusRegisterFile.clearRegister(ControlAndStatusRegisterFile.USTATUS, 0x1); // Clear UIE
                 RegisterFile.setProgramCounter(base);
                 return true;
             } else {
@@ -294,15 +323,15 @@ public class Simulator extends Observable {
             int code = cause & 0x7FFFFFFF;
 
             // Don't handle cases where that interrupt isn't enabled
-            assert ((ControlAndStatusRegisterFile.getValue("ustatus") & 0x1) != 0 && (ControlAndStatusRegisterFile.getValue("uie") & (1 << code)) != 0) : "The interrupt handler must be enabled";
+            assert ((ControlAndStatusRegisterFile.getValue(ControlAndStatusRegisterFile.USTATUS) & 0x1) != 0 && (ControlAndStatusRegisterFile.getValue(ControlAndStatusRegisterFile.UIE) & (1 << code)) != 0) : "The interrupt handler must be enabled";
 
             // set the relevant CSRs
-            ControlAndStatusRegisterFile.updateRegister("ucause", cause);
-            ControlAndStatusRegisterFile.updateRegister("uepc", pc);
-            ControlAndStatusRegisterFile.updateRegister("utval", value);
+            ControlAndStatusRegisterFile.updateRegister(ControlAndStatusRegisterFile.UCAUSE, cause);
+            ControlAndStatusRegisterFile.updateRegister(ControlAndStatusRegisterFile.UEPC, pc);
+            ControlAndStatusRegisterFile.updateRegister(ControlAndStatusRegisterFile.UTVAL, value);
 
             // Get the interrupt handler if it exists
-            int utvec = ControlAndStatusRegisterFile.getValue("utvec");
+            int utvec = ControlAndStatusRegisterFile.getValue(ControlAndStatusRegisterFile.UTVEC);
 
             // Handle vectored mode
             int base = utvec & 0xFFFFFFFC, mode = utvec & 0x3;
@@ -317,8 +346,8 @@ public class Simulator extends Observable {
                 // handled below
             }
             if (exceptionHandler != null) {
-                ControlAndStatusRegisterFile.orRegister("ustatus", 0x10); // Set UPIE
-                ControlAndStatusRegisterFile.clearRegister("ustatus", ControlAndStatusRegisterFile.INTERRUPT_ENABLE);
+                ControlAndStatusRegisterFile.orRegister(ControlAndStatusRegisterFile.USTATUS, 0x10); // Set UPIE
+                ControlAndStatusRegisterFile.clearRegister(ControlAndStatusRegisterFile.USTATUS, ControlAndStatusRegisterFile.INTERRUPT_ENABLE);
                 RegisterFile.setProgramCounter(base);
                 return true;
             } else {
@@ -329,6 +358,25 @@ public class Simulator extends Observable {
             }
         }
 
+        private int claimExternal() {
+            if (ExecutionHistory.replaying()) return ExecutionHistory.claimInterrupt(0);
+            return ExecutionHistory.claimInterrupt(InterruptController.claimExternal());
+        }
+
+        private int claimTimer() {
+            if (ExecutionHistory.replaying()) return ExecutionHistory.claimInterrupt(0);
+            return ExecutionHistory.claimInterrupt(InterruptController.claimTimer());
+        }
+
+        // Asks each listener whether to go on before the instruction at pc; the first reason to stop wins
+        private Reason fetch(InstructionListener[] listeners, int pc) {
+            for (InstructionListener listener : listeners) {
+                Reason reason = listener.fetch(pc);
+                if (reason != null) return reason;
+            }
+            return null;
+        }
+
         /**
          * Implements Runnable
          */
@@ -383,29 +431,49 @@ public class Simulator extends Observable {
             ProgramStatement statement = null;
             int steps = 0;
             boolean ebreak = false, waiting = false;
+            // Whether steps are recorded for undo cannot change while running, so look it up once; what
+            // is watching is looked up again only when the LISTENERS signal says it changed
+            BackStepper.refresh();
+            BackStepper backStepper = BackStepper.recording();
+            InstructionListener[] listeners = InstructionListener.registered();
 
-            // Volatile variable initialized false but can be set true by the main thread.
+            // Volatile variable initialized to no signals but the main thread can set STOP.
             // Used to stop or pause a running program.  See stopSimulation() above.
-            while (!stop) {
+            while (true) {
+                int signal = signals;
+                if (signal != 0) {
+                    if ((signal & STOP) != 0) break;
+                    clearListenersChanged();
+                    listeners = InstructionListener.registered();
+                }
                 SystemIO.flush(false);
                 // Perform the RISCV instruction in synchronized block.  If external threads agree
                 // to access memory and registers only through synchronized blocks on same
                 // lock variable, then full (albeit heavy-handed) protection of memory and
                 // registers is assured.  Not as critical for reading from those resources.
-                Globals.memoryAndRegistersLock.lock();
+                if (!Globals.memoryAndRegistersLock.tryLock()) {
+                    long waitStart = System.nanoTime();
+                    Globals.memoryAndRegistersLock.lock();
+                    SimulatorMetrics.lockBlocked(System.nanoTime() - waitStart);
+                }
                 try {
                     // Handle pending interupts and traps first
-                    long uip = ControlAndStatusRegisterFile.getValueNoNotify("uip"), uie = ControlAndStatusRegisterFile.getValueNoNotify("uie");
-                    boolean IE = (ControlAndStatusRegisterFile.getValueNoNotify("ustatus") & ControlAndStatusRegisterFile.INTERRUPT_ENABLE) != 0;
+                    long uip = ControlAndStatusRegisterFile.getValueNoNotify(ControlAndStatusRegisterFile.UIP), uie = ControlAndStatusRegisterFile.getValueNoNotify(ControlAndStatusRegisterFile.UIE);
+                    boolean IE = (ControlAndStatusRegisterFile.getValueNoNotify(ControlAndStatusRegisterFile.USTATUS) & ControlAndStatusRegisterFile.INTERRUPT_ENABLE) != 0;
                     // make sure no interrupts sneak in while we are processing them
                     pc = RegisterFile.getProgramCounter();
                     synchronized (InterruptController.lock) {
                         boolean pendingExternal = InterruptController.externalPending(),
                                 pendingTimer = InterruptController.timerPending(),
                                 pendingTrap = InterruptController.trapPending();
+                        if (listeners != null && ExecutionHistory.isEnabled()) { // interrupts come from the log when replaying
+                            int pending = ExecutionHistory.pendingInterrupts(pendingExternal, pendingTimer);
+                            pendingExternal = (pending & 1) != 0;
+                            pendingTimer = (pending & 2) != 0;
+                        }
                         // This is the explicit (in the spec) order that interrupts should be serviced
                         if (IE && pendingExternal && (uie & ControlAndStatusRegisterFile.EXTERNAL_INTERRUPT) != 0) {
-                            if (handleInterrupt(InterruptController.claimExternal(), SimulationException.EXTERNAL_INTERRUPT, pc)) {
+                            if (handleInterrupt(claimExternal(), SimulationException.EXTERNAL_INTERRUPT, pc)) {
                                 pendingExternal = false;
                                 uip &= ~0x100;
                             } else {
@@ -418,7 +486,7 @@ public class Simulator extends Observable {
                                 return; // if the interrupt can't be handled, but the interrupt enable bit is high, thats an error
                             }
                         } else if (IE && pendingTimer && (uie & ControlAndStatusRegisterFile.TIMER_INTERRUPT) != 0) {
-                            if (handleInterrupt(InterruptController.claimTimer(), SimulationException.TIMER_INTERRUPT, pc)) {
+                            if (handleInterrupt(claimTimer(), SimulationException.TIMER_INTERRUPT, pc)) {
                                 pendingTimer = false;
                                 uip &= ~0x10;
                             } else {
@@ -432,8 +500,8 @@ public class Simulator extends Observable {
                         }
                         uip |= (pendingExternal ? ControlAndStatusRegisterFile.EXTERNAL_INTERRUPT : 0) | (pendingTimer ? ControlAndStatusRegisterFile.TIMER_INTERRUPT : 0);
                     }
-                    if (uip != ControlAndStatusRegisterFile.getValueNoNotify("uip")) {
-                        ControlAndStatusRegisterFile.updateRegister("uip", uip);
+                    if (uip != ControlAndStatusRegisterFile.getValueNoNotify(ControlAndStatusRegisterFile.UIP)) {
+                        ControlAndStatusRegisterFile.updateRegister(ControlAndStatusRegisterFile.UIP, uip);
                     }
 
                     // always handle interrupts and traps before quiting
@@ -445,6 +513,13 @@ public class Simulator extends Observable {
                             return;
                         }
                     }
+                    if (listeners != null) {
+                        Reason reason = fetch(listeners, RegisterFile.getProgramCounter());
+                        if (reason != null) {
+                            stopExecution(false, reason);
+                            return;
+                        }
+                    }
 
                     pc = RegisterFile.getProgramCounter();
                     RegisterFile.incrementPC();
@@ -460,7 +535,7 @@ public class Simulator extends Observable {
                         }
                         if (!InterruptController.registerSynchronousTrap(tmp, pc)) {
                             this.pe = tmp;
-                            ControlAndStatusRegisterFile.updateRegister("uepc", pc);
+                            ControlAndStatusRegisterFile.updateRegister(ControlAndStatusRegisterFile.UEPC, pc);
                             stopExecution(true, Reason.EXCEPTION);
                             return;
                         } else {
@@ -480,24 +555,34 @@ public class Simulator extends Observable {
                                     "undefined instruction (" + Binary.intToHexString(statement.getBinaryStatement()) + ")",
                                     SimulationException.ILLEGAL_INSTRUCTION);
                         }
+                        if (listeners != null) {
+                            for (InstructionListener listener : listeners) {
+                                listener.issue(pc, statement.getBinaryStatement());
+                            }
+                        }
                         // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
                         instruction.simulate(statement);
 
                         // IF statement added 7/26/06 (explanation above)
-                        if (Globals.getSettings().getBackSteppingEnabled()) {
-                            Globals.program.getBackStepper().addDoNothing(pc);
+                        if (backStepper != null) {
+                            backStepper.addDoNothing(pc);
                         }
                     } catch (BreakpointException b) {
                         // EBREAK needs backstepping support too.
-                        if (Globals.getSettings().getBackSteppingEnabled()) {
-                            Globals.program.getBackStepper().addDoNothing(pc);
+                        if (backStepper != null) {
+                            backStepper.addDoNothing(pc);
                         }
                         ebreak = true;
                     } catch (WaitException w) {
-                        if (Globals.getSettings().getBackSteppingEnabled()) {
-                            Globals.program.getBackStepper().addDoNothing(pc);
+                        if (backStepper != null) {
+                            backStepper.addDoNothing(pc);
                         }
                         waiting = true;
+                    } catch (InputPendingException e) {
+                        // Back to the system call, to make it again when there is input
+                        RegisterFile.initializeProgramCounter(pc);
+                        stopExecution(false, Reason.WAITING_FOR_INPUT);
+                        return;
                     } catch (ExitingException e) {
                         if (e.error() == null) {
                             this.constructReturnReason = Reason.NORMAL_TERMINATION;
@@ -518,16 +603,25 @@ public class Simulator extends Observable {
                         }
                     }
                 } finally {
+                    if (listeners != null) {
+                        for (InstructionListener listener : listeners) listener.end();
+                    }
                     Globals.memoryAndRegistersLock.unlock();
                 }
 
                 // Update cycle(h) and instret(h)
-                long cycle = ControlAndStatusRegisterFile.getValueNoNotify("cycle"),
-                         instret = ControlAndStatusRegisterFile.getValueNoNotify("instret"),
+                long cycle = ControlAndStatusRegisterFile.getValueNoNotify(ControlAndStatusRegisterFile.CYCLE),
+                         instret = ControlAndStatusRegisterFile.getValueNoNotify(ControlAndStatusRegisterFile.INSTRET),
                          time = System.currentTimeMillis();;
-                ControlAndStatusRegisterFile.updateRegisterBackdoor("cycle",cycle+1);
-                ControlAndStatusRegisterFile.updateRegisterBackdoor("instret",instret+1);
-                ControlAndStatusRegisterFile.updateRegisterBackdoor("time",time);
+                if (listeners != null) {
+                    int nextPC = RegisterFile.getProgramCounter();
+                    for (InstructionListener listener : listeners) cycle += listener.retire(pc, nextPC);
+                    if (ExecutionHistory.isEnabled()) time = ExecutionHistory.time(time);
+                }
+                ControlAndStatusRegisterFile.updateRegisterBackdoor(ControlAndStatusRegisterFile.CYCLE,cycle+1);
+                ControlAndStatusRegisterFile.updateRegisterBackdoor(ControlAndStatusRegisterFile.INSTRET,instret+1);
+                ControlAndStatusRegisterFile.updateRegisterBackdoor(ControlAndStatusRegisterFile.TIME,time);
+                if (listeners != null && ExecutionHistory.isEnabled()) ExecutionHistory.stepped();
 
                 //     Return if we've reached a breakpoint.
                 if (ebreak || (breakPoints != null) &&
@@ -536,9 +630,10 @@ public class Simulator extends Observable {
                     return;
                 }
 
-                // Wait if WFI ran
+                // Wait if WFI ran (when replaying, the interrupt that ended the wait is in the log)
                 if (waiting) {
-                    if (!(InterruptController.externalPending() || InterruptController.timerPending())) {
+                    if (!ExecutionHistory.replaying() &&
+                            !(InterruptController.externalPending() || InterruptController.timerPending())) {
                         synchronized (this) {
                             try {
                                 wait();
@@ -553,6 +648,8 @@ public class Simulator extends Observable {
                 // schedule GUI update only if: there is in fact a GUI! AND
                 //                              using Run,  not Step (maxSteps != 1) AND
                 //                              running slowly enough for GUI to keep up
+                // Register values are plain arrays owned by this thread; posting to the event
+                // queue publishes the values written so far to the GUI.
                 if (interactiveGUIUpdater != null && maxSteps != 1 &&
                         RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
                     SwingUtilities.invokeLater(interactiveGUIUpdater);
@@ -0,0 +1,212 @@
+package rars.simulator;
+
+import rars.Globals;
+import rars.ProgramStatement;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.Memory;
+import rars.riscv.hardware.RegisterFile;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sampling profiler that records the call stack every so many instructions, for programs that run too
+ * long to profile every instruction and where the time spent in a function including its callees matters,
+ * such as recursive ones.
+ * <p>
+ * The call stack is followed from the jumps, using the same conventions as a return address stack in
+ * hardware: a jal or jalr that links to ra or t0 is a call, and a jalr to the address in ra or t0 that
+ * does not link is a return. Other jumps stay in the same function. Each function is named after the label
+ * it was called at.
+ * <p>
+ * The samples are written in the folded stack format read by flame graph tools: one line per distinct
+ * stack, with the function names from the outermost separated by semicolons, then a space and the number
+ * of samples taken in that stack.
+ */
+public class StackSampler extends InstructionListener {
+    private static volatile StackSampler active;
+
+    private final int interval;
+    private int countdown;
+    private long samples;
+
+    // The addresses each function on the current call stack was called at, with the first function
+    // executed at the bottom
+    private int[] stack = new int[64];
+    private int depth;
+
+    // The stacks sampled so far form a tree of frames
+    private final Frame root = new Frame(null, 0);
+
+    /**
+     * @param interval how many instructions to execute between samples
+     */
+    public StackSampler(int interval) {
+        if (interval < 1) throw new IllegalArgumentException("The sampling interval must be at least 1");
+        this.interval = interval;
+        reset();
+    }
+
+    /**
+     * Starts sampling the following instructions, replacing any sampler already running.
+     *
+     * @param sampler where to record the samples
+     */
+    public static synchronized void start(StackSampler sampler) {
+        InstructionListener.replace(active, sampler);
+        active = sampler;
+    }
+
+    public static synchronized void stop() {
+        InstructionListener.replace(active, null);
+        active = null;
+    }
+
+    /**
+     * @return the sampler in use, or null if there is none
+     */
+    public static StackSampler active() {
+        return active;
+    }
+
+    /**
+     * Forgets all samples and the current call stack.
+     */
+    public synchronized void reset() {
+        root.firstChild = null;
+        root.samples = 0;
+        depth = 0;
+        countdown = interval;
+        samples = 0;
+    }
+
+    @Override
+    public void issue(int pc, int word) {
+        if (depth == 0) {
+            stack[0] = pc;
+            depth = 1;
+        }
+        if (--countdown == 0) {
+            countdown = interval;
+            sample();
+        }
+        int opcode = word & 0x7F;
+        if (opcode == 0x6F) { // jal
+            if (isLink((word >>> 7) & 31)) {
+                int offset = (word >> 31) << 20 | word & 0xFF000 | (word >>> 9) & 0x800 | (word >>> 20) & 0x7FE;
+                call(pc + offset);
+            }
+        } else if (opcode == 0x67) { // jalr
+            int rd = (word >>> 7) & 31, rs1 = (word >>> 15) & 31;
+            if (isLink(rd)) {
+                call((int) RegisterFile.getValueNoNotify(rs1) + (word >> 20) & ~1);
+            } else if (rd == 0 && isLink(rs1) && depth > 1) {
+                depth--;
+            }
+        }
+    }
+
+    private static boolean isLink(int register) {
+        return register == 1 || register == 5;
+    }
+
+    private void call(int target) {
+        if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = target;
+    }
+
+    private synchronized void sample() {
+        root.address = stack[0];
+        Frame frame = root;
+        for (int i = 1; i < depth; i++) {
+            Frame child = frame.firstChild;
+            while (child != null && child.address != stack[i]) child = child.nextSibling;
+            if (child == null) {
+                child = new Frame(frame, stack[i]);
+                child.nextSibling = frame.firstChild;
+                frame.firstChild = child;
+            }
+            frame = child;
+        }
+        frame.samples++;
+        samples++;
+    }
+
+    /**
+     * @return how many samples have been taken
+     */
+    public long getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * Writes the samples in folded stack format, naming functions from the program in the current memory.
+     *
+     * @param out where to write
+     */
+    public void write(PrintStream out) {
+        write(out, Globals.memory);
+    }
+
+    /**
+     * Writes the samples in folded stack format, for a program loaded into a memory other than the current
+     * one.
+     *
+     * @param out    where to write
+     * @param memory the memory holding the program's statements
+     */
+    public synchronized void write(PrintStream out, Memory memory) {
+        // Every frame, parents before children; walked without recursion as recursive programs go deep
+        List<Frame> frames = new ArrayList<>();
+        ArrayDeque<Frame> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Frame frame = pending.pop();
+            frames.add(frame);
+            for (Frame child = frame.firstChild; child != null; child = child.nextSibling) pending.push(child);
+        }
+        List<ProgramStatement> statements = new ArrayList<>();
+        for (Frame frame : frames) {
+            try {
+                ProgramStatement statement = memory.getStatementNoNotify(frame.address);
+                if (statement != null) statements.add(statement);
+            } catch (AddressErrorException e) {
+                // named by its address below
+            }
+        }
+        TextLabels labels = new TextLabels(statements);
+        Map<Integer, String> names = new HashMap<>();
+        for (Frame frame : frames) {
+            String name = labels.find(frame.address);
+            names.put(frame.address, name == null ? String.format("0x%08x", frame.address) : name);
+        }
+        ArrayList<String> stack = new ArrayList<>();
+        for (Frame frame : frames) {
+            if (frame.samples == 0) continue;
+            stack.clear();
+            for (Frame f = frame; f != null; f = f.parent) stack.add(names.get(f.address));
+            StringBuilder line = new StringBuilder();
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                line.append(stack.get(i)).append(i == 0 ? ' ' : ';');
+            }
+            out.println(line.append(frame.samples));
+        }
+    }
+
+    private static class Frame {
+        final Frame parent;
+        int address;
+        long samples;
+        Frame firstChild, nextSibling;
+
+        Frame(Frame parent, int address) {
+            this.parent = parent;
+            this.address = address;
+        }
+    }
+}
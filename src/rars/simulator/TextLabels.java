@@ -0,0 +1,63 @@
+package rars.simulator;
+
+import rars.Globals;
+import rars.ProgramStatement;
+import rars.RISCVprogram;
+import rars.assembler.Symbol;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The text labels of a program, sorted by address to find the closest one at or before an address.
+ * Used by the profilers to name the code their counts belong to.
+ */
+class TextLabels {
+    private final int[] addresses;
+    private final String[] names;
+
+    /**
+     * Collects the global text labels, and the local ones of each program the statements came from.
+     *
+     * @param statements statements from every source file whose local labels are wanted
+     */
+    TextLabels(Iterable<ProgramStatement> statements) {
+        HashSet<RISCVprogram> programs = new HashSet<>();
+        for (ProgramStatement statement : statements) {
+            if (statement.getSourceProgram() != null) programs.add(statement.getSourceProgram());
+        }
+        // Global labels first, so they win over a local label at the same address
+        List<Symbol> symbols = new ArrayList<>(Globals.symbolTable.getTextSymbols());
+        for (RISCVprogram program : programs) symbols.addAll(program.getLocalSymbolTable().getTextSymbols());
+        symbols.sort((a, b) -> Integer.compareUnsigned(a.getAddress(), b.getAddress()));
+        List<Symbol> unique = new ArrayList<>();
+        for (Symbol symbol : symbols) {
+            if (unique.isEmpty() || unique.get(unique.size() - 1).getAddress() != symbol.getAddress()) unique.add(symbol);
+        }
+        addresses = new int[unique.size()];
+        names = new String[unique.size()];
+        for (int i = 0; i < unique.size(); i++) {
+            addresses[i] = unique.get(i).getAddress();
+            names[i] = unique.get(i).getName();
+        }
+    }
+
+    /**
+     * @param address an address in the text segment
+     * @return the name of the last label at or before the address, or null if there is none
+     */
+    String find(int address) {
+        int lo = 0, hi = addresses.length - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Integer.compareUnsigned(addresses[mid], address) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found < 0 ? null : names[found];
+    }
+}
@@ -0,0 +1,276 @@
+package rars.simulator;
+
+import rars.riscv.hardware.CacheModel;
+import rars.riscv.hardware.RegisterFile;
+import rars.trace.CacheSweep;
+
+import java.util.Arrays;
+
+/**
+ * Estimates how many clock cycles a classic 5 stage in-order pipeline (fetch, decode, execute, memory,
+ * writeback) with full forwarding would take to run the program, and counts those in the cycle CSR
+ * instead of one per instruction.
+ * <p>
+ * Every instruction starts the cycle after the one before, unless it has to wait:
+ * <ul>
+ * <li>for a source register whose value is not ready yet; a result is ready the cycle after its
+ * instruction starts, plus the penalty for loads, multiplies, divides and floating point operations</li>
+ * <li>for a fetch that misses the instruction cache, or a load or store that misses the data cache; the
+ * whole pipeline stalls for the miss penalty</li>
+ * <li>after a taken branch or a jump, for the instructions fetched down the wrong path to be flushed</li>
+ * </ul>
+ * All penalties are in cycles and can be changed before the model is started. Without caches, memory
+ * never misses.
+ * <p>
+ * The model only looks at the encoding of each instruction and the base register of loads and stores,
+ * so it adds little to the cost of simulation.
+ */
+public class TimingModel extends InstructionListener {
+    public int loadUsePenalty = 1;
+    public int takenBranchPenalty = 2;
+    public int multiplyPenalty = 2;
+    public int dividePenalty = 32;
+    public int floatingPointPenalty = 3;
+    public int floatingPointDividePenalty = 16;
+    public int instructionMissPenalty = 10;
+    public int dataMissPenalty = 10;
+    public CacheModel instructionCache;
+    public CacheModel dataCache;
+
+    private static volatile TimingModel active;
+
+    // Cycle the last instruction started in, and the cycle each register (x0-x31, then f0-f31) is ready
+    private long now;
+    private final long[] ready = new long[64];
+
+    // The instruction between issue() and retire()
+    private int pc;
+    private long start;
+    private int destination;
+    private int penalty;
+    private boolean branch;
+
+    private static final int NONE = -1, FLOAT = 32;
+
+    /**
+     * Starts counting cycles with the given model for the following instructions.
+     *
+     * @param model the model to use; it is reset first
+     */
+    public static synchronized void start(TimingModel model) {
+        model.reset();
+        InstructionListener.replace(active, model);
+        active = model;
+    }
+
+    /**
+     * Goes back to counting one cycle per instruction.
+     */
+    public static synchronized void stop() {
+        InstructionListener.replace(active, null);
+        active = null;
+    }
+
+    /**
+     * @return the model in use, or null if there is none
+     */
+    public static TimingModel active() {
+        return active;
+    }
+
+    /**
+     * Forgets the pipeline state and empties the caches.
+     */
+    public void reset() {
+        now = 0;
+        Arrays.fill(ready, 0);
+        destination = NONE;
+        if (instructionCache != null) instructionCache.reset();
+        if (dataCache != null) dataCache.reset();
+    }
+
+    @Override
+    public void issue(int pc, int word) {
+        long t = now + 1;
+        if (instructionCache != null && !instructionCache.access(pc)) t += instructionMissPenalty;
+        int rd = (word >>> 7) & 31, rs1 = (word >>> 15) & 31, rs2 = (word >>> 20) & 31;
+        int dest = rd, source1 = rs1, source2 = NONE, source3 = NONE;
+        int extra = 0, address = 0;
+        boolean memory = false, jump = false;
+        switch (word & 0x7F) {
+            case 0x37: // lui
+            case 0x17: // auipc
+                source1 = NONE;
+                break;
+            case 0x6F: // jal
+                source1 = NONE;
+                jump = true;
+                break;
+            case 0x67: // jalr
+                jump = true;
+                break;
+            case 0x63: // branches
+                dest = NONE;
+                source2 = rs2;
+                jump = true;
+                break;
+            case 0x07: // flw, fld
+            case 0x03: // loads
+                if ((word & 0x7F) == 0x07) dest = FLOAT + rd;
+                extra = loadUsePenalty;
+                memory = true;
+                address = (int) RegisterFile.getValueNoNotify(rs1) + (word >> 20);
+                break;
+            case 0x27: // fsw, fsd
+            case 0x23: // stores
+                dest = NONE;
+                source2 = (word & 0x7F) == 0x27 ? FLOAT + rs2 : rs2;
+                memory = true;
+                address = (int) RegisterFile.getValueNoNotify(rs1) + ((word >> 25) << 5 | (word >>> 7) & 31);
+                break;
+            case 0x2F: // atomics
+                if ((word >>> 27) != 2) source2 = rs2; // all but lr
+                extra = loadUsePenalty;
+                memory = true;
+                address = (int) RegisterFile.getValueNoNotify(rs1);
+                break;
+            case 0x13: // immediate arithmetic
+            case 0x1B:
+                break;
+            case 0x33: // register arithmetic
+            case 0x3B:
+                source2 = rs2;
+                if ((word >>> 25) == 1) extra = (word & 0x4000) == 0 ? multiplyPenalty : dividePenalty;
+                break;
+            case 0x43: // fused multiply add
+            case 0x47:
+            case 0x4B:
+            case 0x4F:
+                dest = FLOAT + rd;
+                source1 = FLOAT + rs1;
+                source2 = FLOAT + rs2;
+                source3 = FLOAT + (word >>> 27);
+                extra = floatingPointPenalty;
+                break;
+            case 0x53: // other floating point
+                int operation = word >>> 27;
+                extra = operation == 0x03 || operation == 0x0B ? floatingPointDividePenalty : floatingPointPenalty;
+                switch (operation) {
+                    default: // including fdiv
+                        dest = FLOAT + rd;
+                        source1 = FLOAT + rs1;
+                        source2 = FLOAT + rs2;
+                        break;
+                    case 0x0B: // fsqrt
+                    case 0x08: // conversion between precisions
+                        dest = FLOAT + rd;
+                        source1 = FLOAT + rs1;
+                        break;
+                    case 0x14: // comparisons
+                        source1 = FLOAT + rs1;
+                        source2 = FLOAT + rs2;
+                        break;
+                    case 0x18: // conversion to integer
+                    case 0x1C: // fmv.x, fclass
+                        source1 = FLOAT + rs1;
+                        break;
+                    case 0x1A: // conversion from integer
+                    case 0x1E: // fmv.w.x, fmv.d.x
+                        dest = FLOAT + rd;
+                        break;
+                }
+                break;
+            case 0x73: // csr instructions, or ecall, ebreak, etc.
+                int funct3 = (word >>> 12) & 7;
+                if (funct3 == 0) dest = NONE;
+                if (funct3 == 0 || funct3 > 3) source1 = NONE;
+                break;
+            default: // fences
+                dest = NONE;
+                source1 = NONE;
+                break;
+        }
+        if (source1 > 0) t = Math.max(t, ready[source1]);
+        if (source2 > 0) t = Math.max(t, ready[source2]);
+        if (source3 > 0) t = Math.max(t, ready[source3]);
+        if (memory && dataCache != null && !dataCache.access(address)) t += dataMissPenalty;
+        this.pc = pc;
+        start = t;
+        destination = dest;
+        penalty = extra;
+        branch = jump;
+    }
+
+    /**
+     * @return how many cycles the instruction took beyond one, for the cycle CSR
+     */
+    @Override
+    public long retire(int pc, int nextPC) {
+        long before = now;
+        now = start;
+        if (destination > 0) ready[destination] = start + 1 + penalty;
+        if (branch && nextPC != this.pc + 4) now += takenBranchPenalty;
+        destination = NONE;
+        return now - before - 1;
+    }
+
+    /**
+     * Changes settings from a comma separated list of name=value pairs. The names are loaduse, branch,
+     * mul, div, fp, fpdiv, imiss and dmiss for the penalties, and icache and dcache for the caches,
+     * given as blocks:words:ways[:policy] (see {@link CacheSweep#parse}).
+     *
+     * @param settings for example "div=20,dcache=64:4:2:lru"
+     * @throws IllegalArgumentException if a setting is not understood
+     */
+    public void configure(String settings) {
+        for (String setting : settings.split(",")) {
+            if (setting.isEmpty()) continue;
+            int equals = setting.indexOf('=');
+            if (equals < 0) throw new IllegalArgumentException("Expected name=value but got " + setting);
+            String name = setting.substring(0, equals).toLowerCase(), value = setting.substring(equals + 1);
+            if (name.equals("icache")) {
+                instructionCache = CacheSweep.parse(value);
+                continue;
+            }
+            if (name.equals("dcache")) {
+                dataCache = CacheSweep.parse(value);
+                continue;
+            }
+            int cycles;
+            try {
+                cycles = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number of cycles for " + name + ": " + value);
+            }
+            if (cycles < 0) throw new IllegalArgumentException("Penalty for " + name + " cannot be negative");
+            switch (name) {
+                case "loaduse":
+                    loadUsePenalty = cycles;
+                    break;
+                case "branch":
+                    takenBranchPenalty = cycles;
+                    break;
+                case "mul":
+                    multiplyPenalty = cycles;
+                    break;
+                case "div":
+                    dividePenalty = cycles;
+                    break;
+                case "fp":
+                    floatingPointPenalty = cycles;
+                    break;
+                case "fpdiv":
+                    floatingPointDividePenalty = cycles;
+                    break;
+                case "imiss":
+                    instructionMissPenalty = cycles;
+                    break;
+                case "dmiss":
+                    dataMissPenalty = cycles;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown timing setting " + name);
+            }
+        }
+    }
+}
@@ -460,16 +460,19 @@ public class BitmapDisplay extends AbstractToolAndApplication {
         return new Grid(rows, columns);
     }
 
-    // Given memory address, update color for the corresponding grid element.
+    // Given memory address, update color for the corresponding grid element (or elements, for
+    // a bulk write covering several words).
     private void updateColorForAddress(MemoryAccessNotice notice) {
-        int address = notice.getAddress();
-        int offset = (address - baseAddress) / Memory.WORD_LENGTH_BYTES;
-
-        try {
-            theGrid.setElement(offset / theGrid.getColumns(), offset % theGrid.getColumns(),
-                    Memory.getInstance().getWord(address / Memory.WORD_LENGTH_BYTES * Memory.WORD_LENGTH_BYTES));
-        } catch (Exception e) {
-            // If address is out of range for display, do nothing.
+        int first = notice.getAddress() / Memory.WORD_LENGTH_BYTES * Memory.WORD_LENGTH_BYTES;
+        int last = notice.getAddress() + notice.getLength() - 1;
+        for (int address = first; address <= last && address >= first; address += Memory.WORD_LENGTH_BYTES) {
+            int offset = (address - baseAddress) / Memory.WORD_LENGTH_BYTES;
+            try {
+                theGrid.setElement(offset / theGrid.getColumns(), offset % theGrid.getColumns(),
+                        Memory.getInstance().getWord(address));
+            } catch (Exception e) {
+                // If address is out of range for display, do nothing.
+            }
         }
     }
 
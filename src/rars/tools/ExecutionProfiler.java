@@ -0,0 +1,110 @@
+package rars.tools;
+
+import rars.simulator.Profiler;
+import rars.simulator.Simulator;
+import rars.simulator.SimulatorNotice;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Observable;
+import java.util.Observer;
+
+/**
+ * Shows how many instructions were executed by category, by label and by source line, using a
+ * {@link Profiler}. Counting starts when the tool is connected, and the report is refreshed whenever the
+ * program stops or pauses.
+ */
+public class ExecutionProfiler extends AbstractToolAndApplication {
+    private static String NAME = "Execution Profiler";
+    private static String VERSION = "Version 1.0";
+    private static String HEADING = "Instructions executed by category, label and source line";
+
+    private final Profiler profiler = new Profiler();
+    private JTextArea report;
+    private JSpinner limit;
+
+    private final Observer stopListener = new Observer() {
+        public void update(Observable o, Object notice) {
+            if (((SimulatorNotice) notice).getAction() == SimulatorNotice.SIMULATOR_STOP) {
+                SwingUtilities.invokeLater(ExecutionProfiler.this::updateDisplay);
+            }
+        }
+    };
+
+    public ExecutionProfiler(String title, String heading) {
+        super(title, heading);
+    }
+
+    public ExecutionProfiler() {
+        super(NAME + ", " + VERSION, HEADING);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    protected JComponent buildMainDisplayArea() {
+        JPanel panel = new JPanel(new BorderLayout());
+        report = new JTextArea(24, 72);
+        report.setEditable(false);
+        report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        panel.add(new JScrollPane(report), BorderLayout.CENTER);
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(new JLabel("Labels and lines to list:"));
+        limit = new JSpinner(new SpinnerNumberModel(20, 1, 10000, 5));
+        limit.addChangeListener(e -> updateDisplay());
+        controls.add(limit);
+        JButton refresh = new JButton("Refresh");
+        refresh.setToolTipText("Show the counts so far");
+        refresh.addActionListener(e -> updateDisplay());
+        controls.add(refresh);
+        panel.add(controls, BorderLayout.NORTH);
+        return panel;
+    }
+
+    /**
+     * Starts counting instructions. The profiler does not need memory notices, so the tool only listens
+     * for the simulator stopping.
+     */
+    protected void addAsObserver() {
+        Profiler.start(profiler);
+        Simulator.getInstance().addObserver(stopListener);
+    }
+
+    protected void deleteAsObserver() {
+        if (Profiler.active() == profiler) Profiler.stop();
+        Simulator.getInstance().deleteObserver(stopListener);
+    }
+
+    protected void reset() {
+        profiler.reset();
+        updateDisplay();
+    }
+
+    protected void updateDisplay() {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(text);
+        profiler.report(out, (Integer) limit.getValue());
+        out.flush();
+        report.setText(text.toString());
+        report.setCaretPosition(0);
+    }
+
+    protected JComponent getHelpComponent() {
+        final String helpContent =
+                "Counts every instruction executed while the tool is connected, and reports the counts by\n" +
+                        "kind of instruction, by the label each instruction follows (usually the function it is\n" +
+                        "in) and by source line, most executed first.  Pseudo-instructions count once for each\n" +
+                        "basic instruction they expand to.  The report is refreshed each time the program stops\n" +
+                        "or pauses, or when Refresh is clicked.  Counts are cleared by Reset and when the program\n" +
+                        "is assembled again.\n\n" +
+                        "The same report is available from the command line with the prof option.";
+        JButton help = new JButton("Help");
+        help.addActionListener(e -> JOptionPane.showMessageDialog(theWindow, helpContent));
+        return help;
+    }
+}
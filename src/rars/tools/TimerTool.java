@@ -262,8 +262,8 @@ public class TimerTool extends AbstractToolAndApplication {
 
         // Checks the control bits to see if user-level timer inturrupts are enabled
         private boolean bitsEnabled() {
-            boolean utip = (ControlAndStatusRegisterFile.getValue("uie") & 0x10) == 0x10;
-            boolean uie = (ControlAndStatusRegisterFile.getValue("ustatus") & 0x1) == 0x1;
+            boolean utip = (ControlAndStatusRegisterFile.getValue(ControlAndStatusRegisterFile.UIE) & 0x10) == 0x10;
+            boolean uie = (ControlAndStatusRegisterFile.getValue(ControlAndStatusRegisterFile.USTATUS) & 0x1) == 0x1;
 
             return (utip && uie);
         }
@@ -0,0 +1,206 @@
+package rars.trace;
+
+import rars.riscv.hardware.CacheModel;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs one stream of memory accesses through many {@link CacheModel}s at once, to compare cache
+ * designs.
+ * <p>
+ * Addresses are collected into batches, and each batch is shared out among a pool of threads, every
+ * thread running its own group of caches over it while the next batch is being collected. Each cache
+ * still sees every access in order, so the results are the same as running the caches one at a time.
+ * <p>
+ * Accesses can come from a recorded trace with {@link #run} or be fed in live with {@link #access};
+ * call {@link #finish} before reading the results. It can also be run from the command line over a
+ * trace written with the {@code trace} option of RARS:
+ * <pre>
+ * java -cp rars.jar rars.trace.CacheSweep [-i] trace [blocks:words:ways:policy ...]
+ * </pre>
+ * With {@code -i} instruction fetches are simulated instead of loads and stores. With no cache
+ * configurations given a grid of common ones is used. The results are printed as CSV.
+ */
+public class CacheSweep implements AutoCloseable {
+    private static final int BATCH_SIZE = 1 << 16;
+
+    private final CacheModel[] caches;
+    private final ExecutorService pool;
+    private final int groups;
+
+    private int[] batch = new int[BATCH_SIZE];
+    private int[] running = new int[BATCH_SIZE];
+    private int length;
+    private final List<Future<?>> pending = new ArrayList<>();
+
+    /**
+     * @param caches  the caches to simulate
+     * @param threads how many threads to use, or 0 for one per processor
+     */
+    public CacheSweep(List<CacheModel> caches, int threads) {
+        this.caches = caches.toArray(new CacheModel[0]);
+        if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+        groups = Math.max(1, Math.min(threads, this.caches.length));
+        pool = Executors.newFixedThreadPool(groups, r -> {
+            Thread t = new Thread(r, "RARS cache sweep");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Adds one access to every cache.
+     *
+     * @param address the byte address accessed
+     */
+    public void access(int address) {
+        batch[length++] = address;
+        if (length == BATCH_SIZE) dispatch();
+    }
+
+    /**
+     * Feeds a whole trace through the caches and waits for them to finish.
+     *
+     * @param reader       an open trace
+     * @param instructions true to simulate instruction fetches, false for loads and stores
+     * @throws IOException if the trace cannot be read
+     */
+    public void run(TraceReader reader, boolean instructions) throws IOException {
+        TraceRecord record = new TraceRecord();
+        while (reader.next(record)) {
+            if (instructions) {
+                access(record.getPC());
+            } else {
+                for (int i = 0; i < record.getEffectCount(); i++) {
+                    if (record.getType(i) >= TraceRecord.LOAD) access(record.getAddress(i));
+                }
+            }
+        }
+        finish();
+    }
+
+    /**
+     * Runs any accesses still batched up and waits until every cache has seen all of them.
+     */
+    public void finish() {
+        dispatch();
+        await();
+    }
+
+    /**
+     * @return the caches, in the order given
+     */
+    public List<CacheModel> getCaches() {
+        return Arrays.asList(caches);
+    }
+
+    // Waits for the previous batch, then starts this one while the caller fills the other buffer
+    private void dispatch() {
+        await();
+        if (length == 0) return;
+        int[] addresses = batch;
+        int count = length;
+        batch = running;
+        running = addresses;
+        length = 0;
+        for (int g = 0; g < groups; g++) {
+            int group = g;
+            pending.add(pool.submit(() -> {
+                for (int c = group; c < caches.length; c += groups) caches[c].access(addresses, count);
+            }));
+        }
+    }
+
+    private void await() {
+        try {
+            for (Future<?> f : pending) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pending.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @return a grid of 4 to 256 words in 1 to 16 word blocks, direct mapped, 2, 4 and 8-way and fully
+     * associative, all LRU
+     */
+    public static List<CacheModel> defaultConfigurations() {
+        List<CacheModel> caches = new ArrayList<>();
+        for (int words = 4; words <= 256; words *= 4) {
+            for (int blockWords = 1; blockWords <= 16 && blockWords <= words; blockWords *= 2) {
+                int blocks = words / blockWords;
+                for (int ways = 1; ways <= blocks; ways *= 2) {
+                    if (ways <= 8 || ways == blocks) caches.add(new CacheModel(blocks, blockWords, ways, CacheModel.LRU));
+                }
+            }
+        }
+        return caches;
+    }
+
+    /**
+     * @param spec blocks:words:ways:policy, for example 64:4:2:lru; the policy may be left off for LRU
+     * @return that cache
+     * @throws IllegalArgumentException if the spec is malformed
+     */
+    public static CacheModel parse(String spec) {
+        String[] parts = spec.split(":");
+        if (parts.length < 3 || parts.length > 4) {
+            throw new IllegalArgumentException("Expected blocks:words:ways[:policy] but got " + spec);
+        }
+        try {
+            return new CacheModel(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                    parts.length == 4 ? CacheModel.parsePolicy(parts[3]) : CacheModel.LRU);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected blocks:words:ways[:policy] but got " + spec);
+        }
+    }
+
+    public static void main(String[] args) {
+        int a = 0;
+        boolean instructions = a < args.length && args[a].equals("-i");
+        if (instructions) a++;
+        if (a >= args.length) {
+            System.err.println("Usage: CacheSweep [-i] trace [blocks:words:ways:policy ...]");
+            System.exit(1);
+        }
+        String file = args[a++];
+        List<CacheModel> caches = new ArrayList<>();
+        try {
+            for (; a < args.length; a++) caches.add(parse(args[a]));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        if (caches.isEmpty()) caches = defaultConfigurations();
+        try (TraceReader reader = new TraceReader(Paths.get(file));
+             CacheSweep sweep = new CacheSweep(caches, 0)) {
+            sweep.run(reader, instructions);
+        } catch (IOException e) {
+            System.err.println("Error reading " + file + ": " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("blocks,words,ways,policy,bytes,accesses,hits,misses,hitrate");
+        for (CacheModel c : caches) {
+            System.out.println(c.getNumberOfBlocks() + "," + c.getBlockSizeInWords() + "," + c.getSetSizeInBlocks() + ","
+                    + CacheModel.policyName(c.getReplacementPolicy()) + "," + c.getCacheSizeInBytes() + ","
+                    + c.getAccessCount() + "," + c.getHitCount() + "," + c.getMissCount() + ","
+                    + String.format("%.4f", c.getHitRate()));
+        }
+    }
+}
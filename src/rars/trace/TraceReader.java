@@ -0,0 +1,140 @@
+package rars.trace;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads back a trace written by {@link TraceWriter}, one instruction at a time.
+ * <pre>
+ * try (TraceReader reader = new TraceReader(path)) {
+ *     TraceRecord record = new TraceRecord();
+ *     while (reader.next(record)) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class TraceReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final InputStream in;
+    private final Inflater inflater;
+
+    // Decoder state, mirroring TraceWriter
+    private int lastPC = -4;
+    private int lastAddress;
+    private final int[] cachedWord = new int[TraceWriter.PC_CACHE_SIZE];
+    private final long[] integerRegisters = new long[64];
+    private final long[] floatingPointRegisters = new long[64];
+
+    /**
+     * @param file a trace written by TraceWriter
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public TraceReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(6);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) throw new EOFException("Trace header is incomplete");
+            }
+            header.flip();
+            if (header.getInt() != TraceWriter.MAGIC) throw new IOException(file + " is not a RARS trace");
+            if (header.get() != TraceWriter.VERSION) throw new IOException("Unsupported trace version");
+            boolean compressed = (header.get() & TraceWriter.COMPRESSED) != 0;
+            InputStream raw = Channels.newInputStream(channel);
+            inflater = compressed ? new Inflater() : null;
+            in = new BufferedInputStream(compressed ? new InflaterInputStream(raw, inflater, BUFFER_SIZE) : raw,
+                    BUFFER_SIZE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next instruction.
+     *
+     * @param record where to put it
+     * @return false at the end of the trace
+     * @throws IOException if the file cannot be read or ends in the middle of a record
+     */
+    public boolean next(TraceRecord record) throws IOException {
+        int header = in.read();
+        if (header < 0) return false;
+        int pc = lastPC + 4;
+        if ((header & 1) == 0) pc += (int) getSigned();
+        int index = (pc >>> 2) & (TraceWriter.PC_CACHE_SIZE - 1);
+        int word;
+        if ((header & 2) != 0) {
+            word = cachedWord[index];
+        } else {
+            word = getByte() | getByte() << 8 | getByte() << 16 | getByte() << 24;
+            cachedWord[index] = word;
+        }
+        lastPC = pc;
+        record.pc = pc;
+        record.word = word;
+        record.count = 0;
+        int count = header >>> 2;
+        for (int i = 0; i < count; i++) {
+            int tag = getByte();
+            int type = tag & 3;
+            if (type == TraceRecord.INTEGER_REGISTER) {
+                int register = tag >>> 2;
+                long value = integerRegisters[register] + getSigned();
+                integerRegisters[register] = value;
+                record.add(type, register, 0, value);
+            } else if (type == TraceRecord.FLOATING_POINT_REGISTER) {
+                int register = tag >>> 2;
+                long value = floatingPointRegisters[register] ^ getUnsigned();
+                floatingPointRegisters[register] = value;
+                record.add(type, register, 0, value);
+            } else {
+                int size = 1 << (tag >>> 2);
+                int address = lastAddress + (int) getSigned();
+                record.add(type, size, address, getUnsigned());
+                lastAddress = address + size;
+            }
+        }
+        return true;
+    }
+
+    private int getByte() throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException("Trace ends in the middle of a record");
+        return b;
+    }
+
+    private long getSigned() throws IOException {
+        long value = getUnsigned();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long getUnsigned() throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = getByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+        channel.close();
+        if (inflater != null) inflater.end();
+    }
+}
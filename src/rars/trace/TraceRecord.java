@@ -0,0 +1,130 @@
+package rars.trace;
+
+import java.util.Arrays;
+
+/**
+ * One executed instruction read back from a trace: its address, its encoding and what it did.
+ * <p>
+ * What it did is a list of effects in the order they happened. Each is a register write
+ * ({@link #INTEGER_REGISTER} or {@link #FLOATING_POINT_REGISTER}) or a memory access
+ * ({@link #LOAD} or {@link #STORE}). Most instructions have zero or one effect, but an ecall or a
+ * double precision load on RV32 can have several.
+ * <p>
+ * {@link TraceReader} fills the same object in again for each instruction, so copy out anything that
+ * needs to be kept.
+ */
+public class TraceRecord {
+    public static final int INTEGER_REGISTER = 0;
+    public static final int FLOATING_POINT_REGISTER = 1;
+    public static final int LOAD = 2;
+    public static final int STORE = 3;
+
+    /**
+     * The most effects a record can hold; any more are left out of the trace.
+     */
+    public static final int MAX_EFFECTS = 63;
+
+    int pc;
+    int word;
+    int count;
+    int[] types = new int[4];
+    int[] registers = new int[4]; // register number, or access size in bytes
+    int[] addresses = new int[4];
+    long[] values = new long[4];
+
+    /**
+     * @return the address of the instruction
+     */
+    public int getPC() {
+        return pc;
+    }
+
+    /**
+     * @return the 32 bit encoding of the instruction
+     */
+    public int getInstruction() {
+        return word;
+    }
+
+    /**
+     * @return how many registers were written and memory locations accessed
+     */
+    public int getEffectCount() {
+        return count;
+    }
+
+    /**
+     * @param i which effect, from 0
+     * @return one of INTEGER_REGISTER, FLOATING_POINT_REGISTER, LOAD or STORE
+     */
+    public int getType(int i) {
+        return types[i];
+    }
+
+    /**
+     * @param i which effect, from 0
+     * @return the number of the register written, only for register effects
+     */
+    public int getRegister(int i) {
+        return registers[i];
+    }
+
+    /**
+     * @param i which effect, from 0
+     * @return the address accessed, only for memory effects
+     */
+    public int getAddress(int i) {
+        return addresses[i];
+    }
+
+    /**
+     * @param i which effect, from 0
+     * @return the number of bytes accessed (1, 2, 4 or 8), only for memory effects
+     */
+    public int getSize(int i) {
+        return registers[i];
+    }
+
+    /**
+     * @param i which effect, from 0
+     * @return the value written to the register, or loaded or stored
+     */
+    public long getValue(int i) {
+        return values[i];
+    }
+
+    void add(int type, int register, int address, long value) {
+        if (count == types.length) {
+            int length = count * 2;
+            types = Arrays.copyOf(types, length);
+            registers = Arrays.copyOf(registers, length);
+            addresses = Arrays.copyOf(addresses, length);
+            values = Arrays.copyOf(values, length);
+        }
+        types[count] = type;
+        registers[count] = register;
+        addresses[count] = address;
+        values[count] = value;
+        count++;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%08x: %08x", pc, word));
+        for (int i = 0; i < count; i++) {
+            switch (types[i]) {
+                case INTEGER_REGISTER:
+                    sb.append(String.format(" x%d=%x", registers[i], values[i]));
+                    break;
+                case FLOATING_POINT_REGISTER:
+                    sb.append(String.format(" f%d=%x", registers[i], values[i]));
+                    break;
+                default:
+                    sb.append(String.format(" %s%d[%08x]=%x", types[i] == LOAD ? "load" : "store",
+                            registers[i], addresses[i], values[i]));
+            }
+        }
+        return sb.toString();
+    }
+}
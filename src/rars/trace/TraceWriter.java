@@ -0,0 +1,302 @@
+package rars.trace;
+
+import rars.simulator.InstructionListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Streams a record of every executed instruction to a file, to be read back with {@link TraceReader}.
+ * <p>
+ * While a trace is {@link #start started}, the simulator reports each instruction and the registers
+ * and memory it touches. Records are encoded into large buffers on the simulator thread and written
+ * out by a background thread, so tracing costs little more than the encoding.
+ * <p>
+ * The file starts with the bytes {@code RTRC}, a version byte and a flags byte (bit 0 set if the rest
+ * is deflate compressed). Then come the records, one per instruction:
+ * <ul>
+ * <li>a header byte: bit 0 set if the pc is the previous pc + 4, bit 1 set if the instruction word is
+ * the same as the last time this pc was seen (remembered in a 4096 entry table indexed by pc / 4),
+ * and the number of effects in bits 2-7.</li>
+ * <li>unless bit 0 is set, the signed difference from previous pc + 4</li>
+ * <li>unless bit 1 is set, the instruction word, 4 bytes little endian</li>
+ * <li>for each effect, a tag byte with the {@link TraceRecord} type in bits 0-1 and either the register
+ * number or log2 of the access size in bits 2-7. A register write is followed by the new value: for
+ * integer registers the signed difference from its last traced value, for floating point registers the
+ * value XORed with its last traced value. A memory access is followed by the signed difference between
+ * the address and the end of the previous access, then the value.</li>
+ * </ul>
+ * Numbers are LEB128 varints, signed ones zigzag encoded first.
+ */
+public class TraceWriter extends InstructionListener implements Closeable {
+    static final int MAGIC = 0x52545243; // "RTRC"
+    static final int VERSION = 1;
+    static final int COMPRESSED = 1;
+    static final int PC_CACHE_SIZE = 4096;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int BUFFERS = 4;
+    // Room for the largest possible record
+    private static final int MAX_RECORD = 1 + 10 + 4 + TraceRecord.MAX_EFFECTS * 21;
+
+    private static volatile TraceWriter active;
+
+    private final FileChannel channel;
+    private final Deflater deflater;
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BUFFERS);
+    private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(BUFFERS);
+    private final Thread writer;
+    private volatile IOException failure;
+    // The simulator keeps calling a trace until its run ends, even once it is closed
+    private volatile boolean closed;
+    private long instructions;
+
+    private byte[] buffer;
+    private int position;
+
+    // Encoder state, mirrored by TraceReader
+    private int lastPC = -4;
+    private int lastAddress;
+    private final int[] cachedPC = new int[PC_CACHE_SIZE];
+    private final int[] cachedWord = new int[PC_CACHE_SIZE];
+    private final long[] integerRegisters = new long[64];
+    private final long[] floatingPointRegisters = new long[64];
+
+    // The instruction being executed
+    private Thread owner;
+    private final TraceRecord current = new TraceRecord();
+
+    private static class Chunk {
+        private final byte[] data;
+        private final int length;
+
+        private Chunk(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private TraceWriter(Path file, boolean compress) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        ByteBuffer header = ByteBuffer.allocate(6);
+        header.putInt(MAGIC).put((byte) VERSION).put((byte) (compress ? COMPRESSED : 0)).flip();
+        while (header.hasRemaining()) channel.write(header);
+        for (int i = 0; i < BUFFERS - 1; i++) free.add(new byte[BUFFER_SIZE]);
+        for (int i = 0; i < PC_CACHE_SIZE; i++) cachedPC[i] = 1; // no instruction is at an odd address
+        buffer = new byte[BUFFER_SIZE];
+        writer = new Thread(this::drain, "RARS trace writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Starts tracing every instruction the simulator executes into the given file. Any trace already
+     * running is closed first.
+     *
+     * @param file     where to write the trace; it is replaced if it exists
+     * @param compress whether to deflate the records
+     * @return the new trace, which must be closed to finish the file
+     * @throws IOException if the file cannot be created
+     */
+    public static synchronized TraceWriter start(Path file, boolean compress) throws IOException {
+        if (active != null) active.close();
+        TraceWriter trace = new TraceWriter(file, compress);
+        InstructionListener.replace(null, trace);
+        active = trace;
+        return trace;
+    }
+
+    /**
+     * @return the trace being recorded, or null if there is none
+     */
+    public static TraceWriter active() {
+        return active;
+    }
+
+    /**
+     * @return the number of instructions traced so far
+     */
+    public long getInstructionCount() {
+        return instructions;
+    }
+
+    @Override
+    public void issue(int pc, int word) {
+        if (closed) return;
+        if (owner != null) end();
+        owner = Thread.currentThread();
+        current.pc = pc;
+        current.word = word;
+        current.count = 0;
+    }
+
+    /**
+     * Called when a register is written.
+     *
+     * @param type     INTEGER_REGISTER or FLOATING_POINT_REGISTER
+     * @param register the register number
+     * @param value    the new value
+     */
+    public void register(int type, int register, long value) {
+        if (owner == Thread.currentThread() && current.count < TraceRecord.MAX_EFFECTS) {
+            current.add(type, register, 0, value);
+        }
+    }
+
+    /**
+     * Called when memory is read or written.
+     *
+     * @param type    LOAD or STORE
+     * @param address the address accessed
+     * @param size    the number of bytes accessed: 1, 2, 4 or 8
+     * @param value   the value loaded or stored
+     */
+    public void memory(int type, int address, int size, long value) {
+        if (owner == Thread.currentThread() && current.count < TraceRecord.MAX_EFFECTS) {
+            current.add(type, size, address, value);
+        }
+    }
+
+    @Override
+    public void end() {
+        if (owner == null) return;
+        owner = null;
+        encode(current);
+        instructions++;
+        if (position > BUFFER_SIZE - MAX_RECORD) handOff();
+    }
+
+    private void encode(TraceRecord record) {
+        int pc = record.pc, word = record.word;
+        int index = (pc >>> 2) & (PC_CACHE_SIZE - 1);
+        boolean sequential = pc == lastPC + 4;
+        boolean cached = cachedPC[index] == pc && cachedWord[index] == word;
+        buffer[position++] = (byte) ((sequential ? 1 : 0) | (cached ? 2 : 0) | (record.count << 2));
+        if (!sequential) putSigned(pc - (lastPC + 4));
+        if (!cached) {
+            buffer[position++] = (byte) word;
+            buffer[position++] = (byte) (word >> 8);
+            buffer[position++] = (byte) (word >> 16);
+            buffer[position++] = (byte) (word >> 24);
+            cachedPC[index] = pc;
+            cachedWord[index] = word;
+        }
+        lastPC = pc;
+        for (int i = 0; i < record.count; i++) {
+            int type = record.types[i];
+            long value = record.values[i];
+            if (type == TraceRecord.INTEGER_REGISTER) {
+                int register = record.registers[i] & 63;
+                buffer[position++] = (byte) (type | register << 2);
+                putSigned(value - integerRegisters[register]);
+                integerRegisters[register] = value;
+            } else if (type == TraceRecord.FLOATING_POINT_REGISTER) {
+                int register = record.registers[i] & 63;
+                buffer[position++] = (byte) (type | register << 2);
+                putUnsigned(value ^ floatingPointRegisters[register]);
+                floatingPointRegisters[register] = value;
+            } else {
+                int size = record.registers[i];
+                int address = record.addresses[i];
+                buffer[position++] = (byte) (type | Integer.numberOfTrailingZeros(size) << 2);
+                putSigned(address - lastAddress);
+                putUnsigned(size == 8 ? value : value & ((1L << (size * 8)) - 1));
+                lastAddress = address + size;
+            }
+        }
+    }
+
+    private void putSigned(long value) {
+        putUnsigned((value << 1) ^ (value >> 63));
+    }
+
+    private void putUnsigned(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void handOff() {
+        try {
+            full.put(new Chunk(buffer, position));
+            buffer = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            buffer = new byte[BUFFER_SIZE];
+        }
+        position = 0;
+    }
+
+    // Runs on the writer thread; an empty chunk means the trace is closed
+    private void drain() {
+        byte[] compressed = deflater == null ? null : new byte[BUFFER_SIZE];
+        try {
+            while (true) {
+                Chunk chunk = full.take();
+                if (failure == null) {
+                    try {
+                        if (deflater == null) {
+                            write(chunk.data, chunk.length);
+                        } else {
+                            if (chunk.length == 0) deflater.finish();
+                            else deflater.setInput(chunk.data, 0, chunk.length);
+                            while (chunk.length == 0 ? !deflater.finished() : !deflater.needsInput()) {
+                                write(compressed, deflater.deflate(compressed));
+                            }
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                if (chunk.length == 0) return;
+                free.put(chunk.data);
+            }
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Trace writer interrupted");
+        }
+    }
+
+    private void write(byte[] data, int length) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(data, 0, length);
+        while (bb.hasRemaining()) channel.write(bb);
+    }
+
+    /**
+     * Writes out everything recorded and closes the file. Tracing stops if this is the active trace.
+     *
+     * @throws IOException if writing the trace failed at any point
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (TraceWriter.class) {
+            if (active == this) active = null;
+            InstructionListener.replace(this, null);
+        }
+        closed = true;
+        if (!writer.isAlive()) return;
+        end();
+        try {
+            if (position > 0) full.put(new Chunk(buffer, position));
+            full.put(new Chunk(new byte[0], 0));
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (deflater != null) deflater.end();
+            channel.close();
+        }
+        if (failure != null) throw failure;
+    }
+}
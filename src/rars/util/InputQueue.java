@@ -0,0 +1,82 @@
+package rars.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A program's stdin, given to it as it arrives rather than all at once. When the program asks for input
+ * that has not come yet, the system call throws {@link rars.InputPendingException} instead of blocking, so
+ * the simulation can be set aside until there is more; see {@link rars.api.Session}.
+ * <p>
+ * Input may be added on any thread.
+ */
+public class InputQueue {
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] bytes = EMPTY; // waiting to be read from start to end
+    private int start, end;
+    private boolean closed;
+
+    /**
+     * Adds to the end of the input.
+     *
+     * @param more the bytes to add
+     * @throws IllegalStateException if the input has been closed
+     */
+    public synchronized void append(byte[] more) {
+        if (closed) throw new IllegalStateException("Input is closed");
+        if (end + more.length > bytes.length) {
+            int size = end - start;
+            byte[] grown = size + more.length > bytes.length
+                    ? new byte[Math.max(size + more.length, bytes.length * 2)] : bytes;
+            System.arraycopy(bytes, start, grown, 0, size);
+            bytes = grown;
+            start = 0;
+            end = size;
+        }
+        System.arraycopy(more, 0, bytes, end, more.length);
+        end += more.length;
+    }
+
+    /**
+     * Ends the input: once what has come is read, reading gets the end of file rather than waiting.
+     */
+    public synchronized void close() {
+        closed = true;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // The next line without its terminator ("\n" or "\r\n"), what is left if the input is closed before
+    // the end of a line, or null if a whole line has not come yet
+    synchronized String pollLine() {
+        int newline = start;
+        while (newline < end && bytes[newline] != '\n') newline++;
+        if (newline == end && !closed) return null;
+        int length = newline - start;
+        if (newline < end && length > 0 && bytes[newline - 1] == '\r') length--;
+        String line = new String(bytes, start, length, StandardCharsets.UTF_8);
+        take(Math.min(newline + 1, end) - start);
+        return line;
+    }
+
+    // Like InputStream.read: reads what has come, up to length bytes, returning how many, or 0 at the end
+    // of the input, or -1 if nothing has come yet
+    synchronized int poll(byte[] buffer, int length) {
+        int count = Math.min(length, end - start);
+        if (count == 0) return length == 0 || closed ? 0 : -1;
+        System.arraycopy(bytes, start, buffer, 0, count);
+        take(count);
+        return count;
+    }
+
+    private void take(int count) {
+        start += count;
+        if (start == end) {
+            // Let go of a large buffer once it has all been read, as a waiting program holds on to it
+            if (bytes.length > 4096) bytes = EMPTY;
+            start = end = 0;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package rars.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A file system held in memory, for simulated programs to open, read and write files without touching
+ * the disk. Give one to {@link rars.api.Program#setFileSystem} and the file system calls of every run
+ * work on a fresh copy of it; the copy, with whatever the program wrote, can be read back afterwards.
+ * <p>
+ * Paths are names separated by '/', all relative to the root, which is also the working directory:
+ * "input.txt", "./input.txt" and "/input.txt" are the same file. There are no directories as such, so
+ * writing "out/result.txt" just creates a file of that name.
+ * <p>
+ * Copies share file contents until one of them writes, so copying a file system with large inputs for
+ * each run is cheap. Copying may happen on several threads at once, as long as nothing writes to the
+ * file system being copied; otherwise a file system belongs to one thread at a time.
+ */
+public class MemoryFileSystem {
+    private final HashMap<String, Entry> files = new HashMap<>();
+
+    // The contents of a file: the first size bytes of data, which copies of the file system share
+    // until one of them writes
+    private static class Entry {
+        private byte[] data;
+        private int size;
+        private volatile boolean shared;
+
+        private Entry(byte[] data, int size) {
+            this.data = data;
+            this.size = size;
+        }
+
+        // Makes room for the given size, taking a copy of the data if it is shared
+        private void reserve(int needed) {
+            if (shared || needed > data.length) {
+                int capacity = needed > data.length ? Math.max(needed, data.length * 2) : data.length;
+                data = Arrays.copyOf(data, capacity);
+                shared = false;
+            }
+        }
+    }
+
+    /**
+     * Loads every file under a directory, named by its path relative to that directory.
+     *
+     * @param directory the directory to load
+     * @return a file system holding copies of the files
+     * @throws IOException if a file can not be read
+     */
+    public static MemoryFileSystem fromDirectory(File directory) throws IOException {
+        MemoryFileSystem fileSystem = new MemoryFileSystem();
+        fileSystem.load(directory, "");
+        return fileSystem;
+    }
+
+    private void load(File directory, String prefix) throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) throw new IOException(directory + " is not a directory");
+        for (File child : children) {
+            if (child.isDirectory()) {
+                load(child, prefix + child.getName() + "/");
+            } else {
+                putFile(prefix + child.getName(), Files.readAllBytes(child.toPath()));
+            }
+        }
+    }
+
+    /**
+     * Loads every file in a zip archive.
+     *
+     * @param zip the archive, which is read to the end but not closed
+     * @return a file system holding the files
+     * @throws IOException if the archive can not be read
+     */
+    public static MemoryFileSystem fromZip(InputStream zip) throws IOException {
+        MemoryFileSystem fileSystem = new MemoryFileSystem();
+        ZipInputStream in = new ZipInputStream(zip);
+        byte[] buffer = new byte[8192];
+        for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+            if (entry.isDirectory()) continue;
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            for (int count = in.read(buffer); count > 0; count = in.read(buffer)) {
+                contents.write(buffer, 0, count);
+            }
+            fileSystem.putFile(entry.getName(), contents.toByteArray());
+        }
+        return fileSystem;
+    }
+
+    /**
+     * @return a file system with the same files, which can be changed without affecting this one
+     */
+    public MemoryFileSystem copy() {
+        MemoryFileSystem copy = new MemoryFileSystem();
+        for (Map.Entry<String, Entry> file : files.entrySet()) {
+            Entry entry = file.getValue();
+            entry.shared = true;
+            Entry shared = new Entry(entry.data, entry.size);
+            shared.shared = true;
+            copy.files.put(file.getKey(), shared);
+        }
+        return copy;
+    }
+
+    /**
+     * Creates or replaces a file.
+     *
+     * @param path     the name of the file
+     * @param contents what the file holds; this is copied
+     */
+    public void putFile(String path, byte[] contents) {
+        files.put(normalize(path), new Entry(contents.clone(), contents.length));
+    }
+
+    /**
+     * @param path the name of the file
+     * @return a copy of what the file holds, or null if there is no such file
+     */
+    public byte[] getFile(String path) {
+        Entry entry = files.get(normalize(path));
+        return entry == null ? null : Arrays.copyOf(entry.data, entry.size);
+    }
+
+    /**
+     * @param path the name of the file
+     * @return true if the file was there to remove
+     */
+    public boolean removeFile(String path) {
+        return files.remove(normalize(path)) != null;
+    }
+
+    /**
+     * @return the names of all the files, in order
+     */
+    public SortedSet<String> getFileNames() {
+        return new TreeSet<>(files.keySet());
+    }
+
+    // Resolves "." and ".." and drops the leading "/" so that each file has one name
+    static String normalize(String path) {
+        ArrayDeque<String> names = new ArrayDeque<>();
+        for (String name : path.replace('\\', '/').split("/")) {
+            if (name.isEmpty() || name.equals(".")) continue;
+            if (name.equals("..")) {
+                names.pollLast();
+            } else {
+                names.addLast(name);
+            }
+        }
+        return String.join("/", names);
+    }
+
+    /**
+     * Opens a file the way the Open system call does.
+     *
+     * @param path   the name of the file
+     * @param write  false to read the file, true to write it, creating it if it is not there
+     * @param append when writing, true to add to the end of the file rather than replace what it holds
+     * @return a channel for the file
+     * @throws NoSuchFileException if reading a file that is not there
+     */
+    SeekableByteChannel open(String path, boolean write, boolean append) throws IOException {
+        String name = normalize(path);
+        Entry entry = files.get(name);
+        if (!write) {
+            if (entry == null) throw new NoSuchFileException(path);
+        } else if (entry == null || !append) {
+            entry = new Entry(new byte[0], 0);
+            files.put(name, entry);
+        }
+        return new MemoryChannel(entry, write, append);
+    }
+
+    // An open file, with its own position
+    private static class MemoryChannel implements SeekableByteChannel {
+        private final Entry entry;
+        private final boolean write, append;
+        private long position;
+        private boolean open = true;
+
+        private MemoryChannel(Entry entry, boolean write, boolean append) {
+            this.entry = entry;
+            this.write = write;
+            this.append = append;
+        }
+
+        public int read(ByteBuffer buffer) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            if (write) throw new NonReadableChannelException();
+            if (position >= entry.size) return -1;
+            int count = (int) Math.min(buffer.remaining(), entry.size - position);
+            buffer.put(entry.data, (int) position, count);
+            position += count;
+            return count;
+        }
+
+        public int write(ByteBuffer buffer) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            if (!write) throw new NonWritableChannelException();
+            if (append) position = entry.size;
+            int count = buffer.remaining();
+            long end = position + count;
+            if (end > Integer.MAX_VALUE) throw new IOException("File too large");
+            entry.reserve((int) end);
+            if (position > entry.size) {
+                // Writing past the end leaves a gap of zeros, which the array may not have yet
+                Arrays.fill(entry.data, entry.size, (int) position, (byte) 0);
+            }
+            buffer.get(entry.data, (int) position, count);
+            entry.size = Math.max(entry.size, (int) end);
+            position = end;
+            return count;
+        }
+
+        public long position() throws IOException {
+            if (!open) throw new ClosedChannelException();
+            return position;
+        }
+
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            if (newPosition < 0) throw new IllegalArgumentException();
+            position = newPosition;
+            return this;
+        }
+
+        public long size() throws IOException {
+            if (!open) throw new ClosedChannelException();
+            return entry.size;
+        }
+
+        public SeekableByteChannel truncate(long size) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            if (!write) throw new NonWritableChannelException();
+            if (size < entry.size) entry.size = (int) size;
+            position = Math.min(position, size);
+            return this;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package rars.util;
 
 import rars.Globals;
+import rars.InputPendingException;
 import rars.Settings;
+import rars.simulator.ExecutionHistory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 	/*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -51,9 +59,14 @@ public class SystemIO {
      */
     public static final int SYSCALL_BUFSIZE = 128;
     /**
-     * Maximum number of files that can be open
+     * Maximum number of files that can be open.  The file descriptor table starts
+     * smaller and grows as files are opened.
      */
-    public static final int SYSCALL_MAXFILES = 32;
+    public static final int SYSCALL_MAXFILES = 1024;
+    // Size of the file descriptor table to begin with
+    private static final int INITIAL_FILES = 32;
+    // Files opened for reading at least this large are mapped into memory
+    private static final long MAP_THRESHOLD = 1 << 20;
     /**
      * String used for description of file error
      */
@@ -91,8 +104,14 @@ public class SystemIO {
     }
 
     private static String readStringInternal(String init, String prompt, int maxlength) {
+        if (ExecutionHistory.replaying()) {
+            return (String) ExecutionHistory.replayObject();
+        }
         String input = init;
-        if (Globals.getGui() == null) {
+        if (Globals.getGui() == null && FileIOData.inputQueue != null) {
+            input = FileIOData.inputQueue.pollLine();
+            if (input == null) throw new InputPendingException();
+        } else if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
                 if (input == null)
@@ -106,7 +125,7 @@ public class SystemIO {
                 input = Globals.getGui().getMessagesPane().getInputString(maxlength);
             }
         }
-        return input;
+        return ExecutionHistory.record(input);
     }
 
     /**
@@ -139,7 +158,16 @@ public class SystemIO {
      * Implements syscall having 4 in $v0, to print a string.
      */
     public static void printString(String string) {
-        if (Globals.getGui() == null) {
+        if (ExecutionHistory.replaying()) return; // already printed
+        if (Globals.getGui() == null && FileIOData.inputQueue != null) {
+            // Straight to the stream, so that a session waiting for input holds no buffers
+            try {
+                OutputStream out = (OutputStream) FileIOData.streams[STDOUT];
+                out.write(string.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e){
+            }
+        } else if (Globals.getGui() == null) {
             try {
                 SystemIO.getOutputWriter().write(string);
                 SystemIO.getOutputWriter().flush();
@@ -208,6 +236,13 @@ public class SystemIO {
      */
 
     public static int writeToFile(int fd, byte[] myBuffer, int lengthRequested) {
+        if (ExecutionHistory.replaying()) {
+            return (int) ExecutionHistory.replayValue();
+        }
+        return (int) ExecutionHistory.record(writeToFileInternal(fd, myBuffer, lengthRequested));
+    }
+
+    private static int writeToFileInternal(int fd, byte[] myBuffer, int lengthRequested) {
         /////////////// DPS 8-Jan-2013  ////////////////////////////////////////////////////
         /// Write to STDOUT or STDERR file descriptor while using IDE - write to Messages pane.
         if ((fd == STDOUT || fd == STDERR) && Globals.getGui() != null) {
@@ -223,25 +258,21 @@ public class SystemIO {
             fileErrorString = "File descriptor " + fd + " is not open for writing";
             return -1;
         }
-        // retrieve FileOutputStream from storage
-        OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
+        Closeable stream = FileIOData.getStreamInUse(fd);
         try {
-            // Oct. 9 2005 Ken Vollmar
-            // Observation: made a call to outputStream.write(myBuffer, 0, lengthRequested)
-            //     with myBuffer containing 6(ten) 32-bit-words <---> 24(ten) bytes, where the
-            //     words are MIPS integers with values such that many of the bytes are ZEROES.
-            //     The effect is apparently that the write stops after encountering a zero-valued
-            //     byte. (The method write does not return a value and so this can't be verified
-            //     by the return value.)
-            // Writes up to lengthRequested bytes of data to this output stream from an array of bytes.
-            // outputStream.write(myBuffer, 0, lengthRequested); // write is a void method -- no verification value returned
-
-            // Oct. 9 2005 Ken Vollmar  Force the write statement to write exactly
-            // the number of bytes requested, even though those bytes include many ZERO values.
-            for (int ii = 0; ii < lengthRequested; ii++) {
-                outputStream.write(myBuffer[ii]);
+            // Exactly the number of bytes requested, null bytes included
+            if (stream instanceof SeekableByteChannel) {
+                // Goes straight to the file, so there is nothing to flush
+                ByteBuffer buffer = ByteBuffer.wrap(myBuffer, 0, lengthRequested);
+                while (buffer.hasRemaining()) {
+                    ((SeekableByteChannel) stream).write(buffer);
+                }
+            } else {
+                // STDOUT or STDERR, flushed so the output shows up as it is written
+                OutputStream outputStream = (OutputStream) stream;
+                outputStream.write(myBuffer, 0, lengthRequested);
+                outputStream.flush();
             }
-            outputStream.flush();// DPS 7-Jan-2013
         } catch (IOException e) {
             fileErrorString = "IO Exception on write of file with fd " + fd;
             return -1;
@@ -264,6 +295,20 @@ public class SystemIO {
      * @return number of bytes read, 0 on EOF, or -1 on error
      */
     public static int readFromFile(int fd, byte[] myBuffer, int lengthRequested) {
+        if (ExecutionHistory.replaying()) {
+            byte[] bytes = (byte[]) ExecutionHistory.replayObject();
+            if (bytes != null) System.arraycopy(bytes, 0, myBuffer, 0, Math.min(bytes.length, myBuffer.length));
+            return (int) ExecutionHistory.replayValue();
+        }
+        int retValue = readFromFileInternal(fd, myBuffer, lengthRequested);
+        if (ExecutionHistory.isEnabled()) {
+            ExecutionHistory.record(Arrays.copyOf(myBuffer, Math.max(retValue, 0)));
+            ExecutionHistory.record(retValue);
+        }
+        return retValue;
+    }
+
+    private static int readFromFileInternal(int fd, byte[] myBuffer, int lengthRequested) {
         int retValue = -1;
         /////////////// DPS 8-Jan-2013  //////////////////////////////////////////////////
         /// Read from STDIN file descriptor while using IDE - get input from Messages pane.
@@ -277,6 +322,12 @@ public class SystemIO {
             return Math.min(myBuffer.length, bytesRead.length);
         }
         ////////////////////////////////////////////////////////////////////////////////////
+        //// Read from STDIN that arrives as the program runs - stop to wait if there is none yet
+        if (fd == STDIN && FileIOData.inputQueue != null) {
+            int count = FileIOData.inputQueue.poll(myBuffer, lengthRequested);
+            if (count < 0) throw new InputPendingException();
+            return count;
+        }
         //// When running in command mode, code below works for either regular file or STDIN
 
         if (!FileIOData.fdInUse(fd, 0)) // Check the existence of the "read" fd
@@ -284,11 +335,16 @@ public class SystemIO {
             fileErrorString = "File descriptor " + fd + " is not open for reading";
             return -1;
         }
-        // retrieve FileInputStream from storage
-        InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
+        Closeable stream = FileIOData.getStreamInUse(fd);
         try {
-            // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
-            retValue = InputStream.read(myBuffer, 0, lengthRequested);
+            // Reads up to lengthRequested bytes of data into an array of bytes.
+            if (stream instanceof SeekableByteChannel) {
+                retValue = ((SeekableByteChannel) stream).read(ByteBuffer.wrap(myBuffer, 0, lengthRequested));
+            } else if (stream instanceof MappedFile) {
+                retValue = ((MappedFile) stream).read(myBuffer, lengthRequested);
+            } else {
+                retValue = ((InputStream) stream).read(myBuffer, 0, lengthRequested);
+            }
             // This method will return -1 upon EOF, but our spec says that negative
             // value represents an error, so we return 0 for EOF.  DPS 10-July-2008.
             if (retValue == -1) {
@@ -315,38 +371,51 @@ public class SystemIO {
      * @return -1 on error
      */
     public static int seek(int fd, int offset, int base) {
-        if (!FileIOData.fdInUse(fd, 0)) // Check the existence of the "read" fd
+        if (ExecutionHistory.replaying()) {
+            return (int) ExecutionHistory.replayValue();
+        }
+        return (int) ExecutionHistory.record(seekInternal(fd, offset, base));
+    }
+
+    private static int seekInternal(int fd, int offset, int base) {
+        if (!FileIOData.fdInUse(fd, 0) && !FileIOData.fdInUse(fd, 1)) // Check the existence of the fd
         {
-            fileErrorString = "File descriptor " + fd + " is not open for reading";
+            fileErrorString = "File descriptor " + fd + " is not open";
             return -1;
         }
-        if (fd < 0 || fd >= SYSCALL_MAXFILES) return -1;
-        Object stream = FileIOData.getStreamInUse(fd);
-        if (stream == null) return -1;
-        FileChannel channel;
+        Closeable stream = FileIOData.getStreamInUse(fd);
         try {
-            if (stream instanceof FileInputStream) {
-                channel = ((FileInputStream) stream).getChannel();
-            } else if (stream instanceof FileOutputStream) {
-                channel = ((FileOutputStream) stream).getChannel();
+            long position, size;
+            if (stream instanceof SeekableByteChannel) {
+                position = ((SeekableByteChannel) stream).position();
+                size = ((SeekableByteChannel) stream).size();
+            } else if (stream instanceof MappedFile) {
+                position = ((MappedFile) stream).position;
+                size = ((MappedFile) stream).buffer.capacity();
             } else {
+                fileErrorString = "File descriptor " + fd + " can not seek";
                 return -1;
             }
 
+            long target = offset;
             if (base == SEEK_SET) {
-                offset += 0;
+                target += 0;
             } else if (base == SEEK_CUR) {
-                offset += channel.position();
+                target += position;
             } else if (base == SEEK_END) {
-                offset += channel.size();
+                target += size;
             } else {
                 return -1;
             }
-            if (offset < 0) {
+            if (target < 0 || target > Integer.MAX_VALUE) {
                 return -1;
             }
-            channel.position(offset);
-            return offset;
+            if (stream instanceof SeekableByteChannel) {
+                ((SeekableByteChannel) stream).position(target);
+            } else {
+                ((MappedFile) stream).position = target;
+            }
+            return (int) target;
         } catch (IOException io) {
             return -1;
         }
@@ -362,13 +431,18 @@ public class SystemIO {
      * @author Ken Vollmar
      */
     public static int openFile(String filename, int flags) {
+        if (ExecutionHistory.replaying()) {
+            return (int) ExecutionHistory.replayValue();
+        }
+        return (int) ExecutionHistory.record(openFileInternal(filename, flags));
+    }
+
+    private static int openFileInternal(String filename, int flags) {
         // Internally, a "file descriptor" is an index into a table
         // of the filename, flag, and the File???putStream associated with
         // that file descriptor.
 
         int retValue = -1;
-        FileInputStream inputStream;
-        FileOutputStream outputStream;
         int fdToUse;
 
         // Check internal plausibility of opening this file
@@ -378,6 +452,20 @@ public class SystemIO {
             return -1;
         }   // fileErrorString would have been set
 
+        if (FileIOData.fileSystem != null) // Open in the in-memory file system, deciding as below for disk
+        {
+            boolean write = (flags & O_WRONLY) != 0;
+            try {
+                FileIOData.setStreamInUse(fdToUse, FileIOData.fileSystem.open(filename, write,
+                        (flags & O_APPEND) != 0));
+            } catch (IOException e) {
+                fileErrorString = "File " + filename + " not found, open for " + (write ? "output." : "input.");
+                FileIOData.close(fdToUse);
+                return -1;
+            }
+            return fdToUse;
+        }
+
         File filepath = new File(filename);
         if (!filepath.isAbsolute() && Globals.program != null && Globals.getSettings()
                 .getBooleanSetting(Settings.Bool.DERIVE_CURRENT_WORKING_DIRECTORY)) {
@@ -387,24 +475,37 @@ public class SystemIO {
         if (flags == O_RDONLY) // Open for reading only
         {
             try {
-                // Set up input stream from disk file
-                inputStream = new FileInputStream(filepath);
-                FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
-            } catch (FileNotFoundException e) {
+                FileChannel channel = FileChannel.open(filepath.toPath(), StandardOpenOption.READ);
+                Closeable stream = channel;
+                long size = channel.size();
+                if (size >= MAP_THRESHOLD && size <= Integer.MAX_VALUE) {
+                    try {
+                        stream = new MappedFile(channel);
+                    } catch (IOException e) {
+                        // Read it through the channel instead
+                    }
+                }
+                FileIOData.setStreamInUse(fdToUse, stream); // Save stream for later use
+            } catch (IOException | InvalidPathException e) {
                 fileErrorString = "File " + filename + " not found, open for input.";
                 retValue = -1;
             }
         } else if ((flags & O_WRONLY) != 0) // Open for writing only
         {
-            // Set up output stream to disk file
             try {
-                outputStream = new FileOutputStream(filepath, ((flags & O_APPEND) != 0));
-                FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
-            } catch (FileNotFoundException e) {
+                FileIOData.setStreamInUse(fdToUse, (flags & O_APPEND) != 0
+                        ? FileChannel.open(filepath.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)
+                        : FileChannel.open(filepath.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)); // Save stream for later use
+            } catch (IOException | InvalidPathException e) {
                 fileErrorString = "File " + filename + " not found, open for output.";
                 retValue = -1;
             }
         }
+        if (retValue < 0) {
+            FileIOData.close(fdToUse); // give the descriptor back
+        }
         return retValue; // return the "file descriptor"
 
     }
@@ -415,9 +516,18 @@ public class SystemIO {
      * @param fd the file descriptor of an open file
      */
     public static void closeFile(int fd) {
+        if (ExecutionHistory.replaying()) return;
         FileIOData.close(fd);
     }
 
+    /**
+     * @return the working directory the simulated program sees: the root of the in-memory file system
+     * if it has one, otherwise the directory RARS was started in
+     */
+    public static String getWorkingDirectory() {
+        return FileIOData.fileSystem != null ? "/" : System.getProperty("user.dir");
+    }
+
     /**
      * Reset all files -- clears out the file descriptor table.
      */
@@ -488,12 +598,18 @@ public class SystemIO {
         temp.inputReader = FileIOData.inputReader;
         temp.outputWriter = FileIOData.outputWriter;
         temp.errorWriter = FileIOData.errorWriter;
+        temp.fileSystem = FileIOData.fileSystem;
+        temp.outputLimit = FileIOData.outputLimit;
+        temp.inputQueue = FileIOData.inputQueue;
         FileIOData.fileNames = in.fileNames;
         FileIOData.fileFlags = in.fileFlags;
         FileIOData.streams = in.streams;
         FileIOData.inputReader = in.inputReader;
         FileIOData.outputWriter = in.outputWriter;
         FileIOData.errorWriter = in.errorWriter;
+        FileIOData.fileSystem = in.fileSystem;
+        FileIOData.outputLimit = in.outputLimit;
+        FileIOData.inputQueue = in.inputQueue;
         return temp;
     }
 
@@ -504,11 +620,14 @@ public class SystemIO {
         public BufferedReader inputReader;
         public BufferedWriter outputWriter;
         public BufferedWriter errorWriter;
+        public MemoryFileSystem fileSystem; // Where files are opened, or null for the real file system
+        private OutputLimit outputLimit; // Shared by stdout and stderr, or null if they have no limit
+        private InputQueue inputQueue; // Where stdin comes from as it arrives, or null to read streams[STDIN]
         public Data(boolean generate){
             if(generate) {
-                fileNames = new String[SYSCALL_MAXFILES];
-                fileFlags = new int[SYSCALL_MAXFILES];
-                streams = new Closeable[SYSCALL_MAXFILES];
+                fileNames = new String[INITIAL_FILES];
+                fileFlags = new int[INITIAL_FILES];
+                streams = new Closeable[INITIAL_FILES];
                 fileNames[STDIN] = "STDIN";
                 fileNames[STDOUT] = "STDOUT";
                 fileNames[STDERR] = "STDERR";
@@ -522,7 +641,24 @@ public class SystemIO {
         }
 
         public Data(ByteArrayInputStream in, ByteArrayOutputStream out, ByteArrayOutputStream err){
+            this(in, out, err, -1);
+        }
+
+        /**
+         * Standard input, output and error for a run.  The streams are read and written as the program
+         * runs, so a slow reader of the output holds up the program, and they are not closed at the end.
+         *
+         * @param in          the program's standard input
+         * @param out         where its standard output goes
+         * @param err         where its standard error goes
+         * @param outputLimit the most bytes that may be written to out and err together, after which
+         *                    more output is dropped and {@link #outputLimitReached} is true; -1 for no limit
+         */
+        public Data(InputStream in, OutputStream out, OutputStream err, long outputLimit){
             this(true);
+            this.outputLimit = new OutputLimit(outputLimit < 0 ? Long.MAX_VALUE : outputLimit);
+            out = new LimitedOutputStream(out, this.outputLimit);
+            err = new LimitedOutputStream(err, this.outputLimit);
             this.streams[STDIN]=in;
             this.streams[STDOUT]=out;
             this.streams[STDERR]=err;
@@ -530,6 +666,94 @@ public class SystemIO {
             this.outputWriter=new BufferedWriter(new OutputStreamWriter(out));
             this.errorWriter=new BufferedWriter(new OutputStreamWriter(err));
         }
+
+        /**
+         * Standard input, output and error for a run whose input comes as it goes. Reading input that
+         * has not come yet throws {@link InputPendingException}. Nothing else is buffered, as a run
+         * waiting for input may be one of many.
+         *
+         * @param in          the program's standard input
+         * @param out         where its standard output goes
+         * @param err         where its standard error goes
+         * @param outputLimit the most bytes that may be written to out and err together; -1 for no limit
+         */
+        public Data(InputQueue in, OutputStream out, OutputStream err, long outputLimit){
+            this(true);
+            this.outputLimit = new OutputLimit(outputLimit < 0 ? Long.MAX_VALUE : outputLimit);
+            this.streams[STDOUT]=new LimitedOutputStream(out, this.outputLimit);
+            this.streams[STDERR]=new LimitedOutputStream(err, this.outputLimit);
+            this.inputQueue=in;
+        }
+    }
+
+    /**
+     * @return true if the program has tried to write more than its output limit
+     */
+    public static boolean outputLimitReached() {
+        return FileIOData.outputLimit != null && FileIOData.outputLimit.written > FileIOData.outputLimit.limit;
+    }
+
+    // How much a run may write to stdout and stderr, and how much it has tried to
+    private static class OutputLimit {
+        private final long limit;
+        private long written;
+
+        private OutputLimit(long limit) {
+            this.limit = limit;
+        }
+    }
+
+    // Standard output or error of a run, which stops passing bytes on at the limit.  Closing it just
+    // flushes, since the stream underneath belongs to whoever set up the run.
+    private static class LimitedOutputStream extends FilterOutputStream {
+        private final OutputLimit limit;
+
+        private LimitedOutputStream(OutputStream out, OutputLimit limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        public void write(int b) throws IOException {
+            if (limit.written++ < limit.limit) out.write(b);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            long room = Math.max(0, limit.limit - limit.written);
+            limit.written += len;
+            out.write(b, off, (int) Math.min(len, room));
+        }
+
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    // A large file open for reading, mapped into memory so that reading it is copying rather than a
+    // system call each time.  The mapping is as large as the file was when it was opened.
+    private static class MappedFile implements Closeable {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private long position;
+
+        private MappedFile(FileChannel channel) throws IOException {
+            this.channel = channel;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // Like InputStream.read: the number of bytes read, or -1 at the end of the file
+        private int read(byte[] bytes, int length) {
+            if (length == 0) return 0;
+            if (position >= buffer.capacity()) return -1;
+            int count = (int) Math.min(length, buffer.capacity() - position);
+            buffer.position((int) position);
+            buffer.get(bytes, 0, count);
+            position += count;
+            return count;
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
     }
 
     // //////////////////////////////////////////////////////////////////////////////
@@ -537,16 +761,19 @@ public class SystemIO {
     // Ken Vollmar, August 2005
 
     private static class FileIOData {
-        private static String[] fileNames = new String[SYSCALL_MAXFILES]; // The filenames in use. Null if file descriptor i is not in use.
-        private static int[] fileFlags = new int[SYSCALL_MAXFILES]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
-        private static Closeable[] streams = new Closeable[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
+        private static String[] fileNames = new String[INITIAL_FILES]; // The filenames in use. Null if file descriptor i is not in use.
+        private static int[] fileFlags = new int[INITIAL_FILES]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
+        private static Closeable[] streams = new Closeable[INITIAL_FILES]; // The streams or channels in use, associated with the filenames
         public static BufferedReader inputReader;
         public static BufferedWriter outputWriter;
         public static BufferedWriter errorWriter;
+        public static MemoryFileSystem fileSystem;
+        private static OutputLimit outputLimit;
+        private static InputQueue inputQueue;
 
         // Reset all file information. Closes any open files and resets the arrays
         private static void resetFiles() {
-            for (int i = 0; i < SYSCALL_MAXFILES; i++) {
+            for (int i = 0; i < fileNames.length; i++) {
                 close(i);
             }
             if (outputWriter!=null){
@@ -595,7 +822,7 @@ public class SystemIO {
 
         // Determine whether a given filename is already in use.
         private static boolean filenameInUse(String requestedFilename) {
-            for (int i = 0; i < SYSCALL_MAXFILES; i++) {
+            for (int i = 0; i < fileNames.length; i++) {
                 if (fileNames[i] != null
                         && fileNames[i].equals(requestedFilename)) {
                     return true;
@@ -608,7 +835,7 @@ public class SystemIO {
 
         // Determine whether a given fd is already in use with the given flag.
         private static boolean fdInUse(int fd, int flag) {
-            if (fd < 0 || fd >= SYSCALL_MAXFILES) {
+            if (fd < 0 || fd >= fileNames.length) {
                 return false;
             } else if (fileNames[fd] != null && fileFlags[fd] == 0 && flag == 0) {  // O_RDONLY read-only
                 return true;
@@ -623,26 +850,20 @@ public class SystemIO {
         // made an error in the call, it will come back to him.
         private static void close(int fd) {
             // Can't close STDIN, STDOUT, STDERR, or invalid fd
-            if (fd <= STDERR || fd >= SYSCALL_MAXFILES)
+            if (fd <= STDERR || fd >= fileNames.length)
                 return;
 
             fileNames[fd] = null;
+            fileFlags[fd] = -1;
             // All this code will be executed only if the descriptor is open.
             if (streams[fd] != null) {
-                int keepFlag = fileFlags[fd];
-                Object keepStream = streams[fd];
-                fileFlags[fd] = -1;
+                Closeable keepStream = streams[fd];
                 streams[fd] = null;
                 try {
-                    if (keepFlag == O_RDONLY)
-                        ((FileInputStream) keepStream).close();
-                    else
-                        ((FileOutputStream) keepStream).close();
+                    keepStream.close();
                 } catch (IOException ioe) {
                     // not concerned with this exception
                 }
-            } else {
-                fileFlags[fd] = -1; // just to be sure... streams[fd] known to be null
             }
         }
 
@@ -662,14 +883,20 @@ public class SystemIO {
                 return -1;
             }
 
-            while (fileNames[i] != null && i < SYSCALL_MAXFILES) {
+            while (i < fileNames.length && fileNames[i] != null) {
                 i++;
             } // Attempt to find available file descriptor
 
-            if (i >= SYSCALL_MAXFILES) // no available file descriptors
+            if (i >= fileNames.length) // no available file descriptors, so make room for more
             {
-                fileErrorString = "File name " + filename + " exceeds maximum open file limit of " + SYSCALL_MAXFILES;
-                return -1;
+                if (i >= SYSCALL_MAXFILES) {
+                    fileErrorString = "File name " + filename + " exceeds maximum open file limit of " + SYSCALL_MAXFILES;
+                    return -1;
+                }
+                int size = Math.min(fileNames.length * 2, SYSCALL_MAXFILES);
+                fileNames = Arrays.copyOf(fileNames, size);
+                fileFlags = Arrays.copyOf(fileFlags, size);
+                streams = Arrays.copyOf(streams, size);
             }
 
             // Must be OK -- put filename in table
@@ -5,6 +5,7 @@ import rars.Globals;
 import rars.RISCVprogram;
 import rars.Settings;
 import rars.riscv.hardware.RegisterFile;
+import rars.simulator.BackStepper;
 import rars.util.FilenameFinder;
 
 import javax.swing.*;
@@ -621,6 +622,7 @@ public class EditTabbedPane extends JTabbedPane {
             FileStatus.set(FileStatus.OPENING);// DPS 9-Aug-2011
             if (theFile.canRead()) {
                 Globals.program = new RISCVprogram();
+                BackStepper.refresh();
                 try {
                     Globals.program.readSource(currentFilePath);
                 } catch (AssemblyException pe) {
@@ -25,12 +25,25 @@ public class ControlAndStatusWindow extends RegisterBlockWindow {
             /*uip*/    "Shows if any interrupt is pending and what type",
             /*cycle*/  "Number of clock cycles executed",
             /*time*/   "Time since some time in the past (Milliseconds since 1/1/1970 in RARS)",
-            /*instret*/"Instructions retired (same as cycle in RARS)",
+            /*instret*/"Instructions retired (same as cycle in RARS unless the timing model is on)",
             /*cycleh*/ "High 32 bits of cycle",
             /*timeh*/  "High 32 bits of time",
-            /*instreth*/ "High 32 bits of instret"
+            /*instreth*/ "High 32 bits of instret",
+            /*mhpmevent3-10*/ selectTip(3), selectTip(4), selectTip(5), selectTip(6),
+            selectTip(7), selectTip(8), selectTip(9), selectTip(10),
+            /*hpmcounter3-10*/ "Performance counter 3", "Performance counter 4", "Performance counter 5",
+            "Performance counter 6", "Performance counter 7", "Performance counter 8", "Performance counter 9",
+            "Performance counter 10",
+            /*hpmcounter3h-10h*/ "High 32 bits of hpmcounter3", "High 32 bits of hpmcounter4",
+            "High 32 bits of hpmcounter5", "High 32 bits of hpmcounter6", "High 32 bits of hpmcounter7",
+            "High 32 bits of hpmcounter8", "High 32 bits of hpmcounter9", "High 32 bits of hpmcounter10"
     };
 
+    private static String selectTip(int counter) {
+        return "Event counted by hpmcounter" + counter + ": 0 none, 1 loads, 2 stores, 3 taken branches, " +
+                "4 branch mispredictions, 5 data cache misses, 6 instruction cache misses, 7 floating point operations";
+    }
+
     public ControlAndStatusWindow() {
         super(ControlAndStatusRegisterFile.getRegisters(), regToolTips, "Current 32 bit value");
     }
@@ -0,0 +1,279 @@
+import rars.*;
+import rars.api.Options;
+import rars.api.Program;
+import rars.riscv.InstructionSet;
+import rars.riscv.hardware.ControlAndStatusRegisterFile;
+import rars.simulator.Simulator;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Runs the whole program benchmarks in ./test/benchmarks and compares their throughput with a baseline.
+ * <p>
+ * Each .s file there is a workload, which should exit with code 42 (or the code on an "#exit:" line)
+ * to show it computed the right answer. Header lines as in the tests can give "#stdin:", "#options: smc"
+ * and "#files:" to assemble a list of files (relative to the working directory) instead of that one.
+ * A generated 20000 line program is assembled to measure the assembler on its own.
+ * <p>
+ * Each workload is run a few times to warm up, then measured over several runs, reporting the median
+ * assemble time, the median simulation speed in millions of instructions per second, the peak heap
+ * use and the time spent in garbage collection. The exit status is 1 if a workload gives a wrong
+ * answer, or if a baseline has been saved and a workload's throughput (MIPS, or thousands of lines
+ * assembled per second) is more than the threshold below it.
+ * <p>
+ * Throughput depends on the machine, so the baseline is not part of the repository: -save writes the
+ * results to ./test/benchmarks/baseline.txt (ignored by git), and later runs on the same machine
+ * compare against it. Without a saved baseline only the answers are checked.
+ * <p>
+ * Options: -warmup n, -runs n, -threshold fraction (default 0.2), -save to write the results as the
+ * baseline, and workload names to run only those.
+ */
+public class Benchmark {
+    private static final String DIRECTORY = "./test/benchmarks";
+    private static final String BASELINE = DIRECTORY + "/baseline.txt";
+    private static final int GENERATED_LINES = 20000;
+    private static long gcStart; // collection time when measuring started
+
+    private static class Workload {
+        String name;
+        ArrayList<String> files = new ArrayList<>();
+        String source; // generated source instead of files
+        String stdin = "";
+        boolean selfModifying;
+        int exitCode = 42;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int warmup = 3, runs = 5;
+        double threshold = 0.2;
+        boolean save = false;
+        Set<String> only = new HashSet<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "-threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                case "-save":
+                    save = true;
+                    break;
+                default:
+                    only.add(args[i]);
+            }
+        }
+
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+
+        List<Workload> workloads = load();
+        Map<String, Double> baseline = readBaseline();
+        if (baseline.isEmpty() && !save) {
+            System.out.println("No baseline saved on this machine, so only checking answers; run with -save to save one");
+        }
+        Map<String, Double> results = new LinkedHashMap<>();
+        boolean failed = false;
+        System.out.printf("%-16s %10s %10s %12s %10s %9s %8s %10s %8s%n", "workload", "assemble", "simulate",
+                "instructions", "throughput", "peak heap", "gc", "baseline", "change");
+        for (Workload workload : workloads) {
+            if (!only.isEmpty() && !only.contains(workload.name)) continue;
+            String problem = null;
+            long[] assembleTimes = new long[runs], simulateTimes = new long[runs];
+            long instructions = 0;
+            for (int run = -warmup; run < runs && problem == null; run++) {
+                if (run == 0) startMeasuring();
+                try {
+                    Options options = new Options();
+                    options.startAtMain = true;
+                    options.selfModifyingCode = workload.selfModifying;
+                    Program p = new Program(options);
+                    long start = System.nanoTime();
+                    if (workload.source != null) {
+                        p.assembleString(workload.source);
+                    } else {
+                        p.assemble(workload.files, workload.files.get(0));
+                    }
+                    long assembled = System.nanoTime();
+                    if (workload.source == null) {
+                        p.setup(null, workload.stdin);
+                        Simulator.Reason reason = p.simulate();
+                        if (reason != Simulator.Reason.NORMAL_TERMINATION) {
+                            problem = "ended abnormally: " + reason;
+                        } else if (p.getExitCode() != workload.exitCode) {
+                            problem = "exit code " + p.getExitCode() + " instead of " + workload.exitCode;
+                        }
+                        instructions = ControlAndStatusRegisterFile.getValueLong(ControlAndStatusRegisterFile.INSTRET);
+                    }
+                    if (run >= 0) {
+                        assembleTimes[run] = assembled - start;
+                        simulateTimes[run] = System.nanoTime() - assembled;
+                    }
+                } catch (AssemblyException e) {
+                    problem = "failed to assemble:\n" + e.errors().generateErrorReport();
+                } catch (SimulationException e) {
+                    problem = "crashed: " + e.error().generateReport();
+                }
+            }
+            if (problem != null) {
+                System.out.println(workload.name + " " + problem);
+                failed = true;
+                continue;
+            }
+            double peakHeap = peakHeap() / 1048576.0;
+            long gcTime = gcTime() - gcStart;
+            double assembleMillis = median(assembleTimes) / 1e6;
+            double simulateMillis = median(simulateTimes) / 1e6;
+            double throughput;
+            String unit;
+            if (workload.source != null) {
+                throughput = GENERATED_LINES / assembleMillis; // thousands of lines per second
+                unit = "klines/s";
+            } else {
+                throughput = instructions / simulateMillis / 1000;
+                unit = "MIPS";
+            }
+            results.put(workload.name, throughput);
+            Double expected = baseline.get(workload.name);
+            String change = "";
+            if (expected != null) {
+                double ratio = throughput / expected - 1;
+                change = String.format("%+.1f%%", ratio * 100);
+                if (ratio < -threshold) {
+                    change += " REGRESSED";
+                    failed = true;
+                }
+            }
+            System.out.printf("%-16s %8.1fms %8.1fms %12d %6.2f %-8s %6.1fMB %6dms %10s %8s%n", workload.name,
+                    assembleMillis, simulateMillis, instructions, throughput, unit, peakHeap, gcTime,
+                    expected == null ? "-" : String.format("%.2f", expected), change);
+        }
+        if (save) {
+            writeBaseline(results);
+            System.out.println("Saved the baseline in " + BASELINE);
+        } else if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static List<Workload> load() throws IOException {
+        List<Workload> workloads = new ArrayList<>();
+        File[] files = new File(DIRECTORY).listFiles();
+        if (files == null) {
+            System.out.println(DIRECTORY + " doesn't exist");
+            System.exit(1);
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (!file.isFile() || !file.getName().endsWith(".s")) continue;
+            Workload workload = new Workload();
+            workload.name = file.getName().substring(0, file.getName().length() - 2);
+            for (String line : Files.readAllLines(file.toPath())) {
+                if (!line.startsWith("#")) break;
+                if (line.startsWith("#stdin:")) {
+                    workload.stdin = line.replaceFirst("#stdin:", "").replaceAll("\\\\n", "\n");
+                } else if (line.startsWith("#options:")) {
+                    workload.selfModifying = line.contains("smc");
+                } else if (line.startsWith("#exit:")) {
+                    workload.exitCode = Integer.parseInt(line.replaceFirst("#exit:", "").trim());
+                } else if (line.startsWith("#files:")) {
+                    workload.files.addAll(Arrays.asList(line.replaceFirst("#files:", "").trim().split("\\s+")));
+                }
+            }
+            if (workload.files.isEmpty()) workload.files.add(file.getPath());
+            workloads.add(workload);
+        }
+        Workload large = new Workload();
+        large.name = "large-assemble";
+        large.source = generate(GENERATED_LINES);
+        workloads.add(large);
+        return workloads;
+    }
+
+    // A program of about the given number of lines: functions with a loop each, calling the next one
+    private static String generate(int lines) {
+        int functions = lines / 20;
+        StringBuilder source = new StringBuilder(".data\n");
+        for (int f = 0; f < functions; f++) {
+            source.append("data").append(f).append(": .word ").append(f).append(", ").append(f * 3).append('\n');
+        }
+        source.append(".text\n.globl main\nmain:\n  call func0\n  li a7, 10\n  ecall\n");
+        for (int f = 0; f < functions; f++) {
+            source.append("func").append(f).append(":\n  addi sp, sp, -16\n  sw ra, 12(sp)\n");
+            source.append("  la t0, data").append(f).append("\n  lw t1, 0(t0)\n  lw t2, 4(t0)\n");
+            source.append("  li t3, ").append(f * 7 + 1000).append("\nloop").append(f).append(":\n");
+            source.append("  add t1, t1, t2\n  slli t4, t1, 2\n  xor t2, t2, t4\n");
+            source.append("  addi t3, t3, -1\n  bnez t3, loop").append(f).append("\n  sw t1, 0(t0)\n");
+            if (f + 1 < functions) source.append("  call func").append(f + 1).append('\n');
+            source.append("  lw ra, 12(sp)\n  addi sp, sp, 16\n  ret\n");
+        }
+        return source.toString();
+    }
+
+    private static void startMeasuring() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+        gcStart = gcTime();
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static double median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    private static Map<String, Double> readBaseline() throws IOException {
+        Map<String, Double> baseline = new HashMap<>();
+        if (!new File(BASELINE).exists()) return baseline;
+        for (String line : Files.readAllLines(Paths.get(BASELINE))) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+");
+            baseline.put(parts[0], Double.parseDouble(parts[1]));
+        }
+        return baseline;
+    }
+
+    private static void writeBaseline(Map<String, Double> results) throws IOException {
+        Map<String, Double> baseline = readBaseline();
+        baseline.putAll(results);
+        try (PrintWriter out = new PrintWriter(new FileWriter(BASELINE))) {
+            out.println("# Throughput of each benchmark workload: MIPS, or thousands of lines assembled per second.");
+            out.println("# Written by Benchmark -save on this machine; not comparable with other machines.");
+            for (String name : new TreeSet<>(baseline.keySet())) {
+                out.printf(Locale.ROOT, "%s %.2f%n", name, baseline.get(name));
+            }
+        }
+    }
+}
@@ -1,12 +1,50 @@
 import rars.*;
+import jsoftfloat.Environment;
+import jsoftfloat.Flags;
+import jsoftfloat.RoundingMode;
+import jsoftfloat.operations.Arithmetic;
+import jsoftfloat.types.Float32;
+import jsoftfloat.types.Float64;
+import rars.api.BatchRunner;
+import rars.api.Daemon;
 import rars.api.Options;
 import rars.api.Program;
+import rars.api.Session;
+import rars.management.SimulatorMetrics;
 import rars.riscv.*;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.BranchPredictor;
+import rars.riscv.hardware.BranchStatistics;
+import rars.riscv.hardware.Memory;
+import rars.riscv.hardware.RegisterFile;
+import rars.riscv.instructions.FADDD;
+import rars.riscv.instructions.FADDS;
+import rars.riscv.instructions.FDIVD;
+import rars.riscv.instructions.FDIVS;
+import rars.riscv.instructions.FMADDD;
+import rars.riscv.instructions.FMADDS;
+import rars.riscv.instructions.FMULD;
+import rars.riscv.instructions.FMULS;
+import rars.simulator.BackStepper;
+import rars.simulator.Profiler;
 import rars.simulator.Simulator;
+import rars.simulator.StackSampler;
+import rars.simulator.TimingModel;
+import rars.trace.TraceReader;
+import rars.trace.TraceRecord;
+import rars.trace.TraceWriter;
+import rars.util.MemoryFileSystem;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class Test {
     public static void main(String[] args){
@@ -73,6 +111,25 @@ public class Test {
         System.out.println(total);
         checkBinary();
         checkPsuedo();
+        checkFloatingPoint();
+        checkBackStepper();
+        checkHistory();
+        checkTrace();
+        checkTiming();
+        checkPerformanceCounters();
+        checkBranchPredictors();
+        checkProfiler();
+        checkStackSampler();
+        checkMetrics();
+        checkBulkMemory();
+        checkFileTable();
+        checkMemoryFileSystem();
+        checkOutputLimit();
+        checkBatchRunner();
+        checkAsync();
+        checkSession();
+        checkSessionFiles();
+        checkDaemon();
     }
     public static String run(String path, Program p){
         int[] errorlines = null;
@@ -279,4 +336,817 @@ public class Test {
         // Updated to 10: because fsrmi and fsflagsi were removed
         if(skips != 10) System.out.println("Unexpected number of psuedo-instructions skipped.");
     }
+
+    // Each case is an instruction, its operands, and the IEEE result and fflags rounding to nearest even;
+    // rounding to nearest even is what lets the simulator take the hardware path
+    private static final String[] FLOAT_CASES = {
+            // ties to even, signed zeros, overflow by a tie, NaN payloads
+            "fadd.s 3f800000 33800000 3f800000 1", "fadd.s 3f800001 33800000 3f800002 1",
+            "fadd.s 00000001 00000001 00000002 0", "fadd.s 00800000 80000001 007fffff 0",
+            "fadd.s 00000000 80000000 00000000 0", "fadd.s 80000000 80000000 80000000 0",
+            "fadd.s 3f800000 bf800000 00000000 0", "fadd.s 7f7fffff 7f7fffff 7f800000 5",
+            "fadd.s 7f7fffff 73000000 7f800000 5", "fadd.s 7f7fffff 72ffffff 7f7fffff 1",
+            "fadd.s 7fc12345 3f800000 7fc00000 0", "fadd.s 7f812345 3f800000 7fc00000 16",
+            "fadd.s 7f800000 ff800000 7fc00000 16",
+            // subnormal results, and underflow detected after rounding to the smallest normal
+            "fmul.s 40400000 3eaaaaab 3f800000 1", "fmul.s 00800000 3f000000 00400000 0",
+            "fmul.s 00800001 3f000000 00400000 3", "fmul.s 3fffffff 00400000 00800000 3",
+            "fmul.s 0da24260 0da24260 00000000 3", "fmul.s 7f7fffff 40000000 7f800000 5",
+            "fmul.s 80000000 40a00000 80000000 0", "fmul.s 00000000 7f800000 7fc00000 16",
+            "fdiv.s 3f800000 40400000 3eaaaaab 1", "fdiv.s 3f800000 00000000 7f800000 8",
+            "fdiv.s bf800000 00000000 ff800000 8", "fdiv.s 00000000 00000000 7fc00000 16",
+            "fdiv.s 00800000 40400000 002aaaab 3", "fdiv.s 7f7fffff 3f000000 7f800000 5",
+            "fdiv.s 3f800000 7f7fffff 00200000 3",
+            "fsqrt.s 40000000 3fb504f3 1", "fsqrt.s 40800000 40000000 0", "fsqrt.s bf800000 7fc00000 16",
+            "fsqrt.s 80000000 80000000 0", "fsqrt.s 00000001 1a3504f3 1", "fsqrt.s 00200000 1f800000 0",
+            "fsqrt.s 7f812345 7fc00000 16",
+            // the first two round to a float midpoint as doubles, so rounding twice would go wrong
+            "fmadd.s 3f800800 3f800800 1c800000 3f801001 1", "fmadd.s 3f800800 3f800800 9c800000 3f801000 1",
+            "fmadd.s 3f800000 3f800000 bf800000 00000000 0", "fmadd.s 7f7fffff 40000000 ff7fffff 7f7fffff 0",
+            "fmadd.s 00800000 3f000000 80000001 003fffff 0",
+            "fadd.d 3ff0000000000000 3ca0000000000000 3ff0000000000000 1",
+            "fadd.d 3ff0000000000001 3ca0000000000000 3ff0000000000002 1",
+            "fadd.d 0000000000000001 0000000000000001 0000000000000002 0",
+            "fadd.d 7fefffffffffffff 7fefffffffffffff 7ff0000000000000 5",
+            "fadd.d 0000000000000000 8000000000000000 0000000000000000 0",
+            "fadd.d 7ff8000000012345 3ff0000000000000 7ff8000000000000 0",
+            "fadd.d 7ff0000000012345 3ff0000000000000 7ff8000000000000 16",
+            "fmul.d 0010000000000000 3fe0000000000000 0008000000000000 0",
+            "fmul.d 0000000000000001 3fe0000000000000 0000000000000000 3",
+            "fmul.d 3fffffffffffffff 0008000000000000 0010000000000000 3",
+            "fmul.d 1a56e1fc2f8f359f 1a56e1fc2f8f359f 0000000000000000 3",
+            "fmul.d 7fefffffffffffff 4000000000000000 7ff0000000000000 5",
+            "fmul.d 3fb999999999999a 4008000000000000 3fd3333333333334 1",
+            "fmul.d 8000000000000000 4014000000000000 8000000000000000 0",
+            "fdiv.d 3ff0000000000000 4008000000000000 3fd5555555555555 1",
+            "fdiv.d 3ff0000000000000 0000000000000000 7ff0000000000000 8",
+            "fdiv.d 0000000000000000 0000000000000000 7ff8000000000000 16",
+            "fdiv.d 0010000000000000 4008000000000000 0005555555555555 3",
+            "fsqrt.d 4000000000000000 3ff6a09e667f3bcd 1", "fsqrt.d bff0000000000000 7ff8000000000000 16",
+            "fsqrt.d 0000000000000001 1e60000000000000 0", "fsqrt.d 0000000000000002 1e66a09e667f3bcd 1",
+            "fmadd.d 3ff0000040000000 3ff0000040000000 bff0000000000000 3ea0000020000000 0",
+            "fmadd.d 7fefffffffffffff 4000000000000000 ffefffffffffffff 7fefffffffffffff 0",
+            "fmadd.d 3ff0000000000001 3ff0000000000001 3950000000000000 3ff0000000000002 1",
+    };
+
+    public static void checkFloatingPoint(){
+        // Each case loads its operands from in<i> and stores the result and fflags to out<i>
+        StringBuilder data = new StringBuilder(".data\n.align 3\n"), text = new StringBuilder(".text\nmain:\n");
+        for (int i = 0; i < FLOAT_CASES.length; i++) {
+            String[] c = FLOAT_CASES[i].split(" ");
+            String suffix = c[0].substring(c[0].length() - 1), regs = "fa3";
+            data.append("out").append(i).append(": .space 16\nin").append(i).append(": .word");
+            for (int j = 1; j < c.length - 2; j++) {
+                long bits = Long.parseUnsignedLong(c[j], 16);
+                data.append(j == 1 ? " " : ", ").append((int) bits).append(", ").append((int) (bits >>> 32));
+                text.append("la t0, in").append(i).append("\nfl").append(suffix.equals("s") ? "w" : "d")
+                        .append(" fa").append(j - 1).append(", ").append(8 * (j - 1)).append("(t0)\n");
+                regs += ", fa" + (j - 1);
+            }
+            data.append('\n');
+            text.append("csrwi fflags, 0\n").append(c[0]).append(' ').append(regs).append("\ncsrr t1, fflags\n")
+                    .append("la t0, out").append(i).append("\nfs").append(suffix.equals("s") ? "w" : "d")
+                    .append(" fa3, 0(t0)\nsw t1, 8(t0)\n");
+        }
+        text.append("li a0, 42\nli a7, 93\necall\n");
+        Program p = simulateString(data.toString() + text, "floating point");
+        if (p == null) return;
+        int address = Memory.dataBaseAddress;
+        for (String fcase : FLOAT_CASES) {
+            String[] c = fcase.split(" ");
+            boolean single = c[0].endsWith(".s");
+            long expected = Long.parseUnsignedLong(c[c.length - 2], 16);
+            int expectedFlags = Integer.parseInt(c[c.length - 1]);
+            long result;
+            int flags;
+            try {
+                result = single ? p.getMemory().getWord(address) & 0xFFFFFFFFL
+                        : p.getMemory().getWord(address) & 0xFFFFFFFFL | (long) p.getMemory().getWord(address + 4) << 32;
+                flags = p.getMemory().getWord(address + 8);
+            } catch (AddressErrorException e) {
+                System.out.println("Error 111: could not read the result of " + fcase + ": " + e);
+                return;
+            }
+            address += 16 + 8 * (c.length - 3);
+            if (result != expected || flags != expectedFlags) {
+                System.out.println("Error 112: " + fcase + " gave " + Long.toHexString(result) + " " + flags);
+            }
+            // The hardware path has to agree with jsoftfloat, which it stands in for
+            Environment e = new Environment();
+            e.mode = RoundingMode.even;
+            long soft = single ? softFloat(c, e) & 0xFFFFFFFFL : softDouble(c, e);
+            int softFlags = (e.flags.contains(Flags.inexact) ? 1 : 0) + (e.flags.contains(Flags.underflow) ? 2 : 0)
+                    + (e.flags.contains(Flags.overflow) ? 4 : 0) + (e.flags.contains(Flags.divByZero) ? 8 : 0)
+                    + (e.flags.contains(Flags.invalid) ? 16 : 0);
+            if (result != soft || flags != softFlags) {
+                System.out.println("Error 113: " + fcase + " gave " + Long.toHexString(result) + " " + flags
+                        + " but jsoftfloat gives " + Long.toHexString(soft) + " " + softFlags);
+            }
+        }
+    }
+
+    private static int softFloat(String[] c, Environment e){
+        Float32 a = new Float32((int) Long.parseLong(c[1], 16)), b = new Float32((int) Long.parseLong(c[2], 16));
+        switch (c[0]) {
+            case "fadd.s":
+                return new FADDS().compute(a, b, e).bits;
+            case "fmul.s":
+                return new FMULS().compute(a, b, e).bits;
+            case "fdiv.s":
+                return new FDIVS().compute(a, b, e).bits;
+            case "fsqrt.s":
+                return Arithmetic.squareRoot(a, e).bits;
+            default:
+                return new FMADDS().compute(a, b, new Float32((int) Long.parseLong(c[3], 16)), e).bits;
+        }
+    }
+
+    private static long softDouble(String[] c, Environment e){
+        Float64 a = new Float64(Long.parseUnsignedLong(c[1], 16)), b = new Float64(Long.parseUnsignedLong(c[2], 16));
+        switch (c[0]) {
+            case "fadd.d":
+                return new FADDD().compute(a, b, e).bits;
+            case "fmul.d":
+                return new FMULD().compute(a, b, e).bits;
+            case "fdiv.d":
+                return new FDIVD().compute(a, b, e).bits;
+            case "fsqrt.d":
+                return Arithmetic.squareRoot(a, e).bits;
+            default:
+                return new FMADDD().compute(a, b, new Float64(Long.parseUnsignedLong(c[3], 16)), e).bits;
+        }
+    }
+
+    public static void checkBackStepper(){
+        // Run something first so that registers and memory are set up; outside a run nothing else records
+        if (simulateString(COUNTDOWN, "back step") == null) return;
+        // Only 64 steps fit in memory, so nearly all of them are undone from the temporary file
+        BackStepper steps = new BackStepper(100000, 64);
+        int count = 5000;
+        int[][] states = new int[count + 1][];
+        try {
+            states[0] = backStepState();
+            for (int i = 1; i <= count; i++) {
+                // Each step is an "instruction" at one of five addresses writing t0 and memory
+                RegisterFile.initializeProgramCounter(Memory.textBaseAddress + 4 * (i % 5) + Instruction.INSTRUCTION_LENGTH);
+                steps.addRegisterFileRestore(5, RegisterFile.getValue(5));
+                RegisterFile.updateRegister(5, i);
+                if (i % 10 == 0) {
+                    int address = Memory.dataBaseAddress + 4 * (i % 7);
+                    byte[] bytes = {(byte) i, 1, 2, 3, 4, 5, 6, (byte) (i >> 8)};
+                    steps.addMemoryRestoreRange(address, Globals.memory.readBytes(address, bytes.length));
+                    Globals.memory.writeBytes(address, bytes, 0, bytes.length);
+                } else {
+                    int address = Memory.dataBaseAddress + 4 * (i % 8);
+                    steps.addMemoryRestoreWord(address, Globals.memory.getWord(address));
+                    Globals.memory.setWord(address, 7 * i);
+                }
+                states[i] = backStepState();
+            }
+            for (int i = count; i > 0; i--) {
+                steps.backStep();
+                if (RegisterFile.getProgramCounter() != Memory.textBaseAddress + 4 * (i % 5)
+                        || !Arrays.equals(backStepState(), states[i - 1])) {
+                    System.out.println("Error 115: undoing step " + i + " gave " + Arrays.toString(backStepState())
+                            + " instead of " + Arrays.toString(states[i - 1]));
+                    return;
+                }
+            }
+            if (!steps.empty()) {
+                System.out.println("Error 116: steps were left after undoing all of them");
+            }
+        } catch (AddressErrorException e) {
+            System.out.println("Error 117: back step test failed: " + e);
+        } finally {
+            steps.clear();
+        }
+    }
+
+    // t0 and the first 8 words of data
+    private static int[] backStepState() throws AddressErrorException {
+        int[] state = new int[9];
+        state[0] = RegisterFile.getValue(5);
+        for (int i = 0; i < 8; i++) {
+            state[i + 1] = Globals.memory.getWord(Memory.dataBaseAddress + 4 * i);
+        }
+        return state;
+    }
+
+    public static void checkHistory(){
+        Options opt = new Options();
+        opt.startAtMain = true;
+        opt.maxSteps = 1000;
+        opt.historyInterval = 4;
+        Program p = new Program(opt);
+        // Sums three numbers from stdin; the add is at 0x400010
+        String program = "main: li s0, 0\n li s1, 3\n" +
+                "loop: li a7, 5\n ecall\n add s0, s0, a0\n addi s1, s1, -1\n bnez s1, loop\n" +
+                "mv a0, s0\n li a7, 1\n ecall\n li a0, 42\n li a7, 93\n ecall\n";
+        try {
+            p.assembleString(program);
+            p.setup(null, "1\n2\n3\n");
+            if (p.simulate() != Simulator.Reason.NORMAL_TERMINATION || !p.getSTDOUT().equals("6")) {
+                System.out.println("Error 21: history run did not finish with 6");
+                return;
+            }
+            // After the add of the second number
+            if (p.seek(10) != Simulator.Reason.MAX_STEPS || p.getInstructionCount() != 10
+                    || p.getRegisterValue("s0") != 3 || p.getRegisterValue("a0") != 2) {
+                System.out.println("Error 22: seek did not go back to the second number");
+            }
+            p.seek(16);
+            if (p.getRegisterValue("s0") != 6 || p.getRegisterValue("s1") != 0) {
+                System.out.println("Error 23: seek forward did not replay the input");
+            }
+            if (!p.reverseContinue(new int[]{0x400010}) || p.getInstructionCount() != 14
+                    || p.getRegisterValue("a0") != 3 || p.getRegisterValue("s0") != 3) {
+                System.out.println("Error 24: reverse continue did not stop at the last add");
+            }
+            if (!p.reverseContinue(new int[]{0x400010}) || p.getInstructionCount() != 9
+                    || p.getRegisterValue("a0") != 2 || p.getRegisterValue("s0") != 1) {
+                System.out.println("Error 25: reverse continue did not stop at the second add");
+            }
+            if (p.simulate() != Simulator.Reason.NORMAL_TERMINATION || p.getExitCode() != 42
+                    || !p.getSTDOUT().equals("6")) {
+                System.out.println("Error 26: replay changed the output: \"" + p.getSTDOUT() + "\"");
+            }
+        } catch (Exception e) {
+            System.out.println("Error 27: history run failed: " + e);
+        }
+    }
+
+    // Counts t0 down from 10; the addi is at 0x400004 and the bnez at 0x400008
+    private static final String COUNTDOWN = "main: li t0, 10\nloop: addi t0, t0, -1\n bnez t0, loop\n" +
+            "li a0, 42\n li a7, 93\n ecall\n";
+
+    // Assembles and runs source to the end, or returns null after printing why it could not
+    private static Program simulateString(String source, String name){
+        Options opt = new Options();
+        opt.startAtMain = true;
+        opt.maxSteps = 10000;
+        Program p = new Program(opt);
+        try {
+            p.assembleString(source);
+            p.setup(null, "");
+            if (p.simulate() != Simulator.Reason.NORMAL_TERMINATION || p.getExitCode() != 42) {
+                System.out.println("Error 31: " + name + " program did not exit normally");
+                return null;
+            }
+            return p;
+        } catch (Exception e) {
+            System.out.println("Error 32: " + name + " program failed: " + e);
+            return null;
+        }
+    }
+
+    public static void checkTrace(){
+        String program = "main: li t0, 3\nloop: sw t0, -4(sp)\n addi t0, t0, -1\n bnez t0, loop\n" +
+                "li a0, 42\n li a7, 93\n ecall\n";
+        for (boolean compress : new boolean[]{false, true}) {
+            File file = null;
+            try {
+                file = File.createTempFile("rars-test", ".trace");
+                TraceWriter trace = TraceWriter.start(file.toPath(), compress);
+                Program p = simulateString(program, "trace");
+                trace.close();
+                if (p == null) continue;
+                // li, 3 times round the loop, then the exit including its ecall
+                if (trace.getInstructionCount() != 13) {
+                    System.out.println("Error 33: traced " + trace.getInstructionCount() + " instructions");
+                }
+                int sp = p.getRegisterValue("sp");
+                ArrayList<TraceRecord> records = new ArrayList<>();
+                try (TraceReader reader = new TraceReader(file.toPath())) {
+                    TraceRecord record = new TraceRecord();
+                    while (reader.next(record)) {
+                        records.add(record);
+                        record = new TraceRecord();
+                    }
+                }
+                if (records.size() != 13) {
+                    System.out.println("Error 34: read back " + records.size() + " trace records");
+                    continue;
+                }
+                TraceRecord first = records.get(0), store = records.get(4), branch = records.get(6);
+                if (first.getPC() != 0x400000 || first.getEffectCount() != 1
+                        || first.getType(0) != TraceRecord.INTEGER_REGISTER || first.getRegister(0) != 5
+                        || first.getValue(0) != 3) {
+                    System.out.println("Error 35: wrong first trace record " + first);
+                }
+                if (store.getPC() != 0x400004 || store.getEffectCount() != 1 || store.getType(0) != TraceRecord.STORE
+                        || store.getAddress(0) != sp - 4 || store.getSize(0) != 4 || store.getValue(0) != 2) {
+                    System.out.println("Error 36: wrong store trace record " + store);
+                }
+                if (branch.getPC() != 0x40000c || branch.getEffectCount() != 0
+                        || branch.getInstruction() != records.get(3).getInstruction()) {
+                    System.out.println("Error 37: wrong branch trace record " + branch);
+                }
+            } catch (IOException e) {
+                System.out.println("Error 38: trace could not be written or read: " + e);
+            } finally {
+                if (file != null) file.delete();
+            }
+        }
+    }
+
+    public static void checkTiming(){
+        TimingModel.start(new TimingModel());
+        try {
+            // 23 instructions retire (the exiting ecall does not) and 9 taken branches cost 2 cycles each
+            Program p = simulateString(COUNTDOWN, "timing");
+            if (p != null && (p.getRegisterValue("instret") != 23 || p.getRegisterValue("cycle") != 41)) {
+                System.out.println("Error 41: countdown took " + p.getRegisterValue("cycle") + " cycles");
+            }
+            // Using a load's result in the next instruction stalls for a cycle
+            p = simulateString("main: sw zero, -4(sp)\n lw t1, -4(sp)\n addi t1, t1, 1\n" +
+                    "li a0, 42\n li a7, 93\n ecall\n", "load use");
+            if (p != null && (p.getRegisterValue("instret") != 5 || p.getRegisterValue("cycle") != 6)) {
+                System.out.println("Error 42: load use took " + p.getRegisterValue("cycle") + " cycles");
+            }
+        } finally {
+            TimingModel.stop();
+        }
+        Program p = simulateString(COUNTDOWN, "untimed");
+        if (p != null && p.getRegisterValue("cycle") != 23) {
+            System.out.println("Error 43: without a timing model the countdown took " + p.getRegisterValue("cycle") + " cycles");
+        }
+    }
+
+    public static void checkPerformanceCounters(){
+        // Count taken branches in hpmcounter3 around the countdown loop
+        Program p = simulateString("main: li t1, 3\n csrw t1, mhpmevent3\n li t0, 10\n" +
+                "loop: addi t0, t0, -1\n bnez t0, loop\n csrr s1, hpmcounter3\n li a0, 42\n li a7, 93\n ecall\n",
+                "performance counter");
+        if (p != null && p.getRegisterValue("s1") != 9) {
+            System.out.println("Error 45: counted " + p.getRegisterValue("s1") + " taken branches");
+        }
+    }
+
+    public static void checkBranchPredictors(){
+        BranchStatistics statistics = BranchStatistics.parse("bimodal:16,gshare:16:4");
+        BranchStatistics.start(statistics);
+        try {
+            simulateString(COUNTDOWN, "branch");
+        } finally {
+            BranchStatistics.stop();
+        }
+        if (statistics.getBranchCount() != 10 || statistics.getTakenCount() != 9 || statistics.getJumpCount() != 0) {
+            System.out.println("Error 51: counted " + statistics.getBranchCount() + " branches, "
+                    + statistics.getTakenCount() + " taken");
+        }
+        // Alternating branches: a bimodal counter keeps getting them wrong, global history learns them
+        BranchPredictor bimodal = BranchPredictor.parse("bimodal:16"), gshare = BranchPredictor.parse("gshare:16:4");
+        int bimodalMisses = 0, gshareMisses = 0;
+        for (int i = 0; i < 200; i++) {
+            boolean taken = i % 2 == 0;
+            if (i >= 100 && bimodal.predict(0x400000) != taken) bimodalMisses++;
+            if (i >= 100 && gshare.predict(0x400000) != taken) gshareMisses++;
+            bimodal.update(0x400000, taken);
+            gshare.update(0x400000, taken);
+        }
+        if (gshareMisses != 0 || bimodalMisses < 50) {
+            System.out.println("Error 52: alternating branches mispredicted " + bimodalMisses + " times by bimodal and "
+                    + gshareMisses + " times by gshare");
+        }
+    }
+
+    public static void checkProfiler(){
+        Profiler profiler = new Profiler();
+        Profiler.start(profiler);
+        Program p;
+        try {
+            p = simulateString(COUNTDOWN, "profiler");
+        } finally {
+            Profiler.stop();
+        }
+        if (p == null) return;
+        // The exiting ecall does not retire, so is not counted
+        if (profiler.getTotal() != p.getRegisterValue("instret") || profiler.getCount(0x400014) != 0) {
+            System.out.println("Error 62: profiled " + profiler.getTotal() + " instructions but "
+                    + p.getRegisterValue("instret") + " retired");
+        }
+        if (profiler.getCount(0x400000) != 1 || profiler.getCount(0x400004) != 10 || profiler.getCount(0x400008) != 10) {
+            System.out.println("Error 61: profiled " + profiler.getCount(0x400004) + " addi and "
+                    + profiler.getCount(0x400008) + " bnez");
+        }
+    }
+
+    public static void checkStackSampler(){
+        String program = "main: li s0, 20\nloop: jal f\n addi s0, s0, -1\n bnez s0, loop\n" +
+                "li a0, 42\n li a7, 93\n ecall\n" +
+                "f: li t0, 5\nf_loop: addi t0, t0, -1\n bnez t0, f_loop\n ret\n";
+        StackSampler sampler = new StackSampler(1);
+        StackSampler.start(sampler);
+        Program p;
+        try {
+            p = simulateString(program, "sampler");
+        } finally {
+            StackSampler.stop();
+        }
+        if (p == null) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sampler.write(new PrintStream(bytes), p.getMemory());
+        String folded = bytes.toString().replace("\r", "");
+        // main: li, 20 times jal addi bnez, and the exit; f: li, 5 times addi bnez, ret, for each of 20 calls
+        if (sampler.getSampleCount() != 304 || !folded.contains("main 64\n") || !folded.contains("main;f 240\n")) {
+            System.out.println("Error 71: wrong samples " + sampler.getSampleCount() + "\n" + folded);
+        }
+    }
+
+    public static void checkMetrics(){
+        SimulatorMetrics metrics = new SimulatorMetrics();
+        metrics.reset();
+        Program p = simulateString(COUNTDOWN, "metrics");
+        if (p != null && metrics.getInstructionsExecuted() != p.getRegisterValue("instret")) {
+            System.out.println("Error 81: metrics counted " + metrics.getInstructionsExecuted() + " instructions but "
+                    + p.getRegisterValue("instret") + " retired");
+        }
+        // The count goes up while a program runs, not only when it stops
+        Options opt = new Options();
+        opt.startAtMain = true;
+        p = new Program(opt);
+        try {
+            p.assembleString("main: j main\n");
+            p.setup(null, "");
+            metrics.reset();
+            CompletableFuture<Simulator.Reason> run = p.simulateAsync(-1, 500, null);
+            // Only look in the first half of the time it has, so that it is certainly still running
+            long seen = 0, end = System.currentTimeMillis() + 250;
+            while (seen == 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+                seen = metrics.getInstructionsExecuted();
+            }
+            try {
+                run.get();
+            } catch (ExecutionException e) {
+                // stopped by the time limit
+            }
+            if (seen == 0 || metrics.getInstructionsExecuted() != p.getRegisterValue("instret")) {
+                System.out.println("Error 82: metrics counted " + seen + " instructions while running and "
+                        + metrics.getInstructionsExecuted() + " of " + p.getRegisterValue("instret") + " in all");
+            }
+        } catch (Exception e) {
+            System.out.println("Error 83: metrics program failed: " + e);
+        }
+    }
+
+    public static void checkBulkMemory(){
+        RISCVprogram code = new RISCVprogram(), previous = Globals.program;
+        // Across a block of static data, from static data into the heap, across blocks of the stack,
+        // and off the end of the data segment, which goes a byte at a time and fails after 4 bytes
+        int[] addresses = {Memory.dataBaseAddress + 4093, Memory.heapBaseAddress - 3,
+                Memory.stackBaseAddress - 6000, Memory.dataSegmentLimitAddress - 4};
+        int[] lengths = {6000, 10, 5000, 8}, written = {6000, 10, 5000, 4};
+        byte[][] before = new byte[addresses.length][];
+        try {
+            ArrayList<RISCVprogram> programs = new ArrayList<>();
+            code.fromString("main: nop\n");
+            code.tokenize();
+            programs.add(code);
+            code.assemble(programs, true, false);
+            Globals.program = code; // so that the writes are recorded
+            BackStepper.refresh();
+            for (int i = 0; i < addresses.length; i++) {
+                int address = addresses[i];
+                byte[] bytes = new byte[lengths[i]];
+                for (int j = 0; j < bytes.length; j++) bytes[j] = (byte) (31 * i + 7 * j + 1);
+                before[i] = Globals.memory.readBytes(address, written[i]);
+                // Each write is a different "instruction", so it is undone on its own
+                RegisterFile.initializeProgramCounter(Memory.textBaseAddress + Instruction.INSTRUCTION_LENGTH * (i + 1));
+                try {
+                    Globals.memory.writeBytes(address, bytes, 0, bytes.length);
+                    if (written[i] != lengths[i]) {
+                        System.out.println("Error 121: writing past the data segment did not fail");
+                    }
+                } catch (AddressErrorException e) {
+                    if (written[i] == lengths[i]) throw e;
+                }
+                for (int j = 0; j < written[i]; j++) {
+                    if ((byte) Globals.memory.getByte(address + j) != bytes[j]) {
+                        System.out.println("Error 122: byte " + j + " of " + Integer.toHexString(address) + " was not written");
+                        break;
+                    }
+                }
+                if (!Arrays.equals(Globals.memory.readBytes(address, written[i]), Arrays.copyOf(bytes, written[i]))) {
+                    System.out.println("Error 123: reading " + Integer.toHexString(address) + " gave other bytes");
+                }
+            }
+            for (int i = addresses.length - 1; i >= 0; i--) {
+                code.getBackStepper().backStep();
+                if (!Arrays.equals(Globals.memory.readBytes(addresses[i], written[i]), before[i])) {
+                    System.out.println("Error 124: back step did not restore " + Integer.toHexString(addresses[i]));
+                }
+            }
+        } catch (AssemblyException | AddressErrorException e) {
+            System.out.println("Error 125: bulk memory test failed: " + e);
+        } finally {
+            Globals.program = previous;
+            BackStepper.refresh();
+        }
+    }
+
+    // Opens 40 files, which is more than the table starts with, then pauses before writing "ok" to the
+    // last of them, fd 42
+    private static String openFilesSource(String pause){
+        StringBuilder source = new StringBuilder(".data\nmessage: .ascii \"ok\"\nnames:");
+        for (int i = 0; i < 40; i++) {
+            source.append(" .asciz \"f").append(i / 10).append(i % 10).append("\"\n");
+        }
+        source.append("\n.text\nmain: la s0, names\n li s1, 40\n" +
+                "open: mv a0, s0\n li a1, 1\n li a7, 1024\n ecall\n addi s0, s0, 4\n addi s1, s1, -1\n bnez s1, open\n")
+                .append(pause)
+                .append("li a0, 42\n la a1, message\n li a2, 2\n li a7, 64\n ecall\n mv s2, a0\n" +
+                        "li a0, 42\n li a7, 57\n ecall\n li a0, 42\n li a7, 93\n ecall\n");
+        return source.toString();
+    }
+
+    public static void checkFileTable(){
+        Options opt = new Options();
+        opt.startAtMain = true;
+        opt.maxSteps = 10000;
+        Program p = new Program(opt);
+        p.setFileSystem(new MemoryFileSystem());
+        try {
+            p.assembleString(openFilesSource("ebreak\n"));
+            p.setup(null, "");
+            if (p.simulate() != Simulator.Reason.BREAKPOINT || p.simulate() != Simulator.Reason.NORMAL_TERMINATION
+                    || p.getExitCode() != 42) {
+                System.out.println("Error 131: file table program did not exit normally");
+                return;
+            }
+            byte[] written = p.getFile("f39");
+            if (p.getRegisterValue("s2") != 2 || written == null
+                    || !new String(written, StandardCharsets.UTF_8).equals("ok")) {
+                System.out.println("Error 132: writing fd 42 after the breakpoint gave " + p.getRegisterValue("s2"));
+            }
+        } catch (Exception e) {
+            System.out.println("Error 133: file table program failed: " + e);
+        }
+    }
+
+    public static void checkMemoryFileSystem(){
+        MemoryFileSystem files = new MemoryFileSystem();
+        files.putFile("in.txt", "hello world".getBytes(StandardCharsets.UTF_8));
+        Options opt = new Options();
+        opt.startAtMain = true;
+        Program p = new Program(opt);
+        p.setFileSystem(files);
+        // Reads "world" from in.txt after seeking and prints it, then writes out.txt with a seek back over
+        // a byte, a seek past the end, and an append; opening a missing file or with O_RDWR fails
+        String source = ".data\nin: .asciz \"in.txt\"\nout: .asciz \"out.txt\"\nmissing: .asciz \"missing.txt\"\n" +
+                "bytes: .ascii \"abcXdefz\"\nbuffer: .space 8\n.text\n" +
+                "main: la a0, in\n li a1, 0\n li a7, 1024\n ecall\n mv s0, a0\n" +
+                "mv a0, s0\n li a1, 6\n li a2, 0\n li a7, 62\n ecall\n" +
+                "mv a0, s0\n la a1, buffer\n li a2, 8\n li a7, 63\n ecall\n mv s1, a0\n" +
+                "li a0, 1\n la a1, buffer\n mv a2, s1\n li a7, 64\n ecall\n" +
+                "mv a0, s0\n li a1, -5\n li a2, 2\n li a7, 62\n ecall\n mv s2, a0\n" +
+                "mv a0, s0\n li a7, 57\n ecall\n" +
+                "la a0, out\n li a1, 1\n li a7, 1024\n ecall\n mv s3, a0\n" +
+                "mv a0, s3\n la a1, bytes\n li a2, 3\n li a7, 64\n ecall\n" +
+                "mv a0, s3\n li a1, 1\n li a2, 0\n li a7, 62\n ecall\n" +
+                "mv a0, s3\n la a1, bytes\n addi a1, a1, 3\n li a2, 1\n li a7, 64\n ecall\n" +
+                "mv a0, s3\n li a1, 2\n li a2, 1\n li a7, 62\n ecall\n" +
+                "mv a0, s3\n la a1, bytes\n addi a1, a1, 7\n li a2, 1\n li a7, 64\n ecall\n" +
+                "mv a0, s3\n li a7, 57\n ecall\n" +
+                "la a0, out\n li a1, 9\n li a7, 1024\n ecall\n mv s3, a0\n" +
+                "mv a0, s3\n la a1, bytes\n addi a1, a1, 4\n li a2, 3\n li a7, 64\n ecall\n" +
+                "mv a0, s3\n li a7, 57\n ecall\n" +
+                "la a0, missing\n li a1, 0\n li a7, 1024\n ecall\n mv s4, a0\n" +
+                "la a0, in\n li a1, 2\n li a7, 1024\n ecall\n mv s5, a0\n" +
+                "li a0, 42\n li a7, 93\n ecall\n";
+        try {
+            p.assembleString(source);
+            // Each run starts from its own copy of the files, so the second does not append to the first's
+            for (int run = 0; run < 2; run++) {
+                p.setup(null, "");
+                if (p.simulate() != Simulator.Reason.NORMAL_TERMINATION || p.getExitCode() != 42) {
+                    System.out.println("Error 141: file system program did not exit normally");
+                    return;
+                }
+                if (!p.getSTDOUT().equals("world") || p.getRegisterValue("s1") != 5 || p.getRegisterValue("s2") != 6) {
+                    System.out.println("Error 142: reading in.txt gave \"" + p.getSTDOUT() + "\", "
+                            + p.getRegisterValue("s1") + " bytes and seek " + p.getRegisterValue("s2"));
+                }
+                byte[] out = p.getFile("out.txt");
+                if (out == null || !new String(out, StandardCharsets.UTF_8).equals("aXc\0zdef")) {
+                    System.out.println("Error 143: out.txt was \""
+                            + (out == null ? null : new String(out, StandardCharsets.UTF_8)) + "\"");
+                }
+                if (p.getRegisterValue("s4") != -1 || p.getRegisterValue("s5") != -1) {
+                    System.out.println("Error 144: opening a missing file gave " + p.getRegisterValue("s4")
+                            + " and opening with O_RDWR gave " + p.getRegisterValue("s5"));
+                }
+            }
+            if (files.getFile("out.txt") != null
+                    || !new String(files.getFile("in.txt"), StandardCharsets.UTF_8).equals("hello world")) {
+                System.out.println("Error 145: the runs changed the file system they were given");
+            }
+        } catch (Exception e) {
+            System.out.println("Error 146: file system program failed: " + e);
+        }
+    }
+
+    public static void checkOutputLimit(){
+        Options opt = new Options();
+        opt.startAtMain = true;
+        opt.maxOutputBytes = 20;
+        Program p = new Program(opt);
+        // Prints "hello\n" a hundred times, which is far past the limit
+        String source = ".data\nhello: .asciz \"hello\\n\"\n.text\nmain: li s0, 100\n" +
+                "loop: la a0, hello\n li a7, 4\n ecall\n addi s0, s0, -1\n bnez s0, loop\n li a0, 42\n li a7, 93\n ecall\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            p.assembleString(source);
+        } catch (AssemblyException e) {
+            System.out.println("Error 151: output limit program did not assemble");
+            return;
+        }
+        // Once with output kept in the program and once streamed
+        for (int run = 0; run < 2; run++) {
+            if (run == 0) {
+                p.setup(null, "");
+            } else {
+                p.setup(null, new ByteArrayInputStream(new byte[0]), out, new ByteArrayOutputStream());
+            }
+            try {
+                p.simulate();
+                System.out.println("Error 152: the output limit did not stop the run");
+            } catch (SimulationException e) {
+                if (!e.error().getMessage().contains("output limit exceeded")) {
+                    System.out.println("Error 153: the run stopped with " + e.error().getMessage());
+                }
+            }
+            String output = run == 0 ? p.getSTDOUT() : new String(out.toByteArray(), StandardCharsets.UTF_8);
+            if (!output.equals("hello\nhello\nhello\nhe")) {
+                System.out.println("Error 154: the output was cut to \"" + output + "\"");
+            }
+        }
+    }
+
+    public static void checkBatchRunner(){
+        // Reads n, prints the sum of 1 to n, and exits with its low byte; larger n take longer
+        String source = "main: li a7, 5\n ecall\n mv s0, a0\n li s1, 0\n" +
+                "loop: beqz s0, done\n add s1, s1, s0\n addi s0, s0, -1\n j loop\n" +
+                "done: mv a0, s1\n li a7, 1\n ecall\n andi a0, s1, 255\n li a7, 93\n ecall\n";
+        File file = null;
+        try {
+            file = File.createTempFile("batch", ".s");
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                writer.write(source);
+            }
+            ArrayList<String> files = new ArrayList<>();
+            files.add(file.getPath());
+            Options opt = new Options();
+            opt.startAtMain = true;
+            ArrayList<BatchRunner.Case> cases = new ArrayList<>();
+            for (int i = 0; i < 24; i++) {
+                cases.add(new BatchRunner.Case((997 * i % 5000) + "\n"));
+            }
+            List<BatchRunner.Result> results;
+            try (BatchRunner runner = new BatchRunner(opt, files, file.getPath(), 4)) {
+                results = runner.run(cases, "s1");
+            }
+            // Each case on its own, one after another, in this class loader
+            Program p = new Program(opt);
+            p.assemble(file.getPath());
+            for (int i = 0; i < cases.size(); i++) {
+                BatchRunner.Result result = results.get(i);
+                p.setup(null, cases.get(i).stdin);
+                Simulator.Reason reason = p.simulate();
+                if (result.reason != reason || result.exitCode != p.getExitCode()
+                        || !result.getSTDOUT().equals(p.getSTDOUT())
+                        || result.registers.get("s1") != p.getRegisterValue("s1")
+                        || result.instructions != p.getRegisterValue("instret")) {
+                    System.out.println("Error 161: case " + i + " gave " + result.reason + " " + result.exitCode
+                            + " \"" + result.getSTDOUT() + "\" " + result.instructions + " on 4 threads but " + reason
+                            + " " + p.getExitCode() + " \"" + p.getSTDOUT() + "\" " + p.getRegisterValue("instret"));
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("Error 162: batch run failed: " + e);
+        } finally {
+            if (file != null) file.delete();
+        }
+    }
+
+    public static void checkAsync(){
+        Options opt = new Options();
+        opt.startAtMain = true;
+        Program p = new Program(opt), q = new Program(opt);
+        try {
+            p.assembleString("main: j main\n");
+            q.assembleString("main: j main\n");
+            p.setup(null, "");
+            q.setup(null, "");
+            // A run out of time ends with a TimeoutException
+            long start = System.currentTimeMillis();
+            try {
+                p.simulateAsync(-1, 200, null).get(10, TimeUnit.SECONDS);
+                System.out.println("Error 171: a run without end finished within its time");
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof java.util.concurrent.TimeoutException)
+                        || System.currentTimeMillis() - start > 5000) {
+                    System.out.println("Error 172: timing out gave " + e.getCause() + " after "
+                            + (System.currentTimeMillis() - start) + " ms");
+                }
+            }
+            // Cancelling stops a run once it has made progress, and the program can be continued
+            CountDownLatch running = new CountDownLatch(1);
+            CompletableFuture<Simulator.Reason> run = p.simulateAsync(-1, -1, (instructions, pc) -> running.countDown());
+            if (!running.await(10, TimeUnit.SECONDS) || !run.cancel(true)) {
+                System.out.println("Error 173: the run to cancel did not get going");
+                return;
+            }
+            // Runs take turns, so this one only finishes if the cancelled one stopped
+            if (p.simulateAsync(1000, -1, null).get(10, TimeUnit.SECONDS) != Simulator.Reason.MAX_STEPS) {
+                System.out.println("Error 174: continuing after cancelling did not stop at the instruction limit");
+            }
+            // Cancelling a run that is waiting for its turn means it never starts; if it did, it would
+            // run forever and hold up the one after it
+            boolean[] started = new boolean[1];
+            CompletableFuture<Simulator.Reason> first = p.simulateAsync(-1, 200, null);
+            CompletableFuture<Simulator.Reason> second = q.simulateAsync(-1, -1, (instructions, pc) -> started[0] = true);
+            second.cancel(true);
+            try {
+                first.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // timed out as it was meant to
+            }
+            if (q.simulateAsync(1000, -1, null).get(10, TimeUnit.SECONDS) != Simulator.Reason.MAX_STEPS
+                    || started[0]) {
+                System.out.println("Error 175: the run cancelled before its turn still ran");
+            }
+        } catch (Exception e) {
+            System.out.println("Error 176: async runs failed: " + e);
+        }
+    }
+
+    public static void checkSession(){
+        Options opt = new Options();
+        opt.startAtMain = true;
+        Program p = new Program(opt);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            p.assembleString(".data\nbuffer: .space 32\n.text\nmain: la a0, buffer\n li a1, 32\n li a7, 8\n ecall\n" +
+                    "la a0, buffer\n li a7, 4\n ecall\n li a0, 42\n li a7, 93\n ecall\n");
+            Session session = p.startSession(null, out, new ByteArrayOutputStream());
+            // Not ASCII, so the output is only right if encoded as UTF-8 whatever the default charset
+            session.input("h\u00e9 llo\n");
+            if (session.getResult().get(10, TimeUnit.SECONDS) != Simulator.Reason.NORMAL_TERMINATION
+                    || session.getExitCode() != 42) {
+                System.out.println("Error 91: session did not exit normally");
+            }
+        } catch (Exception e) {
+            System.out.println("Error 92: session failed: " + e);
+            return;
+        }
+        String output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        if (!output.equals("h\u00e9 llo\n")) {
+            System.out.println("Error 93: session printed \"" + output + "\"");
+        }
+    }
+
+    public static void checkSessionFiles(){
+        // The session stops between opening the files and writing to fd 42 to wait for input
+        Options opt = new Options();
+        opt.startAtMain = true;
+        Program p = new Program(opt);
+        p.setFileSystem(new MemoryFileSystem());
+        try {
+            p.assembleString(openFilesSource("li a7, 5\n ecall\n"));
+            Session session = p.startSession(null, new ByteArrayOutputStream(), new ByteArrayOutputStream());
+            long end = System.currentTimeMillis() + 10000;
+            while (session.getState() != Session.State.WAITING_FOR_INPUT && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            session.input("1\n");
+            if (session.getResult().get(10, TimeUnit.SECONDS) != Simulator.Reason.NORMAL_TERMINATION
+                    || session.getExitCode() != 42) {
+                System.out.println("Error 94: file table session did not exit normally");
+                return;
+            }
+            byte[] written = session.getFileSystem().getFile("f39");
+            if (written == null || !new String(written, StandardCharsets.UTF_8).equals("ok")) {
+                System.out.println("Error 95: writing fd 42 after waiting for input failed");
+            }
+        } catch (Exception e) {
+            System.out.println("Error 96: file table session failed: " + e);
+        }
+    }
+
+    public static void checkDaemon(){
+        Daemon daemon = new Daemon();
+        String job = "{\"sources\": {\"loop.s\": \"loop: j loop\"}, \"limits\": {\"steps\": ";
+        String result = daemon.run(job + "100}}");
+        if (!result.contains("\"status\":\"ok\"") || !result.contains("\"instructions\":100")) {
+            System.out.println("Error 101: daemon gave " + result);
+        }
+        // Limits that do not fit the simulator's step count are refused rather than cut down to size
+        for (String steps : new String[]{"4294967296", "2147483648", "-5", "0"}) {
+            result = daemon.run(job + steps + "}}");
+            if (!result.contains("\"status\":\"bad job\"") || !result.contains("steps should be")) {
+                System.out.println("Error 102: daemon gave " + result + " for " + steps + " steps");
+            }
+        }
+    }
 }
@@ -0,0 +1,4 @@
+#files: examples/bottles.s examples/printf.s examples/printstr.s examples/printnum.s
+#exit: 0
+# The bottles example with its printf library: string formatting and printing through system calls.
+# The files listed above are assembled instead of this one.
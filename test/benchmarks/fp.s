@@ -0,0 +1,92 @@
+# Double precision matrix multiply C = A * B with A[i][j] = i + j and B = 2I, checked through the sum of C
+.eqv N, 20
+.data
+a:	.space 3200	# N * N doubles each
+b:	.space 3200
+c:	.space 3200
+.text
+main:
+	li s0, N
+	# Fill A and B
+	li t0, 0		# i
+filli:
+	li t1, 0		# j
+fillj:
+	mul t2, t0, s0
+	add t2, t2, t1
+	slli t2, t2, 3
+	add t3, t0, t1
+	fcvt.d.w ft0, t3
+	la t4, a
+	add t4, t4, t2
+	fsd ft0, (t4)
+	fcvt.d.w ft1, zero
+	bne t0, t1, offdiagonal
+	li t3, 2
+	fcvt.d.w ft1, t3
+offdiagonal:
+	la t4, b
+	add t4, t4, t2
+	fsd ft1, (t4)
+	addi t1, t1, 1
+	blt t1, s0, fillj
+	addi t0, t0, 1
+	blt t0, s0, filli
+
+	li s1, 4		# repetitions
+repeat:
+	li t0, 0		# i
+rows:
+	li t1, 0		# j
+cols:
+	fcvt.d.w ft0, zero	# sum
+	li t2, 0		# k
+dot:
+	mul t3, t0, s0
+	add t3, t3, t2
+	slli t3, t3, 3
+	la t4, a
+	add t4, t4, t3
+	fld ft1, (t4)
+	mul t3, t2, s0
+	add t3, t3, t1
+	slli t3, t3, 3
+	la t4, b
+	add t4, t4, t3
+	fld ft2, (t4)
+	fmadd.d ft0, ft1, ft2, ft0
+	addi t2, t2, 1
+	blt t2, s0, dot
+	mul t3, t0, s0
+	add t3, t3, t1
+	slli t3, t3, 3
+	la t4, c
+	add t4, t4, t3
+	fsd ft0, (t4)
+	addi t1, t1, 1
+	blt t1, s0, cols
+	addi t0, t0, 1
+	blt t0, s0, rows
+	addi s1, s1, -1
+	bnez s1, repeat
+
+	# Sum C, which should be twice the sum of A: 2 * 2 * N * (N * (N - 1) / 2)
+	fcvt.d.w ft0, zero
+	la t0, c
+	mul t1, s0, s0
+sum:
+	fld ft1, (t0)
+	fadd.d ft0, ft0, ft1
+	addi t0, t0, 8
+	addi t1, t1, -1
+	bnez t1, sum
+	fcvt.w.d t2, ft0
+	li t3, 15200
+	bne t2, t3, fail
+	li a0, 42
+	li a7, 93
+	ecall
+fail:
+	li a0, 1
+	li a7, 93
+	ecall
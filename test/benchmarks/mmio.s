@@ -0,0 +1,41 @@
+# Polls the keyboard and display control registers in the memory mapped I/O area, the way a
+# driver loop does, writing to the display data register when it reports ready. Nothing is
+# attached when benchmarking, so every poll finds both devices idle.
+.eqv RECEIVER_CONTROL, 0xffff0000
+.eqv TRANSMITTER_CONTROL, 0xffff0008
+.text
+main:
+	li s0, 30000		# polls
+	li s1, 0		# idle polls
+	li s2, RECEIVER_CONTROL
+	li s3, TRANSMITTER_CONTROL
+poll:
+	lw t0, (s2)
+	andi t0, t0, 1
+	beqz t0, nokey
+	lw t1, 4(s2)		# RECEIVER_DATA
+	j echo
+nokey:
+	li t1, '.'
+echo:
+	lw t2, (s3)
+	andi t2, t2, 1
+	beqz t2, busy
+	sw t1, 4(s3)		# TRANSMITTER_DATA
+	j polled
+busy:
+	addi s1, s1, 1
+	sb t1, 4(s3)
+polled:
+	addi s0, s0, -1
+	bnez s0, poll
+
+	li t0, 30000
+	bne s1, t0, fail
+	li a0, 42
+	li a7, 93
+	ecall
+fail:
+	li a0, 1
+	li a7, 93
+	ecall
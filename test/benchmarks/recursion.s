@@ -0,0 +1,100 @@
+# Naive recursive Fibonacci and an N-queens solution count
+.data
+columns:	.space 32	# queen column for each row
+.text
+main:
+	li a0, 20
+	call fib
+	li t0, 6765
+	bne a0, t0, fail
+
+	li a0, 0
+	li a1, 7
+	call queens
+	li t0, 40
+	bne a0, t0, fail
+
+	li a0, 42
+	li a7, 93
+	ecall
+fail:
+	li a0, 1
+	li a7, 93
+	ecall
+
+# fib(a0) = fib(a0 - 1) + fib(a0 - 2)
+fib:
+	li t0, 2
+	blt a0, t0, fibdone
+	addi sp, sp, -16
+	sw ra, 12(sp)
+	sw s0, 8(sp)
+	sw s1, 4(sp)
+	mv s0, a0
+	addi a0, s0, -1
+	call fib
+	mv s1, a0
+	addi a0, s0, -2
+	call fib
+	add a0, a0, s1
+	lw ra, 12(sp)
+	lw s0, 8(sp)
+	lw s1, 4(sp)
+	addi sp, sp, 16
+fibdone:
+	ret
+
+# queens(a0 = row, a1 = n) returns the number of ways to place queens on rows row to n-1
+queens:
+	bne a0, a1, place
+	li a0, 1
+	ret
+place:
+	addi sp, sp, -32
+	sw ra, 28(sp)
+	sw s0, 24(sp)
+	sw s1, 20(sp)
+	sw s2, 16(sp)
+	sw s3, 12(sp)
+	mv s0, a0		# row
+	mv s1, a1		# n
+	li s2, 0		# column being tried
+	li s3, 0		# solutions
+try:
+	bge s2, s1, tried
+	# Is column s2 safe from the queens on rows 0 to row-1?
+	la t0, columns
+	li t1, 0
+safe:
+	bge t1, s0, free
+	slli t2, t1, 2
+	add t2, t0, t2
+	lw t3, (t2)
+	beq t3, s2, unsafe
+	sub t4, t3, s2
+	sub t5, s0, t1
+	beq t4, t5, unsafe
+	neg t4, t4
+	beq t4, t5, unsafe
+	addi t1, t1, 1
+	j safe
+free:
+	slli t2, s0, 2
+	add t2, t0, t2
+	sw s2, (t2)
+	addi a0, s0, 1
+	mv a1, s1
+	call queens
+	add s3, s3, a0
+unsafe:
+	addi s2, s2, 1
+	j try
+tried:
+	mv a0, s3
+	lw ra, 28(sp)
+	lw s0, 24(sp)
+	lw s1, 20(sp)
+	lw s2, 16(sp)
+	lw s3, 12(sp)
+	addi sp, sp, 32
+	ret
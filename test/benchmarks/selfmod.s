@@ -0,0 +1,28 @@
+#options: smc
+# Rewrites the immediate of an instruction in the text segment before every execution of it
+.text
+main:
+	li s0, 1		# i
+	li s1, 20001
+	li a0, 0		# sum of i & 2047
+	la s2, patched
+	li s3, 0x00050513	# addi a0, a0, 0
+loop:
+	andi t0, s0, 2047
+	slli t0, t0, 20
+	or t0, t0, s3
+	sw t0, (s2)
+patched:
+	addi a0, a0, 0		# becomes addi a0, a0, i & 2047
+	addi s0, s0, 1
+	blt s0, s1, loop
+
+	li t0, 20095248
+	bne a0, t0, fail
+	li a0, 42
+	li a7, 93
+	ecall
+fail:
+	li a0, 1
+	li a7, 93
+	ecall
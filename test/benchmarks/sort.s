@@ -0,0 +1,101 @@
+# Quicksort of 4000 pseudo-random words, checked to be in order
+.data
+array:	.space 16000
+.text
+main:
+	la s0, array
+	li s1, 4000
+	# Fill with a linear congruential sequence
+	li t0, 12345
+	li t1, 1103515245
+	li t2, 0
+fill:
+	mul t0, t0, t1
+	addi t0, t0, 1234
+	slli t3, t2, 2
+	add t3, s0, t3
+	srli t4, t0, 8
+	sw t4, (t3)
+	addi t2, t2, 1
+	blt t2, s1, fill
+
+	mv a0, s0
+	li a1, 0
+	addi a2, s1, -1
+	call quicksort
+
+	# Check the order
+	li t2, 1
+check:
+	slli t3, t2, 2
+	add t3, s0, t3
+	lw t4, -4(t3)
+	lw t5, (t3)
+	bgtu t4, t5, fail
+	addi t2, t2, 1
+	blt t2, s1, check
+	li a0, 42
+	li a7, 93
+	ecall
+fail:
+	li a0, 1
+	li a7, 93
+	ecall
+
+# quicksort(a0 = array, a1 = low, a2 = high), sorting unsigned words in place
+quicksort:
+	bge a1, a2, qdone
+	addi sp, sp, -32
+	sw ra, 28(sp)
+	sw s0, 24(sp)
+	sw s1, 20(sp)
+	sw s2, 16(sp)
+	mv s0, a0
+	mv s1, a1
+	mv s2, a2
+	# Lomuto partition around the last element
+	slli t0, s2, 2
+	add t0, s0, t0
+	lw t1, (t0)		# pivot
+	addi t2, s1, -1		# i
+	mv t3, s1		# j
+partition:
+	bge t3, s2, placed
+	slli t4, t3, 2
+	add t4, s0, t4
+	lw t5, (t4)
+	bgtu t5, t1, next
+	addi t2, t2, 1
+	slli t6, t2, 2
+	add t6, s0, t6
+	lw a3, (t6)
+	sw t5, (t6)
+	sw a3, (t4)
+next:
+	addi t3, t3, 1
+	j partition
+placed:
+	addi t2, t2, 1
+	slli t6, t2, 2
+	add t6, s0, t6
+	lw a3, (t6)
+	sw t1, (t6)
+	sw a3, (t0)
+	# Sort both sides
+	sw t2, 12(sp)		# pivot index
+	mv a0, s0
+	mv a1, s1
+	addi a2, t2, -1
+	call quicksort
+	lw t2, 12(sp)
+	mv a0, s0
+	addi a1, t2, 1
+	mv a2, s2
+	call quicksort
+	lw ra, 28(sp)
+	lw s0, 24(sp)
+	lw s1, 20(sp)
+	lw s2, 16(sp)
+	addi sp, sp, 32
+qdone:
+	ret
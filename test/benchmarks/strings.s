@@ -0,0 +1,77 @@
+#stdin:The quick brown fox jumps over the lazy dog\n
+# Reads a line, then repeatedly reverses it, counts its vowels and prints both through system calls
+.data
+line:		.space 128
+reversed:	.space 128
+vowels:		.asciz "aeiouAEIOU"
+.text
+main:
+	la a0, line
+	li a1, 128
+	li a7, 8		# ReadString
+	ecall
+
+	li s0, 500		# iterations
+	li s1, 0		# total vowels
+repeat:
+	# Length, without the newline
+	la t0, line
+	li t1, 0
+length:
+	add t2, t0, t1
+	lbu t3, (t2)
+	beqz t3, measured
+	li t4, 10
+	beq t3, t4, measured
+	addi t1, t1, 1
+	j length
+measured:
+	# Reverse it
+	la t5, reversed
+	add t5, t5, t1
+	sb zero, (t5)
+	li t2, 0
+reverse:
+	bge t2, t1, counted
+	add t3, t0, t2
+	lbu t4, (t3)
+	addi t5, t5, -1
+	sb t4, (t5)
+	# Count vowels
+	la t3, vowels
+vowel:
+	lbu t6, (t3)
+	beqz t6, consonant
+	beq t6, t4, found
+	addi t3, t3, 1
+	j vowel
+found:
+	addi s1, s1, 1
+consonant:
+	addi t2, t2, 1
+	j reverse
+counted:
+	la a0, reversed
+	li a7, 4		# PrintString
+	ecall
+	li a0, ' '
+	li a7, 11		# PrintChar
+	ecall
+	mv a0, s1
+	li a7, 1		# PrintInt
+	ecall
+	li a0, '\n'
+	li a7, 11
+	ecall
+	addi s0, s0, -1
+	bnez s0, repeat
+
+	li t0, 5500		# 11 vowels each time
+	bne s1, t0, fail
+	li a0, 42
+	li a7, 93
+	ecall
+fail:
+	li a0, 1
+	li a7, 93
+	ecall